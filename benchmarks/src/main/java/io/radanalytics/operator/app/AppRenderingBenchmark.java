@@ -0,0 +1,74 @@
+package io.radanalytics.operator.app;
+
+import io.fabric8.kubernetes.api.model.KubernetesResourceList;
+import io.radanalytics.types.Deps;
+import io.radanalytics.types.Driver;
+import io.radanalytics.types.Env;
+import io.radanalytics.types.Executor;
+import io.radanalytics.types.SparkApplication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering of the submitter rc of a spark application, most of the work is building the spark-submit command.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AppRenderingBenchmark {
+
+    private KubernetesAppDeployer deployer;
+    private SparkApplication app;
+
+    @Setup
+    public void setup() {
+        deployer = new KubernetesAppDeployer("SparkApplication", "radanalytics.io/");
+        app = new SparkApplication();
+        app.setName("my-app");
+        app.setNamespace("benchmark");
+        app.setMainClass("org.apache.spark.examples.SparkPi");
+        app.setMainApplicationFile("local:///opt/spark/examples/jars/spark-examples_2.11-2.4.5.jar");
+        app.setArguments("1000");
+        Map<String, String> labels = new HashMap<>();
+        labels.put("team", "data");
+        labels.put("env", "benchmark");
+        app.setLabels(labels);
+        Driver driver = new Driver();
+        driver.setLabels(labels);
+        app.setDriver(driver);
+        Executor executor = new Executor();
+        executor.setLabels(labels);
+        app.setExecutor(executor);
+        Deps deps = new Deps();
+        deps.setJars(Arrays.asList("https://example.com/a.jar", "https://example.com/b.jar"));
+        deps.setFiles(Arrays.asList("https://example.com/data.csv"));
+        app.setDeps(deps);
+        for (int i = 0; i < 5; i++) {
+            Env env = new Env();
+            env.setName("VAR_" + i);
+            env.setValue("value-" + i);
+            app.getEnv().add(env);
+        }
+    }
+
+    @Benchmark
+    public KubernetesResourceList render() {
+        return deployer.getResourceList(app, "benchmark");
+    }
+}
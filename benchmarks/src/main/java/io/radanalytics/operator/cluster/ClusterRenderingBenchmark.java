@@ -0,0 +1,66 @@
+package io.radanalytics.operator.cluster;
+
+import io.fabric8.kubernetes.api.model.KubernetesResourceList;
+import io.radanalytics.types.SparkCluster;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of rendering the resources of a spark cluster. The rendering takes a snapshot of the external inputs,
+ * so it doesn't need the client or the cache here.
+ *
+ * <p>To see how it scales with the number of cores, run it on a machine with several of them with different number of
+ * threads, e.g. <code>java -jar benchmarks/target/benchmarks.jar ClusterRenderingBenchmark.render -t 4</code>. The
+ * <code>renderLocked</code> benchmark serializes the rendering on a shared object (as it used to be done on the
+ * client) for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClusterRenderingBenchmark {
+
+    private final Object sharedLock = new Object();
+    private KubernetesSparkClusterDeployer deployer;
+    private KubernetesSparkClusterDeployer.ExternalInputs inputs;
+    private SparkCluster cluster;
+
+    @Setup
+    public void setup() {
+        deployer = new KubernetesSparkClusterDeployer(null, null, Clusters.ENTITY_NAME, Clusters.PREFIX, "benchmark");
+        inputs = new KubernetesSparkClusterDeployer.ExternalInputs(null);
+        cluster = Clusters.full("my-cluster");
+    }
+
+    @Benchmark
+    public KubernetesResourceList render() {
+        return deployer.getResourceList(cluster, inputs);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public KubernetesResourceList renderAllCores() {
+        return deployer.getResourceList(cluster, inputs);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public KubernetesResourceList renderLocked() {
+        synchronized (sharedLock) {
+            return deployer.getResourceList(cluster, inputs);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package io.radanalytics.operator.cluster;
+
+import io.radanalytics.types.DownloadDatum;
+import io.radanalytics.types.Env;
+import io.radanalytics.types.HistoryServer;
+import io.radanalytics.types.Master;
+import io.radanalytics.types.SparkCluster;
+import io.radanalytics.types.SparkConfiguration;
+import io.radanalytics.types.Worker;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Spark clusters used as the input of the benchmarks.
+ */
+public class Clusters {
+
+    public static final String PREFIX = "radanalytics.io/";
+    public static final String ENTITY_NAME = "SparkCluster";
+
+    /**
+     * @return the simplest possible cluster, only the name and the number of workers
+     */
+    public static SparkCluster minimal(String name, int workers) {
+        SparkCluster cluster = new SparkCluster();
+        cluster.setName(name);
+        cluster.setNamespace("benchmark");
+        cluster.setMaster(new Master());
+        Worker worker = new Worker();
+        worker.setInstances(workers);
+        cluster.setWorker(worker);
+        return cluster;
+    }
+
+    /**
+     * @return cluster that uses most of the features that affect the rendering (labels, env, configuration, data
+     * to download, history server and resource limits)
+     */
+    public static SparkCluster full(String name) {
+        SparkCluster cluster = minimal(name, 3);
+        Map<String, String> labels = new HashMap<>();
+        labels.put("team", "data");
+        labels.put("env", "benchmark");
+        cluster.setLabels(labels);
+        cluster.getMaster().setMemory("1Gi");
+        cluster.getMaster().setCpu("500m");
+        cluster.getWorker().setMemory("2Gi");
+        cluster.getWorker().setCpuLimit("2");
+        for (int i = 0; i < 5; i++) {
+            Env env = new Env();
+            env.setName("VAR_" + i);
+            env.setValue("value-" + i);
+            cluster.getEnv().add(env);
+
+            SparkConfiguration conf = new SparkConfiguration();
+            conf.setName("spark.custom.property" + i);
+            conf.setValue(String.valueOf(i));
+            cluster.getSparkConfiguration().add(conf);
+        }
+        DownloadDatum data = new DownloadDatum();
+        data.setUrl("https://example.com/data.csv");
+        data.setTo("/tmp/data.csv");
+        cluster.getDownloadData().add(data);
+        HistoryServer historyServer = new HistoryServer();
+        historyServer.setType(HistoryServer.Type.remoteStorage);
+        historyServer.setRemoteURI("s3a://bucket/history");
+        cluster.setHistoryServer(historyServer);
+        cluster.setMetrics(true);
+        return cluster;
+    }
+}
@@ -0,0 +1,59 @@
+package io.radanalytics.operator.cluster;
+
+import io.fabric8.kubernetes.api.model.ReplicationController;
+import io.fabric8.kubernetes.api.model.ReplicationControllerBuilder;
+import io.radanalytics.types.SparkCluster;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adding the init containers (downloader, config backup and override) to the master rc. The rc is modified in place,
+ * so each invocation works on a fresh copy, <code>copyOnly</code> measures the copy alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InitContainersBenchmark {
+
+    private ReplicationController template;
+    private SparkCluster cluster;
+
+    @Setup
+    public void setup() {
+        KubernetesSparkClusterDeployer deployer = new KubernetesSparkClusterDeployer(null, null, Clusters.ENTITY_NAME,
+                Clusters.PREFIX, "benchmark");
+        // rc without any init containers
+        template = (ReplicationController) deployer.getResourceList(Clusters.minimal("my-cluster", 3),
+                new KubernetesSparkClusterDeployer.ExternalInputs(null)).getItems().stream()
+                .filter(r -> r instanceof ReplicationController).findFirst().get();
+        cluster = Clusters.full("my-cluster");
+    }
+
+    @Benchmark
+    public ReplicationController copyOnly() {
+        return new ReplicationControllerBuilder(template).build();
+    }
+
+    @Benchmark
+    public ReplicationController addInitContainers() {
+        return InitContainersHelper.addInitContainers(new ReplicationControllerBuilder(template).build(), cluster, false, true);
+    }
+
+    @Benchmark
+    public ReplicationController addInitContainersWithConfigMap() {
+        return InitContainersHelper.addInitContainers(new ReplicationControllerBuilder(template).build(), cluster, true, true);
+    }
+}
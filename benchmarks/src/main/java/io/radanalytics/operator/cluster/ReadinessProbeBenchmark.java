@@ -0,0 +1,95 @@
+package io.radanalytics.operator.cluster;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One readiness check of the Spark master the way the kubelet does it in the two probe modes: <code>exec</code> forks
+ * bash, curl and grep on the web UI (needs <code>bash</code> and <code>curl</code> on the machine),
+ * <code>httpGet</code> is a single request to <code>/json</code>. A local http server stands in for the master's web
+ * UI. The forked processes' CPU isn't visible to JMH, the time per check is the proxy for it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+// without nodelay the JDK's http server hits the delayed ack of the client (~40 ms per request), the kubelet and
+// curl set TCP_NODELAY on their side
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+public class ReadinessProbeBenchmark {
+
+    private static final byte[] PAGE = ("<html><body><ul><li><strong>URL:</strong> spark://my-cluster:7077</li>"
+            + "<li><strong>Status:</strong> ALIVE</li></ul></body></html>").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] JSON = "{\"url\":\"spark://my-cluster:7077\",\"aliveworkers\":2,\"status\":\"ALIVE\"}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer server;
+    private int port;
+
+    @Setup
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            byte[] body = "/json".equals(exchange.getRequestURI().getPath()) ? JSON : PAGE;
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        port = server.getAddress().getPort();
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Benchmark
+    public int exec() throws IOException, InterruptedException {
+        Process process = new ProcessBuilder("/bin/bash", "-c", "curl -s localhost:" + port + " | grep -e Status.*ALIVE")
+                .redirectErrorStream(true).start();
+        try (InputStream in = process.getInputStream()) {
+            while (in.read() != -1) {
+                // drain
+            }
+        }
+        return process.waitFor();
+    }
+
+    @Benchmark
+    public int httpGet() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/json").openConnection();
+        try {
+            int code = connection.getResponseCode();
+            try (InputStream in = connection.getInputStream()) {
+                while (in.read() != -1) {
+                    // the kubelet reads (and discards) the body too
+                }
+            }
+            return code;
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
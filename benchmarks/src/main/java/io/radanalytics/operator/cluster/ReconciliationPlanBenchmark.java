@@ -0,0 +1,57 @@
+package io.radanalytics.operator.cluster;
+
+import io.radanalytics.types.SparkCluster;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The diff the full reconciliation computes for one namespace. About 10% of the desired clusters are missing, 10% of
+ * the running ones are not desired anymore and 10% have a different number of workers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReconciliationPlanBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    private int clusters;
+
+    private Map<String, SparkCluster> desired;
+    private Map<String, Integer> actual;
+
+    @Setup
+    public void setup() {
+        desired = new HashMap<>(clusters);
+        actual = new HashMap<>(clusters);
+        for (int i = 0; i < clusters; i++) {
+            String name = "cluster-" + i;
+            if (i % 10 != 0) {
+                desired.put(name, Clusters.minimal(name, 2));
+            }
+            if (i % 10 != 1) {
+                actual.put(name, i % 10 == 2 ? 1 : 2);
+            }
+        }
+    }
+
+    @Benchmark
+    public ReconciliationPlan compute() {
+        return ReconciliationPlan.compute(desired, actual);
+    }
+}
@@ -0,0 +1,53 @@
+package io.radanalytics.operator.historyServer;
+
+import io.fabric8.kubernetes.api.model.KubernetesResourceList;
+import io.radanalytics.types.SharedVolume;
+import io.radanalytics.types.SparkHistoryServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering of a history server with a shared volume, exposed through a route (OpenShift) or an ingress.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HistoryServerRenderingBenchmark {
+
+    private KubernetesHistoryServerDeployer deployer;
+    private SparkHistoryServer hs;
+
+    @Setup
+    public void setup() {
+        deployer = new KubernetesHistoryServerDeployer("SparkHistoryServer", "radanalytics.io/");
+        hs = new SparkHistoryServer();
+        hs.setName("my-history-server");
+        hs.setNamespace("benchmark");
+        hs.setSharedVolume(new SharedVolume());
+        hs.setExpose(true);
+        hs.setHost("history.example.com");
+    }
+
+    @Benchmark
+    public KubernetesResourceList renderKubernetes() {
+        return deployer.getResourceList(hs, "benchmark", false);
+    }
+
+    @Benchmark
+    public KubernetesResourceList renderOpenShift() {
+        return deployer.getResourceList(hs, "benchmark", true);
+    }
+}
@@ -1,5 +1,7 @@
 package io.radanalytics.operator;
 
+import java.util.Optional;
+
 public class Constants {
 
     public static String DEFAULT_SPARK_IMAGE = "quay.io/radanalyticsio/openshift-spark:2.4-latest";
@@ -7,6 +9,11 @@ public class Constants {
     public static final String OPERATOR_TYPE_UI_LABEL = "ui";
     public static final String OPERATOR_TYPE_MASTER_LABEL = "master";
     public static final String OPERATOR_TYPE_WORKER_LABEL = "worker";
+    public static final int DEFAULT_RECONCILIATION_PARALLELISM = 8;
+    public static final String DEFAULT_DELETE_PROPAGATION = "Background";
+    public static final String DEFAULT_MAVEN_DEPENDENCY_CACHE_SIZE = "1Gi";
+    public static final String DEFAULT_DATA_STAGING_SIZE = "10Gi";
+    public static final String DEFAULT_IMAGE_PRE_PULL_PAUSE_IMAGE = "k8s.gcr.io/pause:3.1";
 
     public static String getDefaultSparkImage() { 
         String ret = DEFAULT_SPARK_IMAGE;
@@ -23,4 +30,124 @@ public class Constants {
         }
         return ret;
     }
+
+    public static int getReconciliationParallelism() {
+        return Math.max(1, intFromEnv("RECONCILIATION_PARALLELISM", DEFAULT_RECONCILIATION_PARALLELISM));
+    }
+
+    public static boolean useOwnerReferences() {
+        return booleanFromEnv("OWNER_REFERENCES", true);
+    }
+
+    public static String getDeletePropagation() {
+        String ret = DEFAULT_DELETE_PROPAGATION;
+        if (System.getenv("DELETE_PROPAGATION") != null) {
+            String value = System.getenv("DELETE_PROPAGATION").trim();
+            if ("Foreground".equalsIgnoreCase(value)) {
+                ret = "Foreground";
+            }
+        }
+        return ret;
+    }
+
+    public static boolean useMavenDependencyCache() {
+        return booleanFromEnv("MAVEN_DEPENDENCY_CACHE", false);
+    }
+
+    public static String getMavenDependencyCacheSize() {
+        String ret = DEFAULT_MAVEN_DEPENDENCY_CACHE_SIZE;
+        if (System.getenv("MAVEN_DEPENDENCY_CACHE_SIZE") != null && !System.getenv("MAVEN_DEPENDENCY_CACHE_SIZE").trim().isEmpty()) {
+            ret = System.getenv("MAVEN_DEPENDENCY_CACHE_SIZE").trim();
+        }
+        return ret;
+    }
+
+    public static int getSharedJobTimeoutSeconds() {
+        return Math.max(10, intFromEnv("SHARED_JOB_TIMEOUT_SECONDS", 900));
+    }
+
+    public static boolean useDataStaging() {
+        return booleanFromEnv("DATA_STAGING", false);
+    }
+
+    public static String getDataStagingSize() {
+        String ret = DEFAULT_DATA_STAGING_SIZE;
+        if (System.getenv("DATA_STAGING_SIZE") != null && !System.getenv("DATA_STAGING_SIZE").trim().isEmpty()) {
+            ret = System.getenv("DATA_STAGING_SIZE").trim();
+        }
+        return ret;
+    }
+
+    public static boolean useConfigInitContainers() {
+        return booleanFromEnv("SPARK_CONFIG_INIT_CONTAINERS", true);
+    }
+
+    public static boolean useImagePrePull() {
+        return booleanFromEnv("IMAGE_PRE_PULL", false);
+    }
+
+    public static String getImagePrePullPauseImage() {
+        String ret = DEFAULT_IMAGE_PRE_PULL_PAUSE_IMAGE;
+        if (System.getenv("IMAGE_PRE_PULL_PAUSE_IMAGE") != null && !System.getenv("IMAGE_PRE_PULL_PAUSE_IMAGE").trim().isEmpty()) {
+            ret = System.getenv("IMAGE_PRE_PULL_PAUSE_IMAGE").trim();
+        }
+        return ret;
+    }
+
+    public static int getWarmPoolSize() {
+        return Math.max(0, intFromEnv("WARM_POOL_SIZE", 0));
+    }
+
+    public static int getWarmPoolWorkers() {
+        return Math.max(0, intFromEnv("WARM_POOL_WORKERS", 1));
+    }
+
+    public static int getAutoscalerPeriodSeconds() {
+        return Math.max(1, intFromEnv("AUTOSCALER_PERIOD_SECONDS", 15));
+    }
+
+    public static int getAutoscalerConcurrency() {
+        return Math.max(1, intFromEnv("AUTOSCALER_CONCURRENCY", 4));
+    }
+
+    public static boolean useGracefulScaleDown() {
+        return booleanFromEnv("GRACEFUL_SCALE_DOWN", true);
+    }
+
+    public static int getScaleDownDrainTimeoutSeconds() {
+        return Math.max(0, intFromEnv("SCALE_DOWN_DRAIN_TIMEOUT_SECONDS", 0));
+    }
+
+    public static boolean useExecProbes() {
+        return !"http".equalsIgnoreCase(Optional.ofNullable(System.getenv("PROBE_MODE")).orElse("exec").trim());
+    }
+
+    public static boolean useAdaptiveProbeDelays() {
+        return booleanFromEnv("ADAPTIVE_PROBE_DELAYS", true);
+    }
+
+    public static String getEventRecordingFile() {
+        String ret = System.getenv("EVENT_RECORDING_FILE");
+        return null == ret || ret.trim().isEmpty() ? null : ret.trim();
+    }
+
+    private static boolean booleanFromEnv(String name, boolean defaultValue) {
+        boolean ret = defaultValue;
+        if (System.getenv(name) != null) {
+            ret = Boolean.parseBoolean(System.getenv(name).trim());
+        }
+        return ret;
+    }
+
+    private static int intFromEnv(String name, int defaultValue) {
+        int ret = defaultValue;
+        if (System.getenv(name) != null) {
+            try {
+                ret = Integer.parseInt(System.getenv(name).trim());
+            } catch (NumberFormatException nfe) {
+                // ignore, use the default
+            }
+        }
+        return ret;
+    }
 }
@@ -1,6 +1,16 @@
 package io.radanalytics.operator.app;
 
 import io.fabric8.kubernetes.api.model.KubernetesResourceList;
+import io.radanalytics.operator.Constants;
+import io.radanalytics.operator.cache.ResourceCache;
+import io.radanalytics.operator.reconcile.ApiCallMetrics;
+import io.radanalytics.operator.reconcile.EventRecorder;
+import io.radanalytics.operator.reconcile.ImagePrePuller;
+import io.radanalytics.operator.reconcile.OwnerReferences;
+import io.radanalytics.operator.reconcile.ResourceApplier;
+import io.radanalytics.operator.reconcile.StatusWriter;
+import io.radanalytics.operator.reconcile.Teardown;
+import io.radanalytics.operator.reconcile.WorkQueue;
 import io.radanalytics.operator.common.AbstractOperator;
 import io.radanalytics.operator.common.Operator;
 import io.radanalytics.types.SparkApplication;
@@ -8,10 +18,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Map;
-import java.util.HashMap;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import static io.radanalytics.operator.reconcile.WorkQueue.Action;
+
 @Singleton
 @Operator(forKind = SparkApplication.class, prefix = "radanalytics.io")
 public class AppOperator extends AbstractOperator<SparkApplication> {
@@ -19,72 +32,126 @@ public class AppOperator extends AbstractOperator<SparkApplication> {
     @Inject
     private Logger log;
     private KubernetesAppDeployer deployer;
+    private ResourceCache cache;
+    private ResourceApplier applier;
+    private OwnerReferences owners;
+    private ImagePrePuller prePuller;
     private Map<String, SparkApplication> apps;
+    private WorkQueue queue;
+    // one instance, so that the events of the same entity can be merged on the queue
+    private final WorkQueue.Handler<SparkApplication> handler = this::handle;
+    private StatusWriter statusWriter;
 
     public AppOperator(){
-        this.apps = new HashMap<>();
+        this.apps = new ConcurrentHashMap<>();
     }
 
     private void put(SparkApplication app) {
-        apps.put(app.getName(), app);
+        apps.put(app.getNamespace() + "/" + app.getName(), app);
     }
 
-    private void delete(String name) {
-        if (apps.containsKey(name)) {
-            apps.remove(name);
-        }
+    private void delete(SparkApplication app) {
+        apps.remove(app.getNamespace() + "/" + app.getName());
     }
 
-    private SparkApplication getApp(String name) {
-        return this.apps.get(name);
+    private SparkApplication getApp(SparkApplication app) {
+        return this.apps.get(app.getNamespace() + "/" + app.getName());
     }
 
     private void updateStatus(SparkApplication app, String state) {
-	    for (int i=0; i<3; i++) {
-            try {
-	            setCRStatus(state, app.getNamespace(), app.getName() );
-		        break;
-	        }
-	        catch(Exception e) {
-                try {Thread.sleep(500);} catch(Exception t) {}
-	        }
-	    }
+        getStatusWriter().update(app.getNamespace(), app.getName(), state);
+    }
+
+    private StatusWriter getStatusWriter() {
+        if (null == statusWriter) {
+            statusWriter = new StatusWriter(entityName, this::setCRStatus);
+        }
+        return statusWriter;
     }
 
     @Override
     protected void onInit() {
+        this.client = ApiCallMetrics.instrument(client);
         this.deployer = new KubernetesAppDeployer(entityName, prefix);
+        this.cache = ResourceCache.forNamespace(client, namespace, prefix);
+        this.applier = new ResourceApplier(cache, prefix);
+        this.owners = new OwnerReferences(client, cache, entityName, pluralName, prefix, isCrd);
+        this.prePuller = ImagePrePuller.forNamespace(client, namespace, prefix);
+        this.queue = WorkQueue.shared();
     }
 
     @Override
     protected void onAdd(SparkApplication app) {
-        KubernetesResourceList list = deployer.getResourceList(app, namespace);
-        client.resourceList(list).inNamespace(namespace).createOrReplace();
-        updateStatus(app, "ready" );
-        put(app);
+        enqueue(Action.ADD, app);
     }
 
     @Override
     protected void onModify(SparkApplication newApp) {
+        enqueue(Action.MODIFY, newApp);
+    }
+
+    @Override
+    protected void onDelete(SparkApplication app) {
+        enqueue(Action.DELETE, app);
+    }
+
+    private void enqueue(Action action, SparkApplication app) {
+        // the namespace field is swapped by the watcher in the '*' mode, capture it before the event is queued
+        if (null == app.getNamespace()) {
+            app.setNamespace(namespace);
+        }
+        EventRecorder.get().event(entityName, action, app.getNamespace(), app.getName(), app);
+        queue.submit(entityName, app.getNamespace(), app.getName(), action, app, handler);
+    }
+
+    private void handle(Action action, SparkApplication app) {
+        switch (action) {
+            case ADD: add(app, false); break;
+            case MODIFY: modify(app); break;
+            case DELETE: remove(app); break;
+        }
+    }
+
+    /**
+     * @param app the entity
+     * @param recreated its resources have just been deleted, they have to be written even if the cache still has them
+     */
+    private void add(SparkApplication app, boolean recreated) {
+        String ns = app.getNamespace();
+        prePuller.use(entityName, ns, app.getName(), Optional.ofNullable(app.getImage()).orElse(Constants.getDefaultSparkAppImage()));
+        KubernetesResourceList list = deployer.getResourceList(app, ns);
+        if (Constants.useOwnerReferences()) {
+            owners.setOwner(list, ns, app.getName());
+        }
+        applier.apply(client, list, ns, recreated);
+        updateStatus(app, "ready" );
+        put(app);
+    }
+
+    private void modify(SparkApplication newApp) {
 
         // TODO This comparison works to rule out a change in status because
         // we added the status block in the AbstractOperator universally,
         // ie it is not actually included in the SparkApplication type
         // definition generated from json. If that ever changes, then
         // this comparison will have to be a little smarter.
-        SparkApplication existingApp = getApp(newApp.getName());
+        SparkApplication existingApp = getApp(newApp);
         if (null == existingApp || !newApp.equals(existingApp)) {
-            super.onModify(newApp);
+            remove(newApp);
+            add(newApp, true);
         }
     }
 
-    @Override
-    protected void onDelete(SparkApplication app) {
+    private void remove(SparkApplication app) {
         String name = app.getName();
-        updateStatus(app, "deleted");
-        delete(name);
-        client.services().inNamespace(namespace).withLabels(deployer.getLabelsForDeletion(name)).delete();
-        client.replicationControllers().inNamespace(namespace).withLabels(deployer.getLabelsForDeletion(name)).delete();
-        client.pods().inNamespace(namespace).withLabels(deployer.getLabelsForDeletion(name)).delete();
+        String ns = app.getNamespace();
+        delete(app);
+        new Teardown(client, entityName, ns)
+                .delete(deployer.getResourcesForDeletion(name))
+                // the driver pod is created by spark-submit and has no owner
+                .deletePods(deployer.getLabelsForDeletion(name))
+                .finish();
+        owners.forget(ns, name);
+        prePuller.release(entityName, ns, name);
     }
 }
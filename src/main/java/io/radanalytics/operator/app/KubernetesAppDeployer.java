@@ -166,6 +166,15 @@ public class KubernetesAppDeployer {
         return map;
     }
 
+    /**
+     * @param name name of the application
+     * @return the resources the operator has created for the application, with only their names set
+     */
+    public List<HasMetadata> getResourcesForDeletion(String name) {
+        return Collections.singletonList(new ReplicationControllerBuilder().withNewMetadata().withName(name + "-submitter")
+                .endMetadata().build());
+    }
+
     private void checkForInjectionVulnerabilities(SparkApplication app, String namespace) {
         //todo: this
     }
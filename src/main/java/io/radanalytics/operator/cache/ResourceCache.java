@@ -0,0 +1,116 @@
+package io.radanalytics.operator.cache;
+
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.PersistentVolumeClaim;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.ReplicationController;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.client.KubernetesClient;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static io.radanalytics.operator.resource.LabelsHelper.OPERATOR_KIND_LABEL;
+
+/**
+ * Local, watch-backed copies of the resources the operators read: replication controllers, services, pods and
+ * persistent volume claims created by the operator (i.e. having the <code>radanalytics.io/kind</code> label) and all
+ * the config maps (the config maps with Spark configuration overrides are created by users and are not labeled).
+ *
+ * There is one instance per API server, label prefix and watched namespace and it's shared by all the operators
+ * watching that namespace.
+ */
+public class ResourceCache {
+
+    private static final Map<String, ResourceCache> instances = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "resource-cache");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final ResourceInformer<ReplicationController> replicationControllers;
+    private final ResourceInformer<Service> services;
+    private final ResourceInformer<Pod> pods;
+    private final ResourceInformer<PersistentVolumeClaim> persistentVolumeClaims;
+    private final ResourceInformer<ConfigMap> configMaps;
+
+    private ResourceCache(KubernetesClient client, String namespace, String prefix) {
+        final boolean any = "*".equals(namespace);
+        final String kindLabel = prefix + OPERATOR_KIND_LABEL;
+        replicationControllers = new ResourceInformer<>("replication controllers", prefix,
+                () -> (any ? client.replicationControllers().inAnyNamespace() : client.replicationControllers().inNamespace(namespace)).withLabel(kindLabel),
+                scheduler);
+        services = new ResourceInformer<>("services", prefix,
+                () -> (any ? client.services().inAnyNamespace() : client.services().inNamespace(namespace)).withLabel(kindLabel),
+                scheduler);
+        pods = new ResourceInformer<>("pods", prefix,
+                () -> (any ? client.pods().inAnyNamespace() : client.pods().inNamespace(namespace)).withLabel(kindLabel),
+                scheduler);
+        persistentVolumeClaims = new ResourceInformer<>("persistent volume claims", prefix,
+                () -> (any ? client.persistentVolumeClaims().inAnyNamespace() : client.persistentVolumeClaims().inNamespace(namespace)).withLabel(kindLabel),
+                scheduler);
+        configMaps = new ResourceInformer<>("config maps", prefix,
+                () -> any ? client.configMaps().inAnyNamespace() : client.configMaps().inNamespace(namespace),
+                scheduler);
+    }
+
+    /**
+     * Returns the cache for the namespace, the first call creates it and starts the list/watch calls. The clients of
+     * the operators are different instances, so they are told apart by the API server they talk to.
+     *
+     * @param client k8s client
+     * @param namespace watched namespace or '*'
+     * @param prefix prefix of the operator's labels (e.g. <code>radanalytics.io/</code>)
+     * @return shared instance of the cache for the namespace
+     */
+    public static ResourceCache forNamespace(KubernetesClient client, String namespace, String prefix) {
+        return instances.computeIfAbsent(key(client, namespace, prefix), k -> {
+            ResourceCache cache = new ResourceCache(client, namespace, prefix);
+            cache.start();
+            return cache;
+        });
+    }
+
+    private static String key(KubernetesClient client, String namespace, String prefix) {
+        return client.getMasterUrl() + " " + prefix + " " + namespace;
+    }
+
+    private void start() {
+        replicationControllers.start();
+        services.start();
+        pods.start();
+        persistentVolumeClaims.start();
+        configMaps.start();
+    }
+
+    public void stop() {
+        replicationControllers.stop();
+        services.stop();
+        pods.stop();
+        persistentVolumeClaims.stop();
+        configMaps.stop();
+    }
+
+    public ResourceInformer<ReplicationController> replicationControllers() {
+        return replicationControllers;
+    }
+
+    public ResourceInformer<Service> services() {
+        return services;
+    }
+
+    public ResourceInformer<Pod> pods() {
+        return pods;
+    }
+
+    public ResourceInformer<PersistentVolumeClaim> persistentVolumeClaims() {
+        return persistentVolumeClaims;
+    }
+
+    public ResourceInformer<ConfigMap> configMaps() {
+        return configMaps;
+    }
+}
@@ -0,0 +1,262 @@
+package io.radanalytics.operator.cache;
+
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.KubernetesResourceList;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import io.fabric8.kubernetes.client.Watcher.Action;
+import io.fabric8.kubernetes.client.dsl.FilterWatchListDeletable;
+import io.radanalytics.operator.reconcile.EventRecorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps a local copy of one kind of Kubernetes resources. The copy is populated by one list call and kept up to date
+ * by a watch, so the reads don't hit the API server. All the labels starting with the operator's prefix
+ * (<code>radanalytics.io/</code>) are indexed.
+ *
+ * @param <T> type of the resource
+ */
+public class ResourceInformer<T extends HasMetadata> {
+
+    private static final Logger log = LoggerFactory.getLogger(ResourceInformer.class.getName());
+    private static final long REWATCH_DELAY_MS = 1000;
+
+    private final String kind;
+    private final String prefix;
+    private final Supplier<FilterWatchListDeletable<T, ? extends KubernetesResourceList<T>, Boolean, Watch, Watcher<T>>> operation;
+    private final ScheduledExecutorService scheduler;
+
+    // namespace/name -> resource
+    private final Map<String, T> store = new ConcurrentHashMap<>();
+    // label=value -> keys of the resources having that label
+    private final Map<String, Set<String>> labelIndex = new ConcurrentHashMap<>();
+    private final List<BiConsumer<Action, T>> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile boolean synced = false;
+    // the first list has been loaded, the following ones are re-lists
+    private boolean listed = false;
+    private volatile boolean stopped = false;
+    private volatile Watch watch;
+
+    ResourceInformer(String kind,
+                     String prefix,
+                     Supplier<FilterWatchListDeletable<T, ? extends KubernetesResourceList<T>, Boolean, Watch, Watcher<T>>> operation,
+                     ScheduledExecutorService scheduler) {
+        this.kind = kind;
+        this.prefix = prefix;
+        this.operation = operation;
+        this.scheduler = scheduler;
+    }
+
+    synchronized void start() {
+        if (stopped) {
+            return;
+        }
+        try {
+            KubernetesResourceList<T> list = operation.get().list();
+            replace(list.getItems());
+            list.getItems().forEach(r -> EventRecorder.get().resource(Action.ADDED.name(), r));
+            String resourceVersion = null == list.getMetadata() ? null : list.getMetadata().getResourceVersion();
+            watch = operation.get().withResourceVersion(resourceVersion).watch(new Watcher<T>() {
+                @Override
+                public void eventReceived(Action action, T resource) {
+                    EventRecorder.get().resource(action.name(), resource);
+                    switch (action) {
+                        case ADDED:
+                        case MODIFIED:
+                            add(resource);
+                            break;
+                        case DELETED:
+                            remove(resource);
+                            break;
+                        default:
+                            // ERROR events are followed by onClose
+                            return;
+                    }
+                    notifyListeners(action, resource);
+                }
+
+                @Override
+                public void onClose(KubernetesClientException cause) {
+                    if (null != cause && !stopped) {
+                        log.warn("watch for {} has been closed ({}), re-listing", kind, cause.getMessage());
+                        synced = false;
+                        restartLater();
+                    }
+                }
+            });
+            synced = true;
+            log.info("local cache for {} has been synced ({} items)", kind, store.size());
+        } catch (KubernetesClientException e) {
+            log.warn("unable to list/watch {}: {}", kind, e.getMessage());
+            synced = false;
+            restartLater();
+        }
+    }
+
+    synchronized void stop() {
+        stopped = true;
+        synced = false;
+        if (null != watch) {
+            watch.close();
+        }
+    }
+
+    /**
+     * @return true if the initial list has been loaded and the watch is active, in other words when the content of
+     * the cache can be trusted
+     */
+    public boolean hasSynced() {
+        return synced;
+    }
+
+    /**
+     * Registers a callback for the changes received by the watch, it's called on the watch thread after the local copy
+     * has been updated, so it should be quick.
+     *
+     * @param listener called with the action and the resource
+     */
+    public void addListener(BiConsumer<Action, T> listener) {
+        listeners.add(listener);
+    }
+
+    public T get(String namespace, String name) {
+        return store.get(key(namespace, name));
+    }
+
+    public List<T> list(String namespace) {
+        return store.values().stream()
+                .filter(r -> inNamespace(r, namespace))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns all the resources in the namespace that have all the labels. At least one of the labels has to start
+     * with the operator's prefix so that the index can be used.
+     *
+     * @param namespace namespace or '*' for all the namespaces
+     * @param labels labels the resource has to have
+     * @return list of matching resources
+     */
+    public List<T> byLabels(String namespace, Map<String, String> labels) {
+        Optional<Map.Entry<String, String>> indexed = labels.entrySet().stream().filter(e -> e.getKey().startsWith(prefix)).findFirst();
+        Collection<T> candidates = indexed
+                .map(e -> labelIndex.getOrDefault(e.getKey() + "=" + e.getValue(), Collections.emptySet()).stream()
+                        .map(store::get).filter(Objects::nonNull).collect(Collectors.toList()))
+                .orElseGet(() -> new ArrayList<>(store.values()));
+        return candidates.stream()
+                .filter(r -> inNamespace(r, namespace))
+                .filter(r -> hasLabels(r, labels))
+                .collect(Collectors.toList());
+    }
+
+    // visible for the tests
+    int indexedLabels() {
+        return labelIndex.size();
+    }
+
+    private void restartLater() {
+        if (!stopped) {
+            scheduler.schedule(this::start, REWATCH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Loads the list into the store. On a re-list, the listeners are told about the changes missed while the watch was
+     * down: what's gone is deleted, what's new is added and the rest is modified if its resource version has changed.
+     */
+    private synchronized void replace(List<T> items) {
+        Map<String, T> old = new HashMap<>(store);
+        store.clear();
+        labelIndex.clear();
+        items.forEach(this::add);
+        if (!listed) {
+            listed = true;
+            return;
+        }
+        old.forEach((key, resource) -> {
+            if (!store.containsKey(key)) {
+                notifyListeners(Action.DELETED, resource);
+            }
+        });
+        items.forEach(resource -> {
+            T before = old.get(key(resource));
+            if (null == before) {
+                notifyListeners(Action.ADDED, resource);
+            } else if (!Objects.equals(before.getMetadata().getResourceVersion(), resource.getMetadata().getResourceVersion())) {
+                notifyListeners(Action.MODIFIED, resource);
+            }
+        });
+    }
+
+    private void notifyListeners(Action action, T resource) {
+        for (BiConsumer<Action, T> listener : listeners) {
+            try {
+                listener.accept(action, resource);
+            } catch (RuntimeException e) {
+                log.warn("listener for {} has failed: {}", kind, e.getMessage());
+            }
+        }
+    }
+
+    private void add(T resource) {
+        String key = key(resource);
+        T old = store.put(key, resource);
+        if (null != old) {
+            unindex(key, old);
+        }
+        labelsOf(resource).forEach((k, v) -> {
+            if (k.startsWith(prefix)) {
+                labelIndex.computeIfAbsent(k + "=" + v, foo -> ConcurrentHashMap.newKeySet()).add(key);
+            }
+        });
+    }
+
+    private void remove(T resource) {
+        String key = key(resource);
+        T old = store.remove(key);
+        if (null != old) {
+            unindex(key, old);
+        }
+    }
+
+    // the empty sets are dropped, so the index doesn't keep the labels of every cluster ever seen
+    private void unindex(String key, T resource) {
+        labelsOf(resource).forEach((k, v) -> labelIndex.computeIfPresent(k + "=" + v, (label, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        }));
+    }
+
+    private static boolean inNamespace(HasMetadata r, String namespace) {
+        return "*".equals(namespace) || Objects.equals(namespace, r.getMetadata().getNamespace());
+    }
+
+    private static boolean hasLabels(HasMetadata r, Map<String, String> labels) {
+        Map<String, String> actual = labelsOf(r);
+        return labels.entrySet().stream().allMatch(e -> e.getValue().equals(actual.get(e.getKey())));
+    }
+
+    private static Map<String, String> labelsOf(HasMetadata r) {
+        return null == r.getMetadata().getLabels() ? Collections.emptyMap() : r.getMetadata().getLabels();
+    }
+
+    private static String key(HasMetadata r) {
+        return key(r.getMetadata().getNamespace(), r.getMetadata().getName());
+    }
+
+    private static String key(String namespace, String name) {
+        return namespace + "/" + name;
+    }
+}
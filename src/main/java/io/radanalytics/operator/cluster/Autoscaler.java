@@ -0,0 +1,279 @@
+package io.radanalytics.operator.cluster;
+
+import io.radanalytics.operator.Constants;
+import io.radanalytics.operator.reconcile.CustomResourceStatus;
+import io.radanalytics.types.Autoscaling;
+import io.radanalytics.types.SparkCluster;
+import io.radanalytics.types.Worker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Scales the workers of the clusters with <code>worker.autoscaling</code> by the load of their masters. The status of
+ * each master is polled periodically (by the shared {@link MasterStatusPoller}) and the number of workers is set so
+ * that the cores in use are <code>targetUtilization</code> of all the cores. The applications waiting for resources
+ * add a worker each. The result is kept between <code>minInstances</code> and <code>maxInstances</code> and the
+ * workers are not scaled again before <code>cooldownSeconds</code> pass.
+ *
+ * The autoscaler owns the number of workers of such clusters, <code>worker.instances</code> of the spec is only used
+ * as the initial value. The decisions to scale are handed to the {@link Scaler} (that puts them on the work queue).
+ */
+class Autoscaler {
+
+    static final String UNREACHABLE = "unreachable";
+    static final String PENDING = "pending";
+    static final String COOLDOWN = "cooldown";
+    static final String UP = "up";
+    static final String DOWN = "down";
+    static final String STEADY = "steady";
+    private static final List<String> DECISIONS = Arrays.asList(UNREACHABLE, PENDING, COOLDOWN, UP, DOWN, STEADY);
+
+    private static final Logger log = LoggerFactory.getLogger(Autoscaler.class.getName());
+
+    @FunctionalInterface
+    interface Scaler {
+        void scale(String namespace, String name, int workers);
+    }
+
+    @FunctionalInterface
+    interface StatusSink {
+        void write(String namespace, String name, Map<String, Object> status) throws Exception;
+    }
+
+    private final String entityName;
+    private final MasterStatusPoller poller;
+    private final MasterStatusPoller.Locator locator;
+    private final Scaler scaler;
+    private final StatusSink statusSink;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param entityName kind of the custom resource
+     * @param poller source of the masters' status
+     * @param locator finds the masters
+     * @param scaler called with the new number of workers
+     * @param statusSink writes the autoscaler's part of the status
+     */
+    Autoscaler(String entityName, MasterStatusPoller poller, MasterStatusPoller.Locator locator, Scaler scaler, StatusSink statusSink) {
+        this.entityName = entityName;
+        this.poller = poller;
+        this.locator = locator;
+        this.scaler = scaler;
+        this.statusSink = statusSink;
+    }
+
+    static boolean isUsed(SparkCluster cluster) {
+        return null != cluster.getWorker() && null != cluster.getWorker().getAutoscaling();
+    }
+
+    /**
+     * Starts the periodic polling of the masters.
+     */
+    void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "autoscaler-" + entityName);
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Constants.getAutoscalerPeriodSeconds();
+        scheduler.scheduleWithFixedDelay(this::tick, period, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Replaces the number of workers in the (desired) spec of an autoscaled cluster by the one decided by the
+     * autoscaler and starts (or stops, if the autoscaling was removed) watching the cluster.
+     *
+     * @param namespace namespace of the cluster
+     * @param cluster desired spec of the cluster, its <code>worker.instances</code> is set
+     * @param running workers of the running cluster (if known), used when the cluster is seen for the first time
+     */
+    void apply(String namespace, SparkCluster cluster, Integer running) {
+        String key = namespace + "/" + cluster.getName();
+        if (!isUsed(cluster)) {
+            forget(namespace, cluster.getName());
+            return;
+        }
+        Worker worker = cluster.getWorker();
+        Autoscaling spec = worker.getAutoscaling();
+        Entry entry = entries.computeIfAbsent(key, k -> new Entry(namespace, cluster.getName(),
+                null != running ? running : Optional.ofNullable(worker.getInstances()).orElse(1)));
+        entry.spec = spec;
+        entry.target = clamp(spec, entry.target);
+        worker.setInstances(entry.target);
+    }
+
+    /**
+     * @return the number of workers decided for the cluster, <code>null</code> if it's not autoscaled
+     */
+    Integer target(String namespace, String name) {
+        Entry entry = entries.get(namespace + "/" + name);
+        return null == entry ? null : entry.target;
+    }
+
+    void forget(String namespace, String name) {
+        if (null != entries.remove(namespace + "/" + name)) {
+            DECISIONS.forEach(d -> MetricsHelper.autoscalerDecisions.remove(namespace, name, d));
+            MetricsHelper.autoscalerDesiredWorkers.remove(namespace, name);
+            MetricsHelper.autoscalerUtilization.remove(namespace, name);
+        }
+    }
+
+    private void tick() {
+        entries.values().forEach(entry -> {
+            // a master that doesn't answer isn't asked again before the previous request times out
+            if (!entry.inFlight.compareAndSet(false, true)) {
+                return;
+            }
+            poller.poll(locator, entry.namespace, entry.name).whenComplete((status, error) -> {
+                try {
+                    if (null != error && !UNREACHABLE.equals(entry.lastDecision)) {
+                        log.warn("unable to get the status of cluster {} in {}, not autoscaling it: {}", entry.name,
+                                entry.namespace, error.getMessage());
+                    } else if (null != error) {
+                        log.debug("unable to get the status of cluster {} in {}: {}", entry.name, entry.namespace, error.getMessage());
+                    }
+                    evaluate(entry, status);
+                } catch (Exception e) {
+                    log.warn("autoscaling of cluster {} in {} failed: {}", entry.name, entry.namespace, e.getMessage());
+                } finally {
+                    entry.inFlight.set(false);
+                }
+            });
+        });
+    }
+
+    private void evaluate(Entry entry, MasterStatusPoller.MasterStatus status) throws Exception {
+        if (entry != entries.get(entry.namespace + "/" + entry.name)) {
+            // forgotten in the meantime
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Decision decision = decide(entry.spec, entry.target, status, now - entry.lastScale);
+        MetricsHelper.autoscalerDecisions.labels(entry.namespace, entry.name, decision.getKind()).inc();
+        MetricsHelper.autoscalerDesiredWorkers.labels(entry.namespace, entry.name).set(decision.getWorkers());
+        if (null != status) {
+            MetricsHelper.autoscalerUtilization.labels(entry.namespace, entry.name).set(status.getUtilization());
+        }
+        boolean scales = UP.equals(decision.getKind()) || DOWN.equals(decision.getKind());
+        if (scales) {
+            log.info("autoscaling cluster {} in {} {} from {} to {} workers", entry.name, entry.namespace,
+                    decision.getKind(), entry.target, decision.getWorkers());
+            entry.target = decision.getWorkers();
+            entry.lastScale = now;
+            scaler.scale(entry.namespace, entry.name, decision.getWorkers());
+        }
+        if (scales || !decision.getKind().equals(entry.lastDecision)) {
+            statusSink.write(entry.namespace, entry.name, status(decision, status, entry.lastScale));
+            // only once it's written, a failed write is repeated by the next evaluation
+            entry.lastDecision = decision.getKind();
+        }
+    }
+
+    static Map<String, Object> status(Decision decision, MasterStatusPoller.MasterStatus status, long lastScale) {
+        Map<String, Object> autoscaler = new LinkedHashMap<>();
+        autoscaler.put("decision", decision.getKind());
+        autoscaler.put("desiredWorkers", decision.getWorkers());
+        if (null != status) {
+            autoscaler.put("aliveWorkers", status.getAliveWorkers());
+            autoscaler.put("coresUsed", status.getCoresUsed());
+            autoscaler.put("cores", status.getCores());
+            autoscaler.put("waitingApps", status.getWaitingApps());
+        }
+        if (0 < lastScale) {
+            autoscaler.put("lastScaleTime", CustomResourceStatus.timestamp(lastScale));
+        }
+        Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("autoscaler", autoscaler);
+        return ret;
+    }
+
+    /**
+     * @param spec the autoscaling settings
+     * @param current workers the cluster has (or is being scaled to)
+     * @param status status of the master, <code>null</code> if it couldn't be read
+     * @param sinceLastScale milliseconds since the workers were last scaled by the autoscaler
+     * @return what to do and the number of workers the cluster should have
+     */
+    static Decision decide(Autoscaling spec, int current, MasterStatusPoller.MasterStatus status, long sinceLastScale) {
+        if (null == status) {
+            return new Decision(UNREACHABLE, current);
+        }
+        // the new workers haven't registered yet, the cores are not known
+        if (status.getAliveWorkers() < current) {
+            return new Decision(PENDING, current);
+        }
+        if (sinceLastScale < Optional.ofNullable(spec.getCooldownSeconds()).orElse(0) * 1000L) {
+            return new Decision(COOLDOWN, current);
+        }
+        int needed;
+        if (0 == status.getAliveWorkers() || 0 == status.getCores()) {
+            needed = 0 < status.getWaitingApps() ? Math.max(1, current) : current;
+        } else {
+            double coresPerWorker = (double) status.getCores() / status.getAliveWorkers();
+            double target = Optional.ofNullable(spec.getTargetUtilization()).filter(t -> t > 0).orElse(1.0);
+            needed = (int) Math.ceil(status.getCoresUsed() / (target * coresPerWorker));
+        }
+        if (0 < status.getWaitingApps()) {
+            needed = Math.max(needed, current + status.getWaitingApps());
+        }
+        needed = clamp(spec, needed);
+        return new Decision(needed > current ? UP : needed < current ? DOWN : STEADY, needed);
+    }
+
+    static int clamp(Autoscaling spec, int workers) {
+        int min = Math.max(0, Optional.ofNullable(spec.getMinInstances()).orElse(1));
+        int max = Math.max(min, Optional.ofNullable(spec.getMaxInstances()).orElse(min));
+        return Math.min(max, Math.max(min, workers));
+    }
+
+    static class Decision {
+        private final String kind;
+        private final int workers;
+
+        Decision(String kind, int workers) {
+            this.kind = kind;
+            this.workers = workers;
+        }
+
+        String getKind() {
+            return kind;
+        }
+
+        int getWorkers() {
+            return workers;
+        }
+
+        @Override
+        public String toString() {
+            return kind + "(" + workers + ")";
+        }
+    }
+
+    private static class Entry {
+        private final String namespace;
+        private final String name;
+        private final AtomicBoolean inFlight = new AtomicBoolean();
+        private volatile Autoscaling spec;
+        private volatile int target;
+        private volatile long lastScale;
+        private volatile String lastDecision;
+
+        private Entry(String namespace, String name, int target) {
+            this.namespace = namespace;
+            this.name = name;
+            this.target = target;
+        }
+    }
+}
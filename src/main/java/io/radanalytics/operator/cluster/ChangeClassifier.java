@@ -0,0 +1,143 @@
+package io.radanalytics.operator.cluster;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.radanalytics.types.Master;
+import io.radanalytics.types.SparkCluster;
+import io.radanalytics.types.Worker;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Field level diff of two versions of the same SparkCluster. Each difference falls into one of the {@link Change}
+ * classes and each class maps to the smallest action that brings the running cluster to the new state:
+ *
+ * <ul>
+ *     <li><code>SCALE</code> - scale the worker rc</li>
+ *     <li><code>LABELS</code> - update the labels on rcs, services and running pods, nothing is restarted</li>
+ *     <li><code>WORKER_TEMPLATE</code> - update the worker rc and restart only the workers</li>
+ *     <li><code>MASTER_TEMPLATE</code> - update the master rc and restart only the master</li>
+ *     <li><code>CONFIG</code> - something both master and workers depend on, update both rcs and restart both</li>
+ *     <li><code>STRUCTURE</code> - the set of generated resources changes, re-create the cluster</li>
+ * </ul>
+ *
+ * Fields that aren't classified here (e.g. added to the schema later) are treated as <code>CONFIG</code>.
+ */
+public class ChangeClassifier {
+
+    public enum Change {
+        SCALE, LABELS, WORKER_TEMPLATE, MASTER_TEMPLATE, CONFIG, STRUCTURE
+    }
+
+    private static final ObjectMapper json = new ObjectMapper();
+
+    // the fields classified below and the policies only the operator acts upon (nothing is rendered from those)
+    private static final List<String> CLUSTER_FIELDS = Arrays.asList("name", "namespace", "labels", "sparkConfiguration",
+            "sparkConfigurationMap", "env", "downloadData", "mavenDependencies", "mavenRepositories", "customImage",
+            "nodeTolerations", "metrics", "sparkWebUI", "historyServer", "idlePolicy");
+    private static final List<String> MASTER_FIELDS = Arrays.asList("instances", "memory", "memoryRequest", "memoryLimit",
+            "cpu", "cpuRequest", "cpuLimit", "labels", "command", "commandArgs");
+    private static final List<String> WORKER_FIELDS = Arrays.asList("instances", "autoscaling", "memory", "memoryRequest",
+            "memoryLimit", "cpu", "cpuRequest", "cpuLimit", "labels", "command", "commandArgs");
+
+    /**
+     * @param oldC currently running version of the cluster
+     * @param newC desired version of the cluster
+     * @return the classes of changes, empty set if there is nothing to do
+     */
+    public static EnumSet<Change> classify(SparkCluster oldC, SparkCluster newC) {
+        EnumSet<Change> changes = EnumSet.noneOf(Change.class);
+        Master oldM = Optional.ofNullable(oldC.getMaster()).orElse(new Master());
+        Master newM = Optional.ofNullable(newC.getMaster()).orElse(new Master());
+        Worker oldW = Optional.ofNullable(oldC.getWorker()).orElse(new Worker());
+        Worker newW = Optional.ofNullable(newC.getWorker()).orElse(new Worker());
+
+        // number of workers
+        if (!Objects.equals(oldW.getInstances(), newW.getInstances())) {
+            changes.add(Change.SCALE);
+        }
+
+        // labels
+        if (!Objects.equals(oldC.getLabels(), newC.getLabels())
+                || !Objects.equals(oldM.getLabels(), newM.getLabels())
+                || !Objects.equals(oldW.getLabels(), newW.getLabels())) {
+            changes.add(Change.LABELS);
+        }
+
+        // master pod template (master.instances changes the master rc only)
+        if (!Objects.equals(oldM.getInstances(), newM.getInstances())
+                || !sameResources(oldM.getMemory(), oldM.getMemoryRequest(), oldM.getMemoryLimit(), oldM.getCpu(), oldM.getCpuRequest(), oldM.getCpuLimit(),
+                                  newM.getMemory(), newM.getMemoryRequest(), newM.getMemoryLimit(), newM.getCpu(), newM.getCpuRequest(), newM.getCpuLimit())
+                || !Objects.equals(oldM.getCommand(), newM.getCommand())
+                || !Objects.equals(oldM.getCommandArgs(), newM.getCommandArgs())) {
+            changes.add(Change.MASTER_TEMPLATE);
+        }
+
+        // worker pod template
+        if (!sameResources(oldW.getMemory(), oldW.getMemoryRequest(), oldW.getMemoryLimit(), oldW.getCpu(), oldW.getCpuRequest(), oldW.getCpuLimit(),
+                           newW.getMemory(), newW.getMemoryRequest(), newW.getMemoryLimit(), newW.getCpu(), newW.getCpuRequest(), newW.getCpuLimit())
+                || !Objects.equals(oldW.getCommand(), newW.getCommand())
+                || !Objects.equals(oldW.getCommandArgs(), newW.getCommandArgs())) {
+            changes.add(Change.WORKER_TEMPLATE);
+        }
+
+        // things both pod templates depend on
+        if (!Objects.equals(oldC.getSparkConfiguration(), newC.getSparkConfiguration())
+                || !Objects.equals(oldC.getSparkConfigurationMap(), newC.getSparkConfigurationMap())
+                || !Objects.equals(oldC.getEnv(), newC.getEnv())
+                || !Objects.equals(oldC.getDownloadData(), newC.getDownloadData())
+                || !Objects.equals(oldC.getMavenDependencies(), newC.getMavenDependencies())
+                || !Objects.equals(oldC.getMavenRepositories(), newC.getMavenRepositories())
+                || !Objects.equals(oldC.getCustomImage(), newC.getCustomImage())
+                || !Objects.equals(oldC.getNodeTolerations(), newC.getNodeTolerations())
+                || !Objects.equals(oldC.getMetrics(), newC.getMetrics())) {
+            changes.add(Change.CONFIG);
+        }
+
+        // services or pvc come or go
+        if (!Objects.equals(oldC.getSparkWebUI(), newC.getSparkWebUI())
+                || !Objects.equals(oldC.getHistoryServer(), newC.getHistoryServer())) {
+            changes.add(Change.STRUCTURE);
+        }
+
+        // anything else
+        if (!unclassified(oldC).equals(unclassified(newC))) {
+            changes.add(Change.CONFIG);
+        }
+        return changes;
+    }
+
+    private static JsonNode unclassified(SparkCluster cluster) {
+        ObjectNode tree = json.valueToTree(cluster);
+        tree.remove(CLUSTER_FIELDS);
+        unclassified(tree, "master", MASTER_FIELDS);
+        unclassified(tree, "worker", WORKER_FIELDS);
+        return tree;
+    }
+
+    private static void unclassified(ObjectNode tree, String field, List<String> classified) {
+        JsonNode node = tree.get(field);
+        if (node instanceof ObjectNode) {
+            ((ObjectNode) node).remove(classified);
+            if (0 == node.size()) {
+                // a missing section is the same as an empty one
+                tree.remove(field);
+            }
+        }
+    }
+
+    private static boolean sameResources(String... values) {
+        int half = values.length / 2;
+        for (int i = 0; i < half; i++) {
+            if (!Objects.equals(values[i], values[i + half])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
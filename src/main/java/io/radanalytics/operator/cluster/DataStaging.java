@@ -0,0 +1,243 @@
+package io.radanalytics.operator.cluster;
+
+import com.google.common.hash.Hashing;
+import io.fabric8.kubernetes.api.model.*;
+import io.fabric8.kubernetes.api.model.batch.Job;
+import io.fabric8.kubernetes.api.model.batch.JobBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.radanalytics.operator.Constants;
+import io.radanalytics.types.DownloadDatum;
+import io.radanalytics.types.SparkCluster;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static io.radanalytics.operator.resource.LabelsHelper.OPERATOR_KIND_LABEL;
+
+/**
+ * Downloads the <code>downloadData</code> once instead of in every master and worker pod. The files are staged in one
+ * persistent volume claim per namespace, each URL (and checksum) in its own directory named after its hash, so a file
+ * needed by more clusters is downloaded only once. A job per set of URLs downloads those that aren't there yet in
+ * parallel and verifies their checksums. The pods wait for the staged files (in an init container) and mount each of
+ * them read-only to the path given by <code>to</code>. A download the job is unable to stage (e.g. a wrong URL or
+ * checksum) leaves a failed marker next to its directory, the init container then fails with the name of the job in
+ * its log, as it does when the data aren't staged in time.
+ *
+ * The jobs are removed with the last cluster using them, the staged files are kept for the next clusters.
+ */
+class DataStaging {
+
+    static final String CLAIM_NAME = "spark-data-staging";
+    static final String MOUNT_PATH = "/opt/spark-data";
+    static final String DATA_LABEL = "staged-data";
+    private static final String VOLUME_NAME = "staged-data";
+    private static final String COMPLETE_MARKER = ".complete";
+    private static final String FAILED_SUFFIX = ".failed";
+
+    private static final Logger log = LoggerFactory.getLogger(DataStaging.class.getName());
+
+    private final KubernetesClient client;
+    private final String entityName;
+    private final String prefix;
+    private final SharedJobs jobs;
+
+    DataStaging(KubernetesClient client, String entityName, String prefix) {
+        this.client = client;
+        this.entityName = entityName;
+        this.prefix = prefix;
+        this.jobs = new SharedJobs(client, this::remove);
+    }
+
+    /**
+     * @param cluster the spark cluster
+     * @return whether the data of the cluster are staged
+     */
+    static boolean isUsed(SparkCluster cluster) {
+        return Constants.useDataStaging() && !cluster.getDownloadData().isEmpty();
+    }
+
+    /**
+     * @param datum one of the downloads
+     * @return name of the directory the file is staged in
+     */
+    static String hash(DownloadDatum datum) {
+        String key = datum.getUrl() + " " + Optional.ofNullable(datum.getChecksum()).orElse("");
+        return Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString().substring(0, 16);
+    }
+
+    /**
+     * @param cluster the spark cluster
+     * @return name of the job staging the data of the cluster
+     */
+    static String name(SparkCluster cluster) {
+        String key = cluster.getDownloadData().stream().map(DataStaging::hash).sorted().collect(Collectors.joining(","));
+        return "spark-data-" + Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString().substring(0, 10);
+    }
+
+    /**
+     * @param url the url
+     * @return the name wget would give to the file (the last segment of the path)
+     */
+    static String fileName(String url) {
+        String path = url.replaceFirst("[?#].*$", "").replaceFirst("^[a-zA-Z][a-zA-Z0-9+.-]*://[^/]*", "");
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        return name.isEmpty() ? "index.html" : name;
+    }
+
+    /**
+     * @param datum one of the downloads
+     * @return where the file should appear in the pod
+     */
+    static String targetPath(DownloadDatum datum) {
+        return datum.getTo().endsWith("/") ? datum.getTo() + fileName(datum.getUrl()) : datum.getTo();
+    }
+
+    /**
+     * Adds the init container waiting for the staged files and mounts each of them to the spark container.
+     *
+     * @param cluster the spark cluster
+     * @param podSpec spec of the master or worker pod
+     */
+    static void addToPod(SparkCluster cluster, PodSpec podSpec) {
+        Volume volume = new VolumeBuilder().withName(VOLUME_NAME)
+                .withNewPersistentVolumeClaim().withClaimName(CLAIM_NAME).withReadOnly(true).endPersistentVolumeClaim()
+                .build();
+        String dirs = cluster.getDownloadData().stream().map(DataStaging::hash).distinct().collect(Collectors.joining(" "));
+        Container wait = new ContainerBuilder()
+                .withName("wait-for-data")
+                .withImage("busybox")
+                .withImagePullPolicy("IfNotPresent")
+                .withCommand("/bin/sh", "-c")
+                .withArgs("t=0; for d in " + dirs + "; do " + SharedJobs.waitFor(MOUNT_PATH + "/$d/" + COMPLETE_MARKER,
+                        MOUNT_PATH + "/$d" + FAILED_SUFFIX, "$d to be staged", name(cluster)) + "; done")
+                .withVolumeMounts(new VolumeMountBuilder().withName(VOLUME_NAME).withMountPath(MOUNT_PATH).withReadOnly(true).build())
+                .build();
+        List<VolumeMount> mounts = podSpec.getContainers().get(0).getVolumeMounts();
+        cluster.getDownloadData().forEach(datum -> mounts.add(new VolumeMountBuilder()
+                .withName(VOLUME_NAME)
+                .withSubPath(hash(datum) + "/" + fileName(datum.getUrl()))
+                .withMountPath(targetPath(datum))
+                .withReadOnly(true)
+                .build()));
+        podSpec.getVolumes().add(volume);
+        podSpec.getInitContainers().add(wait);
+    }
+
+    /**
+     * Creates the staging claim (if it's not there) and the job staging the data of the cluster, unless it's there
+     * already. If the cluster has used different data before, the old job is released.
+     *
+     * @param namespace namespace of the cluster
+     * @param cluster the spark cluster
+     */
+    void ensure(String namespace, SparkCluster cluster) {
+        String name = name(cluster);
+        jobs.use(namespace, cluster.getName(), name, () -> {
+            log.info("staging the data of cluster {} by job {} in {}", cluster.getName(), name, namespace);
+            Map<String, String> labels = new HashMap<>(2);
+            labels.put(prefix + OPERATOR_KIND_LABEL, entityName);
+            if (null == client.persistentVolumeClaims().inNamespace(namespace).withName(CLAIM_NAME).get()) {
+                client.persistentVolumeClaims().inNamespace(namespace).create(claim(labels));
+            }
+            labels.put(prefix + DATA_LABEL, name.substring("spark-data-".length()));
+            client.batch().jobs().inNamespace(namespace).create(job(name, labels, cluster));
+        });
+    }
+
+    /**
+     * The cluster has been deleted or doesn't download any data anymore.
+     *
+     * @param namespace namespace of the cluster
+     * @param clusterName name of the cluster
+     */
+    void release(String namespace, String clusterName) {
+        jobs.release(namespace, clusterName);
+    }
+
+    /**
+     * The first full reconciliation after a (re)start, the clusters staging the data are known only from their specs.
+     * The jobs that none of them uses are removed.
+     *
+     * @param namespace namespace of the clusters
+     * @param clusters all the clusters in the namespace
+     */
+    void restore(String namespace, Collection<SparkCluster> clusters) {
+        Map<String, String> users = clusters.stream().filter(c -> !c.getDownloadData().isEmpty())
+                .collect(Collectors.toMap(SparkCluster::getName, DataStaging::name));
+        List<String> existing = client.batch().jobs().inNamespace(namespace).withLabel(prefix + DATA_LABEL).list()
+                .getItems().stream().map(job -> job.getMetadata().getName()).collect(Collectors.toList());
+        jobs.restore(namespace, users, existing);
+    }
+
+    private void remove(String namespace, String name) {
+        log.info("removing the data staging job {} in {}", name, namespace);
+        client.batch().jobs().inNamespace(namespace).withName(name).withPropagationPolicy("Background").delete();
+    }
+
+    private static PersistentVolumeClaim claim(Map<String, String> labels) {
+        Map<String, Quantity> requests = new HashMap<>();
+        requests.put("storage", new QuantityBuilder().withAmount(Constants.getDataStagingSize()).build());
+        return new PersistentVolumeClaimBuilder().withNewMetadata().withName(CLAIM_NAME).withLabels(labels).endMetadata()
+                .withNewSpec().withAccessModes("ReadWriteMany")
+                .withNewResources().withRequests(requests).endResources().endSpec().build();
+    }
+
+    /**
+     * The script of the job, the files are downloaded in parallel to a temporary directory, verified and only then
+     * renamed to their final directory, so that a half-downloaded file is never seen by the pods.
+     */
+    static String script(SparkCluster cluster) {
+        StringBuilder script = new StringBuilder();
+        script.append("stage() {\n")
+                .append("  dir=" + MOUNT_PATH + "/$1; tmp=$dir.tmp.$HOSTNAME\n")
+                .append("  if [ -f $dir/" + COMPLETE_MARKER + " ]; then echo \"$2 is already staged\"; return 0; fi\n")
+                .append("  rm -f $dir" + FAILED_SUFFIX + "\n")
+                .append("  rm -rf $tmp && mkdir -p $tmp && wget -q -O \"$tmp/$3\" \"$2\" || { echo \"unable to download $2\"; rm -rf $tmp; touch $dir" + FAILED_SUFFIX + "; return 1; }\n")
+                .append("  if [ -n \"$4\" ] && ! echo \"$4  $tmp/$3\" | sha256sum -c -; then echo \"wrong checksum of $2\"; rm -rf $tmp; touch $dir" + FAILED_SUFFIX + "; return 1; fi\n")
+                .append("  touch $tmp/" + COMPLETE_MARKER + "\n")
+                .append("  [ -d $dir ] || mv $tmp $dir\n")
+                .append("  rm -rf $tmp\n")
+                .append("}\n")
+                .append("pids=\"\"\n");
+        Set<String> seen = new HashSet<>();
+        for (DownloadDatum datum : cluster.getDownloadData()) {
+            String hash = hash(datum);
+            if (!seen.add(hash)) {
+                continue;
+            }
+            script.append("stage ").append(hash).append(' ')
+                    .append(quote(datum.getUrl())).append(' ')
+                    .append(quote(fileName(datum.getUrl()))).append(' ')
+                    .append(quote(Optional.ofNullable(datum.getChecksum()).orElse("")))
+                    .append(" & pids=\"$pids $!\"\n");
+        }
+        script.append("failed=0\n")
+                .append("for p in $pids; do wait $p || failed=1; done\n")
+                .append("exit $failed\n");
+        return script.toString();
+    }
+
+    private static String quote(String s) {
+        return "'" + s.replace("'", "'\\''") + "'";
+    }
+
+    private static Job job(String name, Map<String, String> labels, SparkCluster cluster) {
+        return new JobBuilder().withNewMetadata().withName(name).withLabels(labels).endMetadata()
+                .withNewSpec().withBackoffLimit(4)
+                .withNewTemplate().withNewMetadata().withLabels(labels).endMetadata()
+                .withNewSpec().withRestartPolicy("OnFailure")
+                .addNewContainer()
+                .withName("stage")
+                .withImage("busybox")
+                .withImagePullPolicy("IfNotPresent")
+                .withCommand("/bin/sh", "-c")
+                .withArgs(script(cluster))
+                .addNewVolumeMount().withName(VOLUME_NAME).withMountPath(MOUNT_PATH).endVolumeMount()
+                .endContainer()
+                .addNewVolume().withName(VOLUME_NAME).withNewPersistentVolumeClaim().withClaimName(CLAIM_NAME).endPersistentVolumeClaim().endVolume()
+                .endSpec().endTemplate().endSpec().build();
+    }
+}
@@ -0,0 +1,262 @@
+package io.radanalytics.operator.cluster;
+
+import io.fabric8.kubernetes.api.model.KubernetesResourceList;
+import io.fabric8.kubernetes.api.model.ReplicationController;
+import io.radanalytics.operator.Constants;
+import io.radanalytics.types.SparkCluster;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Scales the workers of the clusters with <code>idlePolicy</code> to zero once their master reports no running (or
+ * waiting) applications for <code>idleMinutes</code>. The master and the services are kept, so an application can
+ * still register with the master, which wakes the cluster up (as does the <code>radanalytics.io/wake</code>
+ * annotation on the custom resource) and the workers are restored to the last non-zero number.
+ *
+ * The suspended state is kept in the <code>radanalytics.io/suspended-workers</code> annotation of the worker rc (with
+ * the number of workers to restore), so it survives the restart of the operator. The actual scaling is left to the
+ * {@link Trigger}, that puts it on the work queue.
+ */
+class IdleSuspender {
+
+    static final String SUSPENDED_WORKERS_ANNOTATION = "suspended-workers";
+    static final String WAKE_ANNOTATION = "wake";
+
+    private static final Logger log = LoggerFactory.getLogger(IdleSuspender.class.getName());
+
+    @FunctionalInterface
+    interface Trigger {
+        void changed(String namespace, String name);
+    }
+
+    @FunctionalInterface
+    interface WorkerRcs {
+        ReplicationController get(String namespace, String name);
+    }
+
+    private final String entityName;
+    private final String prefix;
+    private final MasterStatusPoller poller;
+    private final MasterStatusPoller.Locator locator;
+    private final WorkerRcs workerRcs;
+    private final Trigger trigger;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param entityName kind of the custom resource
+     * @param prefix prefix of the operator's labels and annotations
+     * @param poller source of the masters' status
+     * @param locator finds the masters
+     * @param workerRcs source of the live worker rcs (to find the clusters suspended before the restart)
+     * @param trigger called when the cluster is suspended or woken up
+     */
+    IdleSuspender(String entityName, String prefix, MasterStatusPoller poller, MasterStatusPoller.Locator locator,
+                  WorkerRcs workerRcs, Trigger trigger) {
+        this.entityName = entityName;
+        this.prefix = prefix;
+        this.poller = poller;
+        this.locator = locator;
+        this.workerRcs = workerRcs;
+        this.trigger = trigger;
+    }
+
+    static boolean isUsed(SparkCluster cluster) {
+        return null != cluster.getIdlePolicy() && null != cluster.getIdlePolicy().getIdleMinutes();
+    }
+
+    /**
+     * Starts the periodic polling of the masters.
+     */
+    void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "idle-suspender-" + entityName);
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Constants.getAutoscalerPeriodSeconds();
+        scheduler.scheduleWithFixedDelay(this::tick, period, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Remembers the number of workers of the (desired) spec as the one to restore and sets it to zero if the cluster
+     * is suspended. A cluster whose idle policy was removed is woken up by that.
+     *
+     * @param namespace namespace of the cluster
+     * @param cluster desired spec of the cluster (with the number of workers decided by the autoscaler, if used)
+     */
+    void apply(String namespace, SparkCluster cluster) {
+        if (!isUsed(cluster)) {
+            forget(namespace, cluster.getName());
+            return;
+        }
+        Entry entry = entries.computeIfAbsent(namespace + "/" + cluster.getName(), k -> recover(namespace, cluster.getName()));
+        entry.idleMillis = TimeUnit.MINUTES.toMillis(cluster.getIdlePolicy().getIdleMinutes());
+        entry.workers = Math.max(1, Optional.ofNullable(cluster.getWorker()).map(w -> w.getInstances()).orElse(1));
+        if (entry.suspended) {
+            cluster.getWorker().setInstances(0);
+        }
+    }
+
+    private Entry recover(String namespace, String name) {
+        Entry entry = new Entry(namespace, name);
+        Integer workers = suspendedWorkers(workerRcs.get(namespace, name), prefix);
+        entry.suspended = null != workers;
+        entry.workers = Optional.ofNullable(workers).orElse(1);
+        MetricsHelper.clusterSuspended.labels(name, namespace).set(entry.suspended ? 1 : 0);
+        return entry;
+    }
+
+    /**
+     * @param rc worker rc
+     * @param prefix prefix of the operator's annotations
+     * @return the number of workers the suspended cluster had, <code>null</code> if it's not suspended
+     */
+    static Integer suspendedWorkers(ReplicationController rc, String prefix) {
+        String value = null == rc || null == rc.getMetadata().getAnnotations() ? null
+                : rc.getMetadata().getAnnotations().get(prefix + SUSPENDED_WORKERS_ANNOTATION);
+        try {
+            return null == value ? null : Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    boolean isSuspended(String namespace, String name) {
+        Entry entry = entries.get(namespace + "/" + name);
+        return null != entry && entry.suspended;
+    }
+
+    /**
+     * @return zero for a suspended cluster, the number of workers to restore for the others, <code>null</code> if the
+     * cluster has no idle policy
+     */
+    Integer workers(String namespace, String name) {
+        Entry entry = entries.get(namespace + "/" + name);
+        return null == entry ? null : entry.suspended ? 0 : entry.workers;
+    }
+
+    /**
+     * @return the annotations the worker rc of the cluster should have
+     */
+    Map<String, String> annotations(String namespace, String name) {
+        Entry entry = entries.get(namespace + "/" + name);
+        Map<String, String> annotations = new HashMap<>(1);
+        if (null != entry && entry.suspended) {
+            annotations.put(prefix + SUSPENDED_WORKERS_ANNOTATION, String.valueOf(entry.workers));
+        }
+        return annotations;
+    }
+
+    /**
+     * Puts the annotation of the suspended cluster on the rendered worker rc, so that writing the rc doesn't lose it.
+     */
+    void annotate(String namespace, String name, KubernetesResourceList list) {
+        Map<String, String> annotations = annotations(namespace, name);
+        if (annotations.isEmpty()) {
+            return;
+        }
+        for (Object o : list.getItems()) {
+            if (o instanceof ReplicationController && (name + "-w").equals(((ReplicationController) o).getMetadata().getName())) {
+                ReplicationController rc = (ReplicationController) o;
+                Map<String, String> merged = new HashMap<>(Optional.ofNullable(rc.getMetadata().getAnnotations()).orElse(new HashMap<>()));
+                merged.putAll(annotations);
+                rc.getMetadata().setAnnotations(merged);
+            }
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the cluster was suspended
+     */
+    boolean wake(String namespace, String name) {
+        Entry entry = entries.get(namespace + "/" + name);
+        if (null == entry || !entry.suspended) {
+            return false;
+        }
+        log.info("waking up cluster {} in {} with {} workers", name, namespace, entry.workers);
+        entry.suspended = false;
+        entry.idleSince = System.currentTimeMillis();
+        MetricsHelper.clusterSuspended.labels(name, namespace).set(0);
+        MetricsHelper.idleTransitions.labels(namespace, "wake").inc();
+        return true;
+    }
+
+    void forget(String namespace, String name) {
+        if (null != entries.remove(namespace + "/" + name)) {
+            MetricsHelper.clusterSuspended.remove(name, namespace);
+        }
+    }
+
+    private void tick() {
+        entries.values().forEach(entry -> {
+            if (!entry.inFlight.compareAndSet(false, true)) {
+                return;
+            }
+            poller.poll(locator, entry.namespace, entry.name).whenComplete((status, error) -> {
+                try {
+                    if (null != error && entry.reachable) {
+                        log.warn("unable to get the status of cluster {} in {}, not checking if it's idle: {}",
+                                entry.name, entry.namespace, error.getMessage());
+                    }
+                    entry.reachable = null == error;
+                    if (null != status && entry == entries.get(entry.namespace + "/" + entry.name)) {
+                        evaluate(entry, status, System.currentTimeMillis());
+                    }
+                } catch (Exception e) {
+                    log.warn("idle check of cluster {} in {} failed: {}", entry.name, entry.namespace, e.getMessage());
+                } finally {
+                    entry.inFlight.set(false);
+                }
+            });
+        });
+    }
+
+    // visible for the tests
+    void evaluate(String namespace, String name, MasterStatusPoller.MasterStatus status, long now) {
+        Optional.ofNullable(entries.get(namespace + "/" + name)).ifPresent(entry -> evaluate(entry, status, now));
+    }
+
+    private void evaluate(Entry entry, MasterStatusPoller.MasterStatus status, long now) {
+        boolean busy = 0 < status.getRunningApps() + status.getWaitingApps();
+        if (entry.suspended) {
+            if (busy && wake(entry.namespace, entry.name)) {
+                trigger.changed(entry.namespace, entry.name);
+            }
+        } else if (busy) {
+            entry.idleSince = now;
+        } else if (now - entry.idleSince >= entry.idleMillis) {
+            log.info("suspending cluster {} in {}, idle for {} minutes", entry.name, entry.namespace,
+                    TimeUnit.MILLISECONDS.toMinutes(now - entry.idleSince));
+            entry.suspended = true;
+            MetricsHelper.clusterSuspended.labels(entry.name, entry.namespace).set(1);
+            MetricsHelper.idleTransitions.labels(entry.namespace, "suspend").inc();
+            trigger.changed(entry.namespace, entry.name);
+        }
+    }
+
+    private static class Entry {
+        private final String namespace;
+        private final String name;
+        private final AtomicBoolean inFlight = new AtomicBoolean();
+        private volatile long idleMillis;
+        private volatile long idleSince = System.currentTimeMillis();
+        private volatile int workers = 1;
+        private volatile boolean suspended;
+        private volatile boolean reachable = true;
+
+        private Entry(String namespace, String name) {
+            this.namespace = namespace;
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package io.radanalytics.operator.cluster;
+
+import io.fabric8.kubernetes.api.model.ContainerStateTerminated;
+import io.fabric8.kubernetes.api.model.ContainerStatus;
+import io.fabric8.kubernetes.api.model.Pod;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static io.radanalytics.operator.resource.LabelsHelper.OPERATOR_POD_TYPE_LABEL;
+
+/**
+ * Reads how long the init containers (<code>chmod-history-server</code>, <code>downloader</code>,
+ * <code>backup-config</code>, <code>override-config</code>) of the cluster pods took from the pod status. Each
+ * successfully finished init container of a pod is observed only once and the terminating pods aren't observed at all.
+ * The series of a cluster are removed together with the cluster.
+ */
+class InitContainerTimes {
+
+    private static final Logger log = LoggerFactory.getLogger(InitContainerTimes.class.getName());
+
+    private final String prefix;
+    // namespace/cluster -> pod/container already observed
+    private final Map<String, Set<String>> observed = new ConcurrentHashMap<>();
+    // namespace/cluster -> label values of its series
+    private final Map<String, Set<List<String>>> series = new ConcurrentHashMap<>();
+
+    InitContainerTimes(String prefix) {
+        this.prefix = prefix;
+    }
+
+    /**
+     * Observes the init containers of the pod that have finished since the last call.
+     *
+     * @param namespace namespace of the cluster
+     * @param cluster name of the cluster
+     * @param pod one of its pods
+     */
+    void observe(String namespace, String cluster, Pod pod) {
+        // the pods of a deleted cluster keep changing while they terminate, after its series have been removed
+        if (null != pod.getMetadata().getDeletionTimestamp() || null == pod.getStatus()
+                || null == pod.getStatus().getInitContainerStatuses()) {
+            return;
+        }
+        String key = key(namespace, cluster);
+        String podType = Optional.ofNullable(pod.getMetadata().getLabels())
+                .map(l -> l.get(prefix + OPERATOR_POD_TYPE_LABEL)).orElse("unknown");
+        for (ContainerStatus status : pod.getStatus().getInitContainerStatuses()) {
+            Double seconds = duration(status);
+            if (null == seconds || !observed.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet())
+                    .add(pod.getMetadata().getName() + "/" + status.getName())) {
+                continue;
+            }
+            List<String> labels = Arrays.asList(namespace, cluster, podType, status.getName());
+            series.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(labels);
+            MetricsHelper.initContainerDuration.labels(labels.toArray(new String[0])).observe(seconds);
+        }
+    }
+
+    /**
+     * The pod is gone, its init containers won't be observed again.
+     */
+    void podDeleted(String namespace, String cluster, Pod pod) {
+        Set<String> keys = observed.get(key(namespace, cluster));
+        if (null != keys) {
+            keys.removeIf(k -> k.startsWith(pod.getMetadata().getName() + "/"));
+        }
+    }
+
+    void forget(String namespace, String cluster) {
+        String key = key(namespace, cluster);
+        observed.remove(key);
+        Set<List<String>> removed = series.remove(key);
+        if (null != removed) {
+            removed.forEach(labels -> MetricsHelper.initContainerDuration.remove(labels.toArray(new String[0])));
+        }
+    }
+
+    /**
+     * @param pods pods of one cluster
+     * @return the init container that took the longest or null if none of them has finished
+     */
+    static Slowest slowest(List<Pod> pods) {
+        Slowest slowest = null;
+        for (Pod pod : pods) {
+            if (null == pod.getStatus() || null == pod.getStatus().getInitContainerStatuses()) {
+                continue;
+            }
+            for (ContainerStatus status : pod.getStatus().getInitContainerStatuses()) {
+                Double seconds = duration(status);
+                if (null != seconds && (null == slowest || seconds > slowest.seconds)) {
+                    slowest = new Slowest(status.getName(), pod.getMetadata().getName(), seconds);
+                }
+            }
+        }
+        return slowest;
+    }
+
+    /**
+     * @return seconds between the start and the end of the successfully finished init container or null
+     */
+    static Double duration(ContainerStatus status) {
+        if (null == status.getState() || null == status.getState().getTerminated()) {
+            return null;
+        }
+        ContainerStateTerminated terminated = status.getState().getTerminated();
+        if (!Integer.valueOf(0).equals(terminated.getExitCode()) || null == terminated.getStartedAt() || null == terminated.getFinishedAt()) {
+            return null;
+        }
+        try {
+            return (Instant.parse(terminated.getFinishedAt()).toEpochMilli() - Instant.parse(terminated.getStartedAt()).toEpochMilli()) / 1000.0;
+        } catch (DateTimeParseException e) {
+            log.debug("unable to parse the times of init container {}: {}", status.getName(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static String key(String namespace, String cluster) {
+        return namespace + "/" + cluster;
+    }
+
+    /**
+     * The slowest init container of a cluster.
+     */
+    static class Slowest {
+        private final String container;
+        private final String pod;
+        private final double seconds;
+
+        Slowest(String container, String pod, double seconds) {
+            this.container = container;
+            this.pod = pod;
+            this.seconds = seconds;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("container", container);
+            map.put("pod", pod);
+            map.put("seconds", seconds);
+            return map;
+        }
+    }
+}
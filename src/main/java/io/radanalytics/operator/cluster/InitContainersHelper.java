@@ -1,6 +1,7 @@
 package io.radanalytics.operator.cluster;
 
 import io.fabric8.kubernetes.api.model.*;
+import io.radanalytics.operator.Constants;
 import io.radanalytics.operator.historyServer.HistoryServerHelper;
 import io.radanalytics.types.*;
 
@@ -21,12 +22,13 @@ public class InitContainersHelper {
      * Based on the SparkCluster configuration, it can add init-containers called 'downloader', 'backup-config' and/or
      * 'override-config'. The firs one will be added if the <code>cluster.getDownloadData()</code> is not empty, while the
      * latter two are always being added together if config map that overrides the default spark configuration exist in the
-     * K8s or if the <code>cluster.getSparkConfiguration()</code> is not empty.
+     * K8s or if the <code>cluster.getSparkConfiguration()</code> is not empty (and the configuration isn't rendered by the
+     * operator, see {@link SparkConfigOverlay}).
      *
      * Optionally adds the init containers that do:
      * <ol>
      *     <li>makes the path for the history server writable by group</li>
-     *     <li>downloads the data with curl if it's specified</li>
+     *     <li>downloads the data with wget if it's specified (or waits for them to be staged)</li>
      *     <li>backups the original (default) Spark configuration into <code>NEW_CONF_DIR_PATH</code></li>
      *     <li>copies/replaces the config files in the <code>NEW_CONF_DIR_PATH</code> with the files coming from the config map</li>
      *     <li>overrides (/appends) the key-value entries in the <code>NEW_CONF_DIR_PATH/spark-defaults.conf</code></li>
@@ -49,10 +51,13 @@ public class InitContainersHelper {
             createChmodHistoryServerContainer(cluster, podSpec);
         }
 
-        if (!cluster.getDownloadData().isEmpty()) {
+        if (DataStaging.isUsed(cluster)) {
+            DataStaging.addToPod(cluster, podSpec);
+        } else if (!cluster.getDownloadData().isEmpty()) {
             createDownloader(cluster, podSpec);
         }
-        if (cmExists || !cluster.getSparkConfiguration().isEmpty()) {
+        // otherwise the configuration is rendered by the operator, see SparkConfigOverlay
+        if (Constants.useConfigInitContainers() && (cmExists || !cluster.getSparkConfiguration().isEmpty())) {
             createBackupContainer(cluster, podSpec);
             createConfigOverrideContainer(cluster, podSpec, cmExists);
         }
@@ -215,7 +220,7 @@ public class InitContainersHelper {
         return overrideConfig;
     }
 
-    private static String getSparkHome(SparkCluster cluster) {
+    static String getSparkHome(SparkCluster cluster) {
         Predicate<Env> p = nv -> "SPARK_HOME".equals(nv.getName());
         if (!cluster.getEnv().isEmpty() && cluster.getEnv().stream().anyMatch(p)) {
             Optional<Env> sparkHome = cluster.getEnv().stream().filter(p).findFirst();
@@ -250,6 +255,9 @@ public class InitContainersHelper {
      *
      * Also worker node gets some minor penalisation, because its probe depends on the master's readiness.
      *
+     * It's only the first guess, once there are enough startups of the same pod profile, the delays learned by
+     * {@link StartupDelays} are used instead.
+     *
      * @param cluster SparkCluster instance
      * @param cmExists if config map with overrides exists
      * @param isMaster whether it is master or worker
@@ -258,11 +266,23 @@ public class InitContainersHelper {
     public static int getExpectedDelay(SparkCluster cluster, boolean cmExists, boolean isMaster) {
         // todo: honor the chmod init cont.
         int delay = 6;
-        delay += cmExists ? 3 : 0;
-        delay += !cluster.getSparkConfiguration().isEmpty() ? 3 : 0;
-        delay += cluster.getDownloadData().size() * 4;
-        delay += cluster.getMavenDependencies().isEmpty() ? 0 : 42;
-        delay += cluster.getMavenDependencies().size() * 5;
+        if (Constants.useConfigInitContainers()) {
+            delay += cmExists ? 3 : 0;
+            delay += !cluster.getSparkConfiguration().isEmpty() ? 3 : 0;
+        }
+        if (DataStaging.isUsed(cluster)) {
+            // only the mounts, the data are staged once before the first pod starts
+            delay += 2;
+        } else {
+            delay += cluster.getDownloadData().size() * 4;
+        }
+        if (MavenDependencyCache.isUsed(cluster)) {
+            // only the mount, the job resolving them runs once before the first pod starts
+            delay += 2;
+        } else {
+            delay += cluster.getMavenDependencies().isEmpty() ? 0 : 42;
+            delay += cluster.getMavenDependencies().size() * 5;
+        }
         if (isMaster) {
             if (null != cluster.getMaster() && null != cluster.getMaster().getCpu()) {
                 try {
@@ -1,64 +1,142 @@
 package io.radanalytics.operator.cluster;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.fabric8.kubernetes.api.model.*;
 import io.fabric8.kubernetes.client.KubernetesClient;
+import io.radanalytics.operator.cache.ResourceCache;
 import io.radanalytics.operator.historyServer.HistoryServerHelper;
 import io.radanalytics.operator.resource.LabelsHelper;
 import io.radanalytics.types.*;
 
+import java.io.IOException;
 import java.util.*;
 
 import static io.radanalytics.operator.Constants.*;
 import static io.radanalytics.operator.resource.LabelsHelper.OPERATOR_KIND_LABEL;
 
 public class KubernetesSparkClusterDeployer {
-    private KubernetesClient client;
-    private String entityName;
-    private String prefix;
-    private String namespace;
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final KubernetesClient client;
+    private final ResourceCache cache;
+    private final String entityName;
+    private final String prefix;
+    private final String namespace;
+    private final StartupDelays delays;
+    private boolean execProbes = useExecProbes();
+
+    KubernetesSparkClusterDeployer(KubernetesClient client, ResourceCache cache, String entityName, String prefix, String namespace) {
+        this(client, cache, entityName, prefix, namespace, null);
+    }
 
-    KubernetesSparkClusterDeployer(KubernetesClient client, String entityName, String prefix, String namespace) {
+    /**
+     * @param delays source of the probe delays learned from the earlier startups, <code>null</code> to always use the
+     *               expected ones
+     */
+    KubernetesSparkClusterDeployer(KubernetesClient client, ResourceCache cache, String entityName, String prefix, String namespace,
+                                   StartupDelays delays) {
         this.client = client;
+        this.cache = cache;
         this.entityName = entityName;
         this.prefix = prefix;
         this.namespace = namespace;
+        this.delays = delays;
+    }
+
+    // visible for the tests
+    void setExecProbes(boolean execProbes) {
+        this.execProbes = execProbes;
     }
 
+    /**
+     * Renders all the resources for the cluster. The only blocking part is taking the snapshot of the external inputs,
+     * the rendering itself can run for many clusters in parallel.
+     *
+     * @param cluster the spark cluster
+     * @return list of the resources (it's safe to modify it)
+     */
     public KubernetesResourceList getResourceList(SparkCluster cluster) {
-        synchronized (this.client) {
-            checkForInjectionVulnerabilities(cluster, namespace);
-            String name = cluster.getName();
+        return getResourceList(cluster, snapshot(cluster));
+    }
 
-            Map<String, String> allMasterLabels = new HashMap<>();
-            if (cluster.getLabels() != null) allMasterLabels.putAll(cluster.getLabels());
-            if (cluster.getMaster() != null && cluster.getMaster().getLabels() != null)
-                allMasterLabels.putAll(cluster.getMaster().getLabels());
+    /**
+     * Pure function of the spec and the snapshot, it doesn't touch the client, the cache or the passed cluster.
+     *
+     * @param original the spark cluster
+     * @param inputs snapshot of the state of the k8s the rendering depends on
+     * @return list of the resources
+     */
+    KubernetesResourceList getResourceList(SparkCluster original, ExternalInputs inputs) {
+        // rendering adds some entries to the spark configuration and commands, the original must stay untouched
+        // so that it can be compared with the next version of the cluster
+        SparkCluster cluster = copy(original);
+        checkForInjectionVulnerabilities(cluster, namespace);
+        String name = cluster.getName();
+        // from the original, the same as in the snapshot
+        String masterProfile = StartupDelays.profile(original, inputs.configMapExists(), true);
+        String workerProfile = StartupDelays.profile(original, inputs.configMapExists(), false);
+
+        Map<String, String> allMasterLabels = new HashMap<>();
+        if (cluster.getLabels() != null) allMasterLabels.putAll(cluster.getLabels());
+        if (cluster.getMaster() != null && cluster.getMaster().getLabels() != null)
+            allMasterLabels.putAll(cluster.getMaster().getLabels());
+
+        ReplicationController masterRc = getRCforMaster(cluster, inputs, masterProfile);
+        ReplicationController workerRc = getRCforWorker(cluster, inputs, workerProfile);
+        Service masterService = getService(false, name, 7077, allMasterLabels);
+        List<HasMetadata> list = new ArrayList<>(Arrays.asList(masterRc, workerRc, masterService));
+        if (cluster.getSparkWebUI()) {
+            Service masterUiService = getService(true, name, 8080, allMasterLabels);
+            list.add(masterUiService);
+        }
 
-            ReplicationController masterRc = getRCforMaster(cluster);
-            ReplicationController workerRc = getRCforWorker(cluster);
-            Service masterService = getService(false, name, 7077, allMasterLabels);
-            List<HasMetadata> list = new ArrayList<>(Arrays.asList(masterRc, workerRc, masterService));
-            if (cluster.getSparkWebUI()) {
-                Service masterUiService = getService(true, name, 8080, allMasterLabels);
-                list.add(masterUiService);
-            }
+        // pvc for history server (in case of sharedVolume strategy)
+        if (HistoryServerHelper.needsVolume(cluster)) {
+            PersistentVolumeClaim pvc = getPersistentVolumeClaim(cluster, getDefaultLabels(name));
+            list.add(pvc);
+        }
+
+        // the final spark configuration (after rendering both rcs) for the config overlay
+        if (SparkConfigOverlay.isUsed(cluster, inputs.configMapData)) {
+            list.add(SparkConfigOverlay.configMap(cluster, inputs.configMapData, SparkConfigOverlay.labels(prefix, entityName, name)));
+        }
+        KubernetesList resources = new KubernetesListBuilder().withItems(list).build();
+        return resources;
+    }
 
-            // pvc for history server (in case of sharedVolume strategy)
-            if (HistoryServerHelper.needsVolume(cluster)) {
-                PersistentVolumeClaim pvc = getPersistentVolumeClaim(cluster, getDefaultLabels(name));
-                list.add(pvc);
+    /**
+     * Reads everything outside of the spec the rendering depends on (from the cache if possible).
+     *
+     * @param cluster the spark cluster
+     * @return read-only snapshot
+     */
+    ExternalInputs snapshot(SparkCluster cluster) {
+        String cmName = InitContainersHelper.getExpectedCMName(cluster);
+        return inputs(cluster, configMapData(cmName, namespaceOf(cluster)));
+    }
+
+    /**
+     * @param cluster the spark cluster
+     * @param configMapData data of the config map with overrides or null
+     * @return the inputs with the probe delays learned for the cluster's pods
+     */
+    ExternalInputs inputs(SparkCluster cluster, Map<String, String> configMapData) {
+        Map<String, StartupDelays.Learned> learned = new HashMap<>(2);
+        if (null != delays) {
+            for (boolean isMaster : new boolean[]{true, false}) {
+                String profile = StartupDelays.profile(cluster, null != configMapData, isMaster);
+                Optional.ofNullable(delays.get(profile)).ifPresent(l -> learned.put(profile, l));
             }
-            KubernetesList resources = new KubernetesListBuilder().withItems(list).build();
-            return resources;
         }
+        return new ExternalInputs(configMapData, learned);
     }
 
-    private ReplicationController getRCforMaster(SparkCluster cluster) {
-        return getRCforMasterOrWorker(true, cluster);
+    private ReplicationController getRCforMaster(SparkCluster cluster, ExternalInputs inputs, String profile) {
+        return getRCforMasterOrWorker(true, cluster, inputs, profile);
     }
 
-    private ReplicationController getRCforWorker(SparkCluster cluster) {
-        return getRCforMasterOrWorker(false, cluster);
+    private ReplicationController getRCforWorker(SparkCluster cluster, ExternalInputs inputs, String profile) {
+        return getRCforMasterOrWorker(false, cluster, inputs, profile);
     }
 
     private Service getService(boolean isUi, String name, int port, Map<String, String> allMasterLabels) {
@@ -78,7 +156,7 @@ public class KubernetesSparkClusterDeployer {
         return new EnvVarBuilder().withName(key).withValue(value).build();
     }
 
-    private ReplicationController getRCforMasterOrWorker(boolean isMaster, SparkCluster cluster) {
+    private ReplicationController getRCforMasterOrWorker(boolean isMaster, SparkCluster cluster, ExternalInputs inputs, String profile) {
         String name = cluster.getName();
         String podName = name + (isMaster ? "-m" : "-w");
         Map<String, String> selector = getSelector(name, podName);
@@ -110,24 +188,36 @@ public class KubernetesSparkClusterDeployer {
             ports.add(metricsPort);
         }
 
-        final String cmName = InitContainersHelper.getExpectedCMName(cluster);
-        final boolean cmExists = cmExists(cmName);
+        final boolean cmExists = inputs.configMapExists();
         final int expectedMasterDelay = InitContainersHelper.getExpectedDelay(cluster, cmExists, true);
         final int expectedWorkerDelay = InitContainersHelper.getExpectedDelay(cluster, cmExists, false);
-        Probe masterReadiness = new ProbeBuilder().withNewExec().withCommand(Arrays.asList("/bin/bash", "-c", "curl -s localhost:8080 | grep -e Status.*ALIVE")).endExec()
-                .withFailureThreshold(3)
-                .withInitialDelaySeconds(expectedMasterDelay - 4)
-                .withPeriodSeconds(7)
-                .withSuccessThreshold(1)
-                .withTimeoutSeconds(1).build();
-
-        Probe workerReadiness = new ProbeBuilder().withNewExec().withCommand(Arrays.asList("/bin/bash", "-c", "curl -s localhost:8081 | grep -e 'Master URL:.*spark://'" +
-                " || echo Unable to connect to the Spark master at $SPARK_MASTER_ADDRESS")).endExec()
-                .withFailureThreshold(3)
-                .withInitialDelaySeconds(expectedWorkerDelay - 4)
-                .withPeriodSeconds(7)
-                .withSuccessThreshold(1)
-                .withTimeoutSeconds(1).build();
+        // once there are enough startups of the same profile, they tell better than the guess
+        final StartupDelays.Learned learned = inputs.learned(profile);
+        final int readinessDelay = null != learned ? learned.getReadinessDelay() : (isMaster ? expectedMasterDelay : expectedWorkerDelay) - 4;
+        final int livenessDelay = null != learned ? learned.getLivenessDelay() : isMaster ? expectedMasterDelay : expectedWorkerDelay;
+        Probe masterReadiness;
+        Probe workerReadiness;
+        if (execProbes) {
+            masterReadiness = new ProbeBuilder().withNewExec().withCommand(Arrays.asList("/bin/bash", "-c", "curl -s localhost:8080 | grep -e Status.*ALIVE")).endExec()
+                    .withFailureThreshold(3)
+                    .withInitialDelaySeconds(readinessDelay)
+                    .withPeriodSeconds(7)
+                    .withSuccessThreshold(1)
+                    .withTimeoutSeconds(1).build();
+
+            workerReadiness = new ProbeBuilder().withNewExec().withCommand(Arrays.asList("/bin/bash", "-c", "curl -s localhost:8081 | grep -e 'Master URL:.*spark://'" +
+                    " || echo Unable to connect to the Spark master at $SPARK_MASTER_ADDRESS")).endExec()
+                    .withFailureThreshold(3)
+                    .withInitialDelaySeconds(readinessDelay)
+                    .withPeriodSeconds(7)
+                    .withSuccessThreshold(1)
+                    .withTimeoutSeconds(1).build();
+        } else {
+            // the kubelet checks only the status code, the registration of the worker is checked by the operator
+            // (see WorkerRegistration)
+            masterReadiness = jsonStatusProbe(8080, readinessDelay);
+            workerReadiness = jsonStatusProbe(8081, readinessDelay);
+        }
 
         Probe generalLivenessProbe = new ProbeBuilder().withFailureThreshold(3).withNewHttpGet()
                 .withPath("/")
@@ -137,7 +227,7 @@ public class KubernetesSparkClusterDeployer {
                 .withPeriodSeconds(10)
                 .withSuccessThreshold(1)
                 .withFailureThreshold(6)
-                .withInitialDelaySeconds(isMaster ? expectedMasterDelay : expectedWorkerDelay)
+                .withInitialDelaySeconds(livenessDelay)
                 .withTimeoutSeconds(1).build();
 
         String imageRef = getDefaultSparkImage(); // from Constants
@@ -180,8 +270,13 @@ public class KubernetesSparkClusterDeployer {
                                 Optional.ofNullable(cluster.getWorker()).orElse(new Worker()).getInstances()
                 )
                 .withSelector(selector)
-                .withNewTemplate().withNewMetadata().withLabels(podLabels).endMetadata()
+                .withNewTemplate().withNewMetadata().withLabels(podLabels)
+                .withAnnotations(null == delays ? null : Collections.singletonMap(prefix + StartupDelays.PROFILE_ANNOTATION, profile))
+                .endMetadata()
                 .withNewSpec().withTolerations(tolerations).withContainers(containerBuilder.build());
+        if (!isMaster && !execProbes) {
+            rcBuilder = rcBuilder.withReadinessGates(new PodReadinessGate(prefix + WorkerRegistration.CONDITION));
+        }
 
         ReplicationController rc = rcBuilder.endSpec().endTemplate().endSpec().build();
 
@@ -194,9 +289,28 @@ public class KubernetesSparkClusterDeployer {
         if (!cluster.getDownloadData().isEmpty() || !cluster.getSparkConfiguration().isEmpty() || cmExists) {
             InitContainersHelper.addInitContainers(rc, cluster, cmExists, isMaster);
         }
+        if (SparkConfigOverlay.isUsed(cluster, inputs.configMapData)) {
+            SparkConfigOverlay.addToPod(rc, cluster, inputs.configMapData);
+        }
+        if (MavenDependencyCache.isUsed(cluster)) {
+            MavenDependencyCache.addToPod(rc, cluster);
+        }
         return rc;
     }
 
+    private static Probe jsonStatusProbe(int port, int initialDelay) {
+        return new ProbeBuilder().withNewHttpGet()
+                .withPath("/json")
+                .withNewPort().withIntVal(port).endPort()
+                .withScheme("HTTP")
+                .endHttpGet()
+                .withFailureThreshold(3)
+                .withInitialDelaySeconds(initialDelay)
+                .withPeriodSeconds(7)
+                .withSuccessThreshold(1)
+                .withTimeoutSeconds(1).build();
+    }
+
     private PersistentVolumeClaim getPersistentVolumeClaim(SparkCluster cluster, Map<String, String> labels) {
         SharedVolume sharedVolume = Optional.ofNullable(cluster.getHistoryServer().getSharedVolume()).orElse(new SharedVolume());
         Map<String,Quantity> requests = new HashMap<>();
@@ -289,8 +403,11 @@ public class KubernetesSparkClusterDeployer {
         
         builder = builder.withResources(new ResourceRequirements(limits, requests));
 
-        // if maven deps are not empty let spark-submit to download them
-        if (!cluster.getMavenDependencies().isEmpty()) {
+        if (MavenDependencyCache.isUsed(cluster)) {
+            // resolved once by a job, the pods only mount the jars (and the command stays as it is)
+            MavenDependencyCache.addToSparkConfiguration(cluster);
+        } else if (!cluster.getMavenDependencies().isEmpty()) {
+            // if maven deps are not empty let spark-submit to download them
             augmentSparkConfWithJarsPath(cluster);
             List<String> command = isMaster ? m.getCommand() : w.getCommand();
             List<String> commandArgs = isMaster ? m.getCommandArgs() : w.getCommandArgs();
@@ -339,15 +456,29 @@ public class KubernetesSparkClusterDeployer {
     }
 
 
-    private boolean cmExists(String name) {
+    private Map<String, String> configMapData(String name, String ns) {
         ConfigMap configMap;
-        if ("*".equals(namespace)) {
+        if (null != cache && cache.configMaps().hasSynced() && !"*".equals(ns)) {
+            configMap = cache.configMaps().get(ns, name);
+        } else if ("*".equals(ns)) {
             List<ConfigMap> items = client.configMaps().inAnyNamespace().withField("metadata.name", name).list().getItems();
             configMap = items != null && !items.isEmpty() ? items.get(0) : null;
         } else {
-            configMap = client.configMaps().inNamespace(namespace).withName(name).get();
+            configMap = client.configMaps().inNamespace(ns).withName(name).get();
+        }
+        return configMap != null && configMap.getData() != null && !configMap.getData().isEmpty() ? configMap.getData() : null;
+    }
+
+    private static SparkCluster copy(SparkCluster cluster) {
+        try {
+            return mapper.readValue(mapper.writeValueAsBytes(cluster), SparkCluster.class);
+        } catch (IOException e) {
+            throw new IllegalStateException("unable to copy the cluster " + cluster.getName(), e);
         }
-        return configMap != null && configMap.getData() != null && !configMap.getData().isEmpty();
+    }
+
+    private String namespaceOf(SparkCluster cluster) {
+        return null != cluster.getNamespace() ? cluster.getNamespace() : namespace;
     }
 
     private Map<String, String> getSelector(String clusterName, String podName) {
@@ -363,7 +494,50 @@ public class KubernetesSparkClusterDeployer {
         return map;
     }
 
+    /**
+     * @param name name of the cluster
+     * @return the resources the operator may have created for the cluster, with only their names set (the pods are
+     * owned by the replication controllers and the claim is there only if the history server needs a shared volume)
+     */
+    public List<HasMetadata> getResourcesForDeletion(String name) {
+        List<HasMetadata> resources = new ArrayList<>(6);
+        resources.add(new ReplicationControllerBuilder().withNewMetadata().withName(name + "-m").endMetadata().build());
+        resources.add(new ReplicationControllerBuilder().withNewMetadata().withName(name + "-w").endMetadata().build());
+        resources.add(new ServiceBuilder().withNewMetadata().withName(name).endMetadata().build());
+        resources.add(new ServiceBuilder().withNewMetadata().withName(name + "-ui").endMetadata().build());
+        resources.add(new ConfigMapBuilder().withNewMetadata().withName(SparkConfigOverlay.name(name)).endMetadata().build());
+        resources.add(new PersistentVolumeClaimBuilder().withNewMetadata().withName(name + "-claim").endMetadata().build());
+        return resources;
+    }
+
     private void checkForInjectionVulnerabilities(SparkCluster app, String namespace) {
         //todo: this
     }
+
+    /**
+     * The state of the k8s objects (other than the cluster itself) the rendering depends on.
+     */
+    static final class ExternalInputs {
+        // data of the config map with overrides, null if it doesn't exist (or is empty)
+        private final Map<String, String> configMapData;
+        // probe delays learned for the profiles of the master and the worker (if there are enough samples)
+        private final Map<String, StartupDelays.Learned> learned;
+
+        ExternalInputs(Map<String, String> configMapData) {
+            this(configMapData, null);
+        }
+
+        ExternalInputs(Map<String, String> configMapData, Map<String, StartupDelays.Learned> learned) {
+            this.configMapData = null == configMapData ? null : Collections.unmodifiableMap(new HashMap<>(configMapData));
+            this.learned = null == learned ? Collections.emptyMap() : Collections.unmodifiableMap(new HashMap<>(learned));
+        }
+
+        boolean configMapExists() {
+            return null != configMapData;
+        }
+
+        StartupDelays.Learned learned(String profile) {
+            return learned.get(profile);
+        }
+    }
 }
@@ -0,0 +1,219 @@
+package io.radanalytics.operator.cluster;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.radanalytics.operator.Constants;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.radanalytics.operator.resource.LabelsHelper.OPERATOR_DEPLOYMENT_LABEL;
+
+/**
+ * Reads the status of the Spark masters from their web UI (<code>/json</code>). The requests of all the operators run
+ * on one small pool, so a lot of clusters (or a lot of unresponsive masters) can't start more than
+ * <code>AUTOSCALER_CONCURRENCY</code> requests at once.
+ *
+ * The masters are asked directly on the ip of their pod, the web UI of the master listens on 8080 even if the cluster
+ * has no <code>-ui</code> service (<code>sparkWebUI: false</code>).
+ */
+class MasterStatusPoller {
+
+    @FunctionalInterface
+    interface Locator {
+        /**
+         * @param namespace namespace of the cluster
+         * @param name name of the cluster
+         * @return url of the master's status or null if the master isn't running
+         */
+        String url(String namespace, String name);
+    }
+
+    private static final int TIMEOUT_MS = 2000;
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static volatile MasterStatusPoller instance;
+
+    private final ExecutorService executor;
+
+    MasterStatusPoller(int concurrency) {
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(concurrency, r -> {
+            Thread t = new Thread(r, "master-status-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    static MasterStatusPoller shared() {
+        if (null == instance) {
+            synchronized (MasterStatusPoller.class) {
+                if (null == instance) {
+                    instance = new MasterStatusPoller(Constants.getAutoscalerConcurrency());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @param url url of the master's status (e.g. <code>http://10.128.0.12:8080/json</code>)
+     * @return the status, completed exceptionally if the master can't be reached or doesn't answer in time
+     */
+    CompletableFuture<MasterStatus> poll(String url) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return fetch(url);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * @param locator finds the master
+     * @param namespace namespace of the cluster
+     * @param name name of the cluster
+     * @return the status, completed exceptionally if the master isn't running, can't be reached or doesn't answer in
+     * time
+     */
+    CompletableFuture<MasterStatus> poll(Locator locator, String namespace, String name) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                String url = locator.url(namespace, name);
+                if (null == url) {
+                    throw new IOException("the master isn't running");
+                }
+                return fetch(url);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * @param pods source of the pods
+     * @param prefix prefix of the operator's labels
+     * @return locator of the running master pods (of the clusters and the warm units)
+     */
+    static Locator masterPod(StartupTracker.Pods pods, String prefix) {
+        return (namespace, name) -> {
+            List<Pod> masters = pods.list(namespace, Collections.singletonMap(prefix + OPERATOR_DEPLOYMENT_LABEL, name + "-m"));
+            return masters.stream()
+                    .filter(p -> null == p.getMetadata().getDeletionTimestamp() && null != p.getStatus())
+                    .filter(p -> "Running".equals(p.getStatus().getPhase()) && null != p.getStatus().getPodIP())
+                    .findFirst()
+                    .map(p -> url(p.getStatus().getPodIP()))
+                    .orElse(null);
+        };
+    }
+
+    static String url(String ip) {
+        return "http://" + (ip.contains(":") ? "[" + ip + "]" : ip) + ":8080/json";
+    }
+
+    private static MasterStatus fetch(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MS);
+        connection.setReadTimeout(TIMEOUT_MS);
+        connection.setRequestProperty("Accept", "application/json");
+        try {
+            if (HttpURLConnection.HTTP_OK != connection.getResponseCode()) {
+                throw new IOException("status " + connection.getResponseCode() + " from " + url);
+            }
+            try (InputStream in = connection.getInputStream()) {
+                return parse(mapper.readTree(in));
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    static MasterStatus parse(JsonNode json) {
+        int running = 0;
+        int waiting = 0;
+        for (JsonNode app : json.path("activeapps")) {
+            if ("WAITING".equals(app.path("state").asText())) {
+                waiting++;
+            } else if ("RUNNING".equals(app.path("state").asText())) {
+                running++;
+            }
+        }
+        Map<String, Integer> workerCoresUsed = new HashMap<>();
+        for (JsonNode worker : json.path("workers")) {
+            if ("ALIVE".equals(worker.path("state").asText())) {
+                workerCoresUsed.put(worker.path("host").asText(), worker.path("coresused").asInt());
+            }
+        }
+        return new MasterStatus(json.path("aliveworkers").asInt(), json.path("cores").asInt(),
+                json.path("coresused").asInt(), running, waiting, workerCoresUsed);
+    }
+
+    /**
+     * The parts of the master's status the autoscaler, the idle suspender and the scale-down need.
+     */
+    static class MasterStatus {
+        private final int aliveWorkers;
+        private final int cores;
+        private final int coresUsed;
+        private final int runningApps;
+        private final int waitingApps;
+        private final Map<String, Integer> workerCoresUsed;
+
+        MasterStatus(int aliveWorkers, int cores, int coresUsed, int runningApps, int waitingApps) {
+            this(aliveWorkers, cores, coresUsed, runningApps, waitingApps, Collections.emptyMap());
+        }
+
+        MasterStatus(int aliveWorkers, int cores, int coresUsed, int runningApps, int waitingApps,
+                     Map<String, Integer> workerCoresUsed) {
+            this.aliveWorkers = aliveWorkers;
+            this.cores = cores;
+            this.coresUsed = coresUsed;
+            this.runningApps = runningApps;
+            this.waitingApps = waitingApps;
+            this.workerCoresUsed = workerCoresUsed;
+        }
+
+        int getAliveWorkers() {
+            return aliveWorkers;
+        }
+
+        int getCores() {
+            return cores;
+        }
+
+        int getCoresUsed() {
+            return coresUsed;
+        }
+
+        int getRunningApps() {
+            return runningApps;
+        }
+
+        int getWaitingApps() {
+            return waitingApps;
+        }
+
+        /**
+         * @return host of the alive worker (as it registered with the master) -> cores used by its executors
+         */
+        Map<String, Integer> getWorkerCoresUsed() {
+            return workerCoresUsed;
+        }
+
+        double getUtilization() {
+            return 0 == cores ? 0 : (double) coresUsed / cores;
+        }
+    }
+}
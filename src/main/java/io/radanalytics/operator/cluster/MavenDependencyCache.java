@@ -0,0 +1,212 @@
+package io.radanalytics.operator.cluster;
+
+import com.google.common.hash.Hashing;
+import io.fabric8.kubernetes.api.model.*;
+import io.fabric8.kubernetes.api.model.batch.Job;
+import io.fabric8.kubernetes.api.model.batch.JobBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.radanalytics.operator.Constants;
+import io.radanalytics.types.SparkCluster;
+import io.radanalytics.types.SparkConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static io.radanalytics.operator.Constants.getDefaultSparkImage;
+import static io.radanalytics.operator.resource.LabelsHelper.OPERATOR_KIND_LABEL;
+
+/**
+ * Resolves the <code>mavenDependencies</code> once per namespace and set of dependencies and repositories, instead of
+ * running <code>spark-submit --packages</code> in every master and worker pod. A job fills a persistent volume claim
+ * named after the hash of the dependencies with the resolved jars, the cluster pods mount it read-only and wait
+ * (in an init container) for the job to finish. The clusters with the same dependencies share both the job and the
+ * claim, they are removed with the last such cluster in the namespace (or when it changes its dependencies).
+ * If the job can't resolve the dependencies, or doesn't finish in time, the init container fails with the name of the
+ * job in its log.
+ */
+class MavenDependencyCache {
+
+    static final String MOUNT_PATH = "/opt/spark-deps";
+    static final String DEPENDENCIES_LABEL = "maven-dependencies";
+    private static final String VOLUME_NAME = "spark-deps";
+    private static final String COMPLETE_MARKER = MOUNT_PATH + "/.complete";
+    private static final String FAILED_MARKER = MOUNT_PATH + "/.failed";
+
+    private static final Logger log = LoggerFactory.getLogger(MavenDependencyCache.class.getName());
+
+    private final KubernetesClient client;
+    private final String entityName;
+    private final String prefix;
+    private final SharedJobs jobs;
+
+    MavenDependencyCache(KubernetesClient client, String entityName, String prefix) {
+        this.client = client;
+        this.entityName = entityName;
+        this.prefix = prefix;
+        this.jobs = new SharedJobs(client, this::remove);
+    }
+
+    /**
+     * @param cluster the spark cluster
+     * @return whether the dependencies of the cluster are resolved by the shared job
+     */
+    static boolean isUsed(SparkCluster cluster) {
+        return Constants.useMavenDependencyCache() && !cluster.getMavenDependencies().isEmpty();
+    }
+
+    /**
+     * @param cluster the spark cluster
+     * @return short hash of the (sorted) dependencies and repositories
+     */
+    static String hash(SparkCluster cluster) {
+        List<String> dependencies = new ArrayList<>(cluster.getMavenDependencies());
+        Collections.sort(dependencies);
+        List<String> repositories = new ArrayList<>(cluster.getMavenRepositories());
+        Collections.sort(repositories);
+        String key = String.join(",", dependencies) + ";" + String.join(",", repositories);
+        return Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString().substring(0, 10);
+    }
+
+    /**
+     * @param cluster the spark cluster
+     * @return name of the job and the claim with the resolved dependencies
+     */
+    static String name(SparkCluster cluster) {
+        return "spark-deps-" + hash(cluster);
+    }
+
+    /**
+     * Mounts the claim with the resolved jars to the spark container, adds the init container that waits for them and
+     * puts them on the class path of the drivers and executors.
+     *
+     * @param rc rendered master or worker replication controller
+     * @param cluster the spark cluster (its spark configuration is modified)
+     */
+    static void addToPod(ReplicationController rc, SparkCluster cluster) {
+        PodSpec podSpec = rc.getSpec().getTemplate().getSpec();
+        VolumeMount mount = new VolumeMountBuilder().withName(VOLUME_NAME).withMountPath(MOUNT_PATH).withReadOnly(true).build();
+        Volume volume = new VolumeBuilder().withName(VOLUME_NAME)
+                .withNewPersistentVolumeClaim().withClaimName(name(cluster)).withReadOnly(true).endPersistentVolumeClaim()
+                .build();
+        Container wait = new ContainerBuilder()
+                .withName("wait-for-dependencies")
+                .withImage(Optional.ofNullable(cluster.getCustomImage()).orElse(getDefaultSparkImage()))
+                .withImagePullPolicy("IfNotPresent")
+                .withCommand("/bin/sh", "-c")
+                .withArgs("t=0; " + SharedJobs.waitFor(COMPLETE_MARKER, FAILED_MARKER, "the maven dependencies", name(cluster)))
+                .withVolumeMounts(mount)
+                .build();
+        podSpec.getContainers().get(0).getVolumeMounts().add(mount);
+        podSpec.getVolumes().add(volume);
+        podSpec.getInitContainers().add(0, wait);
+    }
+
+    /**
+     * @param cluster the spark cluster (its spark configuration is modified)
+     */
+    static void addToSparkConfiguration(SparkCluster cluster) {
+        for (String property : Arrays.asList("spark.driver.extraClassPath", "spark.executor.extraClassPath")) {
+            // both the master and the worker are rendered from the same copy of the cluster
+            if (cluster.getSparkConfiguration().stream().anyMatch(nv -> property.equals(nv.getName()))) {
+                continue;
+            }
+            SparkConfiguration nv = new SparkConfiguration();
+            nv.setName(property);
+            nv.setValue(MOUNT_PATH + "/jars/*");
+            cluster.getSparkConfiguration().add(0, nv);
+        }
+    }
+
+    /**
+     * Creates the claim and the job resolving the dependencies of the cluster, unless they are there already. If the
+     * cluster has used different dependencies before, those are released.
+     *
+     * @param namespace namespace of the cluster
+     * @param cluster the spark cluster
+     */
+    void ensure(String namespace, SparkCluster cluster) {
+        String name = name(cluster);
+        jobs.use(namespace, cluster.getName(), name, () -> {
+            log.info("resolving the maven dependencies {} by job {} in {}", cluster.getMavenDependencies(), name, namespace);
+            Map<String, String> labels = labels(cluster);
+            // the spec of a claim can't be changed, an existing one (e.g. left by a previous job) is reused
+            if (null == client.persistentVolumeClaims().inNamespace(namespace).withName(name).get()) {
+                client.persistentVolumeClaims().inNamespace(namespace).create(claim(name, labels));
+            }
+            client.batch().jobs().inNamespace(namespace).create(job(name, labels, cluster));
+        });
+    }
+
+    /**
+     * The cluster has been deleted or doesn't use the shared dependencies anymore. The job and the claim are removed
+     * if no other cluster uses them.
+     *
+     * @param namespace namespace of the cluster
+     * @param clusterName name of the cluster
+     */
+    void release(String namespace, String clusterName) {
+        jobs.release(namespace, clusterName);
+    }
+
+    /**
+     * The first full reconciliation after a (re)start, the clusters using the shared dependencies are known only from
+     * their specs. The jobs and claims that none of them uses are removed.
+     *
+     * @param namespace namespace of the clusters
+     * @param clusters all the clusters in the namespace
+     */
+    void restore(String namespace, Collection<SparkCluster> clusters) {
+        Map<String, String> users = clusters.stream().filter(c -> !c.getMavenDependencies().isEmpty())
+                .collect(Collectors.toMap(SparkCluster::getName, MavenDependencyCache::name));
+        List<String> existing = client.batch().jobs().inNamespace(namespace).withLabel(prefix + DEPENDENCIES_LABEL).list()
+                .getItems().stream().map(job -> job.getMetadata().getName()).collect(Collectors.toList());
+        jobs.restore(namespace, users, existing);
+    }
+
+    private void remove(String namespace, String name) {
+        log.info("removing the maven dependencies {} in {}", name, namespace);
+        client.batch().jobs().inNamespace(namespace).withName(name).withPropagationPolicy("Background").delete();
+        client.persistentVolumeClaims().inNamespace(namespace).withName(name).delete();
+    }
+
+    private Map<String, String> labels(SparkCluster cluster) {
+        Map<String, String> labels = new HashMap<>(2);
+        labels.put(prefix + OPERATOR_KIND_LABEL, entityName);
+        labels.put(prefix + DEPENDENCIES_LABEL, hash(cluster));
+        return labels;
+    }
+
+    private static PersistentVolumeClaim claim(String name, Map<String, String> labels) {
+        Map<String, Quantity> requests = new HashMap<>();
+        requests.put("storage", new QuantityBuilder().withAmount(Constants.getMavenDependencyCacheSize()).build());
+        return new PersistentVolumeClaimBuilder().withNewMetadata().withName(name).withLabels(labels).endMetadata()
+                .withNewSpec().withAccessModes("ReadWriteMany")
+                .withNewResources().withRequests(requests).endResources().endSpec().build();
+    }
+
+    private static Job job(String name, Map<String, String> labels, SparkCluster cluster) {
+        String dependencies = String.join(",", cluster.getMavenDependencies());
+        String repositories = cluster.getMavenRepositories().isEmpty() ? "" : " --repositories " + String.join(",", cluster.getMavenRepositories());
+        // the same no-op spark-submit the pods used to run, the jars end up in <ivy>/jars
+        String resolve = "rm -f " + FAILED_MARKER + "; /entrypoint pwd ; spark-submit --packages " + dependencies + repositories +
+                " --conf spark.jars.ivy=" + MOUNT_PATH + " --class no-op-ignore-this 0 || true; " +
+                "if ls " + MOUNT_PATH + "/jars/*.jar; then touch " + COMPLETE_MARKER + "; else touch " + FAILED_MARKER + "; exit 1; fi";
+        return new JobBuilder().withNewMetadata().withName(name).withLabels(labels).endMetadata()
+                .withNewSpec().withBackoffLimit(4)
+                .withNewTemplate().withNewMetadata().withLabels(labels).endMetadata()
+                .withNewSpec().withRestartPolicy("OnFailure")
+                .addNewContainer()
+                .withName("resolve")
+                .withImage(Optional.ofNullable(cluster.getCustomImage()).orElse(getDefaultSparkImage()))
+                .withImagePullPolicy("IfNotPresent")
+                .withCommand("/bin/sh", "-c")
+                .withArgs(resolve)
+                .addNewVolumeMount().withName(VOLUME_NAME).withMountPath(MOUNT_PATH).endVolumeMount()
+                .endContainer()
+                .addNewVolume().withName(VOLUME_NAME).withNewPersistentVolumeClaim().withClaimName(name).endPersistentVolumeClaim().endVolume()
+                .endSpec().endTemplate().endSpec().build();
+    }
+}
@@ -2,6 +2,7 @@ package io.radanalytics.operator.cluster;
 
 import io.prometheus.client.Counter;
 import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
 
 public class MetricsHelper {
     private static final String PREFIX = "operator_";
@@ -29,4 +30,184 @@ public class MetricsHelper {
             .help("Spark clusters has been started by operator.")
             .labelNames("ns")
             .register();
+
+    public static final Histogram reconciliationDuration = Histogram.build()
+            .name(PREFIX + "full_reconciliation_duration_seconds")
+            .help("How long one full reconciliation pass took.")
+            .labelNames("ns")
+            .buckets(0.1, 0.5, 1, 2.5, 5, 10, 30, 60, 120, 300, 600)
+            .register();
+
+    public static final Counter reconciliationActions = Counter.build()
+            .name(PREFIX + "reconciliation_actions_total")
+            .help("Actions (create, delete, scale) performed by the full reconciliation.")
+            .labelNames("ns", "action")
+            .register();
+
+    public static final Counter resourceWrites = Counter.build()
+            .name(PREFIX + "resource_writes_total")
+            .help("Resources written (createOrReplace) because their spec hash has changed.")
+            .labelNames("ns", "kind")
+            .register();
+
+    public static final Counter skippedWrites = Counter.build()
+            .name(PREFIX + "skipped_writes_total")
+            .help("Resource writes skipped because the spec hash of the live resource was the same.")
+            .labelNames("ns", "kind")
+            .register();
+
+    public static final Gauge workQueueDepth = Gauge.build()
+            .name(PREFIX + "workqueue_depth")
+            .help("Events waiting in the work queue.")
+            .labelNames("kind")
+            .register();
+
+    public static final Histogram workQueueWait = Histogram.build()
+            .name(PREFIX + "workqueue_wait_seconds")
+            .help("How long an event waited in the work queue before it was picked up.")
+            .labelNames("kind")
+            .buckets(0.001, 0.01, 0.05, 0.1, 0.5, 1, 2.5, 5, 10, 30, 60)
+            .register();
+
+    public static final Histogram workQueueProcessing = Histogram.build()
+            .name(PREFIX + "workqueue_processing_seconds")
+            .help("How long it took to process an event from the work queue.")
+            .labelNames("kind", "action")
+            .buckets(0.01, 0.05, 0.1, 0.5, 1, 2.5, 5, 10, 30, 60)
+            .register();
+
+    public static final Counter workQueueCoalesced = Counter.build()
+            .name(PREFIX + "workqueue_coalesced_total")
+            .help("Events merged into an event for the same entity that was already waiting in the work queue.")
+            .labelNames("kind")
+            .register();
+
+    public static final Histogram statusWriteLatency = Histogram.build()
+            .name(PREFIX + "status_write_seconds")
+            .help("Time from the status change to its successful write to the custom resource (including retries).")
+            .labelNames("kind")
+            .buckets(0.01, 0.05, 0.1, 0.5, 1, 2.5, 5, 10, 30, 60, 120)
+            .register();
+
+    public static final Counter statusUpdates = Counter.build()
+            .name(PREFIX + "status_updates_total")
+            .help("Status updates by result (written, merged, retried, dropped, gone).")
+            .labelNames("kind", "result")
+            .register();
+
+    public static final Histogram teardownDuration = Histogram.build()
+            .name(PREFIX + "teardown_duration_seconds")
+            .help("How long it took to remove the resources of a deleted custom resource.")
+            .labelNames("kind")
+            .buckets(0.001, 0.01, 0.05, 0.1, 0.5, 1, 2.5, 5, 10, 30)
+            .register();
+
+    public static final Counter teardownApiCalls = Counter.build()
+            .name(PREFIX + "teardown_api_calls_total")
+            .help("Delete calls sent to the API server when removing the resources of deleted custom resources.")
+            .labelNames("kind")
+            .register();
+
+    public static final Histogram handlerDuration = Histogram.build()
+            .name(PREFIX + "handler_duration_seconds")
+            .help("How long the event handlers (onAdd, onModify, onDelete) and the full reconciliation took.")
+            .labelNames("kind", "handler")
+            .buckets(0.01, 0.05, 0.1, 0.5, 1, 2.5, 5, 10, 30, 60, 120, 300)
+            .register();
+
+    public static final Counter apiRequests = Counter.build()
+            .name(PREFIX + "api_requests_total")
+            .help("Requests sent to the Kubernetes API server by verb, resource and response code.")
+            .labelNames("verb", "resource", "code")
+            .register();
+
+    public static final Histogram apiRequestDuration = Histogram.build()
+            .name(PREFIX + "api_request_duration_seconds")
+            .help("Latency of the requests sent to the Kubernetes API server.")
+            .labelNames("verb", "resource")
+            .buckets(0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10)
+            .register();
+
+    public static final Histogram clusterMasterReady = Histogram.build()
+            .name(PREFIX + "cluster_master_ready_seconds")
+            .help("Time from the creation of a Spark cluster to its first ready master pod.")
+            .labelNames("image", "download_data", "maven_dependencies", "config_override")
+            .buckets(1, 2.5, 5, 10, 15, 20, 30, 45, 60, 90, 120, 180, 300, 600)
+            .register();
+
+    public static final Histogram clusterWorkersReady = Histogram.build()
+            .name(PREFIX + "cluster_workers_ready_seconds")
+            .help("Time from the creation of a Spark cluster to the moment all its workers were ready.")
+            .labelNames("image", "download_data", "maven_dependencies", "config_override")
+            .buckets(1, 2.5, 5, 10, 15, 20, 30, 45, 60, 90, 120, 180, 300, 600)
+            .register();
+
+    public static final Histogram initContainerDuration = Histogram.build()
+            .name(PREFIX + "init_container_duration_seconds")
+            .help("How long the init containers of the Spark cluster pods took.")
+            .labelNames("ns", "cluster", "pod_type", "container")
+            .buckets(0.5, 1, 2.5, 5, 10, 20, 30, 60, 120, 300, 600)
+            .register();
+
+    public static final Counter warmPoolRequests = Counter.build()
+            .name(PREFIX + "warm_pool_requests_total")
+            .help("New Spark clusters by the result of the warm pool lookup (hit, miss or mismatch).")
+            .labelNames("ns", "result")
+            .register();
+
+    public static final Gauge warmPoolSize = Gauge.build()
+            .name(PREFIX + "warm_pool_units")
+            .help("Pre-started units (master and workers) in the warm pool.")
+            .labelNames("ns")
+            .register();
+
+    public static final Histogram clusterProvisioning = Histogram.build()
+            .name(PREFIX + "cluster_provisioning_seconds")
+            .help("Time from the creation of a Spark cluster to all its pods being ready, by source (warm pool or cold start).")
+            .labelNames("source")
+            .buckets(1, 2.5, 5, 10, 15, 20, 30, 45, 60, 90, 120, 180, 300, 600)
+            .register();
+
+    public static final Counter autoscalerDecisions = Counter.build()
+            .name(PREFIX + "autoscaler_decisions_total")
+            .help("Decisions of the worker autoscaler (up, down, steady, cooldown, pending, unreachable) per cluster.")
+            .labelNames("ns", "cluster", "decision")
+            .register();
+
+    public static final Gauge autoscalerDesiredWorkers = Gauge.build()
+            .name(PREFIX + "autoscaler_desired_workers")
+            .help("Number of workers the autoscaler decided the cluster should have.")
+            .labelNames("ns", "cluster")
+            .register();
+
+    public static final Gauge autoscalerUtilization = Gauge.build()
+            .name(PREFIX + "autoscaler_core_utilization")
+            .help("Cores in use divided by all the cores of the cluster's workers, as reported by the master.")
+            .labelNames("ns", "cluster")
+            .register();
+
+    public static final Gauge clusterSuspended = Gauge.build()
+            .name(PREFIX + "cluster_suspended")
+            .help("Whether the cluster's workers are scaled to zero by its idle policy (1) or not (0).")
+            .labelNames("cluster", "ns")
+            .register();
+
+    public static final Counter idleTransitions = Counter.build()
+            .name(PREFIX + "idle_transitions_total")
+            .help("Clusters suspended after being idle and woken up again.")
+            .labelNames("ns", "transition")
+            .register();
+
+    public static final Counter scaledDownWorkers = Counter.build()
+            .name(PREFIX + "scaled_down_workers_total")
+            .help("Workers removed by scaling down, by whether they ran executors (busy, idle or unknown if the master wasn't reachable).")
+            .labelNames("ns", "state")
+            .register();
+
+    public static final Histogram imagePullDuration = Histogram.build()
+            .name(PREFIX + "image_pull_seconds")
+            .help("How long it took to pull the image (and create the container) on a node by the image pre-puller.")
+            .labelNames("image")
+            .buckets(0.5, 1, 2.5, 5, 10, 20, 30, 60, 120, 300, 600)
+            .register();
 }
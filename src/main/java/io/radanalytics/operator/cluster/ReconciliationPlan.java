@@ -0,0 +1,83 @@
+package io.radanalytics.operator.cluster;
+
+import io.radanalytics.types.SparkCluster;
+import io.radanalytics.types.Worker;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The difference between the desired clusters and the running ones in one namespace, computed by the full
+ * reconciliation. It doesn't talk to k8s, so it can be tested and benchmarked on its own.
+ */
+public class ReconciliationPlan {
+
+    private final Set<String> toBeCreated;
+    private final Set<String> toBeDeleted;
+    private final Map<String, Integer> toBeScaled;
+
+    private ReconciliationPlan(Set<String> toBeCreated, Set<String> toBeDeleted, Map<String, Integer> toBeScaled) {
+        this.toBeCreated = toBeCreated;
+        this.toBeDeleted = toBeDeleted;
+        this.toBeScaled = toBeScaled;
+    }
+
+    /**
+     * @param desired cluster name -> desired cluster
+     * @param actual cluster name -> number of the worker replicas of the running cluster
+     * @return the plan
+     */
+    public static ReconciliationPlan compute(Map<String, SparkCluster> desired, Map<String, Integer> actual) {
+        Set<String> toBeCreated = new HashSet<>();
+        Map<String, Integer> toBeScaled = new HashMap<>();
+        desired.forEach((name, cluster) -> {
+            Integer actualWorkers = actual.get(name);
+            if (null == actualWorkers) {
+                toBeCreated.add(name);
+                return;
+            }
+            int desiredWorkers = Optional.ofNullable(cluster.getWorker()).orElse(new Worker()).getInstances();
+            if (desiredWorkers != actualWorkers) {
+                toBeScaled.put(name, actualWorkers);
+            }
+        });
+        Set<String> toBeDeleted = new HashSet<>();
+        actual.keySet().forEach(name -> {
+            if (!desired.containsKey(name)) {
+                toBeDeleted.add(name);
+            }
+        });
+        return new ReconciliationPlan(Collections.unmodifiableSet(toBeCreated), Collections.unmodifiableSet(toBeDeleted),
+                Collections.unmodifiableMap(toBeScaled));
+    }
+
+    /**
+     * @return names of the desired clusters that aren't running
+     */
+    public Set<String> getToBeCreated() {
+        return toBeCreated;
+    }
+
+    /**
+     * @return names of the running clusters that aren't desired anymore
+     */
+    public Set<String> getToBeDeleted() {
+        return toBeDeleted;
+    }
+
+    /**
+     * @return cluster name -> actual number of workers, for the clusters with a different number of workers than
+     * desired
+     */
+    public Map<String, Integer> getToBeScaled() {
+        return toBeScaled;
+    }
+
+    public boolean isEmpty() {
+        return toBeCreated.isEmpty() && toBeDeleted.isEmpty() && toBeScaled.isEmpty();
+    }
+}
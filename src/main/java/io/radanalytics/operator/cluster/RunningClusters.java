@@ -3,43 +3,53 @@ package io.radanalytics.operator.cluster;
 import io.radanalytics.types.SparkCluster;
 import io.radanalytics.types.Worker;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class RunningClusters {
 
     private final Map<String, SparkCluster> clusters;
     private final String namespace;
     public RunningClusters(String namespace) {
-        clusters = new HashMap<>();
+        clusters = new ConcurrentHashMap<>();
         this.namespace = namespace;
         MetricsHelper.runningClusters.labels(namespace).set(0);
     }
 
     public void put(SparkCluster ci) {
-        MetricsHelper.runningClusters.labels(namespace).inc();
-        MetricsHelper.startedTotal.labels(namespace).inc();
-        MetricsHelper.workers.labels(ci.getName(), namespace).set(Optional.ofNullable(ci.getWorker()).orElse(new Worker()).getInstances());
-        clusters.put(ci.getName(), ci);
+        String ns = namespaceOf(ci);
+        MetricsHelper.workers.labels(ci.getName(), ns).set(Optional.ofNullable(ci.getWorker()).orElse(new Worker()).getInstances());
+        // a modified cluster replaces its older version
+        if (null == clusters.put(key(ns, ci.getName()), ci)) {
+            MetricsHelper.runningClusters.labels(ns).inc();
+            MetricsHelper.startedTotal.labels(ns).inc();
+        }
     }
 
-    public void delete(String name) {
-        if (clusters.containsKey(name)) {
-            MetricsHelper.runningClusters.labels(namespace).dec();
-            MetricsHelper.workers.labels(name, namespace).set(0);
-            clusters.remove(name);
+    public void delete(String ns, String name) {
+        if (null != clusters.remove(key(ns, name))) {
+            MetricsHelper.runningClusters.labels(ns).dec();
+            MetricsHelper.workers.remove(name, ns);
         }
     }
 
-    public SparkCluster getCluster(String name) {
-        return this.clusters.get(name);
+    public SparkCluster getCluster(String ns, String name) {
+        return this.clusters.get(key(ns, name));
     }
 
     public void resetMetrics() {
         MetricsHelper.startedTotal.labels(namespace).set(0);
-        clusters.forEach((c, foo) -> MetricsHelper.workers.labels(c, namespace).set(0));
+        clusters.forEach((k, c) -> MetricsHelper.workers.remove(c.getName(), namespaceOf(c)));
         MetricsHelper.startedTotal.labels(namespace).set(0);
     }
 
+    private String namespaceOf(SparkCluster ci) {
+        return null != ci.getNamespace() ? ci.getNamespace() : namespace;
+    }
+
+    private static String key(String ns, String name) {
+        return ns + "/" + name;
+    }
+
 }
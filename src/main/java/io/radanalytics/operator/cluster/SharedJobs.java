@@ -0,0 +1,137 @@
+package io.radanalytics.operator.cluster;
+
+import io.fabric8.kubernetes.api.model.batch.Job;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.radanalytics.operator.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps track of the jobs shared by the clusters in a namespace (e.g. the one resolving the same maven dependencies).
+ * A job is created for the first cluster that needs it and removed once the last cluster using it is deleted or
+ * switches to a different job. A job that has failed (it's out of its retries) is created again by the next cluster
+ * that uses it. The users are kept in memory, so after a restart they are restored from the clusters by the first
+ * full reconciliation, which also removes the jobs none of the clusters uses anymore.
+ */
+class SharedJobs {
+
+    @FunctionalInterface
+    interface Remover {
+        void remove(String namespace, String jobName);
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(SharedJobs.class.getName());
+
+    private final KubernetesClient client;
+    private final Remover remover;
+    // namespace/job of the jobs that are known to have succeeded, those don't have to be checked again
+    private final Set<String> succeeded = new HashSet<>();
+    // namespace/cluster -> name of the job it uses
+    private final Map<String, String> users = new HashMap<>();
+
+    /**
+     * @param client k8s client
+     * @param remover removes the job (and whatever belongs to it) once it's not used
+     */
+    SharedJobs(KubernetesClient client, Remover remover) {
+        this.client = client;
+        this.remover = remover;
+    }
+
+    /**
+     * Makes the cluster a user of the job, the job is created unless it exists already. A failed job is deleted and
+     * created again. If the cluster has used a different job before, that one is released.
+     *
+     * @param namespace namespace of the cluster
+     * @param clusterName name of the cluster
+     * @param jobName name of the job
+     * @param create creates the job (and whatever it needs), called only if the job doesn't exist
+     */
+    synchronized void use(String namespace, String clusterName, String jobName, Runnable create) {
+        String previous = users.put(namespace + "/" + clusterName, jobName);
+        if (null != previous && !previous.equals(jobName)) {
+            removeIfUnused(namespace, previous);
+        }
+        String key = namespace + "/" + jobName;
+        if (succeeded.contains(key)) {
+            return;
+        }
+        Job job = client.batch().jobs().inNamespace(namespace).withName(jobName).get();
+        if (null != job && hasCondition(job, "Failed")) {
+            log.info("job {} in {} has failed, creating it again", jobName, namespace);
+            client.batch().jobs().inNamespace(namespace).withName(jobName).withPropagationPolicy("Background").delete();
+            job = null;
+        }
+        if (null == job) {
+            create.run();
+        } else if (hasCondition(job, "Complete")) {
+            succeeded.add(key);
+        }
+    }
+
+    /**
+     * Called by the first full reconciliation after a (re)start with the clusters of the namespace, the users that
+     * have been added since the start are kept. The jobs that aren't used by any cluster are removed.
+     *
+     * @param namespace namespace of the clusters
+     * @param clusterJobs name of the cluster -> name of the job it uses
+     * @param existing names of the jobs that exist in the namespace
+     */
+    synchronized void restore(String namespace, Map<String, String> clusterJobs, Collection<String> existing) {
+        clusterJobs.forEach((cluster, job) -> users.putIfAbsent(namespace + "/" + cluster, job));
+        existing.forEach(job -> removeIfUnused(namespace, job));
+    }
+
+    /**
+     * The cluster has been deleted or doesn't need the job anymore.
+     *
+     * @param namespace namespace of the cluster
+     * @param clusterName name of the cluster
+     */
+    synchronized void release(String namespace, String clusterName) {
+        String jobName = users.remove(namespace + "/" + clusterName);
+        if (null != jobName) {
+            removeIfUnused(namespace, jobName);
+        }
+    }
+
+    /**
+     * The loop of the init container that waits for the result of the job. It fails (and the kubelet restarts it with
+     * a back-off) as soon as the job has left the failed marker or once the timeout is over, so the pod shows why it
+     * doesn't start instead of waiting in the init phase for good. It expects <code>t=0</code> to be set before.
+     *
+     * @param complete file created by the job once it's done
+     * @param failed file created by the job when it's unable to finish
+     * @param what what the pod waits for (for the messages)
+     * @param jobName name of the job
+     * @return shell snippet
+     */
+    static String waitFor(String complete, String failed, String what, String jobName) {
+        int timeout = Constants.getSharedJobTimeoutSeconds();
+        return "until [ -f " + complete + " ]; do " +
+                "if [ -f " + failed + " ]; then echo \"unable to get " + what + ", see the logs of job " + jobName + "\"; exit 1; fi; " +
+                "if [ $t -ge " + timeout + " ]; then echo \"" + what + " not ready after " + timeout + "s, see job " + jobName + "\"; exit 1; fi; " +
+                "echo \"waiting for " + what + "\"; sleep 2; t=$((t+2)); done";
+    }
+
+    private void removeIfUnused(String namespace, String jobName) {
+        String nsPrefix = namespace + "/";
+        boolean used = users.entrySet().stream().anyMatch(e -> e.getKey().startsWith(nsPrefix) && jobName.equals(e.getValue()));
+        if (used) {
+            return;
+        }
+        remover.remove(namespace, jobName);
+        succeeded.remove(nsPrefix + jobName);
+    }
+
+    private static boolean hasCondition(Job job, String type) {
+        return null != job.getStatus() && null != job.getStatus().getConditions() && job.getStatus().getConditions().stream()
+                .anyMatch(c -> type.equals(c.getType()) && "True".equals(c.getStatus()));
+    }
+}
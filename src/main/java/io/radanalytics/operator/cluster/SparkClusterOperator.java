@@ -1,20 +1,36 @@
 package io.radanalytics.operator.cluster;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Functions;
 import com.google.common.collect.Sets;
+import io.fabric8.kubernetes.api.model.ConfigMap;
 import io.fabric8.kubernetes.api.model.DoneableReplicationController;
 import io.fabric8.kubernetes.api.model.KubernetesResourceList;
+import io.fabric8.kubernetes.api.model.Pod;
 import io.fabric8.kubernetes.api.model.ReplicationController;
 import io.fabric8.kubernetes.api.model.ReplicationControllerList;
+import io.fabric8.kubernetes.client.KubernetesClientException;
 import io.fabric8.kubernetes.client.Watch;
 import io.fabric8.kubernetes.client.Watcher;
 import io.fabric8.kubernetes.client.dsl.FilterWatchListMultiDeletable;
 import io.fabric8.kubernetes.client.dsl.MixedOperation;
 import io.fabric8.kubernetes.client.dsl.RollableScalableResource;
+import io.prometheus.client.Histogram;
 import io.radanalytics.operator.Constants;
+import io.radanalytics.operator.cache.ResourceCache;
 import io.radanalytics.operator.common.AbstractOperator;
 import io.radanalytics.operator.common.Operator;
+import io.radanalytics.operator.common.crd.InfoClass;
+import io.radanalytics.operator.reconcile.ApiCallMetrics;
+import io.radanalytics.operator.reconcile.CustomResourceStatus;
+import io.radanalytics.operator.reconcile.EventRecorder;
+import io.radanalytics.operator.reconcile.ImagePrePuller;
+import io.radanalytics.operator.reconcile.OwnerReferences;
+import io.radanalytics.operator.reconcile.ResourceApplier;
+import io.radanalytics.operator.reconcile.StatusWriter;
+import io.radanalytics.operator.reconcile.Teardown;
+import io.radanalytics.operator.reconcile.WorkQueue;
 import io.radanalytics.types.Master;
 import io.radanalytics.types.SparkCluster;
 import io.radanalytics.types.Worker;
@@ -24,10 +40,16 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static io.radanalytics.operator.common.AnsiColors.*;
+import static io.radanalytics.operator.cluster.ChangeClassifier.Change;
+import static io.radanalytics.operator.reconcile.WorkQueue.Action;
+import static io.radanalytics.operator.resource.LabelsHelper.OPERATOR_DEPLOYMENT_LABEL;
 import static io.radanalytics.operator.resource.LabelsHelper.OPERATOR_KIND_LABEL;
 import static io.radanalytics.operator.resource.LabelsHelper.OPERATOR_RC_TYPE_LABEL;
 
@@ -41,54 +63,209 @@ public class SparkClusterOperator extends AbstractOperator<SparkCluster> {
     @Inject
     private Logger log;
 
-    private MetricsHelper metrics;
     private RunningClusters clusters;
     private KubernetesSparkClusterDeployer deployer;
+    private WorkQueue queue;
+    // one instance, so that the events of the same entity can be merged on the queue
+    private final WorkQueue.Handler<SparkCluster> handler = this::handle;
+    private StatusWriter statusWriter;
+    private ResourceCache cache;
+    private ResourceApplier applier;
+    private OwnerReferences owners;
+    private StartupTracker startups;
+    private CustomResourceStatus crStatus;
+    private MavenDependencyCache dependencyCache;
+    private DataStaging dataStaging;
+    private ImagePrePuller prePuller;
+    private WarmPool warmPool;
+    private Autoscaler autoscaler;
+    private IdleSuspender idle;
+    private WorkerScaleDown scaleDown;
+    private StartupDelays startupDelays;
+    // the namespace the operator was started for, the inherited field is swapped by the watcher for each event in the '*' mode
+    private String watchedNamespace;
+    // namespace/name -> time of the deletion, the local cache may still have the resources when the cluster is added again
+    private final Map<String, Long> deletedAt = new ConcurrentHashMap<>();
+    private static final long DELETED_TTL_MS = 60_000;
 
     public SparkClusterOperator() {
 
     }
 
     private void updateStatus(SparkCluster cluster, String state) {
-	    for (int i=0; i<3; i++) {
-            try {
-	            setCRStatus(state, cluster.getNamespace(), cluster.getName() );
-		        break;
-	        }
-	        catch(Exception e) {
-	            log.warn("failed to update status {} for {} in {}", state, cluster.getName(), cluster.getNamespace());
-                try {Thread.sleep(500);} catch(Exception t) {}
-	        }
-	    }
+        getStatusWriter().update(namespaceOf(cluster), cluster.getName(), state);
+    }
+
+    private StatusWriter getStatusWriter() {
+        if (null == statusWriter) {
+            statusWriter = new StatusWriter(entityName, this::writeStatus);
+        }
+        return statusWriter;
+    }
+
+    /**
+     * Besides the state, the status of the custom resource carries the times of the cluster's startup (once known) and
+     * the given fields (e.g. the decision of the autoscaler). The other fields of the status are kept.
+     */
+    private void writeStatus(String state, Map<String, Object> fields, String ns, String name) throws Exception {
+        if (!isCrd) {
+            if (null != state) {
+                setCRStatus(state, ns, name);
+            }
+            return;
+        }
+        Map<String, Object> status = null == state ? new LinkedHashMap<>() : CustomResourceStatus.status(state);
+        status.putAll(fields);
+        StartupTracker.Startup startup = getStartups().get(ns, name);
+        if (null != startup && startup.isRecorded()) {
+            status.put("startedAt", CustomResourceStatus.timestamp(startup.getSince()));
+            Optional.ofNullable(startup.getMasterReadySeconds()).ifPresent(s -> status.put("masterReadySeconds", s));
+            Optional.ofNullable(startup.getWorkersReadySeconds()).ifPresent(s -> status.put("workersReadySeconds", s));
+            Optional.ofNullable(startup.getSlowestInitContainer()).ifPresent(s -> status.put("slowestInitContainer", s.toMap()));
+        }
+        getCrStatus().write(ns, name, status);
+    }
+
+    /**
+     * The clusters that are still starting stay in that state until all their pods are ready, the suspended ones stay
+     * suspended.
+     */
+    private String readyOrStarting(String ns, String name) {
+        if (getIdle().isSuspended(ns, name)) {
+            return "suspended";
+        }
+        return getStartups().isStarting(ns, name) ? "starting" : "ready";
     }
 
     @Override
     protected void onInit() {
         log.info("{} operator default spark image = {}", this.entityName, Constants.getDefaultSparkImage());
+        this.watchedNamespace = namespace;
+        this.client = ApiCallMetrics.instrument(client);
+        this.cache = ResourceCache.forNamespace(client, namespace, prefix);
+        // the events are handled on the work queue threads, create the helpers upfront
+        if (StartupDelays.isUsed()) {
+            getStartupDelays().start();
+        }
+        getDeployer();
+        getApplier();
+        getOwners();
+        this.prePuller = ImagePrePuller.forNamespace(client, namespace, prefix);
+        getCache().pods().addListener((action, pod) -> getStartups().podChanged(action, pod));
+        getStartups().start(namespace);
+        getWarmPool().start();
+        getAutoscaler().start();
+        getIdle().start();
+        if (!Constants.useExecProbes()) {
+            new WorkerRegistration(client, MasterStatusPoller.shared(), this::listPods, entityName, prefix).start(namespace);
+        }
     }
 
     @Override
     protected void onAdd(SparkCluster cluster) {
-        KubernetesResourceList list = getDeployer().getResourceList(cluster);
-        client.resourceList(list).inNamespace(namespace).createOrReplace();
-        getClusters().put(cluster);
-        updateStatus(cluster, "ready");
+        enqueue(Action.ADD, cluster);
     }
 
     @Override
     protected void onDelete(SparkCluster cluster) {
-        String name = cluster.getName();
-        updateStatus(cluster, "deleted");
-        client.services().inNamespace(namespace).withLabels(getDeployer().getDefaultLabels(name)).delete();
-        client.replicationControllers().inNamespace(namespace).withLabels(getDeployer().getDefaultLabels(name)).delete();
-        client.pods().inNamespace(namespace).withLabels(getDeployer().getDefaultLabels(name)).delete();
-        client.persistentVolumeClaims().inNamespace(namespace).withLabels(getDeployer().getDefaultLabels(name)).delete();
-        getClusters().delete(name);
+        enqueue(Action.DELETE, cluster);
     }
 
     @Override
     protected void onModify(SparkCluster newCluster) {
+        enqueue(Action.MODIFY, newCluster);
+    }
+
+    /**
+     * The events are processed asynchronously on the shared work queue, so the namespace (that is swapped by the
+     * watcher in the '*' mode) has to be captured now.
+     */
+    private CompletableFuture<Void> enqueue(Action action, SparkCluster cluster) {
+        if (null == cluster.getNamespace()) {
+            cluster.setNamespace(namespace);
+        }
+        EventRecorder.get().event(entityName, action, cluster.getNamespace(), cluster.getName(), cluster);
+        if (Action.ADD == action) {
+            getStartups().received(cluster.getNamespace(), cluster.getName());
+        }
+        return getQueue().submit(entityName, cluster.getNamespace(), cluster.getName(), action, cluster, handler);
+    }
+
+    private void handle(Action action, SparkCluster cluster) {
+        switch (action) {
+            case ADD: add(cluster); break;
+            case MODIFY: modify(cluster); break;
+            case DELETE: delete(cluster); break;
+            case SCALE: scaleWorkers(cluster); break;
+        }
+    }
+
+    private void add(SparkCluster cluster) {
+        String ns = namespaceOf(cluster);
+        boolean recreated = wasDeleted(ns, cluster.getName());
+        boolean created = recreated || !masterExists(ns, cluster.getName());
+        getAutoscaler().apply(ns, cluster, created ? null : workerReplicas(ns, cluster.getName()));
+        getIdle().apply(ns, cluster);
+        KubernetesResourceList list = render(cluster);
+        // the pods of an adopted warm unit get the labels of the new rcs, so the rcs don't start their own
+        if (created && WarmPool.isUsed()) {
+            getWarmPool().adopt(ns, cluster, list);
+        }
+        getApplier().apply(client, list, ns, recreated);
+        getClusters().put(cluster);
+        // switched to ready by the startup tracker once the pods are ready
+        updateStatus(cluster, "starting");
+        getStartups().track(cluster, ns, created);
+    }
+
+    private boolean wasDeleted(String ns, String name) {
+        Long time = deletedAt.remove(ns + "/" + name);
+        return null != time && time > System.currentTimeMillis() - DELETED_TTL_MS;
+    }
+
+    // after the restart of the operator, the clusters that are already running are added again
+    private boolean masterExists(String ns, String name) {
+        return getCache().replicationControllers().hasSynced()
+                ? null != getCache().replicationControllers().get(ns, name + "-m")
+                : null != client.replicationControllers().inNamespace(ns).withName(name + "-m").get();
+    }
+
+    private ReplicationController workerRc(String ns, String name) {
+        return getCache().replicationControllers().hasSynced()
+                ? getCache().replicationControllers().get(ns, name + "-w")
+                : client.replicationControllers().inNamespace(ns).withName(name + "-w").get();
+    }
+
+    // a suspended cluster counts with the workers it will get back
+    private Integer workerReplicas(String ns, String name) {
+        ReplicationController rc = workerRc(ns, name);
+        return null == rc ? null : Optional.ofNullable(IdleSuspender.suspendedWorkers(rc, prefix)).orElse(rc.getSpec().getReplicas());
+    }
+
+    private void delete(SparkCluster cluster) {
+        String name = cluster.getName();
+        String ns = namespaceOf(cluster);
+        // the custom resource is gone, there is no status to write
+        // the resources owned by the deleted custom resource are removed by the garbage collector anyway, but the
+        // local cache can't prove there is nothing else (e.g. resources created a moment ago or without an owner)
+        new Teardown(client, entityName, ns).delete(getDeployer().getResourcesForDeletion(name)).finish();
+        getStartups().forget(ns, name);
+        getOwners().forget(ns, name);
+        getDependencyCache().release(ns, name);
+        getDataStaging().release(ns, name);
+        prePuller.release(entityName, ns, name);
+        getWarmPool().forget(ns, name);
+        getAutoscaler().forget(ns, name);
+        getIdle().forget(ns, name);
+        getClusters().delete(ns, name);
+        long now = System.currentTimeMillis();
+        deletedAt.values().removeIf(time -> time <= now - DELETED_TTL_MS);
+        deletedAt.put(ns + "/" + name, now);
+    }
+
+    private void modify(SparkCluster newCluster) {
         String name = newCluster.getName();
+        String ns = namespaceOf(newCluster);
 
         // if an empty master/worker was passed
         if (null == newCluster.getMaster()) {
@@ -97,35 +274,201 @@ public class SparkClusterOperator extends AbstractOperator<SparkCluster> {
         if (null == newCluster.getWorker()) {
             newCluster.setWorker(new Worker());
         }
+        SparkCluster existingCluster = getClusters().getCluster(ns, name);
+        // the number of workers of an autoscaled cluster is the autoscaler's, not the one from the spec
+        getAutoscaler().apply(ns, newCluster, Optional.ofNullable(existingCluster).map(SparkCluster::getWorker)
+                .map(Worker::getInstances).orElse(null));
+        getIdle().apply(ns, newCluster);
         int newWorkers = Optional.ofNullable(newCluster.getWorker()).orElse(new Worker()).getInstances();
 
-        SparkCluster existingCluster = getClusters().getCluster(name);
         if (null == existingCluster) {
             log.error("something went wrong, unable to scale existing cluster. Perhaps it wasn't deployed properly.");
             updateStatus(newCluster, "error, unable to scale existing cluster");
             return;
         }
 
-        if (isOnlyScale(existingCluster, newCluster)) {
-            log.info("{}scaling{} from  {}{}{} worker replicas to  {}{}{}", re(), xx(), ye(),
-                    existingCluster.getWorker().getInstances(), xx(), ye(), newWorkers, xx());
-            client.replicationControllers().inNamespace(namespace).withName(name + "-w").scale(newWorkers);
+        EnumSet<Change> changes = ChangeClassifier.classify(existingCluster, newCluster);
+        if (changes.isEmpty()) {
+            log.debug("no change in the resources of cluster {}", name);
+            // the policies (autoscaling, idle) may have changed, they are read from the stored copy
+            getClusters().put(newCluster);
+            if (IdleSuspender.isUsed(newCluster) && getIdle().isSuspended(ns, name) && wakeRequested(ns, name)
+                    && getIdle().wake(ns, name)) {
+                scaleWorkers(newCluster);
+            }
+            return;
+        }
+        log.info("changes in cluster {}: {}", name, changes);
 
-            // update metrics
-            MetricsHelper.workers.labels(newCluster.getName(), namespace).set(newCluster.getWorker().getInstances());
-            updateStatus(newCluster, "scaled");
-        } else {
+        if (changes.contains(Change.STRUCTURE)) {
             log.info("{}recreating{} cluster  {}{}{}", re(), xx(), ye(), existingCluster.getName(), xx());
-            KubernetesResourceList list = getDeployer().getResourceList(newCluster);
+            KubernetesResourceList list = render(newCluster);
             try {
-                client.resourceList(list).inNamespace(namespace).createOrReplace();
+                getApplier().apply(client, list, ns);
             } catch (Exception e) {
                 log.warn("{}deleting and creating{} cluster  {}{}{}", re(), xx(), ye(), existingCluster.getName(), xx());
-                client.resourceList(list).inNamespace(namespace).delete();
-                client.resourceList(list).inNamespace(namespace).createOrReplace();
+                client.resourceList(list).inNamespace(ns).delete();
+                client.resourceList(list).inNamespace(ns).createOrReplace();
             }
             getClusters().put(newCluster);
-            updateStatus(newCluster, "ready");
+            updateStatus(newCluster, readyOrStarting(ns, name));
+            return;
+        }
+
+        int oldWorkers = Optional.ofNullable(existingCluster.getWorker()).map(Worker::getInstances).orElse(newWorkers);
+        if (changes.equals(EnumSet.of(Change.SCALE))) {
+            log.info("{}scaling{} from  {}{}{} worker replicas to  {}{}{}", re(), xx(), ye(), oldWorkers, xx(), ye(), newWorkers, xx());
+            getScaleDown().prepare(ns, name, oldWorkers, newWorkers);
+            client.replicationControllers().inNamespace(ns).withName(name + "-w").scale(newWorkers);
+
+            // update metrics
+            MetricsHelper.workers.labels(newCluster.getName(), ns).set(newCluster.getWorker().getInstances());
+            getClusters().put(newCluster);
+            getStartups().scaled(ns, name, newWorkers);
+            updateStatus(newCluster, getStartups().isStarting(ns, name) ? "starting" : "scaled");
+            return;
+        }
+
+        // the rcs and services are written only if their spec hash has changed (the replicas are part of the hash)
+        if (changes.contains(Change.SCALE)) {
+            getScaleDown().prepare(ns, name, oldWorkers, newWorkers);
+        }
+        KubernetesResourceList list = render(newCluster);
+        getApplier().apply(client, list, ns);
+        if (changes.contains(Change.LABELS)) {
+            patchPodLabels(existingCluster, list, ns);
+        }
+        if (changes.contains(Change.MASTER_TEMPLATE) || changes.contains(Change.CONFIG)) {
+            log.info("{}restarting{} master of cluster  {}{}{}", re(), xx(), ye(), name, xx());
+            restartPods(ns, name, name + "-m");
+        }
+        if (changes.contains(Change.WORKER_TEMPLATE) || changes.contains(Change.CONFIG)) {
+            log.info("{}restarting{} workers of cluster  {}{}{}", re(), xx(), ye(), name, xx());
+            restartPods(ns, name, name + "-w");
+        }
+        MetricsHelper.workers.labels(newCluster.getName(), ns).set(newCluster.getWorker().getInstances());
+        getClusters().put(newCluster);
+        getStartups().scaled(ns, name, newWorkers);
+        updateStatus(newCluster, readyOrStarting(ns, name));
+    }
+
+    /**
+     * Scales the workers to the number decided by the autoscaler (or to zero when the cluster is suspended by its idle
+     * policy and back when it's woken up), unless the cluster has been scaled (or deleted) by an event processed in
+     * the meantime. The worker rc carries the number of workers to restore while it's suspended.
+     */
+    private void scaleWorkers(SparkCluster cluster) {
+        String name = cluster.getName();
+        String ns = namespaceOf(cluster);
+        boolean suspended = getIdle().isSuspended(ns, name);
+        Integer target = suspended ? Integer.valueOf(0)
+                : Optional.ofNullable(getAutoscaler().target(ns, name)).orElse(getIdle().workers(ns, name));
+        SparkCluster existingCluster = getClusters().getCluster(ns, name);
+        if (null == target || null == existingCluster || null == existingCluster.getWorker()
+                || target.equals(existingCluster.getWorker().getInstances())) {
+            return;
+        }
+        log.info("{}{}{} from  {}{}{} worker replicas to  {}{}{}", re(), suspended ? "suspending" : "scaling", xx(), ye(),
+                existingCluster.getWorker().getInstances(), xx(), ye(), target, xx());
+        getScaleDown().prepare(ns, name, existingCluster.getWorker().getInstances(), target);
+        Map<String, String> annotations = getIdle().annotations(ns, name);
+        client.replicationControllers().inNamespace(ns).withName(name + "-w").edit()
+                .editMetadata().removeFromAnnotations(prefix + IdleSuspender.SUSPENDED_WORKERS_ANNOTATION).addToAnnotations(annotations).endMetadata()
+                .editSpec().withReplicas(target).endSpec()
+                .done();
+        existingCluster.getWorker().setInstances(target);
+        MetricsHelper.workers.labels(name, ns).set(target);
+        getStartups().scaled(ns, name, target);
+        updateStatus(existingCluster, suspended ? "suspended" : getStartups().isStarting(ns, name) ? "starting" : "scaled");
+    }
+
+    /**
+     * The user asks to wake up a suspended cluster by the <code>radanalytics.io/wake</code> annotation on the custom
+     * resource (or the config map), it's removed once seen.
+     */
+    private boolean wakeRequested(String ns, String name) {
+        String annotation = prefix + IdleSuspender.WAKE_ANNOTATION;
+        try {
+            if (isCrd) {
+                return null != getCrStatus().removeAnnotation(ns, name, annotation);
+            }
+            ConfigMap cm = client.configMaps().inNamespace(ns).withName(name).get();
+            if (null == cm || null == cm.getMetadata().getAnnotations() || !cm.getMetadata().getAnnotations().containsKey(annotation)) {
+                return false;
+            }
+            client.configMaps().inNamespace(ns).withName(name).edit()
+                    .editMetadata().removeFromAnnotations(annotation).endMetadata().done();
+            return true;
+        } catch (Exception e) {
+            log.warn("unable to read the wake-up request of cluster {} in {}: {}", name, ns, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Renders the resources of the cluster and makes the custom resource their owner (unless disabled). The shared
+     * resolution of the maven dependencies and the staging of the data are started first, if they are used. The image
+     * is pre-pulled on all the nodes (if enabled).
+     */
+    private KubernetesResourceList render(SparkCluster cluster) {
+        if (MavenDependencyCache.isUsed(cluster)) {
+            getDependencyCache().ensure(namespaceOf(cluster), cluster);
+        } else {
+            getDependencyCache().release(namespaceOf(cluster), cluster.getName());
+        }
+        if (DataStaging.isUsed(cluster)) {
+            getDataStaging().ensure(namespaceOf(cluster), cluster);
+        } else {
+            getDataStaging().release(namespaceOf(cluster), cluster.getName());
+        }
+        prePuller.use(entityName, namespaceOf(cluster), cluster.getName(),
+                Optional.ofNullable(cluster.getCustomImage()).orElse(Constants.getDefaultSparkImage()));
+        KubernetesResourceList list = getDeployer().getResourceList(cluster);
+        getIdle().annotate(namespaceOf(cluster), cluster.getName(), list);
+        if (Constants.useOwnerReferences()) {
+            getOwners().setOwner(list, namespaceOf(cluster), cluster.getName());
+        }
+        return list;
+    }
+
+    /**
+     * Replication controllers don't roll their pods when the template changes, so the pods are deleted and the rc
+     * creates them again from the new template.
+     */
+    private void restartPods(String ns, String clusterName, String podName) {
+        Map<String, String> selector = getDeployer().getDefaultLabels(clusterName);
+        selector.put(prefix + OPERATOR_DEPLOYMENT_LABEL, podName);
+        client.pods().inNamespace(ns).withLabels(selector).delete();
+    }
+
+    /**
+     * Sets the labels from the new pod templates on the running pods and removes those the old spec had and the new
+     * one doesn't, without restarting the pods.
+     */
+    private void patchPodLabels(SparkCluster existingCluster, KubernetesResourceList list, String ns) {
+        Set<String> oldUserLabels = new HashSet<>();
+        Optional.ofNullable(existingCluster.getLabels()).ifPresent(l -> oldUserLabels.addAll(l.keySet()));
+        Optional.ofNullable(existingCluster.getMaster()).map(Master::getLabels).ifPresent(l -> oldUserLabels.addAll(l.keySet()));
+        Optional.ofNullable(existingCluster.getWorker()).map(Worker::getLabels).ifPresent(l -> oldUserLabels.addAll(l.keySet()));
+
+        for (Object o : list.getItems()) {
+            if (!(o instanceof ReplicationController)) {
+                continue;
+            }
+            ReplicationController rc = (ReplicationController) o;
+            Map<String, String> newLabels = rc.getSpec().getTemplate().getMetadata().getLabels();
+            Map<String, String> removed = oldUserLabels.stream().filter(k -> !newLabels.containsKey(k))
+                    .collect(Collectors.toMap(Functions.identity(), k -> ""));
+            List<Pod> pods = getCache().pods().hasSynced()
+                    ? getCache().pods().byLabels(ns, rc.getSpec().getSelector())
+                    : client.pods().inNamespace(ns).withLabels(rc.getSpec().getSelector()).list().getItems();
+            pods.forEach(pod -> {
+                Map<String, String> labels = new HashMap<>(Optional.ofNullable(pod.getMetadata().getLabels()).orElse(new HashMap<>()));
+                labels.keySet().removeAll(removed.keySet());
+                labels.putAll(newLabels);
+                client.pods().inNamespace(ns).withName(pod.getMetadata().getName()).edit()
+                        .editMetadata().withLabels(labels).endMetadata().done();
+            });
         }
     }
 
@@ -136,58 +479,119 @@ public class SparkClusterOperator extends AbstractOperator<SparkCluster> {
 //        3. desiredSet - actualSet = toBeCreated
 //        4. actualSet - desiredSet = toBeDeleted
 //        5. modify / scale
-
-        if ("*".equals(namespace)) {
-            log.info("Skipping full reconciliation for namespace '*' (not supported)");
+//        (in the '*' mode, both sets come from a single cluster-wide list and steps 3-5 are done per namespace)
+
+        // the watcher may handle an event (and swap the namespace field) while the pass is running
+        String watched = watchedNamespace;
+        if ("*".equals(watched) && !isCrd) {
+            // config maps don't carry the namespace of the cluster, we can't tell where it belongs
+            log.info("Skipping full reconciliation for namespace '*' (not supported for config maps)");
+            // the events of the existing clusters have been seen by now, nothing else would tell the pre-puller
+            prePuller.usersKnown();
             return;
         }
-        log.info("Running full reconciliation for namespace {} and kind {}..", namespace, entityName);
+        log.info("Running full reconciliation for namespace {} and kind {}..", watched, entityName);
+        EventRecorder.get().reconciliation(entityName, watched);
+        Histogram.Timer passTimer = MetricsHelper.reconciliationDuration.labels(watched).startTimer();
+        Histogram.Timer handlerTimer = MetricsHelper.handlerDuration.labels(entityName, "fullReconciliation").startTimer();
         final AtomicBoolean change = new AtomicBoolean(false);
-        Set<SparkCluster> desiredSet = super.getDesiredSet();
-        Map<String, SparkCluster> desiredMap = desiredSet.stream().collect(Collectors.toMap(SparkCluster::getName, Functions.identity()));
-        Map<String, Integer> actual = getActual();
+        Set<SparkCluster> desiredSet = "*".equals(watched) ? getDesiredSetInAnyNamespace() : getDesiredSet();
+        Map<String, Map<String, SparkCluster>> desired = desiredSet.stream().collect(Collectors.groupingBy(this::namespaceOf,
+                Collectors.toMap(SparkCluster::getName, Functions.identity())));
+        Map<String, Map<String, Integer>> actual = getActual(watched);
 
         log.debug("desired set: {}", desiredSet);
         log.debug("actual: {}", actual);
 
-        Sets.SetView<String> toBeCreated = Sets.difference(desiredMap.keySet(), actual.keySet());
-        Sets.SetView<String> toBeDeleted = Sets.difference(actual.keySet(), desiredMap.keySet());
+        Set<String> namespaces = Sets.union(desired.keySet(), actual.keySet());
+        if (!fullReconciliationRun) {
+            // the users of the shared jobs are kept in memory, the ones from before the restart are known only now
+            namespaces.forEach(ns -> restoreSharedJobs(ns, desired.getOrDefault(ns, Collections.emptyMap()).values()));
+        }
+        List<CompletableFuture<Void>> actions = new ArrayList<>();
+        namespaces.forEach(ns -> reconcileNamespace(ns, desired.getOrDefault(ns, Collections.emptyMap()),
+                actual.getOrDefault(ns, Collections.emptyMap()), actions, change));
+
+        // wait for all the actions of this pass (across all the namespaces)
+        CompletableFuture.allOf(actions.toArray(new CompletableFuture[0])).join();
+
+        // first reconciliation after (re)start -> update the clusters instance
+        if (!fullReconciliationRun) {
+            getClusters().resetMetrics();
+            desiredSet.forEach(c -> getClusters().put(c));
+            prePuller.usersKnown();
+        }
+
+        if (!change.get()) {
+            log.info("no change was detected during the reconciliation");
+        }
+        MetricsHelper.reconciliationsTotal.labels(watched).inc();
+        passTimer.observeDuration();
+        handlerTimer.observeDuration();
+    }
+
+    private void restoreSharedJobs(String ns, Collection<SparkCluster> clusters) {
+        try {
+            if (Constants.useMavenDependencyCache()) {
+                getDependencyCache().restore(ns, clusters);
+            }
+            if (Constants.useDataStaging()) {
+                getDataStaging().restore(ns, clusters);
+            }
+        } catch (KubernetesClientException e) {
+            log.warn("unable to restore the shared jobs in {}: {}", ns, e.getMessage());
+        }
+    }
+
+    private void reconcileNamespace(String ns,
+                                    Map<String, SparkCluster> desiredMap,
+                                    Map<String, Integer> actual,
+                                    List<CompletableFuture<Void>> actions,
+                                    AtomicBoolean change) {
+        desiredMap.values().forEach(c -> {
+            getAutoscaler().apply(ns, c, actual.get(c.getName()));
+            getIdle().apply(ns, c);
+        });
+        ReconciliationPlan plan = ReconciliationPlan.compute(desiredMap, actual);
+        Set<String> toBeCreated = plan.getToBeCreated();
+        Set<String> toBeDeleted = plan.getToBeDeleted();
 
         if (!toBeCreated.isEmpty()) {
-            log.info("toBeCreated: {}", toBeCreated);
+            log.info("toBeCreated in {}: {}", ns, toBeCreated);
             change.set(true);
         }
         if (!toBeDeleted.isEmpty()) {
-            log.info("toBeDeleted: {}", toBeDeleted);
+            log.info("toBeDeleted in {}: {}", ns, toBeDeleted);
             change.set(true);
         }
 
         // add new
         toBeCreated.forEach(cluster -> {
-            log.info("creating cluster {}", cluster);
-            onAdd(desiredMap.get(cluster));
+            log.info("creating cluster {} in {}", cluster, ns);
+            actions.add(submitAction(ns, "create", Action.ADD, desiredMap.get(cluster), handler));
         });
 
         // delete old
         toBeDeleted.forEach(cluster -> {
             SparkCluster c = new SparkCluster();
             c.setName(cluster);
-            log.info("deleting cluster {}", cluster);
-            onDelete(c);
+            c.setNamespace(ns);
+            log.info("deleting cluster {} in {}", cluster, ns);
+            actions.add(submitAction(ns, "delete", Action.DELETE, c, handler));
         });
 
         // scale
-        desiredSet.forEach(dCluster -> {
-            int desiredWorkers = Optional.ofNullable(dCluster.getWorker()).orElse(new Worker()).getInstances();
-            Integer actualWorkers = actual.get(dCluster.getName());
-            if (actualWorkers != null && desiredWorkers != actualWorkers) {
-                change.set(true);
+        plan.getToBeScaled().forEach((name, actualWorkers) -> {
+            SparkCluster dCluster = desiredMap.get(name);
+            change.set(true);
+            actions.add(submitAction(ns, "scale", Action.MODIFY, dCluster, (action, c) -> {
                 // update the internal representation with the actual # of workers and call onModify
-                if (getClusters().getCluster(dCluster.getName()) == null) {
+                if (getClusters().getCluster(ns, dCluster.getName()) == null) {
                     // deep copy via json -> room for optimization
                     ObjectMapper om = new ObjectMapper();
                     try {
                         SparkCluster actualCluster = om.readValue(om.writeValueAsString(dCluster), SparkCluster.class);
+                        actualCluster.setNamespace(ns);
                         Optional.ofNullable(actualCluster.getWorker()).ifPresent(w -> w.setInstances(actualWorkers));
                         getClusters().put(actualCluster);
                     } catch (IOException e) {
@@ -196,72 +600,208 @@ public class SparkClusterOperator extends AbstractOperator<SparkCluster> {
                         return;
                     }
                 } else {
-                    Optional.ofNullable(getClusters().getCluster(dCluster.getName())).map(SparkCluster::getWorker)
+                    Optional.ofNullable(getClusters().getCluster(ns, dCluster.getName())).map(SparkCluster::getWorker)
                             .ifPresent(worker -> worker.setInstances(actualWorkers));
                 }
-                log.info("scaling cluster {}", dCluster.getName());
-                onModify(dCluster);
-            }
+                log.info("scaling cluster {} in {}", dCluster.getName(), ns);
+                modify(dCluster);
+            }));
         });
+    }
 
-        // first reconciliation after (re)start -> update the clusters instance
-        if (!fullReconciliationRun) {
-            getClusters().resetMetrics();
-            desiredMap.entrySet().forEach(e -> getClusters().put(e.getValue()));
-        }
+    /**
+     * Puts the action on the work queue, so it's serialized with the watch events of the same cluster. If there is an
+     * event for the cluster already waiting, they are merged. The failure of one action doesn't affect the others.
+     */
+    private CompletableFuture<Void> submitAction(String ns, String description, Action action, SparkCluster cluster,
+                                                 WorkQueue.Handler<SparkCluster> handler) {
+        MetricsHelper.reconciliationActions.labels(ns, description).inc();
+        return getQueue().submit(entityName, ns, cluster.getName(), action, cluster, handler)
+                .exceptionally(e -> {
+                    log.error("{} of cluster {} in {} failed during the reconciliation", description, cluster.getName(), ns);
+                    return null;
+                });
+    }
 
-        if (!change.get()) {
-            log.info("no change was detected during the reconciliation");
+    private WorkQueue getQueue() {
+        if (null == queue) {
+            queue = WorkQueue.shared();
         }
-        metrics.reconciliationsTotal.labels(namespace).inc();
+        return queue;
+    }
+
+    /**
+     * Lists the custom resources in all the namespaces. The inherited {@link #getDesiredSet()} lists them in the
+     * namespace field, that's the namespace of the event being handled (not '*') while the watcher is in the handler.
+     */
+    protected Set<SparkCluster> getDesiredSetInAnyNamespace() {
+        ObjectMapper om = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        return getCrStatus().listInAnyNamespace().stream().flatMap(cr -> {
+            try {
+                return Stream.of(convertCr(om.convertValue(cr, InfoClass.class)));
+            } catch (Exception e) {
+                log.warn("unable to convert custom resource {}: {}", cr.get("metadata"), e.getMessage());
+                return Stream.empty();
+            }
+        }).collect(Collectors.toSet());
     }
 
-    private Map<String, Integer> getActual() {
+    /**
+     * Lists all the worker replication controllers managed by this operator and groups them by namespace and cluster
+     * name. Once the local cache has been synced, it's read from there, otherwise a single list request is made (even
+     * in the '*' mode).
+     *
+     * @param watched the namespace watched by the operator, '*' for all of them
+     * @return namespace -> (cluster name -> number of worker replicas)
+     */
+    private Map<String, Map<String, Integer>> getActual(String watched) {
         MixedOperation<ReplicationController, ReplicationControllerList, DoneableReplicationController, RollableScalableResource<ReplicationController, DoneableReplicationController>> aux1 =
                 client.replicationControllers();
         FilterWatchListMultiDeletable<ReplicationController, ReplicationControllerList, Boolean, Watch, Watcher<ReplicationController>> aux2 =
-                "*".equals(namespace) ? aux1.inAnyNamespace() : aux1.inNamespace(namespace);
+                "*".equals(watched) ? aux1.inAnyNamespace() : aux1.inNamespace(watched);
         Map<String, String> labels =new HashMap<>(2);
         labels.put(prefix + OPERATOR_KIND_LABEL, entityName);
         labels.put(prefix + OPERATOR_RC_TYPE_LABEL, "worker");
-        List<ReplicationController> workerRcs = aux2.withLabels(labels).list().getItems();
-        Map<String, Integer> retMap = workerRcs
+        List<ReplicationController> workerRcs = getCache().replicationControllers().hasSynced()
+                ? getCache().replicationControllers().byLabels(watched, labels)
+                : aux2.withLabels(labels).list().getItems();
+        Map<String, Map<String, Integer>> retMap = workerRcs
                 .stream()
-                .collect(Collectors.toMap(rc -> rc.getMetadata().getLabels().get(prefix + entityName),
-                        rc -> rc.getSpec().getReplicas()));
+                .collect(Collectors.groupingBy(rc -> rc.getMetadata().getNamespace(),
+                        Collectors.toMap(rc -> rc.getMetadata().getLabels().get(prefix + entityName),
+                                // k8s defaults the missing replicas to 1, a copied rc with the same labels mustn't break the reconciliation
+                                rc -> Optional.ofNullable(rc.getSpec().getReplicas()).orElse(1), (r1, r2) -> r1)));
         return retMap;
     }
 
+    /**
+     * In the '*' mode the <code>namespace</code> field is swapped by the watcher for each event, so the namespace of the
+     * entity itself is preferred. The config map based entities don't carry the namespace.
+     */
+    private String namespaceOf(SparkCluster cluster) {
+        return null != cluster.getNamespace() ? cluster.getNamespace() : namespace;
+    }
+
     public KubernetesSparkClusterDeployer getDeployer() {
         if (this.deployer == null) {
-            this.deployer = new KubernetesSparkClusterDeployer(client, entityName, prefix, namespace);
+            this.deployer = new KubernetesSparkClusterDeployer(client, getCache(), entityName, prefix, watchedNamespace,
+                    StartupDelays.isUsed() ? getStartupDelays() : null);
         }
         return deployer;
     }
 
-    private RunningClusters getClusters() {
-        if (null == clusters) {
-            clusters = new RunningClusters(namespace);
+    private ResourceCache getCache() {
+        if (null == cache) {
+            cache = ResourceCache.forNamespace(client, watchedNamespace, prefix);
         }
-        return clusters;
+        return cache;
     }
 
+    private ResourceApplier getApplier() {
+        if (null == applier) {
+            applier = new ResourceApplier(getCache(), prefix);
+        }
+        return applier;
+    }
 
-    /**
-     * This method verifies if any two instances of SparkCluster are the same ones up to the number of
-     * workers. This way we can call the scale instead of recreating the whole cluster.
-     *
-     * @param oldC the first instance of SparkCluster we are comparing
-     * @param newC the second instance of SparkCluster we are comparing
-     * @return true if both instances represent the same spark cluster but differs only in number of workers (it is safe
-     * to call scale method)
-     */
-    private boolean isOnlyScale(SparkCluster oldC, SparkCluster newC) {
-        boolean retVal = oldC.getWorker().getInstances() != newC.getWorker().getInstances();
-        int backup = Optional.ofNullable(newC.getWorker()).orElse(new Worker()).getInstances();
-        newC.getWorker().setInstances(oldC.getWorker().getInstances());
-        retVal &= oldC.equals(newC);
-        newC.getWorker().setInstances(backup);
-        return retVal;
+    private OwnerReferences getOwners() {
+        if (null == owners) {
+            owners = new OwnerReferences(client, getCache(), entityName, pluralName, prefix, isCrd);
+        }
+        return owners;
+    }
+
+    private StartupTracker getStartups() {
+        if (null == startups) {
+            startups = new StartupTracker(entityName, prefix, this::listPods,
+                    (ns, startup) -> {
+                        getStatusWriter().update(ns, startup.getCluster().getName(),
+                                getIdle().isSuspended(ns, startup.getCluster().getName()) ? "suspended" : "ready");
+                        getWarmPool().ready(ns, startup.getCluster().getName(),
+                                Optional.ofNullable(startup.getWorkersReadySeconds()).orElse(startup.getMasterReadySeconds()));
+                    }, StartupDelays.isUsed() ? getStartupDelays() : null);
+        }
+        return startups;
+    }
+
+    private List<Pod> listPods(String ns, Map<String, String> labels) {
+        return getCache().pods().hasSynced()
+                ? getCache().pods().byLabels(ns, labels)
+                : ("*".equals(ns) ? client.pods().inAnyNamespace() : client.pods().inNamespace(ns)).withLabels(labels).list().getItems();
+    }
+
+    private MavenDependencyCache getDependencyCache() {
+        if (null == dependencyCache) {
+            dependencyCache = new MavenDependencyCache(client, entityName, prefix);
+        }
+        return dependencyCache;
+    }
+
+    private WarmPool getWarmPool() {
+        if (null == warmPool) {
+            warmPool = new WarmPool(client, getCache(), getDeployer(), entityName, prefix, watchedNamespace);
+        }
+        return warmPool;
+    }
+
+    private Autoscaler getAutoscaler() {
+        if (null == autoscaler) {
+            autoscaler = new Autoscaler(entityName, MasterStatusPoller.shared(),
+                    MasterStatusPoller.masterPod(this::listPods, prefix),
+                    (ns, name, workers) -> Optional.ofNullable(getClusters().getCluster(ns, name)).ifPresent(c ->
+                            getQueue().submit(entityName, ns, name, Action.SCALE, c, handler)),
+                    // through the status writer, so that it doesn't race the writes of the state
+                    (ns, name, status) -> {
+                        if (isCrd) {
+                            getStatusWriter().merge(ns, name, status);
+                        }
+                    });
+        }
+        return autoscaler;
+    }
+
+    private IdleSuspender getIdle() {
+        if (null == idle) {
+            idle = new IdleSuspender(entityName, prefix, MasterStatusPoller.shared(),
+                    MasterStatusPoller.masterPod(this::listPods, prefix), this::workerRc,
+                    (ns, name) -> Optional.ofNullable(getClusters().getCluster(ns, name)).ifPresent(c ->
+                            getQueue().submit(entityName, ns, name, Action.SCALE, c, handler)));
+        }
+        return idle;
+    }
+
+    private WorkerScaleDown getScaleDown() {
+        if (null == scaleDown) {
+            scaleDown = new WorkerScaleDown(client, MasterStatusPoller.shared(), this::listPods, entityName, prefix);
+        }
+        return scaleDown;
+    }
+
+    private StartupDelays getStartupDelays() {
+        if (null == startupDelays) {
+            startupDelays = new StartupDelays(client, prefix, watchedNamespace);
+        }
+        return startupDelays;
+    }
+
+    private DataStaging getDataStaging() {
+        if (null == dataStaging) {
+            dataStaging = new DataStaging(client, entityName, prefix);
+        }
+        return dataStaging;
+    }
+
+    private CustomResourceStatus getCrStatus() {
+        if (null == crStatus) {
+            crStatus = new CustomResourceStatus(client, prefix, pluralName);
+        }
+        return crStatus;
+    }
+
+    private RunningClusters getClusters() {
+        if (null == clusters) {
+            clusters = new RunningClusters(watchedNamespace);
+        }
+        return clusters;
     }
 }
@@ -0,0 +1,121 @@
+package io.radanalytics.operator.cluster;
+
+import io.fabric8.kubernetes.api.model.*;
+import io.radanalytics.operator.Constants;
+import io.radanalytics.types.SparkCluster;
+
+import java.util.*;
+
+/**
+ * Renders the final Spark configuration files of the cluster into a config map, instead of assembling them in the pods
+ * by the <code>backup-config</code> and <code>override-config</code> init containers. The config map contains all the
+ * files of the config map with overrides (see {@link InitContainersHelper#getExpectedCMName(SparkCluster)}) and the
+ * <code>spark-defaults.conf</code> with the <code>sparkConfiguration</code> appended to the one from the config map.
+ * Each file is mounted over the one in <code>$SPARK_HOME/conf</code>, the other files from the image stay untouched.
+ *
+ * Unlike the init containers, the operator can't read the <code>spark-defaults.conf</code> of the image, so if only
+ * the <code>sparkConfiguration</code> is set, the rendered file contains only those entries. That's why it's used only
+ * if the init containers are turned off (<code>SPARK_CONFIG_INIT_CONTAINERS=false</code>).
+ */
+class SparkConfigOverlay {
+
+    static final String SPARK_DEFAULTS = "spark-defaults.conf";
+    static final String CONFIG_LABEL = "config";
+    private static final String VOLUME_NAME = "spark-conf-overlay";
+
+    /**
+     * @param cluster the spark cluster
+     * @param cmData data of the config map with overrides or null if it doesn't exist
+     * @return whether the rendered config map should be used
+     */
+    static boolean isUsed(SparkCluster cluster, Map<String, String> cmData) {
+        return !Constants.useConfigInitContainers() && hasConfiguration(cluster, cmData);
+    }
+
+    /**
+     * @param cluster the spark cluster
+     * @param cmData data of the config map with overrides or null if it doesn't exist
+     * @return whether there is anything to render
+     */
+    static boolean hasConfiguration(SparkCluster cluster, Map<String, String> cmData) {
+        return !cluster.getSparkConfiguration().isEmpty() || hasData(cmData);
+    }
+
+    /**
+     * @param clusterName name of the cluster
+     * @return name of the rendered config map
+     */
+    static String name(String clusterName) {
+        return clusterName + "-spark-conf";
+    }
+
+    /**
+     * The rendered config map must not carry the kind label, otherwise it'd be taken for a cluster definition when the
+     * operator watches config maps.
+     */
+    static Map<String, String> labels(String prefix, String entityName, String clusterName) {
+        Map<String, String> labels = new HashMap<>(2);
+        labels.put(prefix + entityName, clusterName);
+        labels.put(prefix + CONFIG_LABEL, "rendered");
+        return labels;
+    }
+
+    /**
+     * @param cluster the spark cluster with the final spark configuration
+     * @param cmData data of the config map with overrides or null if it doesn't exist
+     * @return the files to be mounted to <code>$SPARK_HOME/conf</code>
+     */
+    static Map<String, String> files(SparkCluster cluster, Map<String, String> cmData) {
+        // sorted, so that the spec hash doesn't depend on the order of the keys in the config map
+        Map<String, String> files = new TreeMap<>();
+        if (hasData(cmData)) {
+            files.putAll(cmData);
+        }
+        if (!cluster.getSparkConfiguration().isEmpty()) {
+            StringBuilder defaults = new StringBuilder(files.getOrDefault(SPARK_DEFAULTS, ""));
+            if (defaults.length() > 0 && defaults.charAt(defaults.length() - 1) != '\n') {
+                defaults.append('\n');
+            }
+            cluster.getSparkConfiguration().forEach(kv -> defaults.append(kv.getName()).append(' ').append(kv.getValue()).append('\n'));
+            files.put(SPARK_DEFAULTS, defaults.toString());
+        }
+        return files;
+    }
+
+    /**
+     * @param cluster the spark cluster with the final spark configuration
+     * @param cmData data of the config map with overrides or null if it doesn't exist
+     * @param labels labels of the config map
+     * @return the rendered config map
+     */
+    static ConfigMap configMap(SparkCluster cluster, Map<String, String> cmData, Map<String, String> labels) {
+        return new ConfigMapBuilder().withNewMetadata().withName(name(cluster.getName())).withLabels(labels).endMetadata()
+                .withData(files(cluster, cmData)).build();
+    }
+
+    /**
+     * Mounts each of the rendered files over the one in <code>$SPARK_HOME/conf</code>.
+     *
+     * @param rc rendered master or worker replication controller
+     * @param cluster the spark cluster with the final spark configuration
+     * @param cmData data of the config map with overrides or null if it doesn't exist
+     */
+    static void addToPod(ReplicationController rc, SparkCluster cluster, Map<String, String> cmData) {
+        PodSpec podSpec = rc.getSpec().getTemplate().getSpec();
+        String confDir = InitContainersHelper.getSparkHome(cluster).replaceAll("/+$", "") + "/conf/";
+        Volume volume = new VolumeBuilder().withName(VOLUME_NAME)
+                .withNewConfigMap().withName(name(cluster.getName())).endConfigMap().build();
+        List<VolumeMount> mounts = podSpec.getContainers().get(0).getVolumeMounts();
+        files(cluster, cmData).keySet().forEach(file -> mounts.add(new VolumeMountBuilder()
+                .withName(VOLUME_NAME)
+                .withMountPath(confDir + file)
+                .withSubPath(file)
+                .withReadOnly(true)
+                .build()));
+        podSpec.getVolumes().add(volume);
+    }
+
+    private static boolean hasData(Map<String, String> cmData) {
+        return null != cmData && !cmData.isEmpty();
+    }
+}
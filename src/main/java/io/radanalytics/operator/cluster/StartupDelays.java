@@ -0,0 +1,314 @@
+package io.radanalytics.operator.cluster;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.ConfigMapBuilder;
+import io.fabric8.kubernetes.api.model.ContainerStatus;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodCondition;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.radanalytics.operator.Constants;
+import io.radanalytics.types.SparkCluster;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static io.radanalytics.operator.Constants.OPERATOR_TYPE_MASTER_LABEL;
+import static io.radanalytics.operator.Constants.OPERATOR_TYPE_WORKER_LABEL;
+
+/**
+ * Learns the initial delays of the probes from the observed startups instead of guessing them by
+ * {@link InitContainersHelper#getExpectedDelay}. The pod templates carry the <code>radanalytics.io/startup-profile</code>
+ * annotation with everything the startup time depends on (pod type, image, cpu, config init containers, downloads and
+ * maven dependencies) and the time from the start of the spark container to the moment it was ready is recorded for
+ * the profile. The last {@link #WINDOW} samples of each profile are kept and once there are {@link #MIN_SAMPLES} of
+ * them, the new rcs get:
+ * <ul>
+ *     <li>the readiness probe starting a bit before the 10th percentile, so the fast pods aren't held back</li>
+ *     <li>the liveness probe starting at the 99th percentile, so the slow pods aren't restarted</li>
+ * </ul>
+ * A pod restarted by the liveness probe is measured from the start of its previous container, so the delays grow
+ * after such restarts.
+ *
+ * The samples are kept in the <code>spark-operator-startup-times</code> config map in the namespace of the operator,
+ * so they survive its restart.
+ */
+class StartupDelays {
+
+    static final String PROFILE_ANNOTATION = "startup-profile";
+    static final String CONFIG_MAP_NAME = "spark-operator-startup-times";
+    static final String DATA_KEY = "samples.json";
+    static final int WINDOW = 50;
+    static final int MIN_SAMPLES = 5;
+    private static final int MAX_PROFILES = 256;
+    private static final int MAX_SAMPLE_SECONDS = 3600;
+    // the readiness probe starts before the fastest startups, otherwise the samples (and the delay) could never go down
+    private static final int READINESS_HEADROOM_SECONDS = 2;
+    private static final long SAVE_PERIOD_S = 60;
+
+    private static final Logger log = LoggerFactory.getLogger(StartupDelays.class.getName());
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final KubernetesClient client;
+    private final String prefix;
+    private final String namespace;
+    // in the access order, the least recently used profile is dropped first
+    private final LinkedHashMap<String, Deque<Integer>> samples = new LinkedHashMap<>(16, .75f, true);
+    private final Set<String> observed = Collections.newSetFromMap(new LinkedHashMap<String, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > 10_000;
+        }
+    });
+    private final long since;
+    private boolean dirty;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param client k8s client (<code>null</code> to keep the samples only in memory)
+     * @param prefix prefix of the operator's annotations
+     * @param namespace watched namespace or '*'
+     */
+    StartupDelays(KubernetesClient client, String prefix, String namespace) {
+        this(client, prefix, namespace, System.currentTimeMillis());
+    }
+
+    // visible for the tests
+    StartupDelays(KubernetesClient client, String prefix, String namespace, long since) {
+        this.client = client;
+        this.prefix = prefix;
+        // in the '*' mode the samples live in the namespace of the operator
+        this.namespace = "*".equals(namespace) && null != client ? Optional.ofNullable(client.getNamespace()).orElse("default") : namespace;
+        this.since = since;
+    }
+
+    static boolean isUsed() {
+        return Constants.useAdaptiveProbeDelays();
+    }
+
+    /**
+     * Loads the samples from the config map and starts saving them periodically.
+     */
+    void start() {
+        load();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "startup-delays");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::save, SAVE_PERIOD_S, SAVE_PERIOD_S, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param cluster the spark cluster
+     * @param cmExists if the config map with overrides exists
+     * @param isMaster whether it's the master or the worker
+     * @return everything the startup time of the pod depends on, in the same terms as
+     * {@link InitContainersHelper#getExpectedDelay}
+     */
+    static String profile(SparkCluster cluster, boolean cmExists, boolean isMaster) {
+        StringBuilder sb = new StringBuilder(isMaster ? OPERATOR_TYPE_MASTER_LABEL : OPERATOR_TYPE_WORKER_LABEL);
+        sb.append(",image=").append(Optional.ofNullable(cluster.getCustomImage()).orElse(Constants.getDefaultSparkImage()));
+        String cpu = isMaster ? (null == cluster.getMaster() ? null : cluster.getMaster().getCpu())
+                : (null == cluster.getWorker() ? null : cluster.getWorker().getCpu());
+        sb.append(",cpu=").append(null == cpu ? "-" : cpu);
+        if (Constants.useConfigInitContainers()) {
+            sb.append(",config=").append(cmExists).append('/').append(!cluster.getSparkConfiguration().isEmpty());
+        }
+        sb.append(",downloads=").append(DataStaging.isUsed(cluster) ? "staged" : String.valueOf(cluster.getDownloadData().size()));
+        sb.append(",deps=").append(MavenDependencyCache.isUsed(cluster) ? "cached" : String.valueOf(cluster.getMavenDependencies().size()));
+        return sb.toString();
+    }
+
+    /**
+     * @param profile profile of the pod
+     * @return the learned delays or <code>null</code> if there aren't enough samples
+     */
+    synchronized Learned get(String profile) {
+        Deque<Integer> window = samples.get(profile);
+        if (null == window || window.size() < MIN_SAMPLES) {
+            return null;
+        }
+        int[] sorted = window.stream().mapToInt(Integer::intValue).sorted().toArray();
+        return new Learned(Math.max(0, percentile(sorted, 10) - READINESS_HEADROOM_SECONDS), percentile(sorted, 99), sorted.length);
+    }
+
+    /**
+     * Nearest-rank percentile.
+     */
+    static int percentile(int[] sorted, int p) {
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.min(sorted.length - 1, Math.max(0, rank - 1))];
+    }
+
+    /**
+     * Records the startup of the pod, once per pod, when its containers become ready. Called for each pod the startup
+     * tracker sees.
+     */
+    void observe(Pod pod) {
+        Map<String, String> annotations = pod.getMetadata().getAnnotations();
+        String profile = null == annotations ? null : annotations.get(prefix + PROFILE_ANNOTATION);
+        if (null == profile || null == pod.getMetadata().getUid() || null == pod.getStatus()
+                || null == pod.getStatus().getContainerStatuses() || pod.getStatus().getContainerStatuses().isEmpty()) {
+            return;
+        }
+        Long readyAt = readyAt(pod);
+        Long startedAt = startedAt(pod.getStatus().getContainerStatuses().get(0));
+        // the pods that got ready before the operator started have been recorded by its previous run
+        if (null == readyAt || null == startedAt || readyAt < since) {
+            return;
+        }
+        long seconds = TimeUnit.MILLISECONDS.toSeconds(readyAt - startedAt);
+        if (seconds < 0 || seconds > MAX_SAMPLE_SECONDS) {
+            return;
+        }
+        synchronized (this) {
+            if (!observed.add(pod.getMetadata().getUid())) {
+                return;
+            }
+            record(profile, (int) seconds);
+        }
+    }
+
+    // visible for the tests
+    synchronized void record(String profile, int seconds) {
+        Deque<Integer> window = samples.computeIfAbsent(profile, k -> new ArrayDeque<>(WINDOW));
+        window.addLast(seconds);
+        while (window.size() > WINDOW) {
+            window.removeFirst();
+        }
+        while (samples.size() > MAX_PROFILES) {
+            samples.remove(samples.keySet().iterator().next());
+        }
+        dirty = true;
+        log.debug("pod with profile {} was ready after {}s", profile, seconds);
+    }
+
+    private static Long readyAt(Pod pod) {
+        if (null == pod.getStatus().getConditions()) {
+            return null;
+        }
+        // the ready condition of the workers also waits for the registration with the master (the readiness gate)
+        Optional<PodCondition> ready = pod.getStatus().getConditions().stream()
+                .filter(c -> "ContainersReady".equals(c.getType())).findFirst();
+        if (!ready.isPresent()) {
+            ready = pod.getStatus().getConditions().stream().filter(c -> "Ready".equals(c.getType())).findFirst();
+        }
+        return ready.filter(c -> "True".equals(c.getStatus())).map(PodCondition::getLastTransitionTime)
+                .map(StartupDelays::parse).orElse(null);
+    }
+
+    /**
+     * @return start of the previous container if it has been restarted (by the liveness probe that came too early),
+     * start of the running one otherwise
+     */
+    private static Long startedAt(ContainerStatus status) {
+        if (null != status.getLastState() && null != status.getLastState().getTerminated()
+                && null != status.getLastState().getTerminated().getStartedAt()) {
+            return parse(status.getLastState().getTerminated().getStartedAt());
+        }
+        if (null != status.getState() && null != status.getState().getRunning()) {
+            return parse(status.getState().getRunning().getStartedAt());
+        }
+        return null;
+    }
+
+    private static Long parse(String time) {
+        try {
+            return null == time ? null : Instant.parse(time).toEpochMilli();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private void load() {
+        if (null == client) {
+            return;
+        }
+        try {
+            ConfigMap cm = client.configMaps().inNamespace(namespace).withName(CONFIG_MAP_NAME).get();
+            if (null == cm || null == cm.getData() || null == cm.getData().get(DATA_KEY)) {
+                return;
+            }
+            LinkedHashMap<String, List<Integer>> stored = mapper.readValue(cm.getData().get(DATA_KEY),
+                    new TypeReference<LinkedHashMap<String, List<Integer>>>() { });
+            synchronized (this) {
+                stored.forEach((profile, values) -> values.forEach(v -> record(profile, v)));
+                dirty = false;
+            }
+            log.info("loaded the startup times of {} pod profiles", stored.size());
+        } catch (Exception e) {
+            log.warn("unable to load the startup times from config map {}: {}", CONFIG_MAP_NAME, e.getMessage());
+        }
+    }
+
+    private void save() {
+        if (null == client) {
+            return;
+        }
+        String json;
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            try {
+                json = toJson();
+            } catch (IOException e) {
+                log.warn("unable to serialize the startup times: {}", e.getMessage());
+                return;
+            }
+            dirty = false;
+        }
+        try {
+            client.configMaps().inNamespace(namespace).createOrReplace(new ConfigMapBuilder()
+                    .withNewMetadata().withName(CONFIG_MAP_NAME).endMetadata()
+                    .addToData(DATA_KEY, json).build());
+        } catch (Exception e) {
+            synchronized (this) {
+                dirty = true;
+            }
+            log.warn("unable to save the startup times to config map {}: {}", CONFIG_MAP_NAME, e.getMessage());
+        }
+    }
+
+    // visible for the tests, the least recently used profiles come first, as they are loaded again
+    synchronized String toJson() throws IOException {
+        Map<String, List<Integer>> copy = new LinkedHashMap<>();
+        samples.forEach((profile, window) -> copy.put(profile, new ArrayList<>(window)));
+        return mapper.writeValueAsString(copy);
+    }
+
+    /**
+     * Initial delays of the probes learned for one profile.
+     */
+    static class Learned {
+        private final int readinessDelay;
+        private final int livenessDelay;
+        private final int samples;
+
+        Learned(int readinessDelay, int livenessDelay, int samples) {
+            this.readinessDelay = readinessDelay;
+            this.livenessDelay = livenessDelay;
+            this.samples = samples;
+        }
+
+        int getReadinessDelay() {
+            return readinessDelay;
+        }
+
+        int getLivenessDelay() {
+            return livenessDelay;
+        }
+
+        int getSamples() {
+            return samples;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package io.radanalytics.operator.cluster;
+
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.client.Watcher;
+import io.radanalytics.operator.Constants;
+import io.radanalytics.types.SparkCluster;
+import io.radanalytics.types.Worker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+import static io.radanalytics.operator.resource.LabelsHelper.OPERATOR_DEPLOYMENT_LABEL;
+import static io.radanalytics.operator.resource.LabelsHelper.OPERATOR_KIND_LABEL;
+
+/**
+ * Follows the pods of the clusters that are starting and tells when the master and all the workers are ready.
+ * The pods are checked whenever the local cache sees a change of a pod and also periodically (once per namespace,
+ * for the case the cache isn't used or an event has been missed).
+ *
+ * The time is measured from the moment the operator has received the event about the new cluster. Only the clusters
+ * that have been really created (not those found running after the operator's restart) are recorded in the metrics.
+ * The durations of the init containers (and the startup times of the pods, for the {@link StartupDelays}) are taken
+ * from all the pods the tracker sees.
+ */
+class StartupTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(StartupTracker.class.getName());
+    private static final long SWEEP_INTERVAL_MS = 5000;
+
+    @FunctionalInterface
+    interface Pods {
+        /**
+         * @param namespace namespace or '*'
+         * @param labels labels the pods have to have
+         * @return matching pods
+         */
+        List<Pod> list(String namespace, Map<String, String> labels);
+    }
+
+    private final String entityName;
+    private final String prefix;
+    private final Pods pods;
+    private final BiConsumer<String, Startup> onReady;
+    private final Map<String, Long> received = new ConcurrentHashMap<>();
+    private final Map<String, Startup> starting = new ConcurrentHashMap<>();
+    private final Map<String, Startup> finished = new ConcurrentHashMap<>();
+    private final InitContainerTimes initContainerTimes;
+    private final StartupDelays delays;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param entityName kind of the custom resource
+     * @param prefix prefix of the operator's labels
+     * @param pods source of the pods
+     * @param onReady called with the namespace and the startup once the cluster is ready
+     */
+    StartupTracker(String entityName, String prefix, Pods pods, BiConsumer<String, Startup> onReady) {
+        this(entityName, prefix, pods, onReady, null);
+    }
+
+    /**
+     * @param entityName kind of the custom resource
+     * @param prefix prefix of the operator's labels
+     * @param pods source of the pods
+     * @param onReady called with the namespace and the startup once the cluster is ready
+     * @param delays store of the startup times of the pods, or <code>null</code>
+     */
+    StartupTracker(String entityName, String prefix, Pods pods, BiConsumer<String, Startup> onReady, StartupDelays delays) {
+        this.entityName = entityName;
+        this.prefix = prefix;
+        this.pods = pods;
+        this.onReady = onReady;
+        this.initContainerTimes = new InitContainerTimes(prefix);
+        this.delays = delays;
+    }
+
+    /**
+     * Starts the periodic check of the pods.
+     *
+     * @param namespace watched namespace or '*'
+     */
+    void start(String namespace) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "startup-tracker-" + entityName);
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                sweep(namespace);
+            } catch (Exception e) {
+                log.warn("unable to check the pods of the starting clusters: {}", e.getMessage());
+            }
+        }, SWEEP_INTERVAL_MS, SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Remembers when the operator has learned about the new cluster, it's called before the event waits in the queue.
+     */
+    void received(String namespace, String name) {
+        received.putIfAbsent(key(namespace, name), System.currentTimeMillis());
+    }
+
+    /**
+     * Starts waiting for the cluster to become ready.
+     *
+     * @param cluster the cluster
+     * @param namespace namespace of the cluster
+     * @param created whether the resources have just been created (only those are recorded in the metrics)
+     */
+    void track(SparkCluster cluster, String namespace, boolean created) {
+        String key = key(namespace, cluster.getName());
+        Long since = received.remove(key);
+        Startup startup = new Startup(cluster, namespace, null == since ? System.currentTimeMillis() : since, created);
+        finished.remove(key);
+        starting.put(key, startup);
+        check(namespace, cluster.getName());
+    }
+
+    /**
+     * @return true if the cluster has been tracked and it isn't ready yet
+     */
+    boolean isStarting(String namespace, String name) {
+        return starting.containsKey(key(namespace, name));
+    }
+
+    /**
+     * Updates the number of workers of a starting cluster that has been scaled.
+     */
+    void scaled(String namespace, String name, int workers) {
+        Startup startup = starting.get(key(namespace, name));
+        if (null != startup) {
+            synchronized (startup) {
+                startup.expectedWorkers = workers;
+            }
+            check(namespace, name);
+        }
+    }
+
+    /**
+     * @return the times of the last startup of the cluster (finished or not) or null
+     */
+    Startup get(String namespace, String name) {
+        String key = key(namespace, name);
+        Startup startup = starting.get(key);
+        return null != startup ? startup : finished.get(key);
+    }
+
+    void forget(String namespace, String name) {
+        String key = key(namespace, name);
+        received.remove(key);
+        starting.remove(key);
+        finished.remove(key);
+        initContainerTimes.forget(namespace, name);
+    }
+
+    /**
+     * Called by the cache for each change of a pod.
+     */
+    void podChanged(Watcher.Action action, Pod pod) {
+        Map<String, String> labels = pod.getMetadata().getLabels();
+        if (null == labels || !entityName.equals(labels.get(prefix + OPERATOR_KIND_LABEL))) {
+            return;
+        }
+        String name = labels.get(prefix + entityName);
+        if (null == name) {
+            return;
+        }
+        String ns = pod.getMetadata().getNamespace();
+        if (Watcher.Action.DELETED == action) {
+            initContainerTimes.podDeleted(ns, name, pod);
+        } else if (null == pod.getMetadata().getDeletionTimestamp()) {
+            // a terminating pod (e.g. of a deleted cluster) would record its times once more
+            initContainerTimes.observe(ns, name, pod);
+            observeStartup(pod);
+        }
+        if (isStarting(ns, name)) {
+            check(ns, name);
+        }
+    }
+
+    void check(String namespace, String name) {
+        Map<String, String> labels = new HashMap<>(2);
+        labels.put(prefix + OPERATOR_KIND_LABEL, entityName);
+        labels.put(prefix + entityName, name);
+        update(namespace, name, pods.list(namespace, labels));
+    }
+
+    /**
+     * One list call per namespace for all the starting clusters.
+     */
+    void sweep(String namespace) {
+        if (starting.isEmpty()) {
+            return;
+        }
+        Map<String, List<Pod>> byCluster = pods.list(namespace, Collections.singletonMap(prefix + OPERATOR_KIND_LABEL, entityName))
+                .stream()
+                .filter(p -> null != p.getMetadata().getLabels() && p.getMetadata().getLabels().containsKey(prefix + entityName))
+                .collect(Collectors.groupingBy(p -> key(p.getMetadata().getNamespace(), p.getMetadata().getLabels().get(prefix + entityName))));
+        new ArrayList<>(starting.values()).forEach(s ->
+                update(s.namespace, s.name, byCluster.getOrDefault(key(s.namespace, s.name), Collections.emptyList())));
+    }
+
+    private void update(String namespace, String name, List<Pod> clusterPods) {
+        String key = key(namespace, name);
+        Startup startup = starting.get(key);
+        if (null == startup) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        clusterPods.forEach(p -> {
+            initContainerTimes.observe(namespace, name, p);
+            observeStartup(p);
+        });
+        int readyMasters = countReady(clusterPods, name + "-m");
+        int readyWorkers = countReady(clusterPods, name + "-w");
+        boolean done;
+        synchronized (startup) {
+            if (null == startup.masterReadyAt && readyMasters > 0) {
+                startup.masterReadyAt = now;
+            }
+            if (null == startup.workersReadyAt && null != startup.masterReadyAt && readyWorkers >= startup.expectedWorkers) {
+                startup.workersReadyAt = now;
+                startup.slowestInitContainer = InitContainerTimes.slowest(clusterPods);
+            }
+            done = null != startup.workersReadyAt;
+        }
+        if (!done || !starting.remove(key, startup)) {
+            return;
+        }
+        finished.put(key, startup);
+        if (startup.recorded) {
+            MetricsHelper.clusterMasterReady.labels(startup.labels).observe(startup.getMasterReadySeconds());
+            MetricsHelper.clusterWorkersReady.labels(startup.labels).observe(startup.getWorkersReadySeconds());
+        }
+        log.info("cluster {} in {} is ready (master after {}s, all {} workers after {}s)", name, namespace,
+                startup.getMasterReadySeconds(), startup.expectedWorkers, startup.getWorkersReadySeconds());
+        onReady.accept(namespace, startup);
+    }
+
+    private void observeStartup(Pod pod) {
+        if (null != delays) {
+            delays.observe(pod);
+        }
+    }
+
+    private int countReady(List<Pod> clusterPods, String deployment) {
+        return (int) clusterPods.stream()
+                .filter(p -> deployment.equals(p.getMetadata().getLabels().get(prefix + OPERATOR_DEPLOYMENT_LABEL)))
+                .filter(StartupTracker::isReady)
+                .count();
+    }
+
+    static boolean isReady(Pod pod) {
+        if (null != pod.getMetadata().getDeletionTimestamp() || null == pod.getStatus() || null == pod.getStatus().getConditions()) {
+            return false;
+        }
+        return pod.getStatus().getConditions().stream()
+                .anyMatch(c -> "Ready".equals(c.getType()) && "True".equals(c.getStatus()));
+    }
+
+    private static String key(String namespace, String name) {
+        return namespace + "/" + name;
+    }
+
+    /**
+     * Times of one startup of a cluster.
+     */
+    static class Startup {
+        private final SparkCluster cluster;
+        private final String namespace;
+        private final String name;
+        private final long since;
+        private final boolean recorded;
+        // image, downloadData, mavenDependencies, configOverride
+        private final String[] labels;
+        private int expectedWorkers;
+        private Long masterReadyAt;
+        private Long workersReadyAt;
+        private InitContainerTimes.Slowest slowestInitContainer;
+
+        private Startup(SparkCluster cluster, String namespace, long since, boolean recorded) {
+            this.cluster = cluster;
+            this.namespace = namespace;
+            this.name = cluster.getName();
+            this.since = since;
+            this.recorded = recorded;
+            this.expectedWorkers = Optional.ofNullable(cluster.getWorker()).orElse(new Worker()).getInstances();
+            this.labels = new String[]{
+                    Optional.ofNullable(cluster.getCustomImage()).orElse(Constants.getDefaultSparkImage()),
+                    String.valueOf(!cluster.getDownloadData().isEmpty()),
+                    String.valueOf(!cluster.getMavenDependencies().isEmpty()),
+                    String.valueOf(!cluster.getSparkConfiguration().isEmpty() || null != cluster.getSparkConfigurationMap())
+            };
+        }
+
+        SparkCluster getCluster() {
+            return cluster;
+        }
+
+        long getSince() {
+            return since;
+        }
+
+        /**
+         * @return false if the cluster was already running (e.g. it was found after the restart of the operator), the
+         * times mean nothing in that case
+         */
+        boolean isRecorded() {
+            return recorded;
+        }
+
+        /**
+         * @return seconds to the first ready master or null if it isn't ready yet
+         */
+        synchronized Double getMasterReadySeconds() {
+            return null == masterReadyAt ? null : (masterReadyAt - since) / 1000.0;
+        }
+
+        /**
+         * @return the init container that took the longest once the cluster is ready, null otherwise or if the pods
+         * have no init containers
+         */
+        synchronized InitContainerTimes.Slowest getSlowestInitContainer() {
+            return slowestInitContainer;
+        }
+
+        /**
+         * @return seconds to the moment all the workers were ready or null if they aren't yet
+         */
+        synchronized Double getWorkersReadySeconds() {
+            return null == workersReadyAt ? null : (workersReadyAt - since) / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package io.radanalytics.operator.cluster;
+
+import io.fabric8.kubernetes.api.model.*;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.radanalytics.operator.Constants;
+import io.radanalytics.operator.cache.ResourceCache;
+import io.radanalytics.operator.resource.LabelsHelper;
+import io.radanalytics.types.Master;
+import io.radanalytics.types.SparkCluster;
+import io.radanalytics.types.Worker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static io.radanalytics.operator.Constants.OPERATOR_TYPE_MASTER_LABEL;
+import static io.radanalytics.operator.Constants.OPERATOR_TYPE_WORKER_LABEL;
+import static io.radanalytics.operator.resource.LabelsHelper.OPERATOR_KIND_LABEL;
+import static io.radanalytics.operator.resource.LabelsHelper.OPERATOR_POD_TYPE_LABEL;
+import static io.radanalytics.operator.resource.LabelsHelper.OPERATOR_RC_TYPE_LABEL;
+
+/**
+ * Keeps <code>WARM_POOL_SIZE</code> pre-started units (a master and <code>WARM_POOL_WORKERS</code> workers with the
+ * default image and no resources, configuration or data) in the watched namespace. The units are rendered as any other
+ * cluster, only their kind label is <code>SparkClusterPool</code>, so the reconciliation doesn't take them for
+ * clusters without a custom resource.
+ *
+ * A new cluster that differs from the pool template only in the number of workers and the labels adopts a ready unit
+ * instead of starting its own pods:
+ * <ol>
+ *     <li>the rcs of the unit are deleted with the orphan propagation, so that the pods keep running</li>
+ *     <li>the pods get the labels of the cluster's pod templates (and lose their owner), so the new rcs adopt them</li>
+ *     <li>the services of the unit, the workers connect to, are pointed to the adopted master and deleted with the
+ *     cluster</li>
+ * </ol>
+ * If the hand-over fails half-way, what's left of the unit (its pods and services) is deleted, so nothing runs without
+ * a controller, the pods already relabelled are adopted by the rcs of the cluster. The pool is refilled in the
+ * background.
+ */
+class WarmPool {
+
+    static final String POOL_KIND = "SparkClusterPool";
+    private static final String UNIT_PREFIX = "spark-pool-";
+    private static final long REFILL_PERIOD_S = 30;
+
+    private static final Logger log = LoggerFactory.getLogger(WarmPool.class.getName());
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "warm-pool");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final KubernetesClient client;
+    private final ResourceCache cache;
+    private final KubernetesSparkClusterDeployer deployer;
+    private final String entityName;
+    private final String prefix;
+    private final String namespace;
+    // namespace/name of the clusters that adopted a unit and aren't ready yet
+    private final Set<String> adopted = ConcurrentHashMap.newKeySet();
+    // units handed over, the cache may still show their rcs for a while
+    private final Set<String> taken = new HashSet<>();
+
+    WarmPool(KubernetesClient client, ResourceCache cache, KubernetesSparkClusterDeployer deployer, String entityName,
+             String prefix, String namespace) {
+        this.client = client;
+        this.cache = cache;
+        this.deployer = deployer;
+        this.entityName = entityName;
+        this.prefix = prefix;
+        // in the '*' mode the pool lives in the namespace of the operator
+        this.namespace = "*".equals(namespace) ? Optional.ofNullable(client.getNamespace()).orElse("default") : namespace;
+    }
+
+    static boolean isUsed() {
+        return Constants.getWarmPoolSize() > 0;
+    }
+
+    /**
+     * Starts refilling the pool periodically.
+     */
+    void start() {
+        if (isUsed()) {
+            log.info("keeping {} warm units with {} workers in {}", Constants.getWarmPoolSize(), Constants.getWarmPoolWorkers(), namespace);
+            scheduler.scheduleWithFixedDelay(this::refill, 0, REFILL_PERIOD_S, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * @param name name of the unit (or cluster)
+     * @param workers number of the workers
+     * @return the cluster the units are rendered from
+     */
+    static SparkCluster template(String name, int workers) {
+        SparkCluster template = new SparkCluster();
+        template.setName(name);
+        template.setMaster(new Master());
+        Worker worker = new Worker();
+        worker.setInstances(workers);
+        template.setWorker(worker);
+        return template;
+    }
+
+    /**
+     * @param cluster the new cluster
+     * @return whether the cluster would be rendered the same way as the units (apart from the workers and labels)
+     */
+    static boolean eligible(SparkCluster cluster) {
+        EnumSet<ChangeClassifier.Change> changes = ChangeClassifier.classify(template(cluster.getName(), 1), cluster);
+        changes.removeAll(EnumSet.of(ChangeClassifier.Change.SCALE, ChangeClassifier.Change.LABELS));
+        return changes.isEmpty();
+    }
+
+    /**
+     * Changes the kind label of the rendered resources (and the selectors), so that they aren't taken for a cluster.
+     *
+     * @param list rendered resources of a unit
+     * @param prefix prefix of the operator's labels
+     * @return the same list
+     */
+    static KubernetesResourceList toPoolResources(KubernetesResourceList list, String prefix) {
+        for (Object o : list.getItems()) {
+            HasMetadata resource = (HasMetadata) o;
+            setKind(resource.getMetadata().getLabels(), prefix);
+            if (resource instanceof ReplicationController) {
+                ReplicationController rc = (ReplicationController) resource;
+                setKind(rc.getSpec().getSelector(), prefix);
+                setKind(rc.getSpec().getTemplate().getMetadata().getLabels(), prefix);
+            } else if (resource instanceof Service) {
+                setKind(((Service) resource).getSpec().getSelector(), prefix);
+            }
+        }
+        return list;
+    }
+
+    private static void setKind(Map<String, String> labels, String prefix) {
+        if (null != labels && labels.containsKey(prefix + OPERATOR_KIND_LABEL)) {
+            labels.put(prefix + OPERATOR_KIND_LABEL, POOL_KIND);
+        }
+    }
+
+    /**
+     * Hands a ready unit over to the new cluster, if there is one and the cluster is eligible.
+     *
+     * @param ns namespace of the cluster
+     * @param cluster the new cluster
+     * @param list its rendered resources (not applied yet)
+     * @return whether a unit has been adopted
+     */
+    boolean adopt(String ns, SparkCluster cluster, KubernetesResourceList list) {
+        if (!namespace.equals(ns)) {
+            return false;
+        }
+        if (!eligible(cluster) || deployer.snapshot(cluster).configMapExists()) {
+            MetricsHelper.warmPoolRequests.labels(ns, "mismatch").inc();
+            return false;
+        }
+        String unit = take();
+        if (null == unit) {
+            MetricsHelper.warmPoolRequests.labels(ns, "miss").inc();
+            return false;
+        }
+        try {
+            handOver(unit, cluster, list);
+        } catch (Exception e) {
+            log.warn("unable to adopt the warm unit {} for cluster {}: {}", unit, cluster.getName(), e.getMessage());
+            discard(unit);
+            MetricsHelper.warmPoolRequests.labels(ns, "miss").inc();
+            return false;
+        } finally {
+            scheduler.execute(this::refill);
+        }
+        log.info("cluster {} adopted the warm unit {}", cluster.getName(), unit);
+        MetricsHelper.warmPoolRequests.labels(ns, "hit").inc();
+        adopted.add(ns + "/" + cluster.getName());
+        return true;
+    }
+
+    /**
+     * The cluster is ready, the time it took is observed as warm or cold provisioning.
+     */
+    void ready(String ns, String name, Double seconds) {
+        boolean warm = adopted.remove(ns + "/" + name);
+        if (null != seconds) {
+            MetricsHelper.clusterProvisioning.labels(warm ? "warm" : "cold").observe(seconds);
+        }
+    }
+
+    void forget(String ns, String name) {
+        adopted.remove(ns + "/" + name);
+    }
+
+    /**
+     * @return name of a unit whose pods are all ready (it's not in the pool anymore) or null
+     */
+    private synchronized String take() {
+        List<String> units = units();
+        taken.retainAll(units);
+        for (String unit : units) {
+            if (taken.contains(unit)) {
+                continue;
+            }
+            List<Pod> pods = pods(unitLabels(unit));
+            long masters = pods.stream().filter(p -> isType(p, OPERATOR_TYPE_MASTER_LABEL)).count();
+            if (masters > 0 && pods.stream().allMatch(StartupTracker::isReady)) {
+                // stop the rcs from managing (or replacing) the pods, the pods themselves stay
+                client.replicationControllers().inNamespace(namespace).withLabels(unitLabels(unit))
+                        .withPropagationPolicy("Orphan").delete();
+                taken.add(unit);
+                return unit;
+            }
+        }
+        return null;
+    }
+
+    private void handOver(String unit, SparkCluster cluster, KubernetesResourceList list) {
+        String name = cluster.getName();
+        Service master = null;
+        for (Object o : list.getItems()) {
+            if (o instanceof Service && name.equals(((Service) o).getMetadata().getName())) {
+                master = (Service) o;
+            }
+            if (!(o instanceof ReplicationController)) {
+                continue;
+            }
+            ReplicationController rc = (ReplicationController) o;
+            boolean isMaster = OPERATOR_TYPE_MASTER_LABEL.equals(rc.getMetadata().getLabels().get(prefix + OPERATOR_RC_TYPE_LABEL));
+            Map<String, String> labels = rc.getSpec().getTemplate().getMetadata().getLabels();
+            int replicas = Optional.ofNullable(rc.getSpec().getReplicas()).orElse(1);
+            List<Pod> pods = pods(unitLabels(unit)).stream()
+                    .filter(p -> isType(p, isMaster ? OPERATOR_TYPE_MASTER_LABEL : OPERATOR_TYPE_WORKER_LABEL))
+                    .collect(Collectors.toList());
+            for (int i = 0; i < pods.size(); i++) {
+                String pod = pods.get(i).getMetadata().getName();
+                if (i < replicas) {
+                    client.pods().inNamespace(namespace).withName(pod).edit()
+                            .editMetadata().withLabels(labels).withOwnerReferences(Collections.emptyList()).endMetadata().done();
+                } else {
+                    client.pods().inNamespace(namespace).withName(pod).delete();
+                }
+            }
+        }
+        if (null == master) {
+            return;
+        }
+        // the adopted workers keep connecting to the services of the unit
+        Map<String, String> selector = master.getSpec().getSelector();
+        Map<String, String> labels = deployer.getDefaultLabels(name);
+        labels.put(prefix + LabelsHelper.OPERATOR_SEVICE_TYPE_LABEL, POOL_KIND);
+        for (String service : Arrays.asList(unit, unit + "-ui")) {
+            if (null != client.services().inNamespace(namespace).withName(service).get()) {
+                client.services().inNamespace(namespace).withName(service).edit()
+                        .editMetadata().withLabels(labels).endMetadata()
+                        .editSpec().withSelector(selector).endSpec().done();
+            }
+        }
+    }
+
+    /**
+     * Deletes what's left of a unit whose rcs have been orphaned, the units are found by their rcs, so it'd stay forever.
+     */
+    private void discard(String unit) {
+        try {
+            client.pods().inNamespace(namespace).withLabels(unitLabels(unit)).delete();
+            client.services().inNamespace(namespace).withLabels(unitLabels(unit)).delete();
+        } catch (Exception e) {
+            log.warn("unable to delete the warm unit {} in {}: {}", unit, namespace, e.getMessage());
+        }
+    }
+
+    /**
+     * Creates the missing units and removes the extra ones.
+     */
+    synchronized void refill() {
+        try {
+            List<String> units = units();
+            units.removeAll(taken);
+            int size = Constants.getWarmPoolSize();
+            for (int i = units.size(); i < size; i++) {
+                String unit = UNIT_PREFIX + UUID.randomUUID().toString().substring(0, 8);
+                SparkCluster template = template(unit, Constants.getWarmPoolWorkers());
+                template.setNamespace(namespace);
+                KubernetesResourceList list = toPoolResources(deployer.getResourceList(template), prefix);
+                client.resourceList(list).inNamespace(namespace).createOrReplace();
+                log.info("created warm unit {} in {}", unit, namespace);
+            }
+            for (String unit : units.subList(Math.min(size, units.size()), units.size())) {
+                client.replicationControllers().inNamespace(namespace).withLabels(unitLabels(unit)).delete();
+                client.services().inNamespace(namespace).withLabels(unitLabels(unit)).delete();
+                log.info("removed warm unit {} from {}", unit, namespace);
+            }
+            MetricsHelper.warmPoolSize.labels(namespace).set(Math.min(size, units.size()));
+        } catch (Exception e) {
+            log.warn("unable to refill the warm pool in {}: {}", namespace, e.getMessage());
+        }
+    }
+
+    /**
+     * @return names of the units (their master rcs), the oldest first
+     */
+    private List<String> units() {
+        Map<String, String> labels = new HashMap<>(2);
+        labels.put(prefix + OPERATOR_KIND_LABEL, POOL_KIND);
+        labels.put(prefix + OPERATOR_RC_TYPE_LABEL, OPERATOR_TYPE_MASTER_LABEL);
+        List<ReplicationController> rcs = cache.replicationControllers().hasSynced()
+                ? cache.replicationControllers().byLabels(namespace, labels)
+                : client.replicationControllers().inNamespace(namespace).withLabels(labels).list().getItems();
+        return rcs.stream()
+                .filter(rc -> null == rc.getMetadata().getDeletionTimestamp())
+                .sorted(Comparator.comparing(rc -> Optional.ofNullable(rc.getMetadata().getCreationTimestamp()).orElse("")))
+                .map(rc -> rc.getMetadata().getLabels().get(prefix + entityName))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private List<Pod> pods(Map<String, String> labels) {
+        return cache.pods().hasSynced()
+                ? cache.pods().byLabels(namespace, labels)
+                : client.pods().inNamespace(namespace).withLabels(labels).list().getItems();
+    }
+
+    private boolean isType(Pod pod, String type) {
+        return type.equals(pod.getMetadata().getLabels().get(prefix + OPERATOR_POD_TYPE_LABEL));
+    }
+
+    private Map<String, String> unitLabels(String unit) {
+        Map<String, String> labels = new HashMap<>(2);
+        labels.put(prefix + OPERATOR_KIND_LABEL, POOL_KIND);
+        labels.put(prefix + entityName, unit);
+        return labels;
+    }
+}
@@ -0,0 +1,164 @@
+package io.radanalytics.operator.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodCondition;
+import io.fabric8.kubernetes.api.model.PodReadinessGate;
+import io.fabric8.kubernetes.client.HttpClientAware;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.radanalytics.operator.reconcile.CustomResourceStatus;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static io.radanalytics.operator.Constants.OPERATOR_TYPE_WORKER_LABEL;
+import static io.radanalytics.operator.resource.LabelsHelper.OPERATOR_KIND_LABEL;
+import static io.radanalytics.operator.resource.LabelsHelper.OPERATOR_POD_TYPE_LABEL;
+
+/**
+ * In the http probe mode the worker pods have the <code>radanalytics.io/registered</code> readiness gate instead of
+ * the exec probe that looked for the master's url in the worker's web UI. The kubelet only checks that the worker's
+ * web UI answers, this class sets the condition on the worker pods that the master lists among its alive workers, so
+ * a worker becomes ready once it's registered with the master, without any process being started in the pod.
+ *
+ * Only the masters of the clusters with workers that wait for the condition are polled (and the condition is never
+ * removed), so there is no traffic once all the workers are registered.
+ */
+class WorkerRegistration {
+
+    static final String CONDITION = "registered";
+    private static final long SWEEP_INTERVAL_S = 5;
+    private static final MediaType STRATEGIC_MERGE_PATCH = MediaType.parse("application/strategic-merge-patch+json");
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static final Logger log = LoggerFactory.getLogger(WorkerRegistration.class.getName());
+
+    private final KubernetesClient client;
+    private final MasterStatusPoller poller;
+    private final StartupTracker.Pods pods;
+    private final MasterStatusPoller.Locator locator;
+    private final String prefix;
+    private final Set<String> kinds;
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param client k8s client
+     * @param poller source of the masters' status
+     * @param pods source of the pods
+     * @param entityName kind of the custom resource
+     * @param prefix prefix of the operator's labels
+     */
+    WorkerRegistration(KubernetesClient client, MasterStatusPoller poller, StartupTracker.Pods pods, String entityName, String prefix) {
+        this.client = client;
+        this.poller = poller;
+        this.pods = pods;
+        this.locator = MasterStatusPoller.masterPod(pods, prefix);
+        this.prefix = prefix;
+        // the warm units have the same workers
+        this.kinds = new HashSet<>(Arrays.asList(entityName, WarmPool.POOL_KIND));
+    }
+
+    /**
+     * Starts the periodic check of the worker pods.
+     *
+     * @param namespace watched namespace or '*'
+     */
+    void start(String namespace) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "worker-registration");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> sweep(namespace), SWEEP_INTERVAL_S, SWEEP_INTERVAL_S, TimeUnit.SECONDS);
+    }
+
+    private void sweep(String namespace) {
+        try {
+            Map<String, String> labels = Collections.singletonMap(prefix + OPERATOR_POD_TYPE_LABEL, OPERATOR_TYPE_WORKER_LABEL);
+            Map<String, List<Pod>> waiting = pods.list(namespace, labels).stream()
+                    .filter(p -> kinds.contains(p.getMetadata().getLabels().get(prefix + OPERATOR_KIND_LABEL)))
+                    .filter(p -> awaitsRegistration(p, prefix + CONDITION))
+                    .collect(Collectors.groupingBy(p -> p.getMetadata().getNamespace() + "/"
+                            + p.getMetadata().getLabels().get(prefix + p.getMetadata().getLabels().get(prefix + OPERATOR_KIND_LABEL))));
+            waiting.forEach(this::check);
+        } catch (Exception e) {
+            log.debug("unable to check the registration of the workers: {}", e.getMessage());
+        }
+    }
+
+    private void check(String key, List<Pod> workers) {
+        if (!inFlight.add(key)) {
+            return;
+        }
+        String namespace = key.substring(0, key.indexOf('/'));
+        String cluster = key.substring(key.indexOf('/') + 1);
+        poller.poll(locator, namespace, cluster).whenComplete((status, error) -> {
+            try {
+                if (null != status) {
+                    workers.stream().filter(p -> 0 <= WorkerScaleDown.coresUsed(p, status)).forEach(this::markRegistered);
+                }
+            } finally {
+                inFlight.remove(key);
+            }
+        });
+    }
+
+    /**
+     * @return whether the pod has the readiness gate, runs and the condition hasn't been set yet
+     */
+    static boolean awaitsRegistration(Pod pod, String condition) {
+        if (null == pod.getSpec() || null == pod.getSpec().getReadinessGates() || null == pod.getStatus()
+                || !"Running".equals(pod.getStatus().getPhase()) || null == pod.getStatus().getPodIP()) {
+            return false;
+        }
+        boolean gated = pod.getSpec().getReadinessGates().stream().map(PodReadinessGate::getConditionType).anyMatch(condition::equals);
+        boolean set = Optional.ofNullable(pod.getStatus().getConditions()).orElse(Collections.emptyList()).stream()
+                .filter(c -> condition.equals(c.getType())).map(PodCondition::getStatus).anyMatch("True"::equals);
+        return gated && !set;
+    }
+
+    /**
+     * The conditions are merged by their type, so the strategic merge patch of the status leaves the other conditions
+     * as they are.
+     */
+    private void markRegistered(Pod pod) {
+        if (!(client instanceof HttpClientAware)) {
+            return;
+        }
+        Map<String, Object> condition = new LinkedHashMap<>();
+        condition.put("type", prefix + CONDITION);
+        condition.put("status", "True");
+        condition.put("lastTransitionTime", CustomResourceStatus.timestamp(System.currentTimeMillis()));
+        Map<String, Object> patch = Collections.singletonMap("status",
+                Collections.singletonMap("conditions", Collections.singletonList(condition)));
+        HttpUrl url = HttpUrl.get(client.getMasterUrl().toString()).newBuilder()
+                .addPathSegments("api/v1/namespaces").addPathSegment(pod.getMetadata().getNamespace())
+                .addPathSegment("pods").addPathSegment(pod.getMetadata().getName()).addPathSegment("status").build();
+        OkHttpClient httpClient = ((HttpClientAware) client).getHttpClient();
+        try {
+            Request request = new Request.Builder().url(url)
+                    .patch(RequestBody.create(STRATEGIC_MERGE_PATCH, mapper.writeValueAsString(patch))).build();
+            try (Response response = httpClient.newCall(request).execute()) {
+                if (!response.isSuccessful()) {
+                    log.warn("unable to mark worker {} as registered: {}", pod.getMetadata().getName(), response.code());
+                }
+            }
+        } catch (IOException e) {
+            log.warn("unable to mark worker {} as registered: {}", pod.getMetadata().getName(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package io.radanalytics.operator.cluster;
+
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.radanalytics.operator.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static io.radanalytics.operator.cluster.MasterStatusPoller.MasterStatus;
+import static io.radanalytics.operator.resource.LabelsHelper.OPERATOR_DEPLOYMENT_LABEL;
+import static io.radanalytics.operator.resource.LabelsHelper.OPERATOR_KIND_LABEL;
+
+/**
+ * Picks the workers the replication controller removes when it's scaled down. The master is asked which workers run
+ * executors and the idle ones (then the least busy and the youngest) get a low
+ * <code>controller.kubernetes.io/pod-deletion-cost</code>, so the controller deletes them first. If
+ * <code>SCALE_DOWN_DRAIN_TIMEOUT_SECONDS</code> is set and some of the picked workers are busy, the scale-down waits
+ * (up to the timeout) for their executors to finish, picking again the workers that became idle in the meantime.
+ *
+ * If the master can't be reached, the replication controller picks the workers itself.
+ */
+class WorkerScaleDown {
+
+    static final String DELETION_COST_ANNOTATION = "controller.kubernetes.io/pod-deletion-cost";
+    private static final int DELETION_COST = -1000;
+    private static final long DRAIN_POLL_MS = 2000;
+    private static final long STATUS_TIMEOUT_S = 10;
+
+    private static final Logger log = LoggerFactory.getLogger(WorkerScaleDown.class.getName());
+
+    private final KubernetesClient client;
+    private final MasterStatusPoller poller;
+    private final StartupTracker.Pods pods;
+    private final MasterStatusPoller.Locator locator;
+    private final String entityName;
+    private final String prefix;
+
+    /**
+     * @param client k8s client
+     * @param poller source of the masters' status
+     * @param pods source of the pods
+     * @param entityName kind of the custom resource
+     * @param prefix prefix of the operator's labels
+     */
+    WorkerScaleDown(KubernetesClient client, MasterStatusPoller poller, StartupTracker.Pods pods, String entityName, String prefix) {
+        this.client = client;
+        this.poller = poller;
+        this.pods = pods;
+        this.locator = MasterStatusPoller.masterPod(pods, prefix);
+        this.entityName = entityName;
+        this.prefix = prefix;
+    }
+
+    /**
+     * Marks the workers to be removed when the worker rc is scaled from <code>from</code> to <code>to</code>
+     * replicas (and waits for them to drain, if enabled). Called right before the rc is scaled, it does nothing when
+     * the cluster is scaled up.
+     *
+     * @param namespace namespace of the cluster
+     * @param name name of the cluster
+     * @param from current number of workers
+     * @param to new number of workers
+     */
+    void prepare(String namespace, String name, int from, int to) {
+        if (!Constants.useGracefulScaleDown() || to >= from) {
+            return;
+        }
+        int count = from - to;
+        Map<String, String> selector = new HashMap<>(3);
+        selector.put(prefix + OPERATOR_KIND_LABEL, entityName);
+        selector.put(prefix + entityName, name);
+        selector.put(prefix + OPERATOR_DEPLOYMENT_LABEL, name + "-w");
+        List<Pod> workers = pods.list(namespace, selector).stream()
+                .filter(p -> null == p.getMetadata().getDeletionTimestamp())
+                .collect(Collectors.toList());
+        MasterStatus status = status(namespace, name);
+        if (null == status) {
+            MetricsHelper.scaledDownWorkers.labels(namespace, "unknown").inc(count);
+            return;
+        }
+        List<Pod> victims = choose(workers, status, count);
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(Constants.getScaleDownDrainTimeoutSeconds());
+        while (0 < busy(victims, status) && System.currentTimeMillis() < deadline) {
+            log.info("waiting for {} busy workers of cluster {} in {} to drain", busy(victims, status), name, namespace);
+            try {
+                Thread.sleep(DRAIN_POLL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            MasterStatus current = status(namespace, name);
+            if (null == current) {
+                break;
+            }
+            status = current;
+            victims = choose(workers, status, count);
+        }
+        int busy = busy(victims, status);
+        MetricsHelper.scaledDownWorkers.labels(namespace, "busy").inc(busy);
+        MetricsHelper.scaledDownWorkers.labels(namespace, "idle").inc(victims.size() - busy);
+        mark(namespace, workers, victims);
+    }
+
+    private MasterStatus status(String namespace, String name) {
+        try {
+            return poller.poll(locator, namespace, name).get(STATUS_TIMEOUT_S, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.debug("unable to get the status of cluster {} in {}: {}", name, namespace, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @param workers running worker pods
+     * @param status status of the master
+     * @param count how many workers are removed
+     * @return the workers to remove, those without executors (or not registered with the master at all) first, then
+     * the least busy, the youngest first among the same
+     */
+    static List<Pod> choose(List<Pod> workers, MasterStatus status, int count) {
+        return workers.stream()
+                .sorted(Comparator.<Pod>comparingInt(p -> coresUsed(p, status))
+                        .thenComparing(p -> Optional.ofNullable(p.getMetadata().getCreationTimestamp()).orElse(""),
+                                Comparator.reverseOrder()))
+                .limit(count)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return cores used by the executors on the worker, <code>-1</code> if it's not registered with the master
+     */
+    static int coresUsed(Pod pod, MasterStatus status) {
+        Map<String, Integer> used = status.getWorkerCoresUsed();
+        String ip = null == pod.getStatus() ? null : pod.getStatus().getPodIP();
+        if (null != ip && used.containsKey(ip)) {
+            return used.get(ip);
+        }
+        return used.getOrDefault(pod.getMetadata().getName(), -1);
+    }
+
+    private static int busy(List<Pod> victims, MasterStatus status) {
+        return (int) victims.stream().filter(p -> 0 < coresUsed(p, status)).count();
+    }
+
+    /**
+     * Sets the deletion cost on the picked workers and removes it from the others (it could be left there by an
+     * earlier scale-down that has been reverted).
+     */
+    private void mark(String namespace, List<Pod> workers, List<Pod> victims) {
+        for (Pod pod : workers) {
+            String cost = victims.contains(pod) ? String.valueOf(DELETION_COST) : null;
+            String current = Optional.ofNullable(pod.getMetadata().getAnnotations()).map(a -> a.get(DELETION_COST_ANNOTATION)).orElse(null);
+            if (Objects.equals(cost, current)) {
+                continue;
+            }
+            try {
+                if (null == cost) {
+                    client.pods().inNamespace(namespace).withName(pod.getMetadata().getName()).edit()
+                            .editMetadata().removeFromAnnotations(DELETION_COST_ANNOTATION).endMetadata().done();
+                } else {
+                    client.pods().inNamespace(namespace).withName(pod.getMetadata().getName()).edit()
+                            .editMetadata().addToAnnotations(DELETION_COST_ANNOTATION, cost).endMetadata().done();
+                }
+            } catch (Exception e) {
+                log.debug("unable to set the deletion cost of pod {}: {}", pod.getMetadata().getName(), e.getMessage());
+            }
+        }
+    }
+}
@@ -2,8 +2,18 @@ package io.radanalytics.operator.historyServer;
 
 import io.fabric8.kubernetes.api.model.KubernetesResourceList;
 import io.fabric8.openshift.client.DefaultOpenShiftClient;
+import io.radanalytics.operator.Constants;
 import io.radanalytics.operator.common.AbstractOperator;
+import io.radanalytics.operator.cache.ResourceCache;
 import io.radanalytics.operator.common.Operator;
+import io.radanalytics.operator.reconcile.ApiCallMetrics;
+import io.radanalytics.operator.reconcile.EventRecorder;
+import io.radanalytics.operator.reconcile.ImagePrePuller;
+import io.radanalytics.operator.reconcile.OwnerReferences;
+import io.radanalytics.operator.reconcile.ResourceApplier;
+import io.radanalytics.operator.reconcile.StatusWriter;
+import io.radanalytics.operator.reconcile.Teardown;
+import io.radanalytics.operator.reconcile.WorkQueue;
 import io.radanalytics.types.SparkHistoryServer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,11 +21,11 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
-import java.lang.Thread;
 import java.util.Map;
-import java.util.HashMap;
 import java.util.Optional;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static io.radanalytics.operator.reconcile.WorkQueue.Action;
 
 @Singleton
 @Operator(forKind = SparkHistoryServer.class, prefix = "radanalytics.io")
@@ -24,85 +34,140 @@ public class HistoryServerOperator extends AbstractOperator<SparkHistoryServer>
     @Inject
     private Logger log;
     private KubernetesHistoryServerDeployer deployer;
+    private ResourceApplier applier;
+    private OwnerReferences owners;
+    private ImagePrePuller prePuller;
     private boolean osClient = false;
-    private Map<String, KubernetesResourceList> cache = new WeakHashMap<>();
+    private Map<String, KubernetesResourceList> cache = new ConcurrentHashMap<>();
     private Map<String, SparkHistoryServer> hss;
+    private WorkQueue queue;
+    // one instance, so that the events of the same entity can be merged on the queue
+    private final WorkQueue.Handler<SparkHistoryServer> handler = this::handle;
+    private StatusWriter statusWriter;
 
     public HistoryServerOperator() {
-        this.hss = new HashMap<>();
+        this.hss = new ConcurrentHashMap<>();
     }
 
     private void put(SparkHistoryServer hs) {
-        hss.put(hs.getName(), hs);
+        hss.put(key(hs), hs);
     }
 
-    private void delete(String name) {
-        if (hss.containsKey(name)) {
-            hss.remove(name);
-        }
+    private void delete(SparkHistoryServer hs) {
+        hss.remove(key(hs));
+    }
+
+    private SparkHistoryServer getHS(SparkHistoryServer hs) {
+        return this.hss.get(key(hs));
     }
 
-    private SparkHistoryServer getHS(String name) {
-        return this.hss.get(name);
+    private static String key(SparkHistoryServer hs) {
+        return hs.getNamespace() + "/" + hs.getName();
     }
 
-   private void updateStatus(SparkHistoryServer hs, String state) {
-        for (int i=0; i<3; i++) {
-            try {
-	            setCRStatus(state, hs.getNamespace(), hs.getName() );
-		        break;
-	        }
-	        catch(Exception e) {
-	            log.warn("failed to update status {} for {} in {}", state, hs.getName(), hs.getNamespace());
-                try {Thread.sleep(500);} catch(Exception t) {}
-	        }
-	    }
+    private void updateStatus(SparkHistoryServer hs, String state) {
+        getStatusWriter().update(hs.getNamespace(), hs.getName(), state);
+    }
+
+    private StatusWriter getStatusWriter() {
+        if (null == statusWriter) {
+            statusWriter = new StatusWriter(entityName, this::setCRStatus);
+        }
+        return statusWriter;
     }
 
     @Override
     protected void onInit() {
+        this.client = ApiCallMetrics.instrument(client);
         this.deployer = new KubernetesHistoryServerDeployer(entityName, prefix);
+        ResourceCache resourceCache = ResourceCache.forNamespace(client, namespace, prefix);
+        this.applier = new ResourceApplier(resourceCache, prefix);
+        this.owners = new OwnerReferences(client, resourceCache, entityName, pluralName, prefix, isCrd);
+        this.prePuller = ImagePrePuller.forNamespace(client, namespace, prefix);
+        this.queue = WorkQueue.shared();
     }
 
     @Override
     protected void onAdd(SparkHistoryServer hs) {
+        enqueue(Action.ADD, hs);
+    }
+
+    @Override
+    protected void onModify(SparkHistoryServer newHs) {
+        enqueue(Action.MODIFY, newHs);
+    }
+
+    @Override
+    protected void onDelete(SparkHistoryServer hs) {
+        enqueue(Action.DELETE, hs);
+    }
+
+    private void enqueue(Action action, SparkHistoryServer hs) {
+        // the namespace field is swapped by the watcher in the '*' mode, capture it before the event is queued
+        if (null == hs.getNamespace()) {
+            hs.setNamespace(namespace);
+        }
+        EventRecorder.get().event(entityName, action, hs.getNamespace(), hs.getName(), hs);
+        queue.submit(entityName, hs.getNamespace(), hs.getName(), action, hs, handler);
+    }
+
+    private void handle(Action action, SparkHistoryServer hs) {
+        switch (action) {
+            case ADD: add(hs, false); break;
+            case MODIFY: modify(hs); break;
+            case DELETE: remove(hs); break;
+        }
+    }
+
+    /**
+     * @param hs the entity
+     * @param recreated its resources have just been deleted, they have to be written even if the cache still has them
+     */
+    private void add(SparkHistoryServer hs, boolean recreated) {
         log.info("Spark history server added");
 
-        KubernetesResourceList list = deployer.getResourceList(hs, namespace, isOpenshift);
+        String ns = hs.getNamespace();
+        prePuller.use(entityName, ns, hs.getName(), Optional.ofNullable(hs.getCustomImage()).orElse(Constants.getDefaultSparkImage()));
+        KubernetesResourceList list = deployer.getResourceList(hs, ns, isOpenshift);
+        if (Constants.useOwnerReferences()) {
+            owners.setOwner(list, ns, hs.getName());
+        }
         if (isOpenshift && hs.getExpose() && !osClient) {
 
             // we will create openshift specific resource (Route)
-            this.client = new DefaultOpenShiftClient();
+            this.client = ApiCallMetrics.instrument(new DefaultOpenShiftClient());
             osClient = true;
         }
-        client.resourceList(list).inNamespace(namespace).createOrReplace();
-        cache.put(hs.getName(), list);
+        applier.apply(client, list, ns, recreated);
+        cache.put(key(hs), list);
         updateStatus(hs, "ready");
         put(hs);
     }
 
-    @Override
-    protected void onModify(SparkHistoryServer newHs) {
+    private void modify(SparkHistoryServer newHs) {
 
         // TODO This comparison works to rule out a change in status because
         // we added the status block in the AbstractOperator universally,
         // ie it is not actually included in the SparkHistoryServer type
         // definition generated from json. If that ever changes, then
         // this comparison will have to be a little smarter.
-        SparkHistoryServer existingHs = getHS(newHs.getName());
+        SparkHistoryServer existingHs = getHS(newHs);
         if (null == existingHs || !newHs.equals(existingHs)) {
-            super.onModify(newHs);
+            remove(newHs);
+            add(newHs, true);
         }
     }
 
-    @Override
-    protected void onDelete(SparkHistoryServer hs) {
+    private void remove(SparkHistoryServer hs) {
         log.info("Spark history server removed");
-        String name = hs.getName();
-        updateStatus(hs, "deleted");
-        delete(name);
-        KubernetesResourceList list = Optional.ofNullable(cache.get(name)).orElse(deployer.getResourceList(hs, namespace, isOpenshift));
-        client.resourceList(list).inNamespace(namespace).delete();
-        cache.remove(name);
+        String ns = hs.getNamespace();
+        delete(hs);
+        KubernetesResourceList list = Optional.ofNullable(cache.get(key(hs))).orElse(deployer.getResourceList(hs, ns, isOpenshift));
+        // the resources owned by the deleted custom resource are removed by the garbage collector anyway, but the
+        // local cache can't prove there is nothing else (e.g. resources created a moment ago or without an owner)
+        new Teardown(client, entityName, ns).delete(list.getItems()).finish();
+        cache.remove(key(hs));
+        owners.forget(ns, hs.getName());
+        prePuller.release(entityName, ns, hs.getName());
     }
 }
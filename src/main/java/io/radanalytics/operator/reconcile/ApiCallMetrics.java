@@ -0,0 +1,106 @@
+package io.radanalytics.operator.reconcile;
+
+import io.fabric8.kubernetes.client.DefaultKubernetesClient;
+import io.fabric8.kubernetes.client.HttpClientAware;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.openshift.client.DefaultOpenShiftClient;
+import io.fabric8.openshift.client.OpenShiftConfig;
+import io.radanalytics.operator.cluster.MetricsHelper;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+
+/**
+ * Counts and times every call the operator makes to the Kubernetes API, labeled by the Kubernetes verb (get, list,
+ * watch, create, update, patch, delete, deletecollection) and the resource (e.g. replicationcontrollers). The names of
+ * the objects are deliberately left out to keep the cardinality low.
+ */
+public class ApiCallMetrics implements Interceptor {
+
+    private static final ApiCallMetrics INSTANCE = new ApiCallMetrics();
+
+    private ApiCallMetrics() {
+    }
+
+    /**
+     * Returns a client that shares the connection pool and the configuration with the given one, but has its calls
+     * measured. Clients that are already instrumented (or that aren't backed by OkHttp) are returned as they are.
+     *
+     * @param client k8s client
+     * @return instrumented client
+     */
+    public static KubernetesClient instrument(KubernetesClient client) {
+        if (!(client instanceof HttpClientAware)) {
+            return client;
+        }
+        OkHttpClient httpClient = ((HttpClientAware) client).getHttpClient();
+        if (httpClient.interceptors().contains(INSTANCE)) {
+            return client;
+        }
+        OkHttpClient instrumented = httpClient.newBuilder().addInterceptor(INSTANCE).build();
+        if (client instanceof DefaultOpenShiftClient) {
+            return new DefaultOpenShiftClient(instrumented, OpenShiftConfig.wrap(client.getConfiguration()));
+        }
+        return new DefaultKubernetesClient(instrumented, client.getConfiguration());
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String path = request.url().encodedPath();
+        String verb = verb(request.method(), path, request.url().queryParameter("watch"));
+        String resource = resource(path);
+        long start = System.nanoTime();
+        String code = "error";
+        try {
+            Response response = chain.proceed(request);
+            code = String.valueOf(response.code());
+            return response;
+        } finally {
+            MetricsHelper.apiRequests.labels(verb, resource, code).inc();
+            // for the watches, it's the time to the upgrade of the connection
+            MetricsHelper.apiRequestDuration.labels(verb, resource).observe((System.nanoTime() - start) / 1e9);
+        }
+    }
+
+    /**
+     * @param method http method
+     * @param path path of the request (without the query)
+     * @param watch value of the watch query parameter, if any
+     * @return the Kubernetes verb
+     */
+    public static String verb(String method, String path, String watch) {
+        if ("true".equals(watch) || "1".equals(watch)) {
+            return "watch";
+        }
+        String[] segments = path.split("/");
+        boolean named = resourceIndex(segments) + 1 < segments.length;
+        switch (method) {
+            case "GET": return named ? "get" : "list";
+            case "POST": return "create";
+            case "PUT": return "update";
+            case "PATCH": return "patch";
+            case "DELETE": return named ? "delete" : "deletecollection";
+            default: return method.toLowerCase();
+        }
+    }
+
+    /**
+     * @param path path of the request (without the query), e.g. <code>/api/v1/namespaces/foo/pods/bar</code>
+     * @return the resource, e.g. <code>pods</code>, or <code>unknown</code>
+     */
+    public static String resource(String path) {
+        String[] segments = path.split("/");
+        int index = resourceIndex(segments);
+        return index < segments.length ? segments[index] : "unknown";
+    }
+
+    // /api/v1/[namespaces/ns/]resource[/name[/subresource]] or /apis/group/version/[namespaces/ns/]resource[/name[/subresource]]
+    private static int resourceIndex(String[] segments) {
+        int base = segments.length > 1 && "apis".equals(segments[1]) ? 4 : 3;
+        return segments.length > base + 2 && "namespaces".equals(segments[base]) ? base + 2 : base;
+    }
+}
@@ -0,0 +1,114 @@
+package io.radanalytics.operator.reconcile;
+
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.dsl.base.CustomResourceDefinitionContext;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a status with more fields than the <code>state</code> and <code>lastTransitionTime</code> the
+ * abstract operator knows about. The custom resource is read and its status subresource is replaced, the same way
+ * the abstract operator does it. The custom resources of all the namespaces can be listed the same (raw) way.
+ */
+public class CustomResourceStatus {
+
+    private static final String CRD_VERSION = "v1";
+
+    private final KubernetesClient client;
+    private final CustomResourceDefinitionContext crdContext;
+
+    /**
+     * @param client k8s client
+     * @param prefix prefix of the operator, its group followed by '/'
+     * @param pluralName plural name of the custom resource
+     */
+    public CustomResourceStatus(KubernetesClient client, String prefix, String pluralName) {
+        this.client = client;
+        String group = prefix.endsWith("/") ? prefix.substring(0, prefix.length() - 1) : prefix;
+        this.crdContext = new CustomResourceDefinitionContext.Builder()
+                .withGroup(group)
+                .withVersion(CRD_VERSION)
+                .withPlural(pluralName)
+                .withName(pluralName + "." + group)
+                .withScope("Namespaced")
+                .build();
+    }
+
+    /**
+     * @param state the state
+     * @return new status with the state and the current time as the <code>lastTransitionTime</code>
+     */
+    public static Map<String, Object> status(String state) {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("state", state);
+        status.put("lastTransitionTime", timestamp(System.currentTimeMillis()));
+        return status;
+    }
+
+    /**
+     * @param millis epoch millis
+     * @return the time in the format of the <code>lastTransitionTime</code>
+     */
+    public static String timestamp(long millis) {
+        return DateTimeFormatter.ISO_INSTANT.format(Instant.ofEpochMilli(millis).truncatedTo(ChronoUnit.SECONDS));
+    }
+
+    /**
+     * @param namespace namespace of the custom resource
+     * @param name name of the custom resource
+     * @param status fields of the status to set, the others are kept
+     * @throws IOException if the status can't be written
+     * @throws io.fabric8.kubernetes.client.KubernetesClientException with the code 404 if the custom resource is gone
+     */
+    @SuppressWarnings("unchecked")
+    public void write(String namespace, String name, Map<String, Object> status) throws IOException {
+        Map<String, Object> cr = client.customResource(crdContext).get(namespace, name);
+        Map<String, Object> merged = new LinkedHashMap<>();
+        if (cr.get("status") instanceof Map) {
+            merged.putAll((Map<String, Object>) cr.get("status"));
+        }
+        merged.putAll(status);
+        cr.put("status", merged);
+        client.customResource(crdContext).updateStatus(namespace, name, cr);
+    }
+
+    /**
+     * @return the custom resources in all the namespaces
+     */
+    @SuppressWarnings("unchecked")
+    public List<Map<String, Object>> listInAnyNamespace() {
+        Object items = client.customResource(crdContext).list().get("items");
+        return items instanceof List ? (List<Map<String, Object>>) items : Collections.emptyList();
+    }
+
+    /**
+     * Removes a one-shot annotation (a request the user put on the custom resource) if it's there.
+     *
+     * @param namespace namespace of the custom resource
+     * @param name name of the custom resource
+     * @param annotation the annotation
+     * @return its value, <code>null</code> if the custom resource didn't have it
+     * @throws IOException if the custom resource can't be written
+     */
+    @SuppressWarnings("unchecked")
+    public String removeAnnotation(String namespace, String name, String annotation) throws IOException {
+        Map<String, Object> cr = client.customResource(crdContext).get(namespace, name);
+        if (!(cr.get("metadata") instanceof Map)) {
+            return null;
+        }
+        Map<String, Object> metadata = (Map<String, Object>) cr.get("metadata");
+        if (!(metadata.get("annotations") instanceof Map) || !((Map<String, Object>) metadata.get("annotations")).containsKey(annotation)) {
+            return null;
+        }
+        Object value = ((Map<String, Object>) metadata.get("annotations")).remove(annotation);
+        client.customResource(crdContext).edit(namespace, name, cr);
+        return String.valueOf(value);
+    }
+}
@@ -0,0 +1,163 @@
+package io.radanalytics.operator.reconcile;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.client.utils.Serialization;
+import io.radanalytics.operator.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records what the operator sees, so that a misbehaving namespace can be replayed offline against the same code.
+ * Each line of the file is one JSON object with one of the following types:
+ * <ul>
+ *     <li><code>event</code> - add/modify/delete of a custom resource (or config map) as it was passed to the operator</li>
+ *     <li><code>reconciliation</code> - start of the full reconciliation</li>
+ *     <li><code>resource</code> - list/watch event of a resource in the local cache (rc, pod, config map, ...)</li>
+ * </ul>
+ * The recording is enabled by the <code>EVENT_RECORDING_FILE</code> env variable. The objects are serialized by the
+ * calling thread (they may be changed later) and written by a background thread, if the writer can't keep up, the
+ * records are dropped rather than blocking the operator.
+ */
+public class EventRecorder {
+
+    public static final String EVENT = "event";
+    public static final String RECONCILIATION = "reconciliation";
+    public static final String RESOURCE = "resource";
+
+    private static final Logger log = LoggerFactory.getLogger(EventRecorder.class.getName());
+    private static final int CAPACITY = 10_000;
+    private static final EventRecorder DISABLED = new EventRecorder();
+    private static volatile EventRecorder instance;
+
+    private final ObjectMapper mapper = Serialization.jsonMapper();
+    private final BlockingQueue<String> lines;
+    private final AtomicLong dropped = new AtomicLong();
+
+    private EventRecorder() {
+        this.lines = null;
+    }
+
+    EventRecorder(BufferedWriter writer) {
+        this.lines = new ArrayBlockingQueue<>(CAPACITY);
+        Thread t = new Thread(() -> writeLoop(writer), "event-recorder");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * @return the recorder configured by the env variable or a no-op one
+     */
+    public static EventRecorder get() {
+        if (null == instance) {
+            synchronized (EventRecorder.class) {
+                if (null == instance) {
+                    instance = create(Constants.getEventRecordingFile());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private static EventRecorder create(String file) {
+        if (null == file) {
+            return DISABLED;
+        }
+        try {
+            BufferedWriter writer = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            log.info("recording the events to {}", file);
+            return new EventRecorder(writer);
+        } catch (IOException e) {
+            log.error("unable to record the events to {}: {}", file, e.getMessage());
+            return DISABLED;
+        }
+    }
+
+    public boolean isEnabled() {
+        return null != lines;
+    }
+
+    public void event(String kind, WorkQueue.Action action, String namespace, String name, Object entity) {
+        if (!isEnabled()) {
+            return;
+        }
+        ObjectNode record = record(EVENT, kind, namespace, name);
+        record.put("action", action.name());
+        record.set("object", mapper.valueToTree(entity));
+        offer(record);
+    }
+
+    public void reconciliation(String kind, String namespace) {
+        if (!isEnabled()) {
+            return;
+        }
+        offer(record(RECONCILIATION, kind, namespace, null));
+    }
+
+    /**
+     * @param action ADDED, MODIFIED or DELETED (the items of the initial list are recorded as ADDED)
+     * @param resource the resource
+     */
+    public void resource(String action, HasMetadata resource) {
+        if (!isEnabled()) {
+            return;
+        }
+        ObjectNode record = record(RESOURCE, resource.getKind(), resource.getMetadata().getNamespace(), resource.getMetadata().getName());
+        record.put("action", action);
+        record.set("object", mapper.valueToTree(resource));
+        offer(record);
+    }
+
+    private ObjectNode record(String type, String kind, String namespace, String name) {
+        ObjectNode record = mapper.createObjectNode();
+        record.put("timestamp", System.currentTimeMillis());
+        record.put("type", type);
+        record.put("kind", kind);
+        record.put("namespace", namespace);
+        record.put("name", name);
+        return record;
+    }
+
+    private void offer(ObjectNode record) {
+        if (!lines.offer(record.toString())) {
+            long n = dropped.incrementAndGet();
+            if (1 == n || 0 == n % 1000) {
+                log.warn("the event recorder can't keep up, {} records have been dropped", n);
+            }
+        }
+    }
+
+    private void writeLoop(BufferedWriter writer) {
+        try {
+            while (true) {
+                String line = lines.poll(1, TimeUnit.SECONDS);
+                if (null == line) {
+                    writer.flush();
+                    continue;
+                }
+                writer.write(line);
+                writer.newLine();
+                if (lines.isEmpty()) {
+                    writer.flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error("unable to write the recorded events: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package io.radanalytics.operator.reconcile;
+
+import io.fabric8.kubernetes.api.model.*;
+import io.fabric8.kubernetes.api.model.apps.DaemonSet;
+import io.fabric8.kubernetes.api.model.apps.DaemonSetBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.radanalytics.operator.Constants;
+import io.radanalytics.operator.cache.ResourceCache;
+import io.radanalytics.operator.cluster.MetricsHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static io.radanalytics.operator.resource.LabelsHelper.OPERATOR_KIND_LABEL;
+
+/**
+ * Keeps the images of the Spark clusters, applications and history servers (and the default images) pulled on all the
+ * nodes, so that the pods started on a fresh node don't wait for the registry. A daemon set runs one init container
+ * per image (it only exits) and the pause container. The images don't need to have a shell (e.g. distroless ones), the
+ * first init container copies the static busybox binary to a shared volume and the others only run its
+ * <code>true</code>, so no image fails and blocks the pulls of the images after it. Whenever the set of the images used by the custom resources
+ * changes, the daemon set is replaced, the images nobody uses anymore are dropped from it, so that the kubelet's image
+ * garbage collection can remove them from the nodes.
+ *
+ * After a (re)start the users are registered one by one as the events of the custom resources are processed, so the
+ * images of the existing daemon set are kept in it until the first full reconciliation has run (see
+ * {@link #usersKnown()}), otherwise the first sync would drop most of them and roll the daemon set on all the nodes.
+ *
+ * The pull time of each image is estimated from the pods of the daemon set as the time between the previous init
+ * container (or the pod) finishing (starting) and the init container starting.
+ *
+ * There is one instance per watched namespace and it's shared by all the operators watching that namespace.
+ */
+public class ImagePrePuller {
+
+    public static final String NAME = "spark-image-pre-puller";
+    static final String KIND = "ImagePrePuller";
+    static final String TOOLS_IMAGE = "busybox";
+    private static final String TOOLS_VOLUME = "pre-pull-tools";
+    private static final String TOOLS_PATH = "/pre-pull-tools";
+    private static final long SYNC_DELAY_MS = 2000;
+    private static final long SWEEP_PERIOD_S = 30;
+
+    private static final Logger log = LoggerFactory.getLogger(ImagePrePuller.class.getName());
+    private static final Map<String, ImagePrePuller> instances = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "image-pre-puller");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final KubernetesClient client;
+    private final ResourceCache cache;
+    private final String namespace;
+    private final String prefix;
+    // kind/namespace/name -> image
+    private final Map<String, String> users = new ConcurrentHashMap<>();
+    // pod/container of the pull times already observed
+    private final Set<String> observed = ConcurrentHashMap.newKeySet();
+    private Set<String> applied;
+    // images of the daemon set from before the (re)start, kept until all the users are known
+    private Set<String> previous;
+    private volatile boolean usersKnown = false;
+    private ScheduledFuture<?> pendingSync;
+
+    private ImagePrePuller(KubernetesClient client, String namespace, String prefix) {
+        this.client = client;
+        this.cache = ResourceCache.forNamespace(client, namespace, prefix);
+        // in the '*' mode the daemon set lives in the namespace of the operator
+        this.namespace = "*".equals(namespace) ? Optional.ofNullable(client.getNamespace()).orElse("default") : namespace;
+        this.prefix = prefix;
+    }
+
+    /**
+     * Returns the pre-puller for the namespace, the first call starts observing the pull times.
+     *
+     * @param client k8s client
+     * @param namespace watched namespace or '*'
+     * @param prefix prefix of the operator's labels (e.g. <code>radanalytics.io/</code>)
+     * @return shared instance for the namespace
+     */
+    public static ImagePrePuller forNamespace(KubernetesClient client, String namespace, String prefix) {
+        return instances.computeIfAbsent(namespace, ns -> {
+            ImagePrePuller puller = new ImagePrePuller(client, ns, prefix);
+            if (Constants.useImagePrePull()) {
+                scheduler.scheduleWithFixedDelay(puller::sweep, SWEEP_PERIOD_S, SWEEP_PERIOD_S, TimeUnit.SECONDS);
+                puller.scheduleSync();
+            }
+            return puller;
+        });
+    }
+
+    /**
+     * The custom resource uses the image, the daemon set is updated (a bit later, so that more changes are written
+     * at once) if it's a new one.
+     *
+     * @param kind kind of the custom resource
+     * @param namespace namespace of the custom resource
+     * @param name name of the custom resource
+     * @param image the image it uses
+     */
+    public void use(String kind, String namespace, String name, String image) {
+        if (!Constants.useImagePrePull() || null == image) {
+            return;
+        }
+        if (!image.equals(users.put(kind + "/" + namespace + "/" + name, image))) {
+            scheduleSync();
+        }
+    }
+
+    /**
+     * The custom resource has been deleted.
+     */
+    public void release(String kind, String namespace, String name) {
+        if (null != users.remove(kind + "/" + namespace + "/" + name)) {
+            scheduleSync();
+        }
+    }
+
+    /**
+     * All the custom resources have been seen since the start (the first full reconciliation has run), the images
+     * that none of them uses can be dropped from the daemon set.
+     */
+    public void usersKnown() {
+        if (!usersKnown) {
+            usersKnown = true;
+            if (Constants.useImagePrePull()) {
+                scheduleSync();
+            }
+        }
+    }
+
+    /**
+     * @return the images to be pulled (sorted, so that the daemon set changes only if the set of images does)
+     */
+    Set<String> images() {
+        Set<String> images = new TreeSet<>(users.values());
+        images.add(Constants.getDefaultSparkImage());
+        images.add(Constants.getDefaultSparkAppImage());
+        return images;
+    }
+
+    private synchronized void scheduleSync() {
+        if (null == pendingSync || pendingSync.isDone()) {
+            pendingSync = scheduler.schedule(this::sync, SYNC_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void sync() {
+        try {
+            if (null == applied) {
+                // the first sync after the (re)start, the daemon set may be up to date already
+                DaemonSet existing = client.apps().daemonSets().inNamespace(namespace).withName(NAME).get();
+                previous = null == existing ? Collections.emptySet() : images(existing);
+                applied = previous;
+            }
+            Set<String> images = images();
+            if (!usersKnown) {
+                images.addAll(previous);
+            }
+            if (images.equals(applied)) {
+                return;
+            }
+            client.apps().daemonSets().inNamespace(namespace).createOrReplace(daemonSet(images, prefix));
+            log.info("pre-pulling images {} in {}", images, namespace);
+            applied = images;
+        } catch (Exception e) {
+            log.warn("unable to update the image pre-puller in {}: {}", namespace, e.getMessage());
+            scheduler.schedule(this::sync, SWEEP_PERIOD_S, TimeUnit.SECONDS);
+        }
+    }
+
+    private void sweep() {
+        try {
+            Map<String, String> labels = labels(prefix);
+            List<Pod> pods = cache.pods().hasSynced()
+                    ? cache.pods().byLabels(namespace, labels)
+                    : client.pods().inNamespace(namespace).withLabels(labels).list().getItems();
+            Set<String> seen = new HashSet<>();
+            for (Pod pod : pods) {
+                seen.add(pod.getMetadata().getName());
+                pullTimes(pod).forEach((image, seconds) -> {
+                    if (observed.add(pod.getMetadata().getName() + "/" + image)) {
+                        MetricsHelper.imagePullDuration.labels(image).observe(seconds);
+                    }
+                });
+            }
+            observed.removeIf(key -> !seen.contains(key.substring(0, key.indexOf('/'))));
+        } catch (Exception e) {
+            log.debug("unable to observe the image pull times in {}: {}", namespace, e.getMessage());
+        }
+    }
+
+    /**
+     * @param daemonSet the daemon set of the pre-puller
+     * @return the images it pulls
+     */
+    static Set<String> images(DaemonSet daemonSet) {
+        Set<String> images = new TreeSet<>();
+        daemonSet.getSpec().getTemplate().getSpec().getInitContainers().stream()
+                .filter(c -> !"tools".equals(c.getName()))
+                .forEach(c -> images.add(c.getImage()));
+        return images;
+    }
+
+    static Map<String, String> labels(String prefix) {
+        Map<String, String> labels = new HashMap<>(2);
+        labels.put(prefix + OPERATOR_KIND_LABEL, KIND);
+        labels.put(prefix + KIND, NAME);
+        return labels;
+    }
+
+    static DaemonSet daemonSet(Set<String> images, String prefix) {
+        Map<String, String> labels = labels(prefix);
+        VolumeMount tools = new VolumeMountBuilder().withName(TOOLS_VOLUME).withMountPath(TOOLS_PATH).build();
+        List<Container> pulls = new ArrayList<>(images.size() + 1);
+        pulls.add(new ContainerBuilder()
+                .withName("tools")
+                .withImage(TOOLS_IMAGE)
+                .withImagePullPolicy("IfNotPresent")
+                .withCommand("cp", "/bin/busybox", TOOLS_PATH + "/busybox")
+                .withVolumeMounts(tools)
+                .withResources(resources())
+                .build());
+        int i = 0;
+        for (String image : images) {
+            pulls.add(new ContainerBuilder()
+                    .withName("pull-" + i++)
+                    .withImage(image)
+                    .withImagePullPolicy("IfNotPresent")
+                    .withCommand(TOOLS_PATH + "/busybox", "true")
+                    .withVolumeMounts(tools)
+                    .withResources(resources())
+                    .build());
+        }
+        return new DaemonSetBuilder().withNewMetadata().withName(NAME).withLabels(labels).endMetadata()
+                .withNewSpec().withNewSelector().withMatchLabels(labels).endSelector()
+                .withNewTemplate().withNewMetadata().withLabels(labels).endMetadata()
+                .withNewSpec()
+                .withInitContainers(pulls)
+                .addNewVolume().withName(TOOLS_VOLUME).withNewEmptyDir().endEmptyDir().endVolume()
+                .addNewContainer()
+                .withName("pause")
+                .withImage(Constants.getImagePrePullPauseImage())
+                .withImagePullPolicy("IfNotPresent")
+                .withResources(resources())
+                .endContainer()
+                .endSpec().endTemplate().endSpec().build();
+    }
+
+    private static ResourceRequirements resources() {
+        Map<String, Quantity> requests = new HashMap<>(2);
+        requests.put("cpu", new Quantity("1m"));
+        requests.put("memory", new Quantity("8Mi"));
+        return new ResourceRequirementsBuilder().withRequests(requests).build();
+    }
+
+    /**
+     * @param pod pod of the daemon set
+     * @return image -> seconds it took to pull it (and create the container), only for the started init containers
+     */
+    static Map<String, Double> pullTimes(Pod pod) {
+        Map<String, Double> times = new HashMap<>();
+        if (null == pod.getStatus() || null == pod.getStatus().getInitContainerStatuses() || null == pod.getStatus().getStartTime()) {
+            return times;
+        }
+        Map<String, String> images = new HashMap<>();
+        pod.getSpec().getInitContainers().forEach(c -> images.put(c.getName(), c.getImage()));
+        try {
+            Instant previous = Instant.parse(pod.getStatus().getStartTime());
+            for (ContainerStatus status : pod.getStatus().getInitContainerStatuses()) {
+                ContainerStateTerminated terminated = null == status.getState() ? null : status.getState().getTerminated();
+                if (null == terminated || null == terminated.getStartedAt() || null == images.get(status.getName())) {
+                    break;
+                }
+                Instant started = Instant.parse(terminated.getStartedAt());
+                times.put(images.get(status.getName()), Math.max(0, started.toEpochMilli() - previous.toEpochMilli()) / 1000.0);
+                if (null == terminated.getFinishedAt()) {
+                    break;
+                }
+                previous = Instant.parse(terminated.getFinishedAt());
+            }
+        } catch (DateTimeParseException e) {
+            log.debug("unable to parse the times of pod {}: {}", pod.getMetadata().getName(), e.getMessage());
+        }
+        return times;
+    }
+}
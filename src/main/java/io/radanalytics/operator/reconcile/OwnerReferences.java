@@ -0,0 +1,138 @@
+package io.radanalytics.operator.reconcile;
+
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.KubernetesResourceList;
+import io.fabric8.kubernetes.api.model.OwnerReference;
+import io.fabric8.kubernetes.api.model.OwnerReferenceBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.dsl.base.CustomResourceDefinitionContext;
+import io.radanalytics.operator.cache.ResourceCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Makes the custom resource (or the config map in the config map mode) the owner of all the resources generated for
+ * it, so that the garbage collector removes them once it's deleted. The uid of the owner is looked up only once.
+ */
+public class OwnerReferences {
+
+    private static final Logger log = LoggerFactory.getLogger(OwnerReferences.class.getName());
+    private static final String CRD_VERSION = "v1";
+
+    private final KubernetesClient client;
+    private final ResourceCache cache;
+    private final String kind;
+    private final boolean isCrd;
+    private final CustomResourceDefinitionContext crdContext;
+    private final Map<String, OwnerReference> owners = new ConcurrentHashMap<>();
+
+    /**
+     * @param client k8s client
+     * @param cache cache of the resources (used for the config maps)
+     * @param entityName kind of the custom resource
+     * @param pluralName plural name of the custom resource
+     * @param prefix prefix of the operator, its group followed by '/'
+     * @param isCrd whether the custom resources or the config maps are the source of truth
+     */
+    public OwnerReferences(KubernetesClient client, ResourceCache cache, String entityName, String pluralName,
+                           String prefix, boolean isCrd) {
+        this.client = client;
+        this.cache = cache;
+        this.kind = entityName;
+        this.isCrd = isCrd;
+        String group = prefix.endsWith("/") ? prefix.substring(0, prefix.length() - 1) : prefix;
+        this.crdContext = new CustomResourceDefinitionContext.Builder()
+                .withGroup(group)
+                .withVersion(CRD_VERSION)
+                .withPlural(pluralName)
+                .withName(pluralName + "." + group)
+                .withScope("Namespaced")
+                .build();
+    }
+
+    /**
+     * Sets the owner of all the items in the list. If the owner can't be found, the list is left untouched.
+     *
+     * @param list resources to be owned
+     * @param namespace namespace of the owner
+     * @param name name of the owner
+     */
+    public void setOwner(KubernetesResourceList list, String namespace, String name) {
+        OwnerReference owner = ownerOf(namespace, name);
+        if (null == owner) {
+            return;
+        }
+        for (Object o : list.getItems()) {
+            HasMetadata resource = (HasMetadata) o;
+            List<OwnerReference> refs = new ArrayList<>();
+            refs.add(owner);
+            resource.getMetadata().setOwnerReferences(refs);
+        }
+    }
+
+    /**
+     * Forgets the cached uid, it has to be called when the owner is deleted (a new one with the same name will have
+     * a different uid).
+     */
+    public void forget(String namespace, String name) {
+        owners.remove(namespace + "/" + name);
+    }
+
+    OwnerReference ownerOf(String namespace, String name) {
+        final String key = namespace + "/" + name;
+        OwnerReference owner = owners.get(key);
+        if (null != owner) {
+            return owner;
+        }
+        try {
+            owner = isCrd ? crOwner(namespace, name) : configMapOwner(namespace, name);
+        } catch (Exception e) {
+            log.warn("unable to find the owner {} in {}: {}", name, namespace, e.getMessage());
+            return null;
+        }
+        if (null != owner) {
+            owners.put(key, owner);
+        }
+        return owner;
+    }
+
+    @SuppressWarnings("unchecked")
+    private OwnerReference crOwner(String namespace, String name) {
+        Map<String, Object> cr = client.customResource(crdContext).get(namespace, name);
+        if (null == cr || null == cr.get("metadata")) {
+            return null;
+        }
+        String uid = (String) ((Map<String, Object>) cr.get("metadata")).get("uid");
+        return build(crdContext.getGroup() + "/" + crdContext.getVersion(), kind, name, uid);
+    }
+
+    private OwnerReference configMapOwner(String namespace, String name) {
+        ConfigMap cm = cache.configMaps().hasSynced()
+                ? cache.configMaps().get(namespace, name)
+                : client.configMaps().inNamespace(namespace).withName(name).get();
+        if (null == cm) {
+            return null;
+        }
+        return build("v1", "ConfigMap", name, cm.getMetadata().getUid());
+    }
+
+    // no blockOwnerDeletion, it would need the update permission on the owner's finalizers (enforced by OpenShift)
+    private static OwnerReference build(String apiVersion, String kind, String name, String uid) {
+        if (null == uid) {
+            return null;
+        }
+        return new OwnerReferenceBuilder()
+                .withApiVersion(apiVersion)
+                .withKind(kind)
+                .withName(name)
+                .withUid(uid)
+                .withController(true)
+                .build();
+    }
+}
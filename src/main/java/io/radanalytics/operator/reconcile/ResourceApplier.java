@@ -0,0 +1,92 @@
+package io.radanalytics.operator.reconcile;
+
+import io.fabric8.kubernetes.api.model.*;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.radanalytics.operator.cache.ResourceCache;
+import io.radanalytics.operator.cluster.MetricsHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Writes only those resources from the rendered list whose spec hash differs from the one on the live resource.
+ * The live resources are taken from the local cache, the kinds that are not cached are always written. Right after
+ * the operator has deleted the resources, the cache still has them until the watch catches up, so such an apply has
+ * to be forced.
+ */
+public class ResourceApplier {
+
+    private final ResourceCache cache;
+    private final String prefix;
+
+    public ResourceApplier(ResourceCache cache, String prefix) {
+        this.cache = cache;
+        this.prefix = prefix;
+    }
+
+    /**
+     * Annotates all the resources with their spec hash and calls <code>createOrReplace</code> for those that have
+     * changed.
+     *
+     * @param client k8s client
+     * @param list rendered resources
+     * @param namespace namespace where the resources live
+     * @return number of resources that have been written
+     */
+    public int apply(KubernetesClient client, KubernetesResourceList list, String namespace) {
+        return apply(client, list, namespace, false);
+    }
+
+    /**
+     * @param client k8s client
+     * @param list rendered resources
+     * @param namespace namespace where the resources live
+     * @param force write all the resources, the cache may still hold the ones that have just been deleted
+     * @return number of resources that have been written
+     */
+    public int apply(KubernetesClient client, KubernetesResourceList list, String namespace, boolean force) {
+        List<HasMetadata> toWrite = new ArrayList<>();
+        for (Object o : list.getItems()) {
+            HasMetadata desired = (HasMetadata) o;
+            String hash = SpecHash.annotate(desired, prefix);
+            HasMetadata live = force ? null : getLive(desired, namespace);
+            if (null != live && hash.equals(SpecHash.get(live, prefix)) && sameReplicas(desired, live)) {
+                MetricsHelper.skippedWrites.labels(namespace, desired.getKind()).inc();
+            } else {
+                toWrite.add(desired);
+                MetricsHelper.resourceWrites.labels(namespace, desired.getKind()).inc();
+            }
+        }
+        if (!toWrite.isEmpty()) {
+            client.resourceList(new KubernetesListBuilder().withItems(toWrite).build()).inNamespace(namespace).createOrReplace();
+        }
+        return toWrite.size();
+    }
+
+    private HasMetadata getLive(HasMetadata desired, String namespace) {
+        if (null == cache) {
+            return null;
+        }
+        String name = desired.getMetadata().getName();
+        if (desired instanceof ReplicationController && cache.replicationControllers().hasSynced()) {
+            return cache.replicationControllers().get(namespace, name);
+        } else if (desired instanceof Service && cache.services().hasSynced()) {
+            return cache.services().get(namespace, name);
+        } else if (desired instanceof PersistentVolumeClaim && cache.persistentVolumeClaims().hasSynced()) {
+            return cache.persistentVolumeClaims().get(namespace, name);
+        } else if (desired instanceof ConfigMap && cache.configMaps().hasSynced()) {
+            return cache.configMaps().get(namespace, name);
+        }
+        return null;
+    }
+
+    // rc may have been scaled without touching the annotation, in that case it needs to be written
+    private static boolean sameReplicas(HasMetadata desired, HasMetadata live) {
+        if (desired instanceof ReplicationController) {
+            return Objects.equals(((ReplicationController) desired).getSpec().getReplicas(),
+                    ((ReplicationController) live).getSpec().getReplicas());
+        }
+        return true;
+    }
+}
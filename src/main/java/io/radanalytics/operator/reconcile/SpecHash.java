@@ -0,0 +1,64 @@
+package io.radanalytics.operator.reconcile;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.hash.Hashing;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Computes a stable hash of a rendered resource and stores it in the <code>radanalytics.io/spec-hash</code> annotation.
+ * Comparing the hash of a freshly rendered resource with the annotation of the live one tells whether it needs to be
+ * written.
+ */
+public class SpecHash {
+
+    public static final String SPEC_HASH_ANNOTATION = "spec-hash";
+
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    /**
+     * Computes the hash of the resource (ignoring the hash annotation itself) and sets it as the annotation.
+     *
+     * @param resource rendered resource
+     * @param prefix prefix of the annotation (e.g. <code>radanalytics.io/</code>)
+     * @return the hash
+     */
+    public static String annotate(HasMetadata resource, String prefix) {
+        Map<String, String> annotations = Optional.ofNullable(resource.getMetadata().getAnnotations()).orElse(new HashMap<>());
+        annotations.remove(prefix + SPEC_HASH_ANNOTATION);
+        resource.getMetadata().setAnnotations(annotations.isEmpty() ? null : annotations);
+        String hash = compute(resource);
+        annotations.put(prefix + SPEC_HASH_ANNOTATION, hash);
+        resource.getMetadata().setAnnotations(annotations);
+        return hash;
+    }
+
+    /**
+     * @param resource live resource
+     * @param prefix prefix of the annotation
+     * @return hash stored on the resource or null if there is none
+     */
+    public static String get(HasMetadata resource, String prefix) {
+        if (null == resource || null == resource.getMetadata() || null == resource.getMetadata().getAnnotations()) {
+            return null;
+        }
+        return resource.getMetadata().getAnnotations().get(prefix + SPEC_HASH_ANNOTATION);
+    }
+
+    static String compute(HasMetadata resource) {
+        try {
+            byte[] json = mapper.writeValueAsBytes(resource);
+            return Hashing.sha256().hashBytes(json).toString().substring(0, 16);
+        } catch (JsonProcessingException e) {
+            // shouldn't happen for the model classes, fall back to something that never matches
+            return Hashing.sha256().hashString(String.valueOf(System.nanoTime()), StandardCharsets.UTF_8).toString().substring(0, 16);
+        }
+    }
+}
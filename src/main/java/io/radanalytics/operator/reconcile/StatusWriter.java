@@ -0,0 +1,219 @@
+package io.radanalytics.operator.reconcile;
+
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.radanalytics.operator.cluster.MetricsHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Writes the status of the custom resources in the background, so that a slow or failing API server never blocks
+ * the event handling. Only the latest state per resource is kept: if the state changes again before the previous one
+ * has been written, the two are merged into a single write. Failed writes are retried with jittered exponential
+ * backoff and given up (and counted as dropped) after {@link #MAX_ATTEMPTS} attempts. A custom resource that doesn't
+ * exist anymore (404) has no status to write, that's not retried.
+ *
+ * Besides the state, other fields of the status (e.g. the decision of the autoscaler) can be written the same way, so
+ * that there is only one writer of the status of each custom resource. The pending fields are merged too, the latest
+ * value of each one is written (together with the pending state, if there is one).
+ */
+public class StatusWriter {
+
+    @FunctionalInterface
+    public interface Sink {
+        void write(String state, String namespace, String name) throws Exception;
+    }
+
+    /**
+     * Writes the state (<code>null</code> if only the other fields have changed) and the other fields of the status.
+     */
+    @FunctionalInterface
+    public interface FieldsSink {
+        void write(String state, Map<String, Object> fields, String namespace, String name) throws Exception;
+    }
+
+    static final int MAX_ATTEMPTS = 8;
+    static final long INITIAL_BACKOFF_MS = 200;
+    static final long MAX_BACKOFF_MS = 30_000;
+
+    private static final Logger log = LoggerFactory.getLogger(StatusWriter.class.getName());
+    private static volatile ScheduledExecutorService sharedScheduler;
+
+    private final String kind;
+    private final FieldsSink sink;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+
+    public StatusWriter(String kind, Sink sink) {
+        this(kind, sink, scheduler());
+    }
+
+    public StatusWriter(String kind, FieldsSink sink) {
+        this(kind, sink, scheduler());
+    }
+
+    StatusWriter(String kind, Sink sink, ScheduledExecutorService scheduler) {
+        this(kind, (state, fields, namespace, name) -> sink.write(state, namespace, name), scheduler);
+    }
+
+    StatusWriter(String kind, FieldsSink sink, ScheduledExecutorService scheduler) {
+        this.kind = kind;
+        this.sink = sink;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Schedules the write of the state, returns immediately.
+     *
+     * @param namespace namespace of the custom resource
+     * @param name name of the custom resource
+     * @param state the new state
+     */
+    public void update(String namespace, String name, String state) {
+        enqueue(namespace, name, p -> p.state = state);
+    }
+
+    /**
+     * Schedules the write of the other fields of the status, returns immediately. The fields of the status that
+     * aren't given are kept.
+     *
+     * @param namespace namespace of the custom resource
+     * @param name name of the custom resource
+     * @param fields the fields to set
+     */
+    public void merge(String namespace, String name, Map<String, Object> fields) {
+        enqueue(namespace, name, p -> p.fields.putAll(fields));
+    }
+
+    private void enqueue(String namespace, String name, Consumer<Pending> change) {
+        final String key = namespace + "/" + name;
+        pending.compute(key, (k, p) -> {
+            if (null == p) {
+                p = new Pending(namespace, name);
+                change.accept(p);
+                final Pending toWrite = p;
+                scheduler.execute(() -> write(key, toWrite));
+            } else {
+                // still waiting for the previous state to be written, only the latest one will be
+                MetricsHelper.statusUpdates.labels(kind, "merged").inc();
+                change.accept(p);
+                p.version++;
+            }
+            return p;
+        });
+    }
+
+    /**
+     * @return number of the resources with a state that hasn't been written yet
+     */
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    private void write(String key, Pending p) {
+        // read under the same lock the updates are made with
+        final Object[] snapshot = new Object[3];
+        pending.computeIfPresent(key, (k, current) -> {
+            snapshot[0] = current.state;
+            snapshot[1] = current.version;
+            snapshot[2] = new LinkedHashMap<>(current.fields);
+            return current;
+        });
+        final String state = (String) snapshot[0];
+        final int version = (Integer) snapshot[1];
+        @SuppressWarnings("unchecked")
+        final Map<String, Object> fields = (Map<String, Object>) snapshot[2];
+        try {
+            sink.write(state, fields, p.namespace, p.name);
+        } catch (Exception e) {
+            if (e instanceof KubernetesClientException && 404 == ((KubernetesClientException) e).getCode()) {
+                log.debug("custom resource {} in {} is gone, its status {} isn't written", p.name, p.namespace, state);
+                MetricsHelper.statusUpdates.labels(kind, "gone").inc();
+                finish(key, p, version);
+            } else {
+                retry(key, p, state, version, e);
+            }
+            return;
+        }
+        MetricsHelper.statusUpdates.labels(kind, "written").inc();
+        MetricsHelper.statusWriteLatency.labels(kind).observe((System.nanoTime() - p.since) / 1e9);
+        finish(key, p, version);
+    }
+
+    private void retry(String key, Pending p, String state, int version, Exception e) {
+        int attempt = ++p.attempt;
+        if (attempt >= MAX_ATTEMPTS) {
+            log.warn("giving up on status {} for {} in {} after {} attempts: {}", state, p.name, p.namespace, attempt, e.getMessage());
+            MetricsHelper.statusUpdates.labels(kind, "dropped").inc();
+            finish(key, p, version);
+            return;
+        }
+        long delay = backoff(attempt);
+        log.debug("failed to update status {} for {} in {}, retrying in {}ms", state, p.name, p.namespace, delay);
+        MetricsHelper.statusUpdates.labels(kind, "retried").inc();
+        scheduler.schedule(() -> write(key, p), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void finish(String key, Pending p, int writtenVersion) {
+        pending.compute(key, (k, current) -> {
+            if (current != p || current.version == writtenVersion) {
+                return null;
+            }
+            // the state has changed in the meantime, write the latest one
+            current.attempt = 0;
+            current.since = System.nanoTime();
+            scheduler.execute(() -> write(key, current));
+            return current;
+        });
+    }
+
+    /**
+     * @param attempt number of the failed attempts so far (1 or more)
+     * @return delay in ms before the next attempt, random between half and full of the exponential backoff
+     */
+    static long backoff(int attempt) {
+        long max = Math.min(MAX_BACKOFF_MS, INITIAL_BACKOFF_MS << Math.min(attempt - 1, 20));
+        return max / 2 + ThreadLocalRandom.current().nextLong(max / 2 + 1);
+    }
+
+    private static ScheduledExecutorService scheduler() {
+        if (null == sharedScheduler) {
+            synchronized (StatusWriter.class) {
+                if (null == sharedScheduler) {
+                    final AtomicInteger counter = new AtomicInteger();
+                    sharedScheduler = Executors.newScheduledThreadPool(2, r -> {
+                        Thread t = new Thread(r, "status-writer-" + counter.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+                }
+            }
+        }
+        return sharedScheduler;
+    }
+
+    private static class Pending {
+        private final String namespace;
+        private final String name;
+        private volatile String state;
+        // guarded by the lock of the pending map
+        private final Map<String, Object> fields = new LinkedHashMap<>();
+        private volatile int version = 0;
+        private volatile int attempt = 0;
+        private volatile long since = System.nanoTime();
+
+        private Pending(String namespace, String name) {
+            this.namespace = namespace;
+            this.name = name;
+        }
+    }
+}
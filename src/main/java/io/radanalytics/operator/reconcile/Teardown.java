@@ -0,0 +1,109 @@
+package io.radanalytics.operator.reconcile;
+
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.OwnerReference;
+import io.fabric8.kubernetes.api.model.PersistentVolumeClaim;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.ReplicationController;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.api.model.extensions.Ingress;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.dsl.Resource;
+import io.prometheus.client.Histogram;
+import io.radanalytics.operator.Constants;
+import io.radanalytics.operator.cluster.MetricsHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Removes the resources of a deleted custom resource and counts the calls it takes. The resources with a known name are
+ * deleted by it, one call each, with the propagation policy from <code>DELETE_PROPAGATION</code>, so the pods of the
+ * deleted replication controllers and deployments are removed by the garbage collector. Deleting by labels costs a
+ * list and then a delete of each listed resource, so it's used only for the pods whose names aren't known to the
+ * operator (e.g. the driver pods created by spark-submit).
+ *
+ * The generic <code>client.resourceList(list).delete()</code> isn't used, in this version of the client it ignores the
+ * propagation policy (it scales the controllers down first) and stops at the first resource that doesn't exist.
+ */
+public class Teardown {
+
+    private final KubernetesClient client;
+    private final String kind;
+    private final String namespace;
+    private final String propagation = Constants.getDeletePropagation();
+    private final Histogram.Timer timer;
+    private int calls = 0;
+
+    public Teardown(KubernetesClient client, String kind, String namespace) {
+        this.client = client;
+        this.kind = kind;
+        this.namespace = namespace;
+        this.timer = MetricsHelper.teardownDuration.labels(kind).startTimer();
+    }
+
+    /**
+     * @param resources resources to delete, only their kinds and names are used, the missing ones are skipped
+     * @return this
+     */
+    public Teardown delete(List<? extends HasMetadata> resources) {
+        for (HasMetadata resource : resources) {
+            delete(resource);
+        }
+        return this;
+    }
+
+    /**
+     * @param labels labels of the pods whose names aren't known, only those without an owner are deleted
+     * @return this
+     */
+    public Teardown deletePods(Map<String, String> labels) {
+        List<Pod> pods = new ArrayList<>();
+        for (Pod pod : client.pods().inNamespace(namespace).withLabels(labels).list().getItems()) {
+            List<OwnerReference> owners = pod.getMetadata().getOwnerReferences();
+            if (null == owners || owners.isEmpty()) {
+                pods.add(pod);
+            }
+        }
+        calls++;
+        return delete(pods);
+    }
+
+    /**
+     * Records the duration and the calls of the teardown.
+     */
+    public void finish() {
+        MetricsHelper.teardownApiCalls.labels(kind).inc(calls);
+        timer.observeDuration();
+    }
+
+    private void delete(HasMetadata resource) {
+        String name = resource.getMetadata().getName();
+        Resource<?, ?> operation;
+        if (resource instanceof ReplicationController) {
+            operation = client.replicationControllers().inNamespace(namespace).withName(name);
+        } else if (resource instanceof Deployment) {
+            operation = client.apps().deployments().inNamespace(namespace).withName(name);
+        } else if (resource instanceof Service) {
+            operation = client.services().inNamespace(namespace).withName(name);
+        } else if (resource instanceof ConfigMap) {
+            operation = client.configMaps().inNamespace(namespace).withName(name);
+        } else if (resource instanceof PersistentVolumeClaim) {
+            operation = client.persistentVolumeClaims().inNamespace(namespace).withName(name);
+        } else if (resource instanceof Pod) {
+            operation = client.pods().inNamespace(namespace).withName(name);
+        } else if (resource instanceof Ingress) {
+            operation = client.extensions().ingresses().inNamespace(namespace).withName(name);
+        } else {
+            // e.g. the route of the history server, nothing depends on it
+            client.resource(resource).inNamespace(namespace).delete();
+            calls++;
+            return;
+        }
+        operation.withPropagationPolicy(propagation).delete();
+        calls++;
+    }
+}
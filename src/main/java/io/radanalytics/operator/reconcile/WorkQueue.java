@@ -0,0 +1,254 @@
+package io.radanalytics.operator.reconcile;
+
+import io.radanalytics.operator.Constants;
+import io.radanalytics.operator.cluster.MetricsHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Work queue keyed by (kind, namespace, name). Work items with the same key are processed one after another, items
+ * with different keys are processed in parallel on a bounded pool. When an event arrives for a key that already has
+ * an event waiting, the two are merged into one that carries the latest desired state:
+ *
+ * <ul>
+ *     <li>ADD + MODIFY = ADD (of the modified entity)</li>
+ *     <li>MODIFY + MODIFY = MODIFY (of the latest entity)</li>
+ *     <li>ADD/MODIFY + DELETE = DELETE</li>
+ *     <li>ADD/MODIFY + ADD = ADD (of the latest entity)</li>
+ * </ul>
+ *
+ * Nothing is merged into a waiting DELETE, the resources have to be removed before they are created again. SCALE (a
+ * decision of the autoscaler) is never merged, it's only queued behind the events of the entity. Only the items with
+ * the same handler instance are merged, so the callers should keep theirs in a field rather than passing a new method
+ * reference each time.
+ */
+public class WorkQueue {
+
+    public enum Action {
+        ADD, MODIFY, DELETE, SCALE
+    }
+
+    @FunctionalInterface
+    public interface Handler<T> {
+        void handle(Action action, T entity);
+    }
+
+    /**
+     * Gets notified about each processed work item (e.g. by the scale tests).
+     */
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * @param kind kind of the entity
+         * @param action the (merged) action
+         * @param waitNanos time between the first submission of the item and the start of the processing
+         * @param processingNanos time spent by the handler
+         * @param failed whether the handler has thrown an exception
+         */
+        void processed(String kind, Action action, long waitNanos, long processingNanos, boolean failed);
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(WorkQueue.class.getName());
+    private static volatile WorkQueue shared;
+
+    private final ExecutorService pool;
+    private final Map<String, KeyState> keys = new ConcurrentHashMap<>();
+    private volatile Listener listener;
+
+    public WorkQueue(int parallelism) {
+        final AtomicInteger counter = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+            Thread t = new Thread(r, "work-queue-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * @return the instance shared by all the operators, its size is given by <code>RECONCILIATION_PARALLELISM</code>
+     */
+    public static WorkQueue shared() {
+        if (null == shared) {
+            synchronized (WorkQueue.class) {
+                if (null == shared) {
+                    shared = new WorkQueue(Constants.getReconciliationParallelism());
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Enqueues the event.
+     *
+     * @param kind kind of the entity (used also as the metrics label)
+     * @param namespace namespace of the entity
+     * @param name name of the entity
+     * @param action type of the event
+     * @param entity desired state
+     * @param handler what to do with the event once it's its turn, the events are merged only for the same instance
+     * @param <T> type of the entity
+     * @return future that completes when the event (or the one it has been merged into) has been processed
+     */
+    public <T> CompletableFuture<Void> submit(String kind, String namespace, String name, Action action, T entity, Handler<T> handler) {
+        final String key = kind + "/" + namespace + "/" + name;
+        final Item item = new Item(kind, action, entity, erase(handler));
+        final AtomicReference<CompletableFuture<Void>> result = new AtomicReference<>();
+        final AtomicBoolean start = new AtomicBoolean();
+        keys.compute(key, (k, state) -> {
+            if (null == state) {
+                state = new KeyState();
+            }
+            Item last = state.pending.peekLast();
+            // a different handler (e.g. the scaling done by the full reconciliation) would be lost by the merge
+            Action merged = null == last || last.handler != item.handler ? null : merge(last.action, action);
+            if (null != merged) {
+                last.action = merged;
+                last.entity = entity;
+                result.set(last.done);
+                MetricsHelper.workQueueCoalesced.labels(kind).inc();
+            } else {
+                state.pending.addLast(item);
+                result.set(item.done);
+                MetricsHelper.workQueueDepth.labels(kind).inc();
+            }
+            if (!state.running) {
+                state.running = true;
+                start.set(true);
+            }
+            return state;
+        });
+        if (start.get()) {
+            pool.execute(() -> process(key));
+        }
+        return result.get();
+    }
+
+    // the entity is only ever passed back to the handler it was submitted with
+    @SuppressWarnings("unchecked")
+    private static <T> Handler<Object> erase(Handler<T> handler) {
+        return (Handler<Object>) handler;
+    }
+
+    private void process(String key) {
+        final AtomicReference<Item> next = new AtomicReference<>();
+        keys.computeIfPresent(key, (k, state) -> {
+            next.set(state.pending.pollFirst());
+            return state;
+        });
+        Item item = next.get();
+        if (null == item) {
+            return;
+        }
+        MetricsHelper.workQueueDepth.labels(item.kind).dec();
+        long start = System.nanoTime();
+        MetricsHelper.workQueueWait.labels(item.kind).observe((start - item.enqueuedAt) / 1e9);
+        boolean failed = false;
+        try {
+            item.handler.handle(item.action, item.entity);
+        } catch (Throwable e) {
+            // an error mustn't leave the key running, its events would be blocked for good
+            log.error("{} of {} failed: {}", item.action, key, e.toString());
+            failed = true;
+            item.done.completeExceptionally(e);
+        } finally {
+            long end = System.nanoTime();
+            MetricsHelper.workQueueProcessing.labels(item.kind, item.action.name()).observe((end - start) / 1e9);
+            MetricsHelper.handlerDuration.labels(item.kind, handlerName(item.action)).observe((end - start) / 1e9);
+            Listener l = listener;
+            if (null != l) {
+                try {
+                    l.processed(item.kind, item.action, start - item.enqueuedAt, end - start, failed);
+                } catch (RuntimeException e) {
+                    log.warn("work queue listener has failed: {}", e.getMessage());
+                }
+            }
+        }
+        if (!failed) {
+            item.done.complete(null);
+        }
+
+        final AtomicBoolean more = new AtomicBoolean();
+        keys.computeIfPresent(key, (k, state) -> {
+            if (state.pending.isEmpty()) {
+                // nothing else for this key, forget it
+                return null;
+            }
+            more.set(true);
+            return state;
+        });
+        if (more.get()) {
+            // go through the pool again so that one busy key can't starve the others
+            pool.execute(() -> process(key));
+        }
+    }
+
+    private static String handlerName(Action action) {
+        switch (action) {
+            case ADD: return "onAdd";
+            case MODIFY: return "onModify";
+            case SCALE: return "autoscale";
+            default: return "onDelete";
+        }
+    }
+
+    static Action merge(Action pending, Action incoming) {
+        if (Action.DELETE == pending || Action.SCALE == pending || Action.SCALE == incoming) {
+            return null;
+        }
+        if (Action.DELETE == incoming) {
+            return Action.DELETE;
+        }
+        if (Action.ADD == pending) {
+            return Action.ADD;
+        }
+        return incoming;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return true if there is no work item waiting or being processed
+     */
+    public boolean isIdle() {
+        return keys.isEmpty();
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private static class KeyState {
+        private final Deque<Item> pending = new ArrayDeque<>(2);
+        private boolean running = false;
+    }
+
+    private static class Item {
+        private final String kind;
+        private final long enqueuedAt = System.nanoTime();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private Action action;
+        private Object entity;
+        private Handler<Object> handler;
+
+        private Item(String kind, Action action, Object entity, Handler<Object> handler) {
+            this.kind = kind;
+            this.action = action;
+            this.entity = entity;
+            this.handler = handler;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package io.radanalytics.operator.cache;
+
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.api.model.PodListBuilder;
+import io.fabric8.kubernetes.api.model.StatusBuilder;
+import io.fabric8.kubernetes.api.model.WatchEvent;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.server.mock.KubernetesServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class ResourceInformerTest {
+
+    private static final String PREFIX = "radanalytics.io/";
+    private static final String PODS = "/api/v1/namespaces/test/pods";
+
+    private final KubernetesServer server = new KubernetesServer(false, false);
+    private final CountDownLatch relisted = new CountDownLatch(1);
+    // re-lists right away and tells the test it did
+    private final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1) {
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            return super.schedule(() -> {
+                command.run();
+                relisted.countDown();
+            }, 0, unit);
+        }
+    };
+    private KubernetesClient client;
+
+    @Before
+    public void setUp() {
+        server.before();
+        client = server.getClient();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+        server.after();
+    }
+
+    @Test
+    public void testIndexFollowsTheWatch() throws Exception {
+        server.expect().withPath(PODS).andReturn(200, new PodListBuilder().withNewMetadata().withResourceVersion("1")
+                .endMetadata().withItems(pod("a", "foo"), pod("b", "foo"), pod("c", "bar")).build()).once();
+        Pod relabelled = pod("b", "bar");
+        server.expect().withPath(PODS + "?resourceVersion=1&watch=true").andUpgradeToWebSocket().open()
+                .waitFor(10).andEmit(new WatchEvent(pod("d", "foo"), "ADDED"))
+                .waitFor(10).andEmit(new WatchEvent(relabelled, "MODIFIED"))
+                .waitFor(10).andEmit(new WatchEvent(pod("c", "bar"), "DELETED"))
+                .waitFor(10).andEmit(new WatchEvent(pod("e", "baz"), "ADDED"))
+                .waitFor(10).andEmit(new WatchEvent(pod("e", "baz"), "DELETED"))
+                .done().once();
+
+        CountDownLatch events = new CountDownLatch(5);
+        ResourceInformer<Pod> informer = informer();
+        informer.addListener((action, pod) -> events.countDown());
+        assertFalse(informer.hasSynced());
+        informer.start();
+        assertTrue(informer.hasSynced());
+        assertTrue(events.await(10, TimeUnit.SECONDS));
+
+        assertEquals(set("a", "d"), names(informer, "test", cluster("foo")));
+        assertEquals(set("b"), names(informer, "test", cluster("bar")));
+        assertEquals(set("b"), names(informer, "*", cluster("bar")));
+        assertTrue(names(informer, "other", cluster("foo")).isEmpty());
+        // the labels without the prefix aren't indexed, but they still have to match
+        Map<String, String> labels = cluster("foo");
+        labels.put("app", "b");
+        assertTrue(informer.byLabels("test", labels).isEmpty());
+        assertEquals(set("a"), names(informer, "test", Collections.singletonMap("app", "a")));
+        assertEquals(relabelled, informer.get("test", "b"));
+        assertNull(informer.get("test", "c"));
+        assertEquals(3, informer.list("test").size());
+        // the label of the cluster that is gone isn't kept in the index
+        assertEquals(2, informer.indexedLabels());
+        informer.stop();
+        assertFalse(informer.hasSynced());
+    }
+
+    @Test
+    public void testRelistAfterTheWatchIsGone() throws Exception {
+        server.expect().withPath(PODS).andReturn(200, new PodListBuilder().withNewMetadata().withResourceVersion("1")
+                .endMetadata().withItems(pod("a", "foo"), pod("b", "bar"), pod("d", "foo")).build()).once();
+        server.expect().withPath(PODS + "?resourceVersion=1&watch=true").andUpgradeToWebSocket().open()
+                .waitFor(10).andEmit(new WatchEvent(new StatusBuilder().withCode(410).withMessage("too old resource version")
+                        .build(), "ERROR"))
+                .done().once();
+        // 'b' has been deleted, 'c' created and 'd' modified while the watch was down
+        Pod modified = pod("d", "foo");
+        modified.getMetadata().setResourceVersion("4");
+        server.expect().withPath(PODS).andReturn(200, new PodListBuilder().withNewMetadata().withResourceVersion("5")
+                .endMetadata().withItems(pod("a", "foo"), pod("c", "foo"), modified).build()).once();
+        server.expect().withPath(PODS + "?resourceVersion=5&watch=true").andUpgradeToWebSocket().open().done().once();
+
+        List<String> events = new CopyOnWriteArrayList<>();
+        ResourceInformer<Pod> informer = informer();
+        informer.addListener((action, pod) -> events.add(action + " " + pod.getMetadata().getName()));
+        informer.start();
+        assertEquals(set("a", "d"), names(informer, "test", cluster("foo")));
+        assertTrue(events.isEmpty());
+        assertTrue(relisted.await(10, TimeUnit.SECONDS));
+        assertTrue(informer.hasSynced());
+        assertEquals(set("a", "c", "d"), names(informer, "test", cluster("foo")));
+        assertEquals(set("DELETED b", "ADDED c", "MODIFIED d"), new HashSet<>(events));
+        informer.stop();
+    }
+
+    private ResourceInformer<Pod> informer() {
+        return new ResourceInformer<>("pods", PREFIX, () -> client.pods().inNamespace("test"), scheduler);
+    }
+
+    private static Pod pod(String name, String cluster) {
+        Map<String, String> labels = cluster(cluster);
+        labels.put("app", name);
+        return new PodBuilder().withNewMetadata().withName(name).withNamespace("test").withLabels(labels).endMetadata().build();
+    }
+
+    private static Map<String, String> cluster(String name) {
+        Map<String, String> labels = new HashMap<>();
+        labels.put(PREFIX + "SparkCluster", name);
+        return labels;
+    }
+
+    private static Set<String> names(ResourceInformer<Pod> informer, String namespace, Map<String, String> labels) {
+        return informer.byLabels(namespace, labels).stream().map(p -> p.getMetadata().getName()).collect(Collectors.toSet());
+    }
+
+    private static Set<String> set(String... names) {
+        return new HashSet<>(Arrays.asList(names));
+    }
+}
@@ -0,0 +1,149 @@
+package io.radanalytics.operator.cluster;
+
+import com.sun.net.httpserver.HttpServer;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.radanalytics.types.Autoscaling;
+import io.radanalytics.types.SparkCluster;
+import io.radanalytics.types.Worker;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static io.radanalytics.operator.cluster.MasterStatusPoller.MasterStatus;
+import static org.junit.Assert.*;
+
+public class AutoscalerTest {
+
+    private static final String MASTER_JSON = "{\"url\":\"spark://my-cluster:7077\",\"aliveworkers\":2,\"cores\":8,"
+            + "\"coresused\":8,\"memory\":4096,\"memoryused\":2048,\"activeapps\":["
+            + "{\"id\":\"app-1\",\"state\":\"RUNNING\"},{\"id\":\"app-2\",\"state\":\"WAITING\"}],\"status\":\"ALIVE\"}";
+
+    @Test
+    public void testScaleUpToTargetUtilization() {
+        // 4 cores per worker, 6 used -> 6 / (0.5 * 4) = 3 workers
+        Autoscaler.Decision decision = Autoscaler.decide(spec(1, 10, 0.5), 2, new MasterStatus(2, 8, 6, 1, 0), Long.MAX_VALUE);
+        assertEquals(Autoscaler.UP, decision.getKind());
+        assertEquals(3, decision.getWorkers());
+    }
+
+    @Test
+    public void testScaleDownIsClamped() {
+        Autoscaler.Decision decision = Autoscaler.decide(spec(2, 10, 0.8), 5, new MasterStatus(5, 20, 0, 1, 0), Long.MAX_VALUE);
+        assertEquals(Autoscaler.DOWN, decision.getKind());
+        assertEquals(2, decision.getWorkers());
+    }
+
+    @Test
+    public void testWaitingAppsAddWorkers() {
+        Autoscaler.Decision decision = Autoscaler.decide(spec(1, 4, 0.8), 2, new MasterStatus(2, 8, 8, 1, 3), Long.MAX_VALUE);
+        assertEquals(Autoscaler.UP, decision.getKind());
+        assertEquals(4, decision.getWorkers());
+    }
+
+    @Test
+    public void testNoDecisionWithoutData() {
+        assertEquals(Autoscaler.UNREACHABLE, Autoscaler.decide(spec(1, 4, 0.8), 2, null, Long.MAX_VALUE).getKind());
+        // the new workers haven't registered with the master yet
+        assertEquals(Autoscaler.PENDING, Autoscaler.decide(spec(1, 4, 0.8), 3, new MasterStatus(2, 8, 8, 1, 0), Long.MAX_VALUE).getKind());
+        Autoscaler.Decision cooldown = Autoscaler.decide(spec(1, 4, 0.8), 2, new MasterStatus(2, 8, 8, 1, 0), 1000);
+        assertEquals(Autoscaler.COOLDOWN, cooldown.getKind());
+        assertEquals(2, cooldown.getWorkers());
+    }
+
+    @Test
+    public void testApplyOverridesInstances() {
+        Autoscaler autoscaler = new Autoscaler("SparkCluster", null, null, (ns, name, workers) -> { }, (ns, name, status) -> { });
+        SparkCluster cluster = new SparkCluster();
+        cluster.setName("my-cluster");
+        cluster.setWorker(new Worker());
+        cluster.getWorker().setInstances(7);
+        cluster.getWorker().setAutoscaling(spec(1, 5, 0.8));
+
+        // running cluster, the actual number of workers is kept
+        autoscaler.apply("ns", cluster, 3);
+        assertEquals(Integer.valueOf(3), cluster.getWorker().getInstances());
+        cluster.getWorker().setInstances(7);
+        autoscaler.apply("ns", cluster, null);
+        assertEquals(Integer.valueOf(3), cluster.getWorker().getInstances());
+
+        cluster.getWorker().setAutoscaling(null);
+        cluster.getWorker().setInstances(7);
+        autoscaler.apply("ns", cluster, 3);
+        assertEquals(Integer.valueOf(7), cluster.getWorker().getInstances());
+        assertNull(autoscaler.target("ns", "my-cluster"));
+    }
+
+    @Test
+    public void testPollMaster() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/json", exchange -> {
+            byte[] body = MASTER_JSON.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        try {
+            String base = "http://localhost:" + server.getAddress().getPort();
+            MasterStatus status = new MasterStatusPoller(1).poll(base + "/json").get(5, TimeUnit.SECONDS);
+            assertEquals(2, status.getAliveWorkers());
+            assertEquals(8, status.getCores());
+            assertEquals(8, status.getCoresUsed());
+            assertEquals(1, status.getRunningApps());
+            assertEquals(1, status.getWaitingApps());
+            assertEquals(1.0, status.getUtilization(), 0.001);
+
+            try {
+                new MasterStatusPoller(1).poll(base + "/missing").get(5, TimeUnit.SECONDS);
+                fail("the master's status shouldn't be parsed from an error");
+            } catch (ExecutionException e) {
+                // expected
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testLocateMasterPod() throws Exception {
+        Pod pending = master("10.0.0.1", "Pending", null);
+        Pod terminating = master("10.0.0.2", "Running", "2019-05-01T10:00:00Z");
+        Pod running = master("10.0.0.3", "Running", null);
+        MasterStatusPoller.Locator locator = MasterStatusPoller.masterPod((ns, labels) -> {
+            assertEquals(Collections.singletonMap("radanalytics.io/deployment", "my-cluster-m"), labels);
+            return "ns".equals(ns) ? Arrays.asList(pending, terminating, running) : Arrays.asList(pending, terminating);
+        }, "radanalytics.io/");
+        // no -ui service needed
+        assertEquals("http://10.0.0.3:8080/json", locator.url("ns", "my-cluster"));
+        assertNull(locator.url("other", "my-cluster"));
+        assertEquals("http://[fd00::1]:8080/json", MasterStatusPoller.url("fd00::1"));
+
+        try {
+            new MasterStatusPoller(1).poll(locator, "other", "my-cluster").get(5, TimeUnit.SECONDS);
+            fail("there is no master to ask");
+        } catch (ExecutionException e) {
+            // expected
+        }
+    }
+
+    private static Pod master(String ip, String phase, String deletionTimestamp) {
+        return new PodBuilder().withNewMetadata().withDeletionTimestamp(deletionTimestamp).endMetadata()
+                .withNewStatus().withPhase(phase).withPodIP(ip).endStatus().build();
+    }
+
+    private static Autoscaling spec(int min, int max, double target) {
+        Autoscaling autoscaling = new Autoscaling();
+        autoscaling.setMinInstances(min);
+        autoscaling.setMaxInstances(max);
+        autoscaling.setTargetUtilization(target);
+        return autoscaling;
+    }
+}
@@ -0,0 +1,105 @@
+package io.radanalytics.operator.cluster;
+
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.client.DefaultKubernetesClient;
+import io.radanalytics.operator.resource.HasDataHelper;
+import io.radanalytics.types.Autoscaling;
+import io.radanalytics.types.DownloadDatum;
+import io.radanalytics.types.IdlePolicy;
+import io.radanalytics.types.SparkCluster;
+import io.radanalytics.types.SparkConfiguration;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.EnumSet;
+
+import static io.radanalytics.operator.cluster.ChangeClassifier.Change;
+import static org.junit.Assert.*;
+
+public class ChangeClassifierTest {
+
+    private String yaml;
+
+    @Before
+    public void prepare() {
+        ConfigMap cm = new DefaultKubernetesClient().configMaps().load("examples/test/cm/cluster-with-config-1.yaml").get();
+        this.yaml = cm.getData().get("config");
+    }
+
+    @Test
+    public void testNoChange() {
+        assertTrue(ChangeClassifier.classify(parse(), parse()).isEmpty());
+    }
+
+    @Test
+    public void testOnlyScale() {
+        SparkCluster newC = parse();
+        newC.getWorker().setInstances(newC.getWorker().getInstances() + 3);
+
+        assertEquals(EnumSet.of(Change.SCALE), ChangeClassifier.classify(parse(), newC));
+    }
+
+    @Test
+    public void testLabelsAndWorkerTemplate() {
+        SparkCluster newC = parse();
+        newC.setLabels(Collections.singletonMap("foo", "bar"));
+        newC.getWorker().setMemory("2Gi");
+
+        assertEquals(EnumSet.of(Change.LABELS, Change.WORKER_TEMPLATE), ChangeClassifier.classify(parse(), newC));
+    }
+
+    @Test
+    public void testConfigAndStructure() {
+        SparkCluster newC = parse();
+        SparkConfiguration nv = new SparkConfiguration();
+        nv.setName("spark.executor.cores");
+        nv.setValue("2");
+        newC.getSparkConfiguration().add(nv);
+        newC.setSparkWebUI(!newC.getSparkWebUI());
+
+        assertEquals(EnumSet.of(Change.CONFIG, Change.STRUCTURE), ChangeClassifier.classify(parse(), newC));
+    }
+
+    @Test
+    public void testPoliciesOnly() {
+        SparkCluster newC = parse();
+        newC.setIdlePolicy(new IdlePolicy());
+        newC.getIdlePolicy().setIdleMinutes(10);
+        newC.getWorker().setAutoscaling(new Autoscaling());
+
+        assertTrue(ChangeClassifier.classify(parse(), newC).isEmpty());
+    }
+
+    @Test
+    public void testUnknownFieldIsConfig() {
+        SparkCluster newC = parse();
+        newC.setAdditionalProperty("priorityClassName", "high");
+        assertEquals(EnumSet.of(Change.CONFIG), ChangeClassifier.classify(parse(), newC));
+
+        newC = parse();
+        newC.getDownloadData().add(new DownloadDatum());
+        SparkCluster oldC = parse();
+        oldC.getDownloadData().add(new DownloadDatum());
+        newC.getDownloadData().get(0).setChecksum("sha256:abc");
+        assertEquals(EnumSet.of(Change.CONFIG), ChangeClassifier.classify(oldC, newC));
+    }
+
+    @Test
+    public void testMissingWorkerSection() {
+        SparkCluster oldC = parse();
+        oldC.setWorker(null);
+        SparkCluster newC = parse();
+        newC.setWorker(new io.radanalytics.types.Worker());
+
+        assertTrue(ChangeClassifier.classify(oldC, newC).isEmpty());
+    }
+
+    private SparkCluster parse() {
+        SparkCluster cluster = HasDataHelper.parseYaml(SparkCluster.class, yaml, "foo");
+        if (null == cluster.getWorker()) {
+            cluster.setWorker(new io.radanalytics.types.Worker());
+        }
+        return cluster;
+    }
+}
@@ -0,0 +1,89 @@
+package io.radanalytics.operator.cluster;
+
+import io.fabric8.kubernetes.api.model.PodSpec;
+import io.fabric8.kubernetes.api.model.PodSpecBuilder;
+import io.fabric8.kubernetes.api.model.VolumeMount;
+import io.radanalytics.types.DownloadDatum;
+import io.radanalytics.types.SparkCluster;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DataStagingTest {
+
+    private static final String SUM = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+
+    @Test
+    public void testNameIgnoresOrder() {
+        SparkCluster a = cluster("a");
+        add(a, "https://example.com/data/a.csv", "/tmp/", null);
+        add(a, "https://example.com/data/b.csv", "/tmp/b.csv", null);
+        SparkCluster b = cluster("b");
+        add(b, "https://example.com/data/b.csv", "/data/", null);
+        add(b, "https://example.com/data/a.csv", "/data/a.csv", null);
+        assertEquals(DataStaging.name(a), DataStaging.name(b));
+
+        b.getDownloadData().get(0).setChecksum(SUM);
+        assertNotEquals(DataStaging.name(a), DataStaging.name(b));
+    }
+
+    @Test
+    public void testFileName() {
+        assertEquals("a.csv", DataStaging.fileName("https://example.com/data/a.csv?token=1"));
+        assertEquals("index.html", DataStaging.fileName("https://example.com"));
+        assertEquals("index.html", DataStaging.fileName("https://example.com/data/"));
+    }
+
+    @Test
+    public void testAddToPod() {
+        SparkCluster cluster = cluster("a");
+        add(cluster, "https://example.com/data/a.csv", "/tmp/", null);
+        add(cluster, "https://example.com/data/b.csv", "/tmp/renamed.csv", SUM);
+        PodSpec spec = new PodSpecBuilder().addNewContainer().withName("a-w").endContainer().build();
+
+        DataStaging.addToPod(cluster, spec);
+        assertEquals("wait-for-data", spec.getInitContainers().get(0).getName());
+        assertEquals(DataStaging.CLAIM_NAME, spec.getVolumes().get(0).getPersistentVolumeClaim().getClaimName());
+        List<VolumeMount> mounts = spec.getContainers().get(0).getVolumeMounts();
+        assertEquals(2, mounts.size());
+        assertEquals("/tmp/a.csv", mounts.get(0).getMountPath());
+        assertEquals(DataStaging.hash(cluster.getDownloadData().get(0)) + "/a.csv", mounts.get(0).getSubPath());
+        assertEquals("/tmp/renamed.csv", mounts.get(1).getMountPath());
+        assertEquals(DataStaging.hash(cluster.getDownloadData().get(1)) + "/b.csv", mounts.get(1).getSubPath());
+        assertTrue(mounts.get(1).getReadOnly());
+        // bounded and failing on a download the job is unable to stage
+        String wait = spec.getInitContainers().get(0).getArgs().get(0);
+        assertTrue(wait.contains(DataStaging.MOUNT_PATH + "/$d.failed ]; then"));
+        assertTrue(wait.contains("see the logs of job " + DataStaging.name(cluster)));
+    }
+
+    @Test
+    public void testScript() {
+        SparkCluster cluster = cluster("a");
+        add(cluster, "https://example.com/data/a.csv", "/tmp/", SUM);
+        add(cluster, "https://example.com/data/a.csv", "/data/", SUM);
+        String script = DataStaging.script(cluster);
+        // the same file is staged only once
+        assertEquals(script.indexOf("stage " + DataStaging.hash(cluster.getDownloadData().get(0))),
+                script.lastIndexOf("stage " + DataStaging.hash(cluster.getDownloadData().get(0))));
+        assertTrue(script.contains("'" + SUM + "'"));
+        assertTrue(script.contains("sha256sum -c"));
+        assertTrue(script.contains("touch $dir.failed"));
+    }
+
+    private static SparkCluster cluster(String name) {
+        SparkCluster cluster = new SparkCluster();
+        cluster.setName(name);
+        return cluster;
+    }
+
+    private static void add(SparkCluster cluster, String url, String to, String checksum) {
+        DownloadDatum datum = new DownloadDatum();
+        datum.setUrl(url);
+        datum.setTo(to);
+        datum.setChecksum(checksum);
+        cluster.getDownloadData().add(datum);
+    }
+}
@@ -0,0 +1,91 @@
+package io.radanalytics.operator.cluster;
+
+import io.fabric8.kubernetes.api.model.KubernetesListBuilder;
+import io.fabric8.kubernetes.api.model.KubernetesResourceList;
+import io.fabric8.kubernetes.api.model.ReplicationController;
+import io.fabric8.kubernetes.api.model.ReplicationControllerBuilder;
+import io.radanalytics.types.IdlePolicy;
+import io.radanalytics.types.SparkCluster;
+import io.radanalytics.types.Worker;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.radanalytics.operator.cluster.MasterStatusPoller.MasterStatus;
+import static org.junit.Assert.*;
+
+public class IdleSuspenderTest {
+
+    private static final String PREFIX = "radanalytics.io/";
+    private static final long MINUTE = 60_000;
+
+    @Test
+    public void testSuspendAfterIdleAndWakeOnApp() {
+        List<String> triggered = new ArrayList<>();
+        IdleSuspender idle = new IdleSuspender("SparkCluster", PREFIX, null, null, (ns, name) -> null, (ns, name) -> triggered.add(name));
+        SparkCluster cluster = cluster(3, 10);
+        idle.apply("ns", cluster);
+        long now = System.currentTimeMillis();
+
+        // busy, the idle time starts again
+        idle.evaluate("ns", "a", new MasterStatus(3, 12, 4, 1, 0), now + 9 * MINUTE);
+        idle.evaluate("ns", "a", new MasterStatus(3, 12, 0, 0, 0), now + 15 * MINUTE);
+        assertFalse(idle.isSuspended("ns", "a"));
+        idle.evaluate("ns", "a", new MasterStatus(3, 12, 0, 0, 0), now + 19 * MINUTE);
+        assertTrue(idle.isSuspended("ns", "a"));
+        assertEquals(Integer.valueOf(0), idle.workers("ns", "a"));
+        assertEquals("3", idle.annotations("ns", "a").get(PREFIX + IdleSuspender.SUSPENDED_WORKERS_ANNOTATION));
+
+        // the desired spec follows the suspension, the number to restore is kept
+        SparkCluster desired = cluster(3, 10);
+        idle.apply("ns", desired);
+        assertEquals(Integer.valueOf(0), desired.getWorker().getInstances());
+
+        // an application registered with the master
+        idle.evaluate("ns", "a", new MasterStatus(0, 0, 0, 0, 1), now + 30 * MINUTE);
+        assertFalse(idle.isSuspended("ns", "a"));
+        assertEquals(Integer.valueOf(3), idle.workers("ns", "a"));
+        assertEquals(2, triggered.size());
+        assertTrue(idle.annotations("ns", "a").isEmpty());
+    }
+
+    @Test
+    public void testSuspendedStateIsRecovered() {
+        ReplicationController rc = new ReplicationControllerBuilder().withNewMetadata().withName("a-w")
+                .addToAnnotations(PREFIX + IdleSuspender.SUSPENDED_WORKERS_ANNOTATION, "4").endMetadata()
+                .withNewSpec().withReplicas(0).endSpec().build();
+        assertEquals(Integer.valueOf(4), IdleSuspender.suspendedWorkers(rc, PREFIX));
+
+        IdleSuspender idle = new IdleSuspender("SparkCluster", PREFIX, null, null, (ns, name) -> rc, (ns, name) -> { });
+        SparkCluster cluster = cluster(4, 10);
+        idle.apply("ns", cluster);
+        assertTrue(idle.isSuspended("ns", "a"));
+        assertEquals(Integer.valueOf(0), cluster.getWorker().getInstances());
+
+        // rendering the rc again doesn't lose the annotation
+        ReplicationController rendered = new ReplicationControllerBuilder().withNewMetadata().withName("a-w").endMetadata()
+                .withNewSpec().withReplicas(0).endSpec().build();
+        KubernetesResourceList list = new KubernetesListBuilder().withItems(rendered).build();
+        idle.annotate("ns", "a", list);
+        assertEquals(Integer.valueOf(4), IdleSuspender.suspendedWorkers((ReplicationController) list.getItems().get(0), PREFIX));
+
+        // without the idle policy, the cluster runs with the workers from its spec
+        cluster = cluster(4, 10);
+        cluster.setIdlePolicy(null);
+        idle.apply("ns", cluster);
+        assertFalse(idle.isSuspended("ns", "a"));
+        assertEquals(Integer.valueOf(4), cluster.getWorker().getInstances());
+    }
+
+    private static SparkCluster cluster(int workers, int idleMinutes) {
+        SparkCluster cluster = new SparkCluster();
+        cluster.setName("a");
+        cluster.setWorker(new Worker());
+        cluster.getWorker().setInstances(workers);
+        IdlePolicy policy = new IdlePolicy();
+        policy.setIdleMinutes(idleMinutes);
+        cluster.setIdlePolicy(policy);
+        return cluster;
+    }
+}
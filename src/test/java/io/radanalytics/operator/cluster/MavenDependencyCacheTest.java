@@ -0,0 +1,153 @@
+package io.radanalytics.operator.cluster;
+
+import io.fabric8.kubernetes.api.model.PersistentVolumeClaim;
+import io.fabric8.kubernetes.api.model.PersistentVolumeClaimBuilder;
+import io.fabric8.kubernetes.api.model.PodSpec;
+import io.fabric8.kubernetes.api.model.QuantityBuilder;
+import io.fabric8.kubernetes.api.model.ReplicationController;
+import io.fabric8.kubernetes.api.model.ReplicationControllerBuilder;
+import io.fabric8.kubernetes.api.model.batch.Job;
+import io.fabric8.kubernetes.api.model.batch.JobBuilder;
+import io.fabric8.kubernetes.client.ConfigBuilder;
+import io.fabric8.kubernetes.client.DefaultKubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.server.mock.KubernetesServer;
+import io.radanalytics.types.SparkCluster;
+import okhttp3.TlsVersion;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class MavenDependencyCacheTest {
+
+    @Test
+    public void testHashIgnoresOrder() {
+        SparkCluster a = cluster("a", "org.foo:bar:1.0", "org.foo:baz:2.0");
+        SparkCluster b = cluster("b", "org.foo:baz:2.0", "org.foo:bar:1.0");
+        SparkCluster c = cluster("c", "org.foo:bar:1.1", "org.foo:baz:2.0");
+        assertEquals(MavenDependencyCache.name(a), MavenDependencyCache.name(b));
+        assertNotEquals(MavenDependencyCache.name(a), MavenDependencyCache.name(c));
+
+        b.getMavenRepositories().add("https://repo.example.com/maven2");
+        assertNotEquals(MavenDependencyCache.name(a), MavenDependencyCache.name(b));
+    }
+
+    @Test
+    public void testAddToPod() {
+        SparkCluster cluster = cluster("a", "org.foo:bar:1.0");
+        ReplicationController rc = new ReplicationControllerBuilder().withNewSpec().withNewTemplate().withNewSpec()
+                .addNewInitContainer().withName("backup-config").endInitContainer()
+                .addNewContainer().withName("a-w").endContainer()
+                .endSpec().endTemplate().endSpec().build();
+
+        MavenDependencyCache.addToPod(rc, cluster);
+        PodSpec spec = rc.getSpec().getTemplate().getSpec();
+        assertEquals("wait-for-dependencies", spec.getInitContainers().get(0).getName());
+        assertEquals(MavenDependencyCache.name(cluster), spec.getVolumes().get(0).getPersistentVolumeClaim().getClaimName());
+        assertEquals(MavenDependencyCache.MOUNT_PATH, spec.getContainers().get(0).getVolumeMounts().get(0).getMountPath());
+        assertTrue(spec.getContainers().get(0).getVolumeMounts().get(0).getReadOnly());
+        // bounded and failing on the job's failure
+        String wait = spec.getInitContainers().get(0).getArgs().get(0);
+        assertTrue(wait.contains("/.failed ]; then"));
+        assertTrue(wait.contains("exit 1"));
+        assertTrue(wait.contains(MavenDependencyCache.name(cluster)));
+
+        // rendered twice (master and worker) from the same copy
+        MavenDependencyCache.addToSparkConfiguration(cluster);
+        MavenDependencyCache.addToSparkConfiguration(cluster);
+        assertEquals(2, cluster.getSparkConfiguration().size());
+    }
+
+    @Test
+    public void testEnsureKeepsExistingClaim() {
+        KubernetesServer server = new KubernetesServer(false, true);
+        server.before();
+        try {
+            KubernetesClient client = new DefaultKubernetesClient(new ConfigBuilder(server.getClient().getConfiguration())
+                    .withTlsVersions(TlsVersion.TLS_1_2).withTrustCerts(true).build());
+            SparkCluster cluster = cluster("a", "org.foo:bar:1.0");
+            String name = MavenDependencyCache.name(cluster);
+            client.persistentVolumeClaims().inNamespace("ns").create(new PersistentVolumeClaimBuilder()
+                    .withNewMetadata().withName(name).endMetadata()
+                    .withNewSpec().withAccessModes("ReadWriteMany").withNewResources()
+                    .withRequests(Collections.singletonMap("storage", new QuantityBuilder().withAmount("5").withFormat("Gi").build()))
+                    .endResources().endSpec().build());
+
+            new MavenDependencyCache(client, "SparkCluster", "radanalytics.io/").ensure("ns", cluster);
+
+            PersistentVolumeClaim claim = client.persistentVolumeClaims().inNamespace("ns").withName(name).get();
+            assertEquals("5", claim.getSpec().getResources().getRequests().get("storage").getAmount());
+            assertNotNull(client.batch().jobs().inNamespace("ns").withName(name).get());
+        } finally {
+            server.after();
+        }
+    }
+
+    @Test
+    public void testFailedJobIsCreatedAgain() {
+        KubernetesServer server = new KubernetesServer(false, true);
+        server.before();
+        try {
+            KubernetesClient client = client(server);
+            SparkCluster cluster = cluster("a", "org.foo:bar:1.0");
+            String name = MavenDependencyCache.name(cluster);
+            client.batch().jobs().inNamespace("ns").create(new JobBuilder().withNewMetadata().withName(name).endMetadata()
+                    .withNewStatus().addNewCondition().withType("Failed").withStatus("True").endCondition().endStatus()
+                    .build());
+
+            new MavenDependencyCache(client, "SparkCluster", "radanalytics.io/").ensure("ns", cluster);
+
+            Job job = client.batch().jobs().inNamespace("ns").withName(name).get();
+            assertNotNull(job);
+            assertEquals(Integer.valueOf(4), job.getSpec().getBackoffLimit());
+            assertNull(job.getStatus());
+        } finally {
+            server.after();
+        }
+    }
+
+    @Test
+    public void testUsersAreRestored() {
+        KubernetesServer server = new KubernetesServer(false, true);
+        server.before();
+        try {
+            KubernetesClient client = client(server);
+            SparkCluster a = cluster("a", "org.foo:bar:1.0");
+            SparkCluster b = cluster("b", "org.foo:bar:1.0");
+            SparkCluster gone = cluster("gone", "org.foo:baz:1.0");
+            // the jobs created before the restart
+            MavenDependencyCache before = new MavenDependencyCache(client, "SparkCluster", "radanalytics.io/");
+            before.ensure("ns", a);
+            before.ensure("ns", gone);
+
+            MavenDependencyCache cache = new MavenDependencyCache(client, "SparkCluster", "radanalytics.io/");
+            cache.restore("ns", Arrays.asList(a, b));
+            // nobody uses the job of the cluster deleted while the operator was down
+            assertNull(client.batch().jobs().inNamespace("ns").withName(MavenDependencyCache.name(gone)).get());
+            assertNotNull(client.batch().jobs().inNamespace("ns").withName(MavenDependencyCache.name(a)).get());
+
+            // 'b' still uses the job
+            cache.release("ns", "a");
+            assertNotNull(client.batch().jobs().inNamespace("ns").withName(MavenDependencyCache.name(a)).get());
+            cache.release("ns", "b");
+            assertNull(client.batch().jobs().inNamespace("ns").withName(MavenDependencyCache.name(a)).get());
+        } finally {
+            server.after();
+        }
+    }
+
+    private static KubernetesClient client(KubernetesServer server) {
+        return new DefaultKubernetesClient(new ConfigBuilder(server.getClient().getConfiguration())
+                .withTlsVersions(TlsVersion.TLS_1_2).withTrustCerts(true).build());
+    }
+
+    private static SparkCluster cluster(String name, String... dependencies) {
+        SparkCluster cluster = new SparkCluster();
+        cluster.setName(name);
+        cluster.getMavenDependencies().addAll(Arrays.asList(dependencies));
+        return cluster;
+    }
+}
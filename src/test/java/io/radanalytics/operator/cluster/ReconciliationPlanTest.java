@@ -0,0 +1,51 @@
+package io.radanalytics.operator.cluster;
+
+import io.radanalytics.types.SparkCluster;
+import io.radanalytics.types.Worker;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ReconciliationPlanTest {
+
+    @Test
+    public void testPlan() {
+        Map<String, SparkCluster> desired = new HashMap<>();
+        desired.put("new", cluster("new", 1));
+        desired.put("same", cluster("same", 2));
+        desired.put("scaled", cluster("scaled", 3));
+        Map<String, Integer> actual = new HashMap<>();
+        actual.put("same", 2);
+        actual.put("scaled", 1);
+        actual.put("old", 1);
+
+        ReconciliationPlan plan = ReconciliationPlan.compute(desired, actual);
+
+        assertEquals(Collections.singleton("new"), plan.getToBeCreated());
+        assertEquals(Collections.singleton("old"), plan.getToBeDeleted());
+        assertEquals(Collections.singletonMap("scaled", 1), plan.getToBeScaled());
+        assertFalse(plan.isEmpty());
+    }
+
+    @Test
+    public void testNothingToDo() {
+        Map<String, SparkCluster> desired = Collections.singletonMap("foo", cluster("foo", 2));
+        Map<String, Integer> actual = Collections.singletonMap("foo", 2);
+
+        assertTrue(ReconciliationPlan.compute(desired, actual).isEmpty());
+        assertTrue(ReconciliationPlan.compute(Collections.emptyMap(), Collections.emptyMap()).isEmpty());
+    }
+
+    private SparkCluster cluster(String name, int workers) {
+        SparkCluster cluster = new SparkCluster();
+        cluster.setName(name);
+        Worker worker = new Worker();
+        worker.setInstances(workers);
+        cluster.setWorker(worker);
+        return cluster;
+    }
+}
@@ -0,0 +1,81 @@
+package io.radanalytics.operator.cluster;
+
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.PodSpec;
+import io.fabric8.kubernetes.api.model.ReplicationController;
+import io.fabric8.kubernetes.api.model.ReplicationControllerBuilder;
+import io.fabric8.kubernetes.api.model.VolumeMount;
+import io.radanalytics.types.SparkCluster;
+import io.radanalytics.types.SparkConfiguration;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SparkConfigOverlayTest {
+
+    private static final String PREFIX = "radanalytics.io/";
+
+    @Test
+    public void testSparkConfigurationIsAppended() {
+        SparkCluster cluster = cluster("a");
+        add(cluster, "spark.executor.memory", "2g");
+        Map<String, String> cmData = new HashMap<>();
+        cmData.put("spark-defaults.conf", "spark.ui.reverseProxy true");
+        cmData.put("log4j.properties", "log4j.rootCategory=WARN, console\n");
+        assertTrue(SparkConfigOverlay.hasConfiguration(cluster, cmData));
+        // opt-in, the init containers keep the spark-defaults.conf of the image
+        assertFalse(SparkConfigOverlay.isUsed(cluster, cmData));
+
+        ConfigMap cm = SparkConfigOverlay.configMap(cluster, cmData, SparkConfigOverlay.labels(PREFIX, "SparkCluster", "a"));
+        assertEquals("a-spark-conf", cm.getMetadata().getName());
+        assertEquals("spark.ui.reverseProxy true\nspark.executor.memory 2g\n", cm.getData().get("spark-defaults.conf"));
+        assertEquals(cmData.get("log4j.properties"), cm.getData().get("log4j.properties"));
+        // otherwise it'd be taken for a cluster defined by a config map
+        assertFalse(cm.getMetadata().getLabels().containsKey(PREFIX + "kind"));
+    }
+
+    @Test
+    public void testNothingToRender() {
+        assertFalse(SparkConfigOverlay.hasConfiguration(cluster("a"), null));
+        assertFalse(SparkConfigOverlay.hasConfiguration(cluster("a"), new HashMap<>()));
+    }
+
+    @Test
+    public void testAddToPod() {
+        SparkCluster cluster = cluster("a");
+        add(cluster, "spark.executor.memory", "2g");
+        Map<String, String> cmData = new HashMap<>();
+        cmData.put("log4j.properties", "log4j.rootCategory=WARN, console\n");
+        ReplicationController rc = new ReplicationControllerBuilder().withNewSpec().withNewTemplate().withNewSpec()
+                .addNewContainer().withName("a-m").endContainer()
+                .endSpec().endTemplate().endSpec().build();
+
+        SparkConfigOverlay.addToPod(rc, cluster, cmData);
+        PodSpec spec = rc.getSpec().getTemplate().getSpec();
+        assertTrue(spec.getInitContainers().isEmpty());
+        assertEquals("a-spark-conf", spec.getVolumes().get(0).getConfigMap().getName());
+        List<VolumeMount> mounts = spec.getContainers().get(0).getVolumeMounts();
+        assertEquals(2, mounts.size());
+        assertEquals("/opt/spark/conf/log4j.properties", mounts.get(0).getMountPath());
+        assertEquals("log4j.properties", mounts.get(0).getSubPath());
+        assertEquals("/opt/spark/conf/spark-defaults.conf", mounts.get(1).getMountPath());
+        assertEquals("spark-defaults.conf", mounts.get(1).getSubPath());
+    }
+
+    private static SparkCluster cluster(String name) {
+        SparkCluster cluster = new SparkCluster();
+        cluster.setName(name);
+        return cluster;
+    }
+
+    private static void add(SparkCluster cluster, String name, String value) {
+        SparkConfiguration nv = new SparkConfiguration();
+        nv.setName(name);
+        nv.setValue(value);
+        cluster.getSparkConfiguration().add(nv);
+    }
+}
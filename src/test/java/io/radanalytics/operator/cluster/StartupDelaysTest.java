@@ -0,0 +1,116 @@
+package io.radanalytics.operator.cluster;
+
+import io.fabric8.kubernetes.api.model.Container;
+import io.fabric8.kubernetes.api.model.ContainerStateBuilder;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.api.model.ReplicationController;
+import io.radanalytics.types.SparkCluster;
+import io.radanalytics.types.Worker;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class StartupDelaysTest {
+
+    private static final String PREFIX = "radanalytics.io/";
+
+    @Test
+    public void testPercentiles() {
+        StartupDelays delays = new StartupDelays(null, PREFIX, "ns");
+        for (int i = 1; i < StartupDelays.MIN_SAMPLES; i++) {
+            delays.record("worker", 20);
+        }
+        assertNull(delays.get("worker"));
+        for (int i = 0; i < 16; i++) {
+            delays.record("worker", 20 + i);
+        }
+        delays.record("worker", 90);
+        StartupDelays.Learned learned = delays.get("worker");
+        // 10th percentile (20) minus the headroom, 99th percentile
+        assertEquals(18, learned.getReadinessDelay());
+        assertEquals(90, learned.getLivenessDelay());
+
+        // only the last samples are kept
+        for (int i = 0; i < StartupDelays.WINDOW; i++) {
+            delays.record("worker", 10);
+        }
+        assertEquals(10, delays.get("worker").getLivenessDelay());
+        assertEquals(StartupDelays.WINDOW, delays.get("worker").getSamples());
+    }
+
+    @Test
+    public void testObservePods() throws Exception {
+        StartupDelays delays = new StartupDelays(null, PREFIX, "ns", 0);
+        for (int i = 0; i < StartupDelays.MIN_SAMPLES; i++) {
+            Pod pod = pod("uid-" + i, "2019-05-01T10:00:00Z", null, "2019-05-01T10:00:30Z");
+            delays.observe(pod);
+            // the same pod is recorded once
+            delays.observe(pod);
+        }
+        assertEquals(StartupDelays.MIN_SAMPLES, delays.get("worker").getSamples());
+        assertEquals(30, delays.get("worker").getLivenessDelay());
+
+        // restarted by the liveness probe, measured from the start of the first container
+        delays.observe(pod("restarted", "2019-05-01T10:01:00Z", "2019-05-01T10:00:00Z", "2019-05-01T10:01:50Z"));
+        assertEquals(110, delays.get("worker").getLivenessDelay());
+
+        // ready before the operator started
+        StartupDelays restarted = new StartupDelays(null, PREFIX, "ns", System.currentTimeMillis());
+        restarted.observe(pod("old", "2019-05-01T10:00:00Z", null, "2019-05-01T10:00:30Z"));
+        assertEquals("{}", restarted.toJson());
+    }
+
+    @Test
+    public void testRenderWithLearnedDelays() throws Exception {
+        SparkCluster cluster = new SparkCluster();
+        cluster.setName("my-cluster");
+        cluster.setWorker(new Worker());
+        StartupDelays delays = new StartupDelays(null, PREFIX, "ns");
+        String profile = StartupDelays.profile(cluster, false, false);
+        for (int i = 0; i < StartupDelays.MIN_SAMPLES; i++) {
+            delays.record(profile, 40);
+        }
+        KubernetesSparkClusterDeployer deployer = new KubernetesSparkClusterDeployer(null, null, "SparkCluster", PREFIX, "ns", delays);
+        for (Object o : deployer.getResourceList(cluster, deployer.inputs(cluster, null)).getItems()) {
+            if (!(o instanceof ReplicationController)) {
+                continue;
+            }
+            ReplicationController rc = (ReplicationController) o;
+            Map<String, String> annotations = rc.getSpec().getTemplate().getMetadata().getAnnotations();
+            Container container = rc.getSpec().getTemplate().getSpec().getContainers().get(0);
+            if ("my-cluster-w".equals(rc.getMetadata().getName())) {
+                assertEquals(profile, annotations.get(PREFIX + StartupDelays.PROFILE_ANNOTATION));
+                assertEquals(Integer.valueOf(38), container.getReadinessProbe().getInitialDelaySeconds());
+                assertEquals(Integer.valueOf(40), container.getLivenessProbe().getInitialDelaySeconds());
+            } else {
+                // no samples for the master yet, the expected delay is used
+                assertEquals(StartupDelays.profile(cluster, false, true), annotations.get(PREFIX + StartupDelays.PROFILE_ANNOTATION));
+                assertEquals(Integer.valueOf(InitContainersHelper.getExpectedDelay(cluster, false, true)),
+                        container.getLivenessProbe().getInitialDelaySeconds());
+            }
+        }
+
+        // what is saved to the config map
+        assertTrue(delays.toJson().contains("\"" + profile + "\":[40,40,40,40,40]"));
+    }
+
+    private static Pod pod(String uid, String startedAt, String previousStartedAt, String readyAt) {
+        Map<String, String> annotations = new HashMap<>();
+        annotations.put(PREFIX + StartupDelays.PROFILE_ANNOTATION, "worker");
+        PodBuilder builder = new PodBuilder().withNewMetadata().withUid(uid).withAnnotations(annotations).endMetadata()
+                .withNewStatus().addNewCondition().withType("ContainersReady").withStatus("True")
+                .withLastTransitionTime(readyAt).endCondition()
+                .addNewContainerStatus().withName("my-cluster-w").withNewState().withNewRunning().withStartedAt(startedAt)
+                .endRunning().endState().endContainerStatus().endStatus();
+        Pod pod = builder.build();
+        if (null != previousStartedAt) {
+            pod.getStatus().getContainerStatuses().get(0).setLastState(new ContainerStateBuilder()
+                    .withNewTerminated().withStartedAt(previousStartedAt).withExitCode(137).endTerminated().build());
+        }
+        return pod;
+    }
+}
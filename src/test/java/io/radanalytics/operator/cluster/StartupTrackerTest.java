@@ -0,0 +1,147 @@
+package io.radanalytics.operator.cluster;
+
+import io.fabric8.kubernetes.api.model.ContainerStatus;
+import io.fabric8.kubernetes.api.model.ContainerStatusBuilder;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.client.Watcher;
+import io.radanalytics.types.SparkCluster;
+import io.radanalytics.types.Worker;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class StartupTrackerTest {
+
+    private static final String PREFIX = "radanalytics.io/";
+    private static final String KIND = "SparkCluster";
+
+    private final List<Pod> pods = new ArrayList<>();
+    private final AtomicInteger readyCalls = new AtomicInteger();
+    private final StartupTracker tracker = new StartupTracker(KIND, PREFIX,
+            (ns, labels) -> pods.stream().filter(p -> p.getMetadata().getLabels().entrySet().containsAll(labels.entrySet()))
+                    .collect(Collectors.toList()),
+            (ns, startup) -> readyCalls.incrementAndGet());
+
+    @Test
+    public void testReadyWhenAllPodsAreReady() {
+        tracker.received("ns", "foo");
+        tracker.track(cluster("foo", 2), "ns", true);
+        assertTrue(tracker.isStarting("ns", "foo"));
+
+        pods.add(pod("foo", "foo-m", true));
+        pods.add(pod("foo", "foo-w", true));
+        pods.add(pod("foo", "foo-w", false));
+        tracker.sweep("ns");
+        StartupTracker.Startup startup = tracker.get("ns", "foo");
+        assertNotNull(startup.getMasterReadySeconds());
+        assertNull(startup.getWorkersReadySeconds());
+        assertTrue(tracker.isStarting("ns", "foo"));
+
+        pods.add(pod("foo", "foo-w", true));
+        tracker.podChanged(Watcher.Action.MODIFIED, pods.get(3));
+        assertFalse(tracker.isStarting("ns", "foo"));
+        assertEquals(1, readyCalls.get());
+        assertNotNull(tracker.get("ns", "foo").getWorkersReadySeconds());
+        assertTrue(tracker.get("ns", "foo").isRecorded());
+    }
+
+    @Test
+    public void testScaledWhileStarting() {
+        pods.add(pod("bar", "bar-m", true));
+        tracker.track(cluster("bar", 3), "ns", false);
+        assertTrue(tracker.isStarting("ns", "bar"));
+
+        pods.add(pod("bar", "bar-w", true));
+        tracker.scaled("ns", "bar", 1);
+        assertFalse(tracker.isStarting("ns", "bar"));
+        assertEquals(1, readyCalls.get());
+
+        tracker.forget("ns", "bar");
+        assertNull(tracker.get("ns", "bar"));
+    }
+
+    @Test
+    public void testSlowestInitContainer() {
+        Pod master = pod("baz", "baz-m", true);
+        master.getStatus().setInitContainerStatuses(Arrays.asList(
+                initStatus("downloader", "2019-05-01T10:00:00Z", "2019-05-01T10:00:42Z", 0),
+                initStatus("backup-config", "2019-05-01T10:00:42Z", "2019-05-01T10:00:43Z", 0)));
+        Pod worker = pod("baz", "baz-w", true);
+        worker.getStatus().setInitContainerStatuses(Arrays.asList(
+                initStatus("downloader", "2019-05-01T10:00:00Z", "2019-05-01T10:01:40Z", 1),
+                initStatus("override-config", "2019-05-01T10:00:00Z", "2019-05-01T10:00:10Z", 0)));
+        pods.add(master);
+        pods.add(worker);
+        tracker.track(cluster("baz", 1), "ns", true);
+
+        assertFalse(tracker.isStarting("ns", "baz"));
+        // the failed download doesn't count
+        Map<String, Object> slowest = tracker.get("ns", "baz").getSlowestInitContainer().toMap();
+        assertEquals("downloader", slowest.get("container"));
+        assertEquals(master.getMetadata().getName(), slowest.get("pod"));
+        assertEquals(42.0, slowest.get("seconds"));
+    }
+
+    @Test
+    public void testTerminatingPodsAreNotObservedAgain() {
+        Pod master = pod("qux", "qux-m", true);
+        master.getStatus().setInitContainerStatuses(Arrays.asList(
+                initStatus("downloader", "2019-05-01T10:00:00Z", "2019-05-01T10:00:42Z", 0)));
+        pods.add(master);
+        tracker.track(cluster("qux", 0), "ns", true);
+        assertEquals(1, initContainerSeries("qux"));
+
+        // the cluster is deleted and its pod is modified while it terminates
+        tracker.forget("ns", "qux");
+        master.getMetadata().setDeletionTimestamp("2019-05-01T10:05:00Z");
+        tracker.podChanged(Watcher.Action.MODIFIED, master);
+        assertEquals(0, initContainerSeries("qux"));
+    }
+
+    private static long initContainerSeries(String cluster) {
+        return MetricsHelper.initContainerDuration.collect().get(0).samples.stream()
+                .filter(s -> s.name.endsWith("_count") && s.labelValues.contains(cluster))
+                .count();
+    }
+
+    private static ContainerStatus initStatus(String name, String started, String finished, int exitCode) {
+        return new ContainerStatusBuilder()
+                .withName(name)
+                .withNewState().withNewTerminated().withStartedAt(started).withFinishedAt(finished)
+                .withExitCode(exitCode).endTerminated().endState()
+                .build();
+    }
+
+    private static SparkCluster cluster(String name, int workers) {
+        SparkCluster cluster = new SparkCluster();
+        cluster.setName(name);
+        Worker worker = new Worker();
+        worker.setInstances(workers);
+        cluster.setWorker(worker);
+        return cluster;
+    }
+
+    private static Pod pod(String cluster, String deployment, boolean ready) {
+        return new PodBuilder()
+                .withNewMetadata()
+                .withName(deployment + "-" + Math.abs(System.nanoTime() % 100000))
+                .withNamespace("ns")
+                .addToLabels(PREFIX + "kind", KIND)
+                .addToLabels(PREFIX + KIND, cluster)
+                .addToLabels(PREFIX + "deployment", deployment)
+                .addToLabels(PREFIX + "podType", deployment.endsWith("-m") ? "master" : "worker")
+                .endMetadata()
+                .withNewStatus()
+                .addNewCondition().withType("Ready").withStatus(ready ? "True" : "False").endCondition()
+                .endStatus()
+                .build();
+    }
+}
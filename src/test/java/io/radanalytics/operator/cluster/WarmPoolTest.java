@@ -0,0 +1,177 @@
+package io.radanalytics.operator.cluster;
+
+import io.fabric8.kubernetes.api.model.KubernetesListBuilder;
+import io.fabric8.kubernetes.api.model.KubernetesResourceList;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.api.model.ReplicationController;
+import io.fabric8.kubernetes.api.model.ReplicationControllerBuilder;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.ServiceBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.radanalytics.operator.cache.ResourceCache;
+import io.radanalytics.operator.scale.MockApiServer;
+import io.radanalytics.types.SparkCluster;
+import io.radanalytics.types.SparkConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class WarmPoolTest {
+
+    private static final String PREFIX = "radanalytics.io/";
+    private static final String KIND = PREFIX + "kind";
+    private static final String NAMESPACE = "pool";
+    private static final String UNIT = "spark-pool-unit";
+
+    private MockApiServer api;
+    private KubernetesClient client;
+    private KubernetesSparkClusterDeployer deployer;
+    private WarmPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        api = new MockApiServer();
+        api.start();
+        client = api.getClient();
+        ResourceCache cache = MockApiServer.withoutLocalCache(client, NAMESPACE, PREFIX);
+        deployer = new KubernetesSparkClusterDeployer(client, cache, "SparkCluster", PREFIX, NAMESPACE);
+        pool = new WarmPool(client, cache, deployer, "SparkCluster", PREFIX, NAMESPACE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        api.stop();
+    }
+
+    @Test
+    public void testEligible() {
+        SparkCluster cluster = WarmPool.template("notebook", 3);
+        cluster.setLabels(Collections.singletonMap("team", "data"));
+        assertTrue(WarmPool.eligible(cluster));
+
+        cluster.getWorker().setMemory("4Gi");
+        assertFalse(WarmPool.eligible(cluster));
+
+        SparkCluster configured = WarmPool.template("notebook", 1);
+        SparkConfiguration nv = new SparkConfiguration();
+        nv.setName("spark.executor.memory");
+        nv.setValue("2g");
+        configured.getSparkConfiguration().add(nv);
+        assertFalse(WarmPool.eligible(configured));
+    }
+
+    @Test
+    public void testPoolResourcesAreNotClusters() {
+        ReplicationController rc = new ReplicationControllerBuilder()
+                .withNewMetadata().withName("spark-pool-x-w").addToLabels(KIND, "SparkCluster").endMetadata()
+                .withNewSpec().addToSelector(KIND, "SparkCluster")
+                .withNewTemplate().withNewMetadata().addToLabels(KIND, "SparkCluster").endMetadata().endTemplate()
+                .endSpec().build();
+        Service service = new ServiceBuilder()
+                .withNewMetadata().withName("spark-pool-x").addToLabels(KIND, "SparkCluster").endMetadata()
+                .withNewSpec().addToSelector(KIND, "SparkCluster").endSpec().build();
+        KubernetesResourceList list = new KubernetesListBuilder().withItems(rc, service).build();
+
+        WarmPool.toPoolResources(list, "radanalytics.io/");
+        // the builder copies (and groups) the items
+        for (Object o : list.getItems()) {
+            if (o instanceof ReplicationController) {
+                rc = (ReplicationController) o;
+            } else {
+                service = (Service) o;
+            }
+        }
+        assertEquals(WarmPool.POOL_KIND, rc.getMetadata().getLabels().get(KIND));
+        assertEquals(WarmPool.POOL_KIND, rc.getSpec().getSelector().get(KIND));
+        assertEquals(WarmPool.POOL_KIND, rc.getSpec().getTemplate().getMetadata().getLabels().get(KIND));
+        assertEquals(WarmPool.POOL_KIND, service.getSpec().getSelector().get(KIND));
+    }
+
+    @Test
+    public void testAdoption() {
+        startUnit(2);
+        SparkCluster cluster = cluster("adopting");
+        KubernetesResourceList list = deployer.getResourceList(cluster);
+
+        assertTrue(pool.adopt(NAMESPACE, cluster, list));
+        assertTrue(client.replicationControllers().inNamespace(NAMESPACE).withLabels(unitLabels()).list().getItems().isEmpty());
+        assertTrue(client.pods().inNamespace(NAMESPACE).withLabels(unitLabels()).list().getItems().isEmpty());
+        // the master and one worker (the other one is deleted) are now selected by the new rcs
+        List<Pod> pods = client.pods().inNamespace(NAMESPACE).withLabel(PREFIX + "SparkCluster", "adopting").list().getItems();
+        assertEquals(2, pods.size());
+        pods.forEach(p -> assertTrue(p.getMetadata().getOwnerReferences().isEmpty()));
+        for (Object o : list.getItems()) {
+            if (o instanceof ReplicationController) {
+                ReplicationController rc = (ReplicationController) o;
+                assertEquals(1, client.pods().inNamespace(NAMESPACE).withLabels(rc.getSpec().getSelector()).list().getItems().size());
+            }
+        }
+        // the workers of the unit keep connecting to its master service, it selects the adopted master now
+        Service master = client.services().inNamespace(NAMESPACE).withName(UNIT).get();
+        assertEquals("adopting", master.getMetadata().getLabels().get(PREFIX + "SparkCluster"));
+        assertEquals(1, client.pods().inNamespace(NAMESPACE).withLabels(master.getSpec().getSelector()).list().getItems().size());
+    }
+
+    @Test
+    public void testFailedAdoptionLeavesNothingBehind() {
+        startUnit(1);
+        SparkCluster cluster = cluster("failing");
+        KubernetesResourceList list = deployer.getResourceList(cluster);
+        for (Object o : list.getItems()) {
+            if (o instanceof ReplicationController && ((ReplicationController) o).getMetadata().getName().endsWith("-w")) {
+                ((ReplicationController) o).getSpec().getTemplate().setMetadata(null);
+            }
+        }
+
+        assertFalse(pool.adopt(NAMESPACE, cluster, list));
+        assertTrue(client.replicationControllers().inNamespace(NAMESPACE).withLabels(unitLabels()).list().getItems().isEmpty());
+        assertTrue(client.pods().inNamespace(NAMESPACE).withLabels(unitLabels()).list().getItems().isEmpty());
+        assertTrue(client.services().inNamespace(NAMESPACE).withLabels(unitLabels()).list().getItems().isEmpty());
+    }
+
+    private SparkCluster cluster(String name) {
+        SparkCluster cluster = WarmPool.template(name, 1);
+        cluster.setNamespace(NAMESPACE);
+        return cluster;
+    }
+
+    /**
+     * Creates the resources of a unit as the refill does and its ready pods as the rcs would.
+     */
+    private void startUnit(int workers) {
+        SparkCluster template = WarmPool.template(UNIT, workers);
+        template.setNamespace(NAMESPACE);
+        for (Object o : WarmPool.toPoolResources(deployer.getResourceList(template), PREFIX).getItems()) {
+            if (o instanceof Service) {
+                client.services().inNamespace(NAMESPACE).create((Service) o);
+            } else if (o instanceof ReplicationController) {
+                ReplicationController rc = client.replicationControllers().inNamespace(NAMESPACE).create((ReplicationController) o);
+                for (int i = 0; i < rc.getSpec().getReplicas(); i++) {
+                    client.pods().inNamespace(NAMESPACE).create(new PodBuilder().withNewMetadata()
+                            .withName(rc.getMetadata().getName() + "-" + i)
+                            .withLabels(rc.getSpec().getTemplate().getMetadata().getLabels())
+                            .addNewOwnerReference().withKind("ReplicationController").withName(rc.getMetadata().getName())
+                            .withApiVersion("v1").withUid("uid-" + rc.getMetadata().getName()).endOwnerReference()
+                            .endMetadata()
+                            .withNewStatus().addNewCondition().withType("Ready").withStatus("True").endCondition().endStatus()
+                            .build());
+                }
+            }
+        }
+    }
+
+    private static Map<String, String> unitLabels() {
+        Map<String, String> labels = new HashMap<>(2);
+        labels.put(KIND, WarmPool.POOL_KIND);
+        labels.put(PREFIX + "SparkCluster", UNIT);
+        return labels;
+    }
+}
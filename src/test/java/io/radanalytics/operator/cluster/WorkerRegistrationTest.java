@@ -0,0 +1,77 @@
+package io.radanalytics.operator.cluster;
+
+import io.fabric8.kubernetes.api.model.Container;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.api.model.PodConditionBuilder;
+import io.fabric8.kubernetes.api.model.PodSpec;
+import io.fabric8.kubernetes.api.model.ReplicationController;
+import io.radanalytics.types.SparkCluster;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WorkerRegistrationTest {
+
+    private static final String PREFIX = "radanalytics.io/";
+    private static final String CONDITION = PREFIX + WorkerRegistration.CONDITION;
+
+    @Test
+    public void testExecProbesByDefault() {
+        KubernetesSparkClusterDeployer deployer = new KubernetesSparkClusterDeployer(null, null, "SparkCluster", PREFIX, "ns");
+        for (ReplicationController rc : rcs(deployer)) {
+            PodSpec spec = rc.getSpec().getTemplate().getSpec();
+            assertNotNull(spec.getContainers().get(0).getReadinessProbe().getExec());
+            // nothing waits for the operator
+            assertTrue(null == spec.getReadinessGates() || spec.getReadinessGates().isEmpty());
+        }
+    }
+
+    @Test
+    public void testHttpProbes() {
+        KubernetesSparkClusterDeployer deployer = new KubernetesSparkClusterDeployer(null, null, "SparkCluster", PREFIX, "ns");
+        deployer.setExecProbes(false);
+        for (ReplicationController rc : rcs(deployer)) {
+            PodSpec spec = rc.getSpec().getTemplate().getSpec();
+            Container container = spec.getContainers().get(0);
+            assertNull(container.getReadinessProbe().getExec());
+            assertEquals("/json", container.getReadinessProbe().getHttpGet().getPath());
+            boolean worker = rc.getMetadata().getName().endsWith("-w");
+            assertEquals(worker ? 8081 : 8080, container.getReadinessProbe().getHttpGet().getPort().getIntVal().intValue());
+            // only the workers wait for the registration
+            assertEquals(worker, null != spec.getReadinessGates() && !spec.getReadinessGates().isEmpty());
+        }
+    }
+
+    @Test
+    public void testAwaitsRegistration() {
+        Pod pod = new PodBuilder().withNewMetadata().withName("a-w-1").endMetadata()
+                .withNewSpec().addNewReadinessGate(CONDITION).endSpec()
+                .withNewStatus().withPhase("Running").withPodIP("10.0.0.1").endStatus().build();
+        assertTrue(WorkerRegistration.awaitsRegistration(pod, CONDITION));
+
+        pod.getStatus().getConditions().add(new PodConditionBuilder()
+                .withType(CONDITION).withStatus("True").build());
+        assertFalse(WorkerRegistration.awaitsRegistration(pod, CONDITION));
+
+        Pod pending = new PodBuilder().withNewMetadata().withName("a-w-2").endMetadata()
+                .withNewSpec().addNewReadinessGate(CONDITION).endSpec()
+                .withNewStatus().withPhase("Pending").endStatus().build();
+        assertFalse(WorkerRegistration.awaitsRegistration(pending, CONDITION));
+    }
+
+    private static List<ReplicationController> rcs(KubernetesSparkClusterDeployer deployer) {
+        SparkCluster cluster = new SparkCluster();
+        cluster.setName("a");
+        List<ReplicationController> rcs = new ArrayList<>();
+        for (Object o : deployer.getResourceList(cluster, new KubernetesSparkClusterDeployer.ExternalInputs(null)).getItems()) {
+            if (o instanceof ReplicationController) {
+                rcs.add((ReplicationController) o);
+            }
+        }
+        return rcs;
+    }
+}
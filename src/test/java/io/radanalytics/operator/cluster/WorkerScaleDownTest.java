@@ -0,0 +1,58 @@
+package io.radanalytics.operator.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static io.radanalytics.operator.cluster.MasterStatusPoller.MasterStatus;
+import static org.junit.Assert.*;
+
+public class WorkerScaleDownTest {
+
+    private static final String MASTER_JSON = "{\"aliveworkers\":3,\"cores\":6,\"coresused\":3,\"workers\":["
+            + "{\"id\":\"worker-1\",\"host\":\"10.0.0.1\",\"cores\":2,\"coresused\":2,\"state\":\"ALIVE\"},"
+            + "{\"id\":\"worker-2\",\"host\":\"10.0.0.2\",\"cores\":2,\"coresused\":0,\"state\":\"ALIVE\"},"
+            + "{\"id\":\"worker-3\",\"host\":\"10.0.0.3\",\"cores\":2,\"coresused\":1,\"state\":\"ALIVE\"},"
+            + "{\"id\":\"worker-0\",\"host\":\"10.0.0.9\",\"cores\":2,\"coresused\":0,\"state\":\"DEAD\"}],"
+            + "\"activeapps\":[{\"id\":\"app-1\",\"state\":\"RUNNING\"}]}";
+
+    @Test
+    public void testIdleWorkersGoFirst() throws Exception {
+        MasterStatus status = MasterStatusPoller.parse(new ObjectMapper().readTree(MASTER_JSON));
+        assertEquals(3, status.getWorkerCoresUsed().size());
+
+        List<Pod> workers = Arrays.asList(
+                pod("a-w-1", "10.0.0.1", "2019-05-01T10:00:00Z"),
+                pod("a-w-2", "10.0.0.2", "2019-05-01T10:00:00Z"),
+                pod("a-w-3", "10.0.0.3", "2019-05-01T10:05:00Z"),
+                pod("a-w-4", "10.0.0.4", "2019-05-01T10:00:00Z"));
+
+        // a-w-4 hasn't registered with the master, then the idle one, then the least busy
+        assertEquals(Arrays.asList("a-w-4", "a-w-2", "a-w-3"), names(WorkerScaleDown.choose(workers, status, 3)));
+        assertEquals(-1, WorkerScaleDown.coresUsed(workers.get(3), status));
+        assertEquals(2, WorkerScaleDown.coresUsed(workers.get(0), status));
+    }
+
+    @Test
+    public void testYoungestFirstAmongTheSame() {
+        MasterStatus status = new MasterStatus(0, 0, 0, 0, 0);
+        List<Pod> workers = Arrays.asList(
+                pod("a-w-1", "10.0.0.1", "2019-05-01T10:00:00Z"),
+                pod("a-w-2", "10.0.0.2", "2019-05-01T11:00:00Z"));
+        assertEquals(Arrays.asList("a-w-2"), names(WorkerScaleDown.choose(workers, status, 1)));
+    }
+
+    private static List<String> names(List<Pod> pods) {
+        return pods.stream().map(p -> p.getMetadata().getName()).collect(Collectors.toList());
+    }
+
+    private static Pod pod(String name, String ip, String created) {
+        return new PodBuilder().withNewMetadata().withName(name).withCreationTimestamp(created).endMetadata()
+                .withNewStatus().withPodIP(ip).endStatus().build();
+    }
+}
@@ -0,0 +1,33 @@
+package io.radanalytics.operator.reconcile;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ApiCallMetricsTest {
+
+    @Test
+    public void testVerbs() {
+        assertEquals("list", ApiCallMetrics.verb("GET", "/api/v1/namespaces/foo/pods", null));
+        assertEquals("get", ApiCallMetrics.verb("GET", "/api/v1/namespaces/foo/pods/bar", null));
+        assertEquals("watch", ApiCallMetrics.verb("GET", "/api/v1/namespaces/foo/pods", "true"));
+        assertEquals("create", ApiCallMetrics.verb("POST", "/api/v1/namespaces/foo/services", null));
+        assertEquals("update", ApiCallMetrics.verb("PUT", "/api/v1/namespaces/foo/services/bar", null));
+        assertEquals("patch", ApiCallMetrics.verb("PATCH", "/api/v1/namespaces/foo/replicationcontrollers/bar", null));
+        assertEquals("delete", ApiCallMetrics.verb("DELETE", "/api/v1/namespaces/foo/pods/bar", null));
+        assertEquals("deletecollection", ApiCallMetrics.verb("DELETE", "/api/v1/namespaces/foo/pods", null));
+        assertEquals("get", ApiCallMetrics.verb("GET", "/api/v1/namespaces/foo", null));
+        assertEquals("list", ApiCallMetrics.verb("GET", "/apis/radanalytics.io/v1/sparkclusters", null));
+    }
+
+    @Test
+    public void testResources() {
+        assertEquals("pods", ApiCallMetrics.resource("/api/v1/namespaces/foo/pods/bar"));
+        assertEquals("replicationcontrollers", ApiCallMetrics.resource("/api/v1/namespaces/foo/replicationcontrollers/bar/scale"));
+        assertEquals("namespaces", ApiCallMetrics.resource("/api/v1/namespaces/foo"));
+        assertEquals("nodes", ApiCallMetrics.resource("/api/v1/nodes"));
+        assertEquals("sparkclusters", ApiCallMetrics.resource("/apis/radanalytics.io/v1/namespaces/foo/sparkclusters/bar"));
+        assertEquals("routes", ApiCallMetrics.resource("/apis/route.openshift.io/v1/namespaces/foo/routes"));
+        assertEquals("unknown", ApiCallMetrics.resource("/version"));
+    }
+}
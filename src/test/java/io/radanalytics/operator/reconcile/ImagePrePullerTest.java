@@ -0,0 +1,70 @@
+package io.radanalytics.operator.reconcile;
+
+import io.fabric8.kubernetes.api.model.Container;
+import io.fabric8.kubernetes.api.model.ContainerStatusBuilder;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.api.model.apps.DaemonSet;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+public class ImagePrePullerTest {
+
+    private static final String PREFIX = "radanalytics.io/";
+
+    @Test
+    public void testDaemonSet() {
+        DaemonSet ds = ImagePrePuller.daemonSet(new TreeSet<>(Arrays.asList("quay.io/a:1", "quay.io/b:2")), PREFIX);
+        assertEquals(ImagePrePuller.NAME, ds.getMetadata().getName());
+        List<Container> pulls = ds.getSpec().getTemplate().getSpec().getInitContainers();
+        assertEquals(3, pulls.size());
+        assertEquals(ImagePrePuller.TOOLS_IMAGE, pulls.get(0).getImage());
+        assertEquals("quay.io/a:1", pulls.get(1).getImage());
+        // no shell needed in the pulled images
+        assertFalse(pulls.get(1).getCommand().contains("/bin/sh"));
+        assertEquals(pulls.get(0).getCommand().get(2), pulls.get(1).getCommand().get(0));
+        assertEquals("pause", ds.getSpec().getTemplate().getSpec().getContainers().get(0).getName());
+        assertEquals(ds.getSpec().getSelector().getMatchLabels(), ds.getSpec().getTemplate().getMetadata().getLabels());
+    }
+
+    @Test
+    public void testImagesOfExistingDaemonSet() {
+        TreeSet<String> images = new TreeSet<>(Arrays.asList("quay.io/a:1", "quay.io/b:2"));
+        // seeds the pre-puller after a restart, the tools image isn't one of the pulled ones
+        assertEquals(images, ImagePrePuller.images(ImagePrePuller.daemonSet(images, PREFIX)));
+    }
+
+    @Test
+    public void testPullTimes() {
+        Pod pod = new PodBuilder()
+                .withNewMetadata().withName("spark-image-pre-puller-x").endMetadata()
+                .withNewSpec()
+                .addNewInitContainer().withName("pull-0").withImage("quay.io/a:1").endInitContainer()
+                .addNewInitContainer().withName("pull-1").withImage("quay.io/b:2").endInitContainer()
+                .addNewInitContainer().withName("pull-2").withImage("quay.io/c:3").endInitContainer()
+                .endSpec()
+                .withNewStatus().withStartTime("2019-05-01T10:00:00Z")
+                .withInitContainerStatuses(
+                        new ContainerStatusBuilder().withName("pull-0").withNewState().withNewTerminated()
+                                .withStartedAt("2019-05-01T10:00:30Z").withFinishedAt("2019-05-01T10:00:31Z")
+                                .withExitCode(0).endTerminated().endState().build(),
+                        new ContainerStatusBuilder().withName("pull-1").withNewState().withNewTerminated()
+                                .withStartedAt("2019-05-01T10:00:33Z").withFinishedAt("2019-05-01T10:00:33Z")
+                                .withExitCode(0).endTerminated().endState().build(),
+                        new ContainerStatusBuilder().withName("pull-2").withNewState().withNewWaiting()
+                                .withReason("PodInitializing").endWaiting().endState().build())
+                .endStatus()
+                .build();
+
+        Map<String, Double> times = ImagePrePuller.pullTimes(pod);
+        assertEquals(2, times.size());
+        assertEquals(30.0, times.get("quay.io/a:1"), 0.001);
+        assertEquals(2.0, times.get("quay.io/b:2"), 0.001);
+    }
+}
@@ -0,0 +1,95 @@
+package io.radanalytics.operator.reconcile;
+
+import io.fabric8.kubernetes.api.model.ConfigMapBuilder;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.KubernetesList;
+import io.fabric8.kubernetes.api.model.KubernetesListBuilder;
+import io.fabric8.kubernetes.api.model.OwnerReference;
+import io.fabric8.kubernetes.api.model.ServiceBuilder;
+import io.fabric8.kubernetes.client.ConfigBuilder;
+import io.fabric8.kubernetes.client.DefaultKubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.server.mock.KubernetesServer;
+import io.radanalytics.operator.cache.ResourceCache;
+import okhttp3.TlsVersion;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Constructor;
+
+import static org.junit.Assert.*;
+
+public class OwnerReferencesTest {
+
+    private static final String PREFIX = "radanalytics.io/";
+
+    private final KubernetesServer server = new KubernetesServer(false, true);
+    private KubernetesClient client;
+    private ResourceCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        server.before();
+        // the client of the mock server only offers TLS 1.0 that the recent JDKs refuse
+        client = new DefaultKubernetesClient(new ConfigBuilder(server.getClient().getConfiguration())
+                .withTlsVersions(TlsVersion.TLS_1_2)
+                .withTrustCerts(true)
+                .build());
+        // never started, the config maps are read from the API server
+        Constructor<ResourceCache> constructor = ResourceCache.class.getDeclaredConstructor(KubernetesClient.class, String.class, String.class);
+        constructor.setAccessible(true);
+        cache = constructor.newInstance(client, "ns", PREFIX);
+    }
+
+    @After
+    public void tearDown() {
+        client.close();
+        server.after();
+    }
+
+    @Test
+    public void testConfigMapOwner() {
+        client.configMaps().inNamespace("ns").create(new ConfigMapBuilder().withNewMetadata().withName("foo")
+                .withUid("uid-1").endMetadata().build());
+        OwnerReferences owners = new OwnerReferences(client, cache, "SparkCluster", "sparkclusters", PREFIX, false);
+        KubernetesList list = resources();
+
+        owners.setOwner(list, "ns", "foo");
+
+        for (Object o : list.getItems()) {
+            OwnerReference owner = ((HasMetadata) o).getMetadata().getOwnerReferences().get(0);
+            assertEquals("v1", owner.getApiVersion());
+            assertEquals("ConfigMap", owner.getKind());
+            assertEquals("foo", owner.getName());
+            assertEquals("uid-1", owner.getUid());
+            assertTrue(owner.getController());
+            // it would need the update permission on the finalizers of the owner
+            assertNull(owner.getBlockOwnerDeletion());
+        }
+
+        // the uid is looked up only once, until the owner is forgotten
+        client.configMaps().inNamespace("ns").withName("foo").delete();
+        assertNotNull(owners.ownerOf("ns", "foo"));
+        owners.forget("ns", "foo");
+        assertNull(owners.ownerOf("ns", "foo"));
+    }
+
+    @Test
+    public void testMissingOwner() {
+        OwnerReferences owners = new OwnerReferences(client, cache, "SparkCluster", "sparkclusters", PREFIX, false);
+        KubernetesList list = resources();
+
+        owners.setOwner(list, "ns", "foo");
+
+        list.getItems().forEach(r -> assertTrue(null == r.getMetadata().getOwnerReferences()
+                || r.getMetadata().getOwnerReferences().isEmpty()));
+    }
+
+    private static KubernetesList resources() {
+        return new KubernetesListBuilder()
+                .addToItems(new ServiceBuilder().withNewMetadata().withName("foo-ui").endMetadata().build())
+                .addToItems(new ConfigMapBuilder().withNewMetadata().withName("foo-config").endMetadata().build())
+                .build();
+    }
+}
@@ -0,0 +1,54 @@
+package io.radanalytics.operator.reconcile;
+
+import io.fabric8.kubernetes.api.model.ReplicationController;
+import io.fabric8.kubernetes.api.model.ReplicationControllerBuilder;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SpecHashTest {
+
+    private static final String PREFIX = "radanalytics.io/";
+
+    @Test
+    public void testHashIgnoresLabelOrder() {
+        Map<String, String> labels1 = new LinkedHashMap<>();
+        labels1.put("a", "1");
+        labels1.put("b", "2");
+        Map<String, String> labels2 = new LinkedHashMap<>();
+        labels2.put("b", "2");
+        labels2.put("a", "1");
+
+        String hash1 = SpecHash.annotate(rc("foo", labels1, 2), PREFIX);
+        String hash2 = SpecHash.annotate(rc("foo", labels2, 2), PREFIX);
+
+        assertEquals(hash1, hash2);
+    }
+
+    @Test
+    public void testHashIgnoresItsOwnAnnotation() {
+        ReplicationController rc = rc("foo", new LinkedHashMap<>(), 2);
+        String hash1 = SpecHash.annotate(rc, PREFIX);
+        String hash2 = SpecHash.annotate(rc, PREFIX);
+
+        assertEquals(hash1, hash2);
+        assertEquals(hash1, SpecHash.get(rc, PREFIX));
+    }
+
+    @Test
+    public void testHashChangesWithSpec() {
+        String hash1 = SpecHash.annotate(rc("foo", new LinkedHashMap<>(), 2), PREFIX);
+        String hash2 = SpecHash.annotate(rc("foo", new LinkedHashMap<>(), 3), PREFIX);
+
+        assertNotEquals(hash1, hash2);
+        assertNull(SpecHash.get(new ReplicationController(), PREFIX));
+    }
+
+    private ReplicationController rc(String name, Map<String, String> labels, int replicas) {
+        return new ReplicationControllerBuilder().withNewMetadata().withName(name).withLabels(labels).endMetadata()
+                .withNewSpec().withReplicas(replicas).endSpec().build();
+    }
+}
@@ -0,0 +1,131 @@
+package io.radanalytics.operator.reconcile;
+
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class StatusWriterTest {
+
+    @Test
+    public void testPendingStatesAreMerged() throws Exception {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        StatusWriter writer = new StatusWriter("test", (state, ns, name) -> {
+            started.countDown();
+            blocker.await(5, TimeUnit.SECONDS);
+            written.add(state);
+            done.countDown();
+        }, scheduler);
+
+        writer.update("ns", "foo", "ready");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        // the first write is in flight, these two end up as a single write of the latest state
+        writer.update("ns", "foo", "scaled");
+        writer.update("ns", "foo", "deleted");
+        blocker.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertNothingPending(writer, scheduler);
+        assertEquals(2, written.size());
+        assertEquals("ready", written.get(0));
+        assertEquals("deleted", written.get(1));
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testFieldsAreMergedWithTheState() throws Exception {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+        List<String> states = Collections.synchronizedList(new ArrayList<>());
+        List<Map<String, Object>> fields = Collections.synchronizedList(new ArrayList<>());
+        StatusWriter writer = new StatusWriter("test", (state, f, ns, name) -> {
+            started.countDown();
+            blocker.await(5, TimeUnit.SECONDS);
+            states.add(state);
+            fields.add(f);
+            done.countDown();
+        }, scheduler);
+
+        writer.merge("ns", "foo", Collections.singletonMap("autoscaler", "steady"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        // written together with the latest value of the field, no separate write that could race this one
+        writer.update("ns", "foo", "ready");
+        writer.merge("ns", "foo", Collections.singletonMap("autoscaler", "up"));
+        blocker.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertNothingPending(writer, scheduler);
+        assertEquals(2, states.size());
+        assertNull(states.get(0));
+        assertEquals("steady", fields.get(0).get("autoscaler"));
+        assertEquals("ready", states.get(1));
+        assertEquals("up", fields.get(1).get("autoscaler"));
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testFailedWritesAreRetried() throws Exception {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        AtomicInteger attempts = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1);
+        StatusWriter writer = new StatusWriter("test", (state, ns, name) -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IllegalStateException("api server unavailable");
+            }
+            done.countDown();
+        }, scheduler);
+
+        writer.update("ns", "foo", "ready");
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertNothingPending(writer, scheduler);
+        assertEquals(3, attempts.get());
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testGoneResourceIsNotRetried() throws Exception {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        AtomicInteger attempts = new AtomicInteger();
+        StatusWriter writer = new StatusWriter("test", (state, ns, name) -> {
+            attempts.incrementAndGet();
+            throw new KubernetesClientException("not found", 404, null);
+        }, scheduler);
+
+        writer.update("ns", "foo", "ready");
+        assertNothingPending(writer, scheduler);
+        assertEquals(1, attempts.get());
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testBackoffGrowsAndIsCapped() {
+        for (int attempt = 1; attempt < 30; attempt++) {
+            long max = Math.min(StatusWriter.MAX_BACKOFF_MS, StatusWriter.INITIAL_BACKOFF_MS << Math.min(attempt - 1, 20));
+            long delay = StatusWriter.backoff(attempt);
+            assertTrue(delay >= max / 2);
+            assertTrue(delay <= max);
+        }
+    }
+
+    // the write is finished by the same task of the single threaded scheduler that has called the sink
+    private void assertNothingPending(StatusWriter writer, ScheduledExecutorService scheduler) throws Exception {
+        scheduler.submit(() -> { }).get(5, TimeUnit.SECONDS);
+        assertEquals(0, writer.pendingCount());
+    }
+}
@@ -0,0 +1,179 @@
+package io.radanalytics.operator.reconcile;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static io.radanalytics.operator.reconcile.WorkQueue.Action;
+import static org.junit.Assert.*;
+
+public class WorkQueueTest {
+
+    @Test
+    public void testMergeRules() {
+        assertEquals(Action.ADD, WorkQueue.merge(Action.ADD, Action.MODIFY));
+        assertEquals(Action.MODIFY, WorkQueue.merge(Action.MODIFY, Action.MODIFY));
+        assertEquals(Action.DELETE, WorkQueue.merge(Action.ADD, Action.DELETE));
+        assertEquals(Action.DELETE, WorkQueue.merge(Action.MODIFY, Action.DELETE));
+        assertNull(WorkQueue.merge(Action.DELETE, Action.ADD));
+        assertNull(WorkQueue.merge(Action.MODIFY, Action.SCALE));
+        assertNull(WorkQueue.merge(Action.SCALE, Action.MODIFY));
+    }
+
+    @Test
+    public void testEventsForTheSameKeyAreCoalesced() throws Exception {
+        WorkQueue queue = new WorkQueue(2);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch blocker = new CountDownLatch(1);
+        List<String> processed = Collections.synchronizedList(new ArrayList<>());
+        WorkQueue.Handler<String> handler = (action, entity) -> {
+            started.countDown();
+            try {
+                blocker.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            processed.add(action + ":" + entity);
+        };
+
+        // the first one is picked up immediately, the rest waits and gets merged into the latest state
+        CompletableFuture<Void> f1 = queue.submit("test", "ns", "foo", Action.ADD, "v1", handler);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Void> f2 = queue.submit("test", "ns", "foo", Action.MODIFY, "v2", handler);
+        CompletableFuture<Void> f3 = queue.submit("test", "ns", "foo", Action.MODIFY, "v3", handler);
+        CompletableFuture<Void> f4 = queue.submit("test", "ns", "foo", Action.DELETE, "v4", handler);
+        CompletableFuture<Void> f5 = queue.submit("test", "ns", "foo", Action.ADD, "v5", handler);
+        assertSame(f2, f3);
+        assertSame(f2, f4);
+        assertNotSame(f4, f5);
+
+        blocker.countDown();
+        CompletableFuture.allOf(f1, f2, f5).get(5, TimeUnit.SECONDS);
+        assertEquals(3, processed.size());
+        assertEquals("ADD:v1", processed.get(0));
+        assertEquals("DELETE:v4", processed.get(1));
+        assertEquals("ADD:v5", processed.get(2));
+        queue.shutdown();
+    }
+
+    @Test
+    public void testDifferentHandlersAreNotMerged() throws Exception {
+        WorkQueue queue = new WorkQueue(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch blocker = new CountDownLatch(1);
+        List<String> processed = Collections.synchronizedList(new ArrayList<>());
+        WorkQueue.Handler<String> blocking = (action, entity) -> {
+            started.countDown();
+            try {
+                blocker.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        WorkQueue.Handler<String> event = (action, entity) -> processed.add("event:" + entity);
+        WorkQueue.Handler<String> reconciliation = (action, entity) -> processed.add("reconciliation:" + entity);
+
+        CompletableFuture<Void> first = queue.submit("test", "ns", "foo", Action.ADD, "v1", blocking);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        // e.g. the scaling done by the full reconciliation and a watch event for the same cluster
+        CompletableFuture<Void> scale = queue.submit("test", "ns", "foo", Action.MODIFY, "v2", reconciliation);
+        CompletableFuture<Void> modify = queue.submit("test", "ns", "foo", Action.MODIFY, "v3", event);
+        CompletableFuture<Void> merged = queue.submit("test", "ns", "foo", Action.MODIFY, "v4", event);
+        assertNotSame(scale, modify);
+        assertSame(modify, merged);
+
+        blocker.countDown();
+        CompletableFuture.allOf(first, scale, modify).get(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("reconciliation:v2", "event:v4"), processed);
+        queue.shutdown();
+    }
+
+    @Test
+    public void testSameKeyInOrderOtherKeysInParallel() throws Exception {
+        WorkQueue queue = new WorkQueue(2);
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch otherKeyDone = new CountDownLatch(1);
+        List<String> processed = Collections.synchronizedList(new ArrayList<>());
+        WorkQueue.Handler<String> handler = (action, entity) -> {
+            if ("foo-1".equals(entity)) {
+                try {
+                    blocker.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            processed.add(entity);
+            if ("bar-1".equals(entity)) {
+                otherKeyDone.countDown();
+            }
+        };
+
+        CompletableFuture<Void> foo1 = queue.submit("test", "ns", "foo", Action.ADD, "foo-1", handler);
+        CompletableFuture<Void> foo2 = queue.submit("test", "ns", "foo", Action.SCALE, "foo-2", handler);
+        CompletableFuture<Void> bar1 = queue.submit("test", "ns", "bar", Action.ADD, "bar-1", handler);
+
+        // bar isn't held back by the blocked foo, the second foo waits for the first one
+        assertTrue(otherKeyDone.await(5, TimeUnit.SECONDS));
+        assertFalse(processed.contains("foo-2"));
+        blocker.countDown();
+        CompletableFuture.allOf(foo1, foo2, bar1).get(5, TimeUnit.SECONDS);
+        assertTrue(processed.indexOf("foo-1") < processed.indexOf("foo-2"));
+        queue.shutdown();
+    }
+
+    @Test
+    public void testFailureDoesNotStopTheKey() throws Exception {
+        WorkQueue queue = new WorkQueue(1);
+        CountDownLatch blocker = new CountDownLatch(1);
+        List<String> processed = Collections.synchronizedList(new ArrayList<>());
+        WorkQueue.Handler<String> handler = (action, entity) -> {
+            try {
+                blocker.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if ("broken".equals(entity)) {
+                throw new IllegalStateException("api server unavailable");
+            }
+            processed.add(entity);
+        };
+
+        CompletableFuture<Void> failed = queue.submit("test", "ns", "foo", Action.ADD, "broken", handler);
+        CompletableFuture<Void> next = queue.submit("test", "ns", "foo", Action.SCALE, "fine", handler);
+        blocker.countDown();
+        next.get(5, TimeUnit.SECONDS);
+        assertTrue(failed.isCompletedExceptionally());
+        assertEquals(Collections.singletonList("fine"), processed);
+        queue.shutdown();
+    }
+
+    @Test
+    public void testErrorDoesNotStopTheKey() throws Exception {
+        WorkQueue queue = new WorkQueue(1);
+        CountDownLatch blocker = new CountDownLatch(1);
+        WorkQueue.Handler<String> handler = (action, entity) -> {
+            try {
+                blocker.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if ("broken".equals(entity)) {
+                throw new StackOverflowError();
+            }
+        };
+
+        CompletableFuture<Void> failed = queue.submit("test", "ns", "foo", Action.ADD, "broken", handler);
+        CompletableFuture<Void> next = queue.submit("test", "ns", "foo", Action.SCALE, "fine", handler);
+        blocker.countDown();
+        next.get(5, TimeUnit.SECONDS);
+        assertTrue(failed.isCompletedExceptionally());
+        queue.submit("test", "ns", "foo", Action.MODIFY, "fine", handler).get(5, TimeUnit.SECONDS);
+        queue.shutdown();
+    }
+}
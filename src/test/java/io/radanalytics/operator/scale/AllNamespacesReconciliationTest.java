@@ -0,0 +1,136 @@
+package io.radanalytics.operator.scale;
+
+import io.fabric8.kubernetes.api.model.ReplicationController;
+import io.fabric8.kubernetes.api.model.ReplicationControllerBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.radanalytics.operator.cluster.SparkClusterOperator;
+import io.radanalytics.operator.common.Operator;
+import io.radanalytics.types.SparkCluster;
+import io.radanalytics.types.Worker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static io.radanalytics.operator.resource.LabelsHelper.OPERATOR_KIND_LABEL;
+import static io.radanalytics.operator.resource.LabelsHelper.OPERATOR_RC_TYPE_LABEL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The full reconciliation in the '*' mode, the clusters with the same name in different namespaces must be
+ * reconciled independently.
+ */
+public class AllNamespacesReconciliationTest {
+
+    private MockApiServer api;
+    private KubernetesClient client;
+
+    @Before
+    public void setUp() {
+        api = new MockApiServer();
+        api.start();
+        client = api.getClient();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        api.stop();
+    }
+
+    @Test
+    public void testSameNameInTwoNamespaces() throws Exception {
+        DesiredClusters operator = new DesiredClusters();
+        OperatorHarness<SparkCluster> harness = new OperatorHarness<>(operator, client, "*");
+        String prefix = harness.getPrefix();
+        String entityName = harness.getEntityName();
+        // the config maps don't carry the namespace, the '*' mode is reconciled only for the custom resources
+        operator.setCrd(true);
+
+        // 'a': to be created, 'b': to be scaled from 3 to 1, 'c': not desired anymore
+        operator.desired.add(cluster("a", 2));
+        operator.desired.add(cluster("b", 1));
+        client.replicationControllers().inNamespace("b").create(workers("b", "foo-w", 3, prefix, entityName));
+        // a copy of the rc with the same labels and the replicas left for k8s to default
+        client.replicationControllers().inNamespace("b").create(workers("b", "foo-w-copy", null, prefix, entityName));
+        client.replicationControllers().inNamespace("c").create(workers("c", "foo-w", 2, prefix, entityName));
+
+        operator.fullReconciliation();
+
+        ReplicationController created = client.replicationControllers().inNamespace("a").withName("foo-w").get();
+        assertNotNull(created);
+        assertEquals(Integer.valueOf(2), created.getSpec().getReplicas());
+        assertNotNull(client.replicationControllers().inNamespace("a").withName("foo-m").get());
+        assertEquals(Integer.valueOf(1), client.replicationControllers().inNamespace("b").withName("foo-w").get().getSpec().getReplicas());
+        assertTrue(client.replicationControllers().inNamespace("c").list().getItems().isEmpty());
+    }
+
+    @Test
+    public void testNamespaceSwappedDuringPass() throws Exception {
+        DesiredClusters operator = new DesiredClusters();
+        OperatorHarness<SparkCluster> harness = new OperatorHarness<>(operator, client, "*");
+        String prefix = harness.getPrefix();
+        String entityName = harness.getEntityName();
+        operator.setCrd(true);
+
+        operator.desired.add(cluster("a", 2));
+        operator.desired.add(cluster("b", 2));
+        client.replicationControllers().inNamespace("a").create(workers("a", "foo-w", 2, prefix, entityName));
+        client.replicationControllers().inNamespace("b").create(workers("b", "foo-w", 2, prefix, entityName));
+        client.replicationControllers().inNamespace("c").create(workers("c", "foo-w", 2, prefix, entityName));
+        // the watcher handles an event from 'a' while the desired set is being listed
+        operator.onListing = () -> operator.setNamespace("a");
+
+        operator.fullReconciliation();
+
+        assertNotNull(client.replicationControllers().inNamespace("a").withName("foo-w").get());
+        assertNotNull(client.replicationControllers().inNamespace("b").withName("foo-w").get());
+        assertTrue(client.replicationControllers().inNamespace("c").list().getItems().isEmpty());
+    }
+
+    private static SparkCluster cluster(String ns, int workers) {
+        SparkCluster cluster = new SparkCluster();
+        cluster.setName("foo");
+        cluster.setNamespace(ns);
+        Worker worker = new Worker();
+        worker.setInstances(workers);
+        cluster.setWorker(worker);
+        return cluster;
+    }
+
+    private static ReplicationController workers(String ns, String name, Integer replicas, String prefix, String entityName) {
+        Map<String, String> labels = new HashMap<>();
+        labels.put(prefix + OPERATOR_KIND_LABEL, entityName);
+        labels.put(prefix + OPERATOR_RC_TYPE_LABEL, "worker");
+        labels.put(prefix + entityName, "foo");
+        return new ReplicationControllerBuilder().withNewMetadata().withName(name).withNamespace(ns).withLabels(labels)
+                .endMetadata().withNewSpec().withReplicas(replicas).withSelector(labels).endSpec().build();
+    }
+
+    // the mock API server doesn't know the custom resource definition, the desired set is given by the test
+    @Operator(forKind = SparkCluster.class, prefix = "radanalytics.io")
+    private static class DesiredClusters extends SparkClusterOperator {
+        private final Set<SparkCluster> desired = new HashSet<>();
+        private Runnable onListing = () -> { };
+
+        // like the abstract operator, the clusters are listed in the namespace the field holds at the moment
+        @Override
+        protected Set<SparkCluster> getDesiredSet() {
+            onListing.run();
+            return "*".equals(namespace) ? desired
+                    : desired.stream().filter(c -> namespace.equals(c.getNamespace())).collect(Collectors.toSet());
+        }
+
+        @Override
+        protected Set<SparkCluster> getDesiredSetInAnyNamespace() {
+            onListing.run();
+            return desired;
+        }
+    }
+}
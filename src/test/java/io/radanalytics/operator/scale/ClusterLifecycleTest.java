@@ -0,0 +1,125 @@
+package io.radanalytics.operator.scale;
+
+import io.fabric8.kubernetes.api.model.ConfigMapBuilder;
+import io.fabric8.kubernetes.api.model.ReplicationController;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.radanalytics.operator.cluster.MetricsHelper;
+import io.radanalytics.operator.cluster.SparkClusterOperator;
+import io.radanalytics.operator.reconcile.WorkQueue;
+import io.radanalytics.types.IdlePolicy;
+import io.radanalytics.types.SparkCluster;
+import io.radanalytics.types.Worker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The events of a cluster processed by the operator against the mock API server.
+ */
+public class ClusterLifecycleTest {
+
+    private static final String NAMESPACE = "lifecycle";
+
+    private final Semaphore processed = new Semaphore(0);
+    private MockApiServer api;
+    private KubernetesClient client;
+    private SparkClusterOperator operator;
+    private OperatorHarness<SparkCluster> harness;
+
+    @Before
+    public void setUp() throws Exception {
+        api = new MockApiServer();
+        api.start();
+        client = api.getClient();
+        WorkQueue.shared().setListener((kind, action, waitNanos, processingNanos, failed) -> processed.release());
+        operator = new SparkClusterOperator();
+        harness = new OperatorHarness<>(operator, client, NAMESPACE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        WorkQueue.shared().setListener(null);
+        api.stop();
+    }
+
+    @Test
+    public void testScaleClusterWithoutWorkerSection() throws Exception {
+        SparkCluster cluster = new SparkCluster();
+        cluster.setName("no-worker");
+        process(() -> harness.add(cluster));
+
+        SparkCluster scaled = new SparkCluster();
+        scaled.setName("no-worker");
+        scaled.setWorker(new Worker());
+        scaled.getWorker().setInstances(3);
+        process(() -> harness.modify(scaled));
+
+        assertEquals(Integer.valueOf(3), client.replicationControllers().inNamespace(NAMESPACE).withName("no-worker-w").get()
+                .getSpec().getReplicas());
+    }
+
+    @Test
+    public void testPolicyChangeIsStored() throws Exception {
+        SparkCluster cluster = new SparkCluster();
+        cluster.setName("policy");
+        process(() -> harness.add(cluster));
+
+        // nothing is rendered from the idle policy, but the operator has to act upon the new one
+        SparkCluster withPolicy = new SparkCluster();
+        withPolicy.setName("policy");
+        withPolicy.setIdlePolicy(new IdlePolicy());
+        withPolicy.getIdlePolicy().setIdleMinutes(30);
+        process(() -> harness.modify(withPolicy));
+
+        SparkCluster stored = stored("policy");
+        assertNotNull(stored.getIdlePolicy());
+        assertEquals(Integer.valueOf(30), stored.getIdlePolicy().getIdleMinutes());
+    }
+
+    @Test
+    public void testOwnedResourcesAreDeleted() throws Exception {
+        client.configMaps().inNamespace(NAMESPACE).create(new ConfigMapBuilder().withNewMetadata().withName("owned")
+                .withUid("uid-owned").endMetadata().build());
+        SparkCluster cluster = new SparkCluster();
+        cluster.setName("owned");
+        process(() -> harness.add(cluster));
+        ReplicationController workers = client.replicationControllers().inNamespace(NAMESPACE).withName("owned-w").get();
+        assertEquals("uid-owned", workers.getMetadata().getOwnerReferences().get(0).getUid());
+
+        // the garbage collector would remove them too, but the cache can't prove nothing was created without the owner
+        int deletes = api.requests("delete");
+        double counted = teardownCalls();
+        process(() -> harness.delete(cluster));
+        // each resource is deleted by its name, no lists and the counter matches the calls that were made
+        assertEquals(0, api.requests("deletecollection"));
+        assertEquals(api.requests("delete") - deletes, teardownCalls() - counted, 0);
+        assertNull(client.replicationControllers().inNamespace(NAMESPACE).withName("owned-w").get());
+        assertNull(client.replicationControllers().inNamespace(NAMESPACE).withName("owned-m").get());
+        assertTrue(client.services().inNamespace(NAMESPACE).list().getItems().isEmpty());
+    }
+
+    private void process(Runnable event) throws InterruptedException {
+        event.run();
+        assertTrue(processed.tryAcquire(30, TimeUnit.SECONDS));
+    }
+
+    private static double teardownCalls() {
+        return MetricsHelper.teardownApiCalls.labels("SparkCluster").get();
+    }
+
+    private SparkCluster stored(String name) throws Exception {
+        Method clusters = SparkClusterOperator.class.getDeclaredMethod("getClusters");
+        clusters.setAccessible(true);
+        Object running = clusters.invoke(operator);
+        return (SparkCluster) running.getClass().getMethod("getCluster", String.class, String.class).invoke(running, NAMESPACE, name);
+    }
+}
@@ -0,0 +1,88 @@
+package io.radanalytics.operator.scale;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.fabric8.kubernetes.api.model.ReplicationController;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.radanalytics.operator.reconcile.WorkQueue;
+import org.junit.Assume;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Replays the recordings made with <code>EVENT_RECORDING_FILE</code>, the one to replay can be passed as
+ * {@code mvn test -Dtest=EventReplayTest -Dreplay.file=/path/to/recording.jsonl}.
+ */
+public class EventReplayTest {
+
+    private static final Logger log = LoggerFactory.getLogger(EventReplayTest.class.getName());
+    private static final ObjectMapper json = new ObjectMapper();
+
+    @Test
+    public void testReplaySample() throws Exception {
+        MockApiServer api = new MockApiServer();
+        try {
+            api.start();
+            Path recording = Paths.get(getClass().getResource("/recordings/sample.jsonl").toURI());
+            List<EventReplayer.Step> steps = new EventReplayer(api, WorkQueue.shared(), "replay").replay(recording);
+            assertEquals(7, steps.size());
+
+            KubernetesClient client = api.getClient();
+            // scaled back to 2 by the full reconciliation and then to 3 by the modify event
+            ReplicationController workers = client.replicationControllers().inNamespace("replay").withName("my-cluster-w").get();
+            assertNotNull(workers);
+            assertEquals(Integer.valueOf(3), workers.getSpec().getReplicas());
+            assertNotNull(client.services().inNamespace("replay").withName("my-cluster-ui").get());
+            assertNull(client.replicationControllers().inNamespace("replay").withName("my-app-submitter").get());
+        } finally {
+            api.stop();
+        }
+    }
+
+    @Test
+    public void testReplayRecording() throws Exception {
+        String file = System.getProperty("replay.file");
+        Assume.assumeTrue("pass the recording as -Dreplay.file=..", null != file);
+        Path recording = Paths.get(file);
+        MockApiServer api = new MockApiServer();
+        try {
+            api.start();
+            List<EventReplayer.Step> steps = new EventReplayer(api, WorkQueue.shared(), namespaceOf(recording)).replay(recording);
+            File out = new File(System.getProperty("replay.profile", "target/replay-profile.json"));
+            json.writerWithDefaultPrettyPrinter().writeValue(out, EventReplayer.profile(steps));
+            log.info("{} records replayed, the timing profile has been written to {}", steps.size(), out.getAbsolutePath());
+        } finally {
+            api.stop();
+        }
+    }
+
+    // the operators watch the recorded namespace or all of them if there are more
+    private static String namespaceOf(Path recording) throws Exception {
+        Set<String> namespaces = new HashSet<>();
+        try (BufferedReader reader = Files.newBufferedReader(recording, StandardCharsets.UTF_8)) {
+            String line;
+            while (null != (line = reader.readLine())) {
+                JsonNode ns = line.trim().isEmpty() ? null : json.readTree(line).get("namespace");
+                if (null != ns && !ns.isNull()) {
+                    namespaces.add(ns.asText());
+                }
+            }
+        }
+        return 1 == namespaces.size() ? namespaces.iterator().next() : "*";
+    }
+}
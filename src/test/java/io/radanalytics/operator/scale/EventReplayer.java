@@ -0,0 +1,236 @@
+package io.radanalytics.operator.scale;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.ConfigMapBuilder;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.utils.Serialization;
+import io.radanalytics.operator.app.AppOperator;
+import io.radanalytics.operator.cluster.SparkClusterOperator;
+import io.radanalytics.operator.common.EntityInfo;
+import io.radanalytics.operator.historyServer.HistoryServerOperator;
+import io.radanalytics.operator.reconcile.EventRecorder;
+import io.radanalytics.operator.reconcile.WorkQueue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a file written by {@link EventRecorder} against the operators and the mock API server, as fast as possible.
+ * The records are applied one by one and the work queue is drained after each of them, so two runs of the same
+ * recording do the same work and their timing profiles can be compared (e.g. before and after a fix):
+ * <ul>
+ *     <li><code>event</code> - the desired state (config map) is written and the event is passed to the operator's
+ *     <code>onAdd</code>, <code>onModify</code> or <code>onDelete</code></li>
+ *     <li><code>reconciliation</code> - <code>fullReconciliation()</code> of the operator</li>
+ *     <li><code>resource</code> - the resource is written to (or deleted from) the API server as it was seen</li>
+ * </ul>
+ * The custom resources are replayed as config maps, so there are no status updates.
+ */
+class EventReplayer {
+
+    private static final ObjectMapper json = Serialization.jsonMapper();
+    private static final ObjectMapper yaml = new ObjectMapper(new YAMLFactory());
+
+    private final MockApiServer api;
+    private final KubernetesClient client;
+    private final WorkQueue queue;
+    private final Map<String, OperatorHarness<?>> operators = new HashMap<>();
+
+    EventReplayer(MockApiServer api, WorkQueue queue, String namespace) throws Exception {
+        this.api = api;
+        this.client = api.getClient();
+        this.queue = queue;
+        register(new OperatorHarness<>(new SparkClusterOperator(), client, namespace));
+        register(new OperatorHarness<>(new AppOperator(), client, namespace));
+        register(new OperatorHarness<>(new HistoryServerOperator(), client, namespace));
+    }
+
+    private void register(OperatorHarness<?> harness) {
+        operators.put(harness.getEntityName(), harness);
+    }
+
+    /**
+     * One replayed record and how long it took (including the work it has queued).
+     */
+    static class Step {
+        int sequence;
+        String type;
+        String kind;
+        String action;
+        String namespace;
+        String name;
+        long recordedOffsetMs;
+        long durationNanos;
+        int apiCalls;
+
+        Map<String, Object> toMap() {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("sequence", sequence);
+            result.put("type", type);
+            result.put("kind", kind);
+            result.put("action", action);
+            result.put("namespace", namespace);
+            result.put("name", name);
+            result.put("recordedOffsetMs", recordedOffsetMs);
+            result.put("durationMs", durationNanos / 1e6);
+            result.put("apiCalls", apiCalls);
+            return result;
+        }
+    }
+
+    List<Step> replay(Path recording) throws Exception {
+        List<Step> steps = new ArrayList<>();
+        long firstTimestamp = -1;
+        try (BufferedReader reader = Files.newBufferedReader(recording, StandardCharsets.UTF_8)) {
+            String line;
+            while (null != (line = reader.readLine())) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                JsonNode record = json.readTree(line);
+                long timestamp = record.path("timestamp").asLong();
+                if (firstTimestamp < 0) {
+                    firstTimestamp = timestamp;
+                }
+                Step step = new Step();
+                step.sequence = steps.size();
+                step.type = record.path("type").asText();
+                step.kind = record.path("kind").asText();
+                step.action = record.path("action").asText(null);
+                step.namespace = record.path("namespace").asText(null);
+                step.name = record.path("name").asText(null);
+                step.recordedOffsetMs = timestamp - firstTimestamp;
+
+                int callsBefore = api.totalRequests();
+                long start = System.nanoTime();
+                apply(step, record);
+                awaitIdle();
+                step.durationNanos = System.nanoTime() - start;
+                step.apiCalls = api.totalRequests() - callsBefore;
+                steps.add(step);
+            }
+        }
+        return steps;
+    }
+
+    private void apply(Step step, JsonNode record) throws Exception {
+        switch (step.type) {
+            case EventRecorder.EVENT:
+                event(step, (ObjectNode) record.get("object"));
+                break;
+            case EventRecorder.RECONCILIATION:
+                operator(step.kind).getOperator().fullReconciliation();
+                break;
+            case EventRecorder.RESOURCE:
+                resource(step, record.get("object"));
+                break;
+            default:
+                throw new IllegalArgumentException("unknown record type " + step.type);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void event(Step step, ObjectNode object) throws Exception {
+        OperatorHarness<EntityInfo> harness = (OperatorHarness<EntityInfo>) operator(step.kind);
+        EntityInfo entity = json.treeToValue(object, harness.getInfoClass());
+        entity.setName(step.name);
+        entity.setNamespace(step.namespace);
+
+        // the desired state for the full reconciliation
+        if (WorkQueue.Action.DELETE.name().equals(step.action)) {
+            client.configMaps().inNamespace(step.namespace).withName(step.name).delete();
+        } else {
+            ObjectNode spec = object.deepCopy();
+            spec.remove("name");
+            spec.remove("namespace");
+            ConfigMap cm = new ConfigMapBuilder()
+                    .withNewMetadata()
+                    .withName(step.name)
+                    .withNamespace(step.namespace)
+                    .addToLabels(harness.getPrefix() + "kind", step.kind)
+                    .endMetadata()
+                    .withData(Collections.singletonMap("config", yaml.writeValueAsString(spec)))
+                    .build();
+            client.configMaps().inNamespace(step.namespace).createOrReplace(cm);
+        }
+
+        switch (WorkQueue.Action.valueOf(step.action)) {
+            case ADD: harness.add(entity); break;
+            case MODIFY: harness.modify(entity); break;
+            case DELETE: harness.delete(entity); break;
+        }
+    }
+
+    private void resource(Step step, JsonNode object) {
+        HasMetadata resource = Serialization.unmarshal(new ByteArrayInputStream(object.toString().getBytes(StandardCharsets.UTF_8)));
+        // the versions of the recorded cluster mean nothing to the mock server
+        resource.getMetadata().setResourceVersion(null);
+        if ("DELETED".equals(step.action)) {
+            client.resource(resource).inNamespace(step.namespace).delete();
+        } else {
+            client.resource(resource).inNamespace(step.namespace).createOrReplace();
+        }
+    }
+
+    private OperatorHarness<?> operator(String kind) {
+        OperatorHarness<?> harness = operators.get(kind);
+        if (null == harness) {
+            throw new IllegalArgumentException("no operator for kind " + kind);
+        }
+        return harness;
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(10);
+        while (!queue.isIdle()) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("the work queue hasn't drained in 10 minutes");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * @param steps replayed steps
+     * @return the timing profile: all the steps and the duration percentiles per type, kind and action
+     */
+    static Map<String, Object> profile(List<Step> steps) {
+        Map<String, List<Step>> groups = new TreeMap<>();
+        for (Step step : steps) {
+            String key = step.type + "/" + step.kind + (null == step.action ? "" : "/" + step.action);
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(step);
+        }
+        Map<String, Object> summary = new LinkedHashMap<>();
+        groups.forEach((key, group) -> {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("count", group.size());
+            stats.put("durationMs", Latencies.percentiles(group.stream().mapToLong(s -> s.durationNanos).toArray()));
+            stats.put("apiCalls", group.stream().mapToInt(s -> s.apiCalls).sum());
+            summary.put(key, stats);
+        });
+        List<Map<String, Object>> all = new ArrayList<>();
+        steps.forEach(s -> all.add(s.toMap()));
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("records", steps.size());
+        result.put("totalMs", steps.stream().mapToLong(s -> s.durationNanos).sum() / 1e6);
+        result.put("summary", summary);
+        result.put("steps", all);
+        return result;
+    }
+}
@@ -0,0 +1,78 @@
+package io.radanalytics.operator.scale;
+
+import io.radanalytics.operator.reconcile.WorkQueue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Time from the event injection to the end of its processing, per kind and action.
+ */
+class Latencies implements WorkQueue.Listener {
+
+    private final Map<String, List<long[]>> samples = new ConcurrentHashMap<>();
+    private final Map<String, Integer> failures = new ConcurrentHashMap<>();
+
+    @Override
+    public void processed(String kind, WorkQueue.Action action, long waitNanos, long processingNanos, boolean failed) {
+        String key = kind + "/" + action;
+        samples.computeIfAbsent(key, k -> Collections.synchronizedList(new ArrayList<>()))
+                .add(new long[]{waitNanos + processingNanos, processingNanos});
+        if (failed) {
+            failures.merge(key, 1, Integer::sum);
+        }
+    }
+
+    int failed() {
+        return failures.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    int processed() {
+        return samples.values().stream().mapToInt(List::size).sum();
+    }
+
+    Map<String, Object> report() {
+        Map<String, Object> result = new TreeMap<>();
+        for (Map.Entry<String, List<long[]>> e : samples.entrySet()) {
+            List<long[]> values;
+            synchronized (e.getValue()) {
+                values = new ArrayList<>(e.getValue());
+            }
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("count", values.size());
+            stats.put("failed", failures.getOrDefault(e.getKey(), 0));
+            stats.put("endToEndMs", percentiles(values.stream().mapToLong(v -> v[0]).toArray()));
+            stats.put("processingMs", percentiles(values.stream().mapToLong(v -> v[1]).toArray()));
+            result.put(e.getKey(), stats);
+        }
+        return result;
+    }
+
+    /**
+     * @param nanos durations in nanoseconds
+     * @return p50, p90, p99 and max in milliseconds
+     */
+    static Map<String, Object> percentiles(long[] nanos) {
+        long[] sorted = nanos.clone();
+        java.util.Arrays.sort(sorted);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("p50", percentile(sorted, 0.5));
+        result.put("p90", percentile(sorted, 0.9));
+        result.put("p99", percentile(sorted, 0.99));
+        result.put("max", percentile(sorted, 1.0));
+        return result;
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (0 == sorted.length) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
@@ -0,0 +1,184 @@
+package io.radanalytics.operator.scale;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.fabric8.kubernetes.client.ConfigBuilder;
+import io.fabric8.kubernetes.client.DefaultKubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.server.mock.KubernetesCrudDispatcher;
+import io.fabric8.kubernetes.client.server.mock.KubernetesServer;
+import io.radanalytics.operator.cache.ResourceCache;
+import io.radanalytics.operator.reconcile.ApiCallMetrics;
+import okhttp3.TlsVersion;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * The CRUD mode of the fabric8 mock API server made usable from many threads, with the requests counted by
+ * Kubernetes verb and resource.
+ */
+public class MockApiServer {
+
+    private final KubernetesServer server = new KubernetesServer(false, true);
+    private final Map<String, Integer> byVerb = new ConcurrentHashMap<>();
+    private final Map<String, Integer> byResource = new ConcurrentHashMap<>();
+    private final AtomicInteger total = new AtomicInteger();
+    private volatile boolean running;
+    private Thread drainer;
+    private KubernetesClient client;
+
+    public void start() {
+        // the mock server logs each request
+        java.util.logging.Logger.getLogger(MockWebServer.class.getName()).setLevel(Level.WARNING);
+        server.before();
+        // the crud dispatcher keeps the objects in a plain hash map, the operators call it from many threads
+        KubernetesCrudDispatcher crud = new ApiServerDispatcher();
+        server.getMockServer().setDispatcher(new Dispatcher() {
+            @Override
+            public synchronized MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                count(request.getMethod(), request.getPath());
+                return crud.dispatch(request);
+            }
+        });
+        // the client of the mock server only offers TLS 1.0 that the recent JDKs refuse
+        client = new DefaultKubernetesClient(new ConfigBuilder(server.getClient().getConfiguration())
+                .withTlsVersions(TlsVersion.TLS_1_2)
+                .withTrustCerts(true)
+                .build());
+
+        // the mock server keeps all the requests otherwise
+        running = true;
+        drainer = new Thread(() -> {
+            while (running) {
+                try {
+                    server.getMockServer().takeRequest(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }, "mock-api-server-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    public void stop() throws InterruptedException {
+        running = false;
+        if (null != drainer) {
+            drainer.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        if (null != client) {
+            client.close();
+        }
+        server.after();
+    }
+
+    public KubernetesClient getClient() {
+        return client;
+    }
+
+    /**
+     * The mock API server can't serve watches, registers a cache for the namespace that is never started (and so never
+     * synced), all the reads then go to the API server.
+     *
+     * @return the cache the operators get for the namespace
+     */
+    @SuppressWarnings("unchecked")
+    public static ResourceCache withoutLocalCache(KubernetesClient client, String namespace, String prefix) throws Exception {
+        Field instances = ResourceCache.class.getDeclaredField("instances");
+        instances.setAccessible(true);
+        Constructor<ResourceCache> constructor = ResourceCache.class.getDeclaredConstructor(KubernetesClient.class, String.class, String.class);
+        constructor.setAccessible(true);
+        Method key = ResourceCache.class.getDeclaredMethod("key", KubernetesClient.class, String.class, String.class);
+        key.setAccessible(true);
+        Map<String, ResourceCache> caches = (Map<String, ResourceCache>) instances.get(null);
+        caches.putIfAbsent((String) key.invoke(null, client, namespace, prefix), constructor.newInstance(client, namespace, prefix));
+        return caches.get(key.invoke(null, client, namespace, prefix));
+    }
+
+    int totalRequests() {
+        return total.get();
+    }
+
+    int requests(String verb) {
+        return byVerb.getOrDefault(verb, 0);
+    }
+
+    Map<String, Object> report() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("total", total.get());
+        result.put("byVerb", new TreeMap<>(byVerb));
+        result.put("byVerbAndResource", new TreeMap<>(byResource));
+        return result;
+    }
+
+    /**
+     * Closer to the API server than the CRUD dispatcher, which stores the objects by their attributes (including the
+     * labels): a create of an existing name is refused and a replace (or a patch) with different labels doesn't keep
+     * the object under its old labels.
+     */
+    private static class ApiServerDispatcher extends KubernetesCrudDispatcher {
+        private static final ObjectMapper json = new ObjectMapper();
+
+        @Override
+        public MockResponse handleCreate(String path, String body) {
+            String collection = path.split("\\?", 2)[0];
+            JsonNode resource = parse(body);
+            JsonNode name = null == resource ? null : resource.path("metadata").get("name");
+            if (null != name && collection.endsWith("/" + name.asText())) {
+                // it's a replace (PUT), drop the old copy first
+                handleDelete(collection);
+                collection = collection.substring(0, collection.lastIndexOf('/'));
+            } else if (null != name && handleGet(collection + "/" + name.asText()).getStatus().contains(" 200 ")) {
+                return new MockResponse().setResponseCode(409);
+            }
+            return super.handleCreate(collection, body);
+        }
+
+        @Override
+        public MockResponse handlePatch(String path, String body) {
+            MockResponse response = super.handlePatch(path, body);
+            if (response.getStatus().contains(" 200 ") || response.getStatus().contains(" 202 ")) {
+                // the patched copy is stored next to the old one, keep only the patched one
+                String resource = path.split("\\?", 2)[0];
+                String patched = response.getBody().readUtf8();
+                handleDelete(resource);
+                super.handleCreate(resource.substring(0, resource.lastIndexOf('/')), patched);
+                response.setBody(patched);
+            }
+            return response;
+        }
+
+        private static JsonNode parse(String body) {
+            try {
+                return json.readTree(body);
+            } catch (IOException e) {
+                // let the dispatcher refuse it
+                return null;
+            }
+        }
+    }
+
+    void count(String method, String path) {
+        String[] pathAndQuery = path.split("\\?", 2);
+        String watch = pathAndQuery.length > 1 && pathAndQuery[1].contains("watch=true") ? "true" : null;
+        String verb = ApiCallMetrics.verb(method, pathAndQuery[0], watch);
+        total.incrementAndGet();
+        byVerb.merge(verb, 1, Integer::sum);
+        byResource.merge(verb + " " + ApiCallMetrics.resource(pathAndQuery[0]), 1, Integer::sum);
+    }
+}
@@ -0,0 +1,124 @@
+package io.radanalytics.operator.scale;
+
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.radanalytics.operator.common.AbstractOperator;
+import io.radanalytics.operator.common.EntityInfo;
+import io.radanalytics.operator.resource.LabelsHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Wires an operator the same way {@link AbstractOperator#start()} does, but without the watcher (the mock
+ * API server can't serve watches), so that the events can be injected through the regular entry points.
+ */
+class OperatorHarness<T extends EntityInfo> {
+
+    private final AbstractOperator<T> operator;
+    private final String namespace;
+    private final Method convert;
+    private final Method onAdd;
+    private final Method onModify;
+    private final Method onDelete;
+
+    OperatorHarness(AbstractOperator<T> operator, KubernetesClient client, String namespace) throws Exception {
+        this.operator = operator;
+        this.namespace = namespace;
+        this.convert = method("convert", ConfigMap.class);
+        this.onAdd = method("onAdd", EntityInfo.class, String.class);
+        this.onModify = method("onModify", EntityInfo.class, String.class);
+        this.onDelete = method("onDelete", EntityInfo.class, String.class);
+
+        injectLoggers();
+        method("initInternals").invoke(operator);
+        operator.setCrd(false);
+        operator.setOpenshift(false);
+        operator.setClient(client);
+        operator.setNamespace(namespace);
+        Field selector = AbstractOperator.class.getDeclaredField("selector");
+        selector.setAccessible(true);
+        selector.set(operator, LabelsHelper.forKind(field("entityName"), field("prefix")));
+        MockApiServer.withoutLocalCache(client, namespace, field("prefix"));
+        method("onInit").invoke(operator);
+    }
+
+    AbstractOperator<T> getOperator() {
+        return operator;
+    }
+
+    String getEntityName() {
+        return field("entityName");
+    }
+
+    String getPrefix() {
+        return field("prefix");
+    }
+
+    @SuppressWarnings("unchecked")
+    Class<T> getInfoClass() {
+        return (Class<T>) field("infoClass");
+    }
+
+    @SuppressWarnings("unchecked")
+    T convert(ConfigMap cm) {
+        return (T) invoke(convert, cm);
+    }
+
+    void add(T entity) {
+        invoke(onAdd, entity, namespace);
+    }
+
+    void modify(T entity) {
+        invoke(onModify, entity, namespace);
+    }
+
+    void delete(T entity) {
+        invoke(onDelete, entity, namespace);
+    }
+
+    private Object invoke(Method method, Object... args) {
+        try {
+            return method.invoke(operator, args);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static Method method(String name, Class<?>... types) throws NoSuchMethodException {
+        Method m = AbstractOperator.class.getDeclaredMethod(name, types);
+        m.setAccessible(true);
+        return m;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <V> V field(String name) {
+        try {
+            Field f = AbstractOperator.class.getDeclaredField(name);
+            f.setAccessible(true);
+            return (V) f.get(operator);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // the loggers are normally injected by the CDI container
+    private void injectLoggers() throws IllegalAccessException {
+        for (Class<?> c = operator.getClass(); null != c; c = c.getSuperclass()) {
+            for (Field f : c.getDeclaredFields()) {
+                if (Logger.class.equals(f.getType()) && !Modifier.isStatic(f.getModifiers())) {
+                    f.setAccessible(true);
+                    if (null == f.get(operator)) {
+                        f.set(operator, LoggerFactory.getLogger(operator.getClass().getName()));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package io.radanalytics.operator.scale;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.ConfigMapBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.radanalytics.operator.Constants;
+import io.radanalytics.operator.app.AppOperator;
+import io.radanalytics.operator.cluster.SparkClusterOperator;
+import io.radanalytics.operator.historyServer.HistoryServerOperator;
+import io.radanalytics.operator.reconcile.WorkQueue;
+import io.radanalytics.types.SparkApplication;
+import io.radanalytics.types.SparkCluster;
+import io.radanalytics.types.SparkHistoryServer;
+import io.radanalytics.types.Worker;
+import org.junit.Assume;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static io.radanalytics.operator.resource.LabelsHelper.OPERATOR_KIND_LABEL;
+import static io.radanalytics.operator.resource.LabelsHelper.OPERATOR_RC_TYPE_LABEL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs all three operators against the CRUD mode of the fabric8 mock API server with thousands of synthetic
+ * config maps (based on the shapes in examples/test) and some churn on top of them. The numbers end up in a JSON
+ * report. It's skipped unless enabled, use {@code make scale-test} or
+ * {@code mvn test -Dtest=OperatorScaleTest -Dscale.test=true [-Dscale.clusters=..]}.
+ */
+public class OperatorScaleTest {
+
+    private static final Logger log = LoggerFactory.getLogger(OperatorScaleTest.class.getName());
+    private static final String NAMESPACE = "scale";
+    private static final ObjectMapper yaml = new ObjectMapper(new YAMLFactory());
+    private static final ObjectMapper json = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> CONFIG = new TypeReference<Map<String, Object>>() { };
+
+    private final int clusterCount = Integer.getInteger("scale.clusters", 5000);
+    private final int appCount = Integer.getInteger("scale.apps", 20000);
+    private final int historyServerCount = Integer.getInteger("scale.historyServers", 50);
+    private final int churnCount = Integer.getInteger("scale.churn", (clusterCount + appCount) / 5);
+    private final long seed = Long.getLong("scale.seed", 42L);
+    private final long timeoutMinutes = Long.getLong("scale.timeoutMinutes", 120L);
+    private final String reportFile = System.getProperty("scale.report", "target/scale-test-report.json");
+
+    private KubernetesClient client;
+    private final Random random = new Random(seed);
+    private final Map<String, ConfigMap> liveClusters = new LinkedHashMap<>();
+    private final Map<String, ConfigMap> liveApps = new LinkedHashMap<>();
+    private int nextId;
+    private int apiCallsSoFar;
+
+    @Test
+    public void testScale() throws Exception {
+        Assume.assumeTrue("enable with -Dscale.test=true", Boolean.getBoolean("scale.test"));
+        MockApiServer api = new MockApiServer();
+        Latencies latencies = new Latencies();
+        WorkQueue queue = WorkQueue.shared();
+        try {
+            api.start();
+            client = api.getClient();
+            queue.setListener(latencies);
+
+            OperatorHarness<SparkCluster> clusters = new OperatorHarness<>(new SparkClusterOperator(), client, NAMESPACE);
+            OperatorHarness<SparkApplication> apps = new OperatorHarness<>(new AppOperator(), client, NAMESPACE);
+            OperatorHarness<SparkHistoryServer> historyServers = new OperatorHarness<>(new HistoryServerOperator(), client, NAMESPACE);
+
+            List<String> clusterShapes = configs(new File("examples/test/cm"), clusters);
+            List<String> appShapes = configs(new File("examples/test/cm"), apps);
+            String historyServerShape = historyServerConfig(new File("examples/test/history-server/sharedVolume/history-server.yaml"));
+
+            Map<String, Object> phases = new LinkedHashMap<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < historyServerCount; i++) {
+                ConfigMap cm = configMap(historyServers, "history-server-" + i, historyServerShape);
+                historyServers.add(historyServers.convert(cm));
+            }
+            for (int i = 0; i < clusterCount; i++) {
+                createCluster(clusters, clusterShapes.get(i % clusterShapes.size()));
+            }
+            for (int i = 0; i < appCount; i++) {
+                createApp(apps, appShapes.get(i % appShapes.size()));
+            }
+            phases.put("create", phase(start, queue, api));
+
+            start = System.nanoTime();
+            Map<String, Integer> churn = churn(clusters, apps, clusterShapes, appShapes);
+            Map<String, Object> churnPhase = phase(start, queue, api);
+            churnPhase.put("events", churn);
+            phases.put("churn", churnPhase);
+
+            Map<String, Object> reconciliation = new LinkedHashMap<>();
+            reconciliation.put(clusters.getEntityName(), fullReconciliation(clusters, queue));
+            reconciliation.put(apps.getEntityName(), fullReconciliation(apps, queue));
+            reconciliation.put(historyServers.getEntityName(), fullReconciliation(historyServers, queue));
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("parameters", parameters());
+            report.put("phases", phases);
+            report.put("latency", latencies.report());
+            report.put("apiCalls", api.report());
+            report.put("fullReconciliationMs", reconciliation);
+            report.put("heap", heap());
+            File out = new File(reportFile);
+            json.writerWithDefaultPrettyPrinter().writeValue(out, report);
+            log.info("scale test report written to {}", out.getAbsolutePath());
+
+            // some of the failures are caused by the limits of the mock server (e.g. json patches), they are part of the report
+            assertTrue(latencies.processed() > 0);
+            assertClustersConverged(clusters);
+        } finally {
+            queue.setListener(null);
+            api.stop();
+        }
+    }
+
+    private void createCluster(OperatorHarness<SparkCluster> clusters, String config) {
+        ConfigMap cm = configMap(clusters, "cluster-" + nextId++, config);
+        liveClusters.put(cm.getMetadata().getName(), cm);
+        clusters.add(clusters.convert(cm));
+    }
+
+    private void createApp(OperatorHarness<SparkApplication> apps, String config) {
+        ConfigMap cm = configMap(apps, "app-" + nextId++, config);
+        liveApps.put(cm.getMetadata().getName(), cm);
+        apps.add(apps.convert(cm));
+    }
+
+    private Map<String, Integer> churn(OperatorHarness<SparkCluster> clusters, OperatorHarness<SparkApplication> apps,
+                                       List<String> clusterShapes, List<String> appShapes) throws Exception {
+        Map<String, Integer> counts = new TreeMap<>();
+        for (int i = 0; i < churnCount; i++) {
+            boolean cluster = random.nextInt(clusterCount + appCount) < clusterCount;
+            Map<String, ConfigMap> live = cluster ? liveClusters : liveApps;
+            String op = live.isEmpty() ? "create" : new String[]{"create", "scale", "edit", "delete"}[random.nextInt(4)];
+            counts.merge((cluster ? "cluster-" : "app-") + op, 1, Integer::sum);
+            if ("create".equals(op)) {
+                if (cluster) {
+                    createCluster(clusters, clusterShapes.get(random.nextInt(clusterShapes.size())));
+                } else {
+                    createApp(apps, appShapes.get(random.nextInt(appShapes.size())));
+                }
+                continue;
+            }
+            List<String> names = new ArrayList<>(live.keySet());
+            ConfigMap cm = live.get(names.get(random.nextInt(names.size())));
+            if ("delete".equals(op)) {
+                live.remove(cm.getMetadata().getName());
+                client.configMaps().inNamespace(NAMESPACE).withName(cm.getMetadata().getName()).delete();
+                if (cluster) {
+                    clusters.delete(clusters.convert(cm));
+                } else {
+                    apps.delete(apps.convert(cm));
+                }
+                continue;
+            }
+            String raw = cm.getData().get("config");
+            Map<String, Object> config = raw.trim().isEmpty() ? new LinkedHashMap<>() : yaml.readValue(raw, CONFIG);
+            if ("scale".equals(op)) {
+                String instances = String.valueOf(1 + random.nextInt(5));
+                config.put(cluster ? "worker" : "executor", merge(config.get(cluster ? "worker" : "executor"), "instances", instances));
+            } else {
+                config.put("labels", merge(config.get("labels"), "churn", String.valueOf(i)));
+            }
+            cm.getData().put("config", yaml.writeValueAsString(config));
+            client.configMaps().inNamespace(NAMESPACE).createOrReplace(cm);
+            if (cluster) {
+                clusters.modify(clusters.convert(cm));
+            } else {
+                apps.modify(apps.convert(cm));
+            }
+        }
+        return counts;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> merge(Object section, String key, Object value) {
+        Map<String, Object> map = null == section ? new LinkedHashMap<>() : new LinkedHashMap<>((Map<String, Object>) section);
+        map.put(key, value);
+        return map;
+    }
+
+    private ConfigMap configMap(OperatorHarness<?> harness, String name, String config) {
+        ConfigMap cm = new ConfigMapBuilder()
+                .withNewMetadata()
+                .withName(name)
+                .withNamespace(NAMESPACE)
+                // the crud mock doesn't assign any uid, the owner references need one
+                .withUid(UUID.randomUUID().toString())
+                .addToLabels(harness.getPrefix() + "kind", harness.getEntityName())
+                .endMetadata()
+                .withData(Collections.singletonMap("config", config))
+                .build();
+        client.configMaps().inNamespace(NAMESPACE).create(cm);
+        return cm;
+    }
+
+    private List<String> configs(File dir, OperatorHarness<?> harness) throws Exception {
+        String kind = harness.getEntityName();
+        List<String> result = new ArrayList<>();
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".yaml"));
+        assertTrue("no examples in " + dir, null != files);
+        java.util.Arrays.sort(files);
+        for (File f : files) {
+            try (InputStream is = new FileInputStream(f)) {
+                ConfigMap cm = client.configMaps().load(is).get();
+                if (!kind.equals(cm.getMetadata().getLabels().get(harness.getPrefix() + "kind"))) {
+                    continue;
+                }
+                try {
+                    harness.convert(cm);
+                    result.add(cm.getData().get("config"));
+                } catch (IllegalStateException e) {
+                    // some of the examples are invalid on purpose
+                    log.info("skipping {}: {}", f.getName(), e.getMessage());
+                }
+            }
+        }
+        assertTrue("no " + kind + " examples in " + dir, !result.isEmpty());
+        return result;
+    }
+
+    private String historyServerConfig(File file) throws Exception {
+        // the first document is the custom resource, the spec is what goes into the config map
+        Map<String, Object> cr = yaml.readValue(file, CONFIG);
+        return yaml.writeValueAsString(cr.get("spec"));
+    }
+
+    // after the churn and the full reconciliation, the worker rcs match the config maps that are left
+    private void assertClustersConverged(OperatorHarness<SparkCluster> clusters) {
+        Map<String, String> labels = new LinkedHashMap<>();
+        labels.put(clusters.getPrefix() + OPERATOR_KIND_LABEL, clusters.getEntityName());
+        labels.put(clusters.getPrefix() + OPERATOR_RC_TYPE_LABEL, "worker");
+        Map<String, Integer> actual = new TreeMap<>();
+        client.replicationControllers().inNamespace(NAMESPACE).withLabels(labels).list().getItems().forEach(rc ->
+                actual.put(rc.getMetadata().getLabels().get(clusters.getPrefix() + clusters.getEntityName()), rc.getSpec().getReplicas()));
+        Map<String, Integer> expected = new TreeMap<>();
+        liveClusters.forEach((name, cm) -> expected.put(name,
+                Optional.ofNullable(clusters.convert(cm).getWorker()).map(Worker::getInstances).orElse(1)));
+        assertEquals(expected, actual);
+    }
+
+    private Map<String, Object> phase(long start, WorkQueue queue, MockApiServer api) throws InterruptedException {
+        long submitted = System.nanoTime();
+        awaitIdle(queue);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("submitMs", TimeUnit.NANOSECONDS.toMillis(submitted - start));
+        result.put("durationMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        int total = api.totalRequests();
+        result.put("apiCalls", total - apiCallsSoFar);
+        apiCallsSoFar = total;
+        return result;
+    }
+
+    private long fullReconciliation(OperatorHarness<?> harness, WorkQueue queue) throws InterruptedException {
+        long start = System.nanoTime();
+        harness.getOperator().fullReconciliation();
+        awaitIdle(queue);
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private void awaitIdle(WorkQueue queue) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(timeoutMinutes);
+        while (!queue.isIdle()) {
+            assertTrue("the work queue hasn't drained in " + timeoutMinutes + " minutes", System.nanoTime() < deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private Map<String, Object> parameters() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("clusters", clusterCount);
+        result.put("apps", appCount);
+        result.put("historyServers", historyServerCount);
+        result.put("churn", churnCount);
+        result.put("seed", seed);
+        result.put("reconciliationParallelism", Constants.getReconciliationParallelism());
+        result.put("ownerReferences", Constants.useOwnerReferences());
+        result.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        result.put("javaVersion", System.getProperty("java.version"));
+        return result;
+    }
+
+    // it's the same JVM, so this includes the mock API server and its storage
+    private static Map<String, Object> heap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (MemoryType.HEAP == pool.getType() && null != pool.getPeakUsage()) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        System.gc();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("usedAfterGcBytes", ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        result.put("peakBytes", peak);
+        result.put("maxBytes", Runtime.getRuntime().maxMemory());
+        return result;
+    }
+}